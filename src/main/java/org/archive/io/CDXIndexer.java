@@ -2,14 +2,25 @@ package org.archive.io;
 
 import java.io.File;
 import java.io.IOException;
+import java.text.ParseException;
+import java.util.Collections;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.webcurator.core.store.IndexerBase;
 import org.webcurator.core.store.RunnableIndex;
+import org.webcurator.domain.model.core.ArcHarvestFileDTO;
+import org.webcurator.domain.model.core.ArchiveRecordVisitor;
 import org.webcurator.domain.model.core.HarvestResultDTO;
 
+/**
+ * Writes the CDX index of each archive file with a CDXRecordVisitor, reading 
+ * each file in a pass of its own. Adding a CDXRecordVisitorFactory to the 
+ * WCTIndexer's recordVisitorFactories writes the same indexes during the 
+ * WCTIndexer's pass instead, so this indexer only needs to be enabled if the 
+ * WCTIndexer is not.
+ */
 public class CDXIndexer extends IndexerBase{
 	private static Log log = LogFactory.getLog(CDXIndexer.class);
 
@@ -32,14 +43,11 @@ public class CDXIndexer extends IndexerBase{
 	}
 	
 	
-	private void writeCDXIndex(File archiveFile) throws IOException
+	private void writeCDXIndex(File archiveFile) throws IOException, ParseException
 	{
-	   	ArchiveReader r;
-		r = ArchiveReaderFactory.get(archiveFile);
-    	r.setStrict(false);
-    	r.setDigest(true);
-    	r.cdxOutput(true);
-    	r.close();
+		ArcHarvestFileDTO dto = new ArcHarvestFileDTO();
+		dto.setName(archiveFile.getName());
+		dto.scan(archiveFile.getParentFile(), Collections.<ArchiveRecordVisitor>singletonList(new CDXRecordVisitor(archiveFile)));
 	}
 	
 	@Override
@@ -56,7 +64,7 @@ public class CDXIndexer extends IndexerBase{
                 	writeCDXIndex(f);
                     log.info("Completed indexing of " + f.getName());
                 }
-                catch(IOException ex) { 
+                catch(IOException | ParseException ex) { 
                 	log.error("Could not index file " + f.getName() + ". Ignoring and continuing with other files. "+ex.getClass().getCanonicalName()+": "+ ex.getMessage());
                 }
             }
@@ -0,0 +1,107 @@
+package org.archive.io;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.archive.format.arc.ARCConstants;
+import org.archive.format.warc.WARCConstants;
+import org.webcurator.domain.model.core.ArcHarvestFileDTO;
+import org.webcurator.domain.model.core.ArchiveRecordVisitor;
+import org.webcurator.domain.model.core.HarvestResourceDTO;
+
+/**
+ * Writes the CDX index of an archive file during the WCTIndexer's pass over 
+ * it. The index has a line for every record and is written next to the 
+ * archive file, with the same name and content as the index written by 
+ * ArchiveReader.cdxOutput, which reads the file again. If the scan of the 
+ * file fails the partly written index is deleted.
+ */
+public class CDXRecordVisitor implements ArchiveRecordVisitor {
+	private static Log log = LogFactory.getLog(CDXRecordVisitor.class);
+
+	private final File archiveFile;
+	private String strippedFileName;
+	private BufferedWriter writer;
+
+	/**
+	 * @param archiveFile the archive file that will be scanned
+	 */
+	public CDXRecordVisitor(File archiveFile) {
+		this.archiveFile = archiveFile;
+	}
+
+	/**
+	 * @return the file the CDX index of the archive file is written to.
+	 */
+	public File getCDXFile() {
+		return new File(archiveFile.getParentFile(), getStrippedFileName() + ".cdx");
+	}
+
+	private String getStrippedFileName() {
+		String name = archiveFile.getName();
+		String extension = name.toLowerCase().contains(WARCConstants.DOT_WARC_FILE_EXTENSION) ? 
+				WARCConstants.DOT_WARC_FILE_EXTENSION : ARCConstants.DOT_ARC_FILE_EXTENSION;
+		return ArchiveReader.getStrippedFileName(name, extension);
+	}
+
+	@Override
+	public void startFile(ArcHarvestFileDTO archiveFileDTO) throws IOException {
+		strippedFileName = getStrippedFileName();
+		writer = new BufferedWriter(new FileWriter(getCDXFile()));
+		writer.write("CDX b e a m s c " + (archiveFileDTO.isCompressed() ? "V" : "v") + " n g");
+		writer.newLine();
+	}
+
+	@Override
+	public void visitRecord(ArchiveRecordHeader header, HarvestResourceDTO resource) {
+	}
+
+	@Override
+	public void visitContent(byte[] buffer, int offset, int length) {
+	}
+
+	@Override
+	public void endRecord(ArchiveRecord record) throws IOException {
+		// Reads the rest of the record, completing its digest
+		writer.write(record.outputCdx(strippedFileName));
+		writer.newLine();
+	}
+
+	@Override
+	public void endFile(ArcHarvestFileDTO archiveFileDTO) throws IOException {
+		BufferedWriter closing = writer;
+		writer = null;
+		closing.close();
+	}
+
+	@Override
+	public void abortFile(ArcHarvestFileDTO archiveFileDTO, Exception cause) {
+		if(writer != null) {
+			try {
+				writer.close();
+			}
+			catch(IOException ex) {
+				log.warn("Could not close the CDX index of " + archiveFile.getName() + ": " + ex.getMessage());
+			}
+			writer = null;
+		}
+		File cdxFile = getCDXFile();
+		if(cdxFile.exists() && !cdxFile.delete()) {
+			log.warn("Could not delete the partial CDX index " + cdxFile.getAbsolutePath());
+		}
+	}
+
+	@Override
+	public boolean wantsContent() {
+		return false;
+	}
+
+	@Override
+	public boolean wantsDigest() {
+		return true;
+	}
+}
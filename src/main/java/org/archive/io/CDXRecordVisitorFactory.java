@@ -0,0 +1,19 @@
+package org.archive.io;
+
+import java.io.File;
+
+import org.webcurator.core.store.ArchiveRecordVisitorFactory;
+import org.webcurator.domain.model.core.ArchiveRecordVisitor;
+import org.webcurator.domain.model.core.HarvestResultDTO;
+
+/**
+ * Plugs the writing of a CDX index for each archive file in to the 
+ * WCTIndexer's pass over the files of a harvest result.
+ */
+public class CDXRecordVisitorFactory implements ArchiveRecordVisitorFactory {
+
+	@Override
+	public ArchiveRecordVisitor createVisitor(HarvestResultDTO result, File archiveFile) {
+		return new CDXRecordVisitor(archiveFile);
+	}
+}
@@ -81,8 +81,19 @@ public class SipBuilder {
 	 * @return A Map of sections, indexed by section key.
 	 */
 	public Map<String, String> buildSipSections(TargetInstance inst) {
+		return buildSipSections(inst, targetManager.getActivePermissions(inst));
+	}
+	
+	/**
+	 * Build a Map of all the SIP sections that the SipBuilder generates, using
+	 * permissions that have already been evaluated for the instance.
+	 * @param inst The instance to generate teh sections for.
+	 * @param permissions The active permissions of the instance.
+	 * @return A Map of sections, indexed by section key.
+	 */
+	public Map<String, String> buildSipSections(TargetInstance inst, Collection<PermissionSeedDTO> permissions) {
 		Map<String,String> sections = new HashMap<String,String>();
-		sections.put("permissionSection", getPermissionSection(inst));
+		sections.put("permissionSection", getPermissionSection(permissions));
 		sections.put("targetSection", getTargetSection(inst));
 		sections.put("profileNoteSection", getProfileNoteSection(inst));
 		return sections;
@@ -203,8 +214,15 @@ public class SipBuilder {
 	 * @return The Permission section of the SIP.
 	 */
 	public String getPermissionSection(TargetInstance inst) {
-		
-		Collection<PermissionSeedDTO> permissions = targetManager.getActivePermissions(inst);
+		return getPermissionSection(targetManager.getActivePermissions(inst));
+	}
+	
+	/**
+	 * Get the Permission Section of the SIP.
+	 * @param permissions The active permissions to generate the SIP section for.
+	 * @return The Permission section of the SIP.
+	 */
+	public String getPermissionSection(Collection<PermissionSeedDTO> permissions) {
 		
 		StringBuffer buff = new StringBuffer();
 		
@@ -41,14 +41,14 @@ public class HarvestAgentClient extends AbstractRestClient implements HarvestAge
         Map<String, String> pathVariables = ImmutableMap.of("job", job);
         URI uri=uriComponentsBuilder.buildAndExpand(pathVariables).toUri();
 
-        RestTemplate restTemplate = restTemplateBuilder.build();
+        RestTemplate restTemplate = getRestTemplate();
         restTemplate.postForObject(uri, params, Void.class);
     }
 
     public void recoverHarvests(List<String> activeJobs) {
         HttpEntity<String> request = this.createHttpRequestEntity(activeJobs);
 
-        RestTemplate restTemplate = restTemplateBuilder.build();
+        RestTemplate restTemplate = getRestTemplate();
         restTemplate.postForObject(getUrl(HarvestAgentPaths.RECOVER_HARVESTS), request, Void.class);
     }
 
@@ -61,7 +61,7 @@ public class HarvestAgentClient extends AbstractRestClient implements HarvestAge
 
         Map<String, String> pathVariables = ImmutableMap.of("job", job);
 
-        RestTemplate restTemplate = restTemplateBuilder.build();
+        RestTemplate restTemplate = getRestTemplate();
         restTemplate.postForObject(uriComponentsBuilder.buildAndExpand(pathVariables).toUri(),
                 null, Void.class);
     }
@@ -73,7 +73,7 @@ public class HarvestAgentClient extends AbstractRestClient implements HarvestAge
         UriComponentsBuilder uriComponentsBuilder = UriComponentsBuilder.fromHttpUrl(getUrl(HarvestAgentPaths.PAUSE));
         Map<String, String> pathVariables = ImmutableMap.of("job", job);
 
-        RestTemplate restTemplate = restTemplateBuilder.build();
+        RestTemplate restTemplate = getRestTemplate();
         restTemplate.postForObject(uriComponentsBuilder.buildAndExpand(pathVariables).toUri(),
                 null, Void.class);
     }
@@ -85,7 +85,7 @@ public class HarvestAgentClient extends AbstractRestClient implements HarvestAge
         UriComponentsBuilder uriComponentsBuilder = UriComponentsBuilder.fromHttpUrl(getUrl(HarvestAgentPaths.RESUME));
         Map<String, String> pathVariables = ImmutableMap.of("job", job);
 
-        RestTemplate restTemplate = restTemplateBuilder.build();
+        RestTemplate restTemplate = getRestTemplate();
         restTemplate.postForObject(uriComponentsBuilder.buildAndExpand(pathVariables).toUri(),
                 null, Void.class);
     }
@@ -97,7 +97,7 @@ public class HarvestAgentClient extends AbstractRestClient implements HarvestAge
         UriComponentsBuilder uriComponentsBuilder = UriComponentsBuilder.fromHttpUrl(getUrl(HarvestAgentPaths.ABORT));
         Map<String, String> pathVariables = ImmutableMap.of("job", job);
 
-        RestTemplate restTemplate = restTemplateBuilder.build();
+        RestTemplate restTemplate = getRestTemplate();
         restTemplate.postForObject(uriComponentsBuilder.buildAndExpand(pathVariables).toUri(),
                 null, Void.class);
     }
@@ -109,7 +109,7 @@ public class HarvestAgentClient extends AbstractRestClient implements HarvestAge
         UriComponentsBuilder uriComponentsBuilder = UriComponentsBuilder.fromHttpUrl(getUrl(HarvestAgentPaths.STOP));
         Map<String, String> pathVariables = ImmutableMap.of("job", job);
 
-        RestTemplate restTemplate = restTemplateBuilder.build();
+        RestTemplate restTemplate = getRestTemplate();
         restTemplate.postForObject(uriComponentsBuilder.buildAndExpand(pathVariables).toUri(),
                 null, Void.class);
     }
@@ -129,7 +129,7 @@ public class HarvestAgentClient extends AbstractRestClient implements HarvestAge
 
         Map<String, String> pathVariables = ImmutableMap.of("job", job);
 
-        RestTemplate restTemplate = restTemplateBuilder.build();
+        RestTemplate restTemplate = getRestTemplate();
         restTemplate.postForObject(uriComponentsBuilder.buildAndExpand(pathVariables).toUri(),
                 null, Void.class);
     }
@@ -140,7 +140,7 @@ public class HarvestAgentClient extends AbstractRestClient implements HarvestAge
     public void pauseAll() {
         UriComponentsBuilder uriComponentsBuilder = UriComponentsBuilder.fromHttpUrl(getUrl(HarvestAgentPaths.PAUSE_ALL));
 
-        RestTemplate restTemplate = restTemplateBuilder.build();
+        RestTemplate restTemplate = getRestTemplate();
         restTemplate.postForObject(uriComponentsBuilder.buildAndExpand().toUri(),
                 null, Void.class);
     }
@@ -151,7 +151,7 @@ public class HarvestAgentClient extends AbstractRestClient implements HarvestAge
     public void resumeAll() {
         UriComponentsBuilder uriComponentsBuilder = UriComponentsBuilder.fromHttpUrl(getUrl(HarvestAgentPaths.RESUME_ALL));
 
-        RestTemplate restTemplate = restTemplateBuilder.build();
+        RestTemplate restTemplate = getRestTemplate();
         restTemplate.postForObject(uriComponentsBuilder.buildAndExpand().toUri(),
                 null, Void.class);
     }
@@ -162,7 +162,7 @@ public class HarvestAgentClient extends AbstractRestClient implements HarvestAge
     public HarvestAgentStatusDTO getStatus() {
         UriComponentsBuilder uriComponentsBuilder = UriComponentsBuilder.fromHttpUrl(getUrl(HarvestAgentPaths.STATUS));
 
-        RestTemplate restTemplate = restTemplateBuilder.build();
+        RestTemplate restTemplate = getRestTemplate();
         HarvestAgentStatusDTO harvestAgentStatusDTO = restTemplate.getForObject(uriComponentsBuilder.buildAndExpand().toUri(),
                 HarvestAgentStatusDTO.class);
         return harvestAgentStatusDTO;
@@ -174,7 +174,7 @@ public class HarvestAgentClient extends AbstractRestClient implements HarvestAge
     public String getName() {
         UriComponentsBuilder uriComponentsBuilder = UriComponentsBuilder.fromHttpUrl(getUrl(HarvestAgentPaths.NAME));
 
-        RestTemplate restTemplate = restTemplateBuilder.build();
+        RestTemplate restTemplate = getRestTemplate();
         String name = restTemplate.getForObject(uriComponentsBuilder.buildAndExpand().toUri(), String.class);
         return name;
     }
@@ -185,7 +185,7 @@ public class HarvestAgentClient extends AbstractRestClient implements HarvestAge
     public boolean getMemoryWarning() {
         UriComponentsBuilder uriComponentsBuilder = UriComponentsBuilder.fromHttpUrl(getUrl(HarvestAgentPaths.MEMORY_WARNING));
 
-        RestTemplate restTemplate = restTemplateBuilder.build();
+        RestTemplate restTemplate = getRestTemplate();
         Boolean memoryWarning = restTemplate.getForObject(uriComponentsBuilder.buildAndExpand().toUri(), Boolean.class);
         return memoryWarning;
     }
@@ -199,7 +199,7 @@ public class HarvestAgentClient extends AbstractRestClient implements HarvestAge
 
         // The service itself should throw the error if the call is unsupported (whereas it originally would throw the
         // exception on the client.
-        RestTemplate restTemplate = restTemplateBuilder.build();
+        RestTemplate restTemplate = getRestTemplate();
         restTemplate.postForObject(uriComponentsBuilder.buildAndExpand().toUri(),
                 null, Void.class);
     }
@@ -214,7 +214,7 @@ public class HarvestAgentClient extends AbstractRestClient implements HarvestAge
 
         Map<String, String> pathVariables = ImmutableMap.of("job", job);
 
-        RestTemplate restTemplate = restTemplateBuilder.build();
+        RestTemplate restTemplate = getRestTemplate();
         restTemplate.postForObject(uriComponentsBuilder.buildAndExpand(pathVariables).toUri(),
                 request, Void.class);
     }
@@ -227,7 +227,7 @@ public class HarvestAgentClient extends AbstractRestClient implements HarvestAge
 
         UriComponentsBuilder uriComponentsBuilder = UriComponentsBuilder.fromHttpUrl(getUrl(HarvestAgentPaths.PURGE_ABORTED_TARGET_INSTANCES));
 
-        RestTemplate restTemplate = restTemplateBuilder.build();
+        RestTemplate restTemplate = getRestTemplate();
         restTemplate.postForObject(uriComponentsBuilder.buildAndExpand().toUri(), request, Void.class);
     }
 
@@ -236,7 +236,7 @@ public class HarvestAgentClient extends AbstractRestClient implements HarvestAge
 
         UriComponentsBuilder uriComponentsBuilder = UriComponentsBuilder.fromHttpUrl(getUrl(HarvestAgentPaths.IS_VALID_PROFILE));
 
-        RestTemplate restTemplate = restTemplateBuilder.build();
+        RestTemplate restTemplate = getRestTemplate();
         Boolean result = restTemplate.postForObject(uriComponentsBuilder.buildAndExpand().toUri(),request,
                 Boolean.class);
         return result;
@@ -258,7 +258,7 @@ public class HarvestAgentClient extends AbstractRestClient implements HarvestAge
 
         Map<String, String> pathVariables = ImmutableMap.of("job-name", jobName);
 
-        RestTemplate restTemplate = restTemplateBuilder.build();
+        RestTemplate restTemplate = getRestTemplate();
         HarvestAgentScriptResult harvestAgentScriptResult = restTemplate.postForObject(
                 uriComponentsBuilder.buildAndExpand(pathVariables).toUri(),
                 request, HarvestAgentScriptResult.class);
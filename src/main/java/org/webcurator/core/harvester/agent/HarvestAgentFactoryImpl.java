@@ -15,20 +15,92 @@
  */
 package org.webcurator.core.harvester.agent;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.webcurator.core.reader.LogReader;
 import org.webcurator.core.reader.LogReaderClient;
+import org.webcurator.core.rest.PooledClientHttpRequestFactory;
 import org.webcurator.domain.model.core.harvester.agent.HarvestAgentStatusDTO;
 
 /**
  * Factory to create HarvestAgent and LogReader instances that use Restful API to communicate with a remote HarvestAgent.
+ * One client of each kind is created for each agent endpoint and reused, and all of the clients send their requests
+ * through a shared pool of connections.
+ * <p>
+ * The pool is held by a PooledClientHttpRequestFactory. If none is set through the requestFactory property the
+ * factory creates its own and closes it when the factory is destroyed. A request factory that is set is left to its
+ * own bean lifecycle, so the same PooledClientHttpRequestFactory bean can be set here and on the
+ * DigitalAssetStoreFactoryImpl to share one pool between the agents and the digital asset store.
  */
-public class HarvestAgentFactoryImpl implements HarvestAgentFactory {
+public class HarvestAgentFactoryImpl implements HarvestAgentFactory, DisposableBean {
+    private final ConcurrentMap<String, HarvestAgentClient> harvestAgents = new ConcurrentHashMap<String, HarvestAgentClient>();
+    private final ConcurrentMap<String, LogReaderClient> logReaders = new ConcurrentHashMap<String, LogReaderClient>();
+
+    private volatile PooledClientHttpRequestFactory requestFactory = new PooledClientHttpRequestFactory();
+    /** Whether the request factory was created by this factory, and so is closed by it. */
+    private boolean ownsRequestFactory = true;
+    private volatile RestTemplateBuilder restTemplateBuilder = createRestTemplateBuilder(requestFactory);
+
     public HarvestAgent getHarvestAgent(HarvestAgentStatusDTO harvestAgentStatusDTO) {
-        return new HarvestAgentClient(harvestAgentStatusDTO.getScheme(), harvestAgentStatusDTO.getHost(), harvestAgentStatusDTO.getPort(), new RestTemplateBuilder());
+        String scheme = harvestAgentStatusDTO.getScheme();
+        String host = harvestAgentStatusDTO.getHost();
+        int port = harvestAgentStatusDTO.getPort();
+        return harvestAgents.computeIfAbsent(endpoint(scheme, host, port),
+                k -> new HarvestAgentClient(scheme, host, port, restTemplateBuilder));
     }
 
     public LogReader getLogReader(HarvestAgentStatusDTO harvestAgentStatusDTO) {
-        return new LogReaderClient(harvestAgentStatusDTO.getScheme(), harvestAgentStatusDTO.getHost(), harvestAgentStatusDTO.getPort(), new RestTemplateBuilder());
+        String scheme = harvestAgentStatusDTO.getScheme();
+        String host = harvestAgentStatusDTO.getHost();
+        int port = harvestAgentStatusDTO.getPort();
+        return logReaders.computeIfAbsent(endpoint(scheme, host, port),
+                k -> new LogReaderClient(scheme, host, port, restTemplateBuilder));
+    }
+
+    private static String endpoint(String scheme, String host, int port) {
+        return String.format("%s://%s:%d", scheme, host, port);
+    }
+
+    private static RestTemplateBuilder createRestTemplateBuilder(PooledClientHttpRequestFactory requestFactory) {
+        return new RestTemplateBuilder().requestFactory(() -> requestFactory);
+    }
+
+    /**
+     * @return the factory holding the pool of connections to the agents, whose size can be read for monitoring.
+     */
+    public PooledClientHttpRequestFactory getRequestFactory() {
+        return requestFactory;
+    }
+
+    /**
+     * Set the factory holding the pool of connections to the agents. The clients already created are discarded,
+     * and the pool created by this factory, if any, is closed. The request factory set is not closed by this factory.
+     * @param requestFactory the request factory
+     */
+    public synchronized void setRequestFactory(PooledClientHttpRequestFactory requestFactory) {
+        PooledClientHttpRequestFactory previous = this.requestFactory;
+        boolean ownedPrevious = ownsRequestFactory;
+        this.requestFactory = requestFactory;
+        this.restTemplateBuilder = createRestTemplateBuilder(requestFactory);
+        this.ownsRequestFactory = false;
+        harvestAgents.clear();
+        logReaders.clear();
+        if (ownedPrevious && previous != requestFactory) {
+            previous.destroy();
+        }
+    }
+
+    /**
+     * Close the pool of connections if it was created by this factory.
+     */
+    public synchronized void destroy() {
+        harvestAgents.clear();
+        logReaders.clear();
+        if (ownsRequestFactory) {
+            requestFactory.destroy();
+        }
     }
 }
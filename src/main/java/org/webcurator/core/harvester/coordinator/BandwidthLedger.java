@@ -0,0 +1,136 @@
+/*
+ *  Copyright 2006 The National Library of New Zealand
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.webcurator.core.harvester.coordinator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.webcurator.domain.model.core.TargetInstance;
+
+/**
+ * The bandwidth settings of the running and paused target instances, and the
+ * bandwidth last sent to the harvest agent for each of them. The ledger is
+ * kept up to date as harvests start and end, so the bandwidth allocation can
+ * be calculated without querying the running target instances, and only
+ * the allocations that have changed need to be sent to the harvest agents.
+ */
+public class BandwidthLedger {
+	/** the running target instances, keyed by oid, holding only the bandwidth settings. */
+	private final Map<Long, TargetInstance> running = new LinkedHashMap<Long, TargetInstance>();
+	/** the bandwidth last sent for each running target instance. */
+	private final Map<Long, Long> sent = new HashMap<Long, Long>();
+	/** true once the ledger has been loaded. */
+	private boolean loaded = false;
+
+	/**
+	 * @return true if the ledger has been loaded.
+	 */
+	public synchronized boolean isLoaded() {
+		return loaded;
+	}
+
+	/**
+	 * Replace the contents of the ledger with the current running target
+	 * instances. The bandwidth sent to target instances that are still
+	 * running is kept.
+	 * @param aRunningTargetInstances the running and paused target instances
+	 */
+	public synchronized void load(Collection<TargetInstance> aRunningTargetInstances) {
+		running.clear();
+		for (TargetInstance ti : aRunningTargetInstances) {
+			running.put(ti.getOid(), bandwidthSettings(ti));
+		}
+		sent.keySet().retainAll(running.keySet());
+		loaded = true;
+	}
+
+	/**
+	 * Record that a harvest has started or resumed, or that its bandwidth
+	 * settings have changed.
+	 * @param aTargetInstance the target instance
+	 */
+	public synchronized void started(TargetInstance aTargetInstance) {
+		running.put(aTargetInstance.getOid(), bandwidthSettings(aTargetInstance));
+	}
+
+	/**
+	 * Record that a harvest has ended.
+	 * @param aTargetInstance the target instance
+	 */
+	public synchronized void ended(TargetInstance aTargetInstance) {
+		running.remove(aTargetInstance.getOid());
+		sent.remove(aTargetInstance.getOid());
+	}
+
+	/**
+	 * Get a copy of the running target instances. The copies may be passed to
+	 * the bandwidth calculator without affecting the ledger.
+	 * @return the running target instances
+	 */
+	public synchronized List<TargetInstance> getRunning() {
+		List<TargetInstance> copies = new ArrayList<TargetInstance>(running.size());
+		for (TargetInstance ti : running.values()) {
+			copies.add(bandwidthSettings(ti));
+		}
+		return copies;
+	}
+
+	/**
+	 * Get the allocations of the running target instances that differ from
+	 * those last sent. Each allocation is only recorded once it has been sent.
+	 * @param anAllocation the allocated target instances keyed by oid
+	 * @return the changed allocations keyed by oid
+	 * @see #sent(Long, Long)
+	 */
+	public synchronized Map<Long, Long> allocated(Map<Long, TargetInstance> anAllocation) {
+		Map<Long, Long> changed = new LinkedHashMap<Long, Long>();
+		for (Map.Entry<Long, TargetInstance> entry : anAllocation.entrySet()) {
+			Long oid = entry.getKey();
+			Long bandwidth = entry.getValue().getAllocatedBandwidth();
+			if (running.containsKey(oid) && (bandwidth == null || !bandwidth.equals(sent.get(oid)))) {
+				changed.put(oid, bandwidth);
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Record that an allocation has been sent to the harvest agent. The
+	 * allocation is not recorded if the harvest has ended in the meantime.
+	 * @param anOid the oid of the target instance
+	 * @param aBandwidth the bandwidth sent
+	 */
+	public synchronized void sent(Long anOid, Long aBandwidth) {
+		if (running.containsKey(anOid)) {
+			sent.put(anOid, aBandwidth);
+		}
+	}
+
+	/**
+	 * Create a detached target instance holding only the settings used to
+	 * allocate bandwidth.
+	 */
+	private static TargetInstance bandwidthSettings(TargetInstance aTargetInstance) {
+		TargetInstance ti = new TargetInstance();
+		ti.setOid(aTargetInstance.getOid());
+		ti.setBandwidthPercent(aTargetInstance.getBandwidthPercent());
+		return ti;
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ *  Copyright 2006 The National Library of New Zealand
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.webcurator.core.harvester.coordinator;
+
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.webcurator.domain.model.core.BandwidthRestriction;
+
+/**
+ * The bandwidth restrictions for each day of the week, indexed by the time
+ * of day at which they start. The restriction in force at a given time is
+ * found without querying the database or formatting and parsing dates.
+ *
+ * A restriction applies from its start time up to, but not including, its
+ * end time. Times are compared to the second, as they are stored.
+ */
+public class BandwidthRestrictionTimeline {
+	/** The day names indexed by the Calendar day of week. */
+	private static final String[] DAYS = { null, BandwidthRestriction.DOW_SUN, BandwidthRestriction.DOW_MON,
+			BandwidthRestriction.DOW_TUES, BandwidthRestriction.DOW_WED, BandwidthRestriction.DOW_THUR,
+			BandwidthRestriction.DOW_FRI, BandwidthRestriction.DOW_SAT };
+
+	/** The restrictions for each day, keyed by their start time in seconds of the day. */
+	private final Map<String, TreeMap<Integer, BandwidthRestriction>> days = new HashMap<String, TreeMap<Integer, BandwidthRestriction>>();
+
+	/**
+	 * Create the timeline.
+	 * @param aRestrictions the restrictions keyed by day of week, as returned by
+	 *            HarvestCoordinatorDAO#getBandwidthRestrictions()
+	 */
+	public BandwidthRestrictionTimeline(Map<String, List<BandwidthRestriction>> aRestrictions) {
+		if (aRestrictions == null) {
+			return;
+		}
+		for (Collection<BandwidthRestriction> restrictions : aRestrictions.values()) {
+			for (BandwidthRestriction br : restrictions) {
+				String day = br.getDayOfWeek().toUpperCase();
+				TreeMap<Integer, BandwidthRestriction> dayRestrictions = days.get(day);
+				if (dayRestrictions == null) {
+					dayRestrictions = new TreeMap<Integer, BandwidthRestriction>();
+					days.put(day, dayRestrictions);
+				}
+				dayRestrictions.put(secondOfDay(br.getStartTime()), br);
+			}
+		}
+	}
+
+	/**
+	 * Get the restriction in force at the given time.
+	 * @param aTime the time
+	 * @return the restriction, or null if there is none.
+	 */
+	public BandwidthRestriction getRestriction(Calendar aTime) {
+		TreeMap<Integer, BandwidthRestriction> dayRestrictions = days.get(DAYS[aTime.get(Calendar.DAY_OF_WEEK)]);
+		if (dayRestrictions == null) {
+			return null;
+		}
+		int second = secondOfDay(aTime);
+		Map.Entry<Integer, BandwidthRestriction> entry = dayRestrictions.floorEntry(second);
+		if (entry != null && secondOfDay(entry.getValue().getEndTime()) > second) {
+			return entry.getValue();
+		}
+		return null;
+	}
+
+	private static int secondOfDay(Date aTime) {
+		Calendar cal = Calendar.getInstance();
+		cal.setTime(aTime);
+		return secondOfDay(cal);
+	}
+
+	private static int secondOfDay(Calendar aTime) {
+		return aTime.get(Calendar.HOUR_OF_DAY) * 3600 + aTime.get(Calendar.MINUTE) * 60 + aTime.get(Calendar.SECOND);
+	}
+}
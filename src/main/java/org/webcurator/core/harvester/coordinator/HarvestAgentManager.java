@@ -54,5 +54,6 @@ public interface HarvestAgentManager {
 
 	HarvestAgentStatusDTO getHarvester(String agencyName, String harvesterType);
 
+	HarvestMetrics getHarvestMetrics();
 
 }
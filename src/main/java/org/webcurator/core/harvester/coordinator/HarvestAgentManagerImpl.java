@@ -2,6 +2,9 @@ package org.webcurator.core.harvester.coordinator;
 
 import java.text.MessageFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,11 +24,19 @@ public class HarvestAgentManagerImpl implements HarvestAgentManager {
 
 	static Set<Long> targetInstanceLocks = Collections.synchronizedSet(new HashSet<Long>());
 
-	HashMap<String, HarvestAgentStatusDTO> harvestAgents = new HashMap<String, HarvestAgentStatusDTO>();;
+	HarvestAgentRegistry harvestAgents = new HarvestAgentRegistry();
 	private Logger log = LoggerFactory.getLogger(getClass());
 	private TargetInstanceDAO targetInstanceDao;
 	private TargetInstanceManager targetInstanceManager;
 	private HarvestAgentFactory harvestAgentFactory;
+	/** the executor that applies the job statuses of heartbeats, or null to apply them on the calling thread. */
+	private Executor heartbeatExecutor;
+	/** the latest heartbeat from each agent that is waiting to be applied by the executor. */
+	private final ConcurrentMap<String, HarvestAgentStatusDTO> pendingHeartbeats = new ConcurrentHashMap<String, HarvestAgentStatusDTO>();
+	/** the time in milliseconds after its last heartbeat that an agent is removed, or 0 to keep agents until they fail. */
+	private long staleAgentTimeout = 0;
+	/** the time series of the metrics reported in heartbeats. */
+	private HarvestMetrics harvestMetrics = new HarvestMetrics();
 
 	@Override
 	public void heartbeat(HarvestAgentStatusDTO aStatus) {
@@ -41,63 +52,107 @@ public class HarvestAgentManagerImpl implements HarvestAgentManager {
 			aStatus.setAcceptTasks(currentStatus.isAcceptTasks());
 		}
 		harvestAgents.put(aStatus.getName(), aStatus);
+		harvestMetrics.record(aStatus, currentStatus);
+
+		if (heartbeatExecutor == null) {
+			updateTargetInstances(aStatus);
+		} else if (pendingHeartbeats.put(aStatus.getName(), aStatus) == null) {
+			// Only the latest report from each agent is applied, so a slow
+			// database cannot build up a backlog of stale reports.
+			final String agentName = aStatus.getName();
+			heartbeatExecutor.execute(new Runnable() {
+				public void run() {
+					try {
+						updateTargetInstances(pendingHeartbeats.remove(agentName));
+					} catch (RuntimeException e) {
+						log.error("Failed to apply the heartbeat from harvest agent " + agentName, e);
+					}
+				}
+			});
+		}
+	}
 
+	/**
+	 * Apply the job statuses reported by a harvest agent to their target
+	 * instances. The target instances are loaded together, and only those
+	 * whose state has changed are saved through the target instance manager;
+	 * the harvester statuses that have merely progressed are written in a
+	 * single batch, and unchanged statuses are not written at all.
+	 * @param aStatus the harvest agent status
+	 */
+	void updateTargetInstances(HarvestAgentStatusDTO aStatus) {
 		HashMap<String, HarvesterStatusDTO> harvesterStatusMap = aStatus.getHarvesterStatus();
-		for (String key : harvesterStatusMap.keySet()) {
+		if (harvesterStatusMap == null || harvesterStatusMap.isEmpty()) {
+			return;
+		}
+
+		Map<Long, HarvesterStatusDTO> lockedStatuses = new LinkedHashMap<Long, HarvesterStatusDTO>();
+		for (Map.Entry<String, HarvesterStatusDTO> entry : harvesterStatusMap.entrySet()) {
+			String key = entry.getKey();
 			long tiOid = Long.parseLong(key.substring(key.lastIndexOf("-") + 1));
 
 			// lock the ti for update
 			if (!lock(tiOid))
 				break;
 			log.debug("Obtained lock for ti " + tiOid);
+			lockedStatuses.put(tiOid, entry.getValue());
+		}
 
-			TargetInstance ti = targetInstanceDao.load(tiOid);
-			HarvesterStatusDTO harvesterStatusDto = (HarvesterStatusDTO) harvesterStatusMap.get(key);
+		try {
+			List<HarvesterStatus> changedStatuses = new ArrayList<HarvesterStatus>();
+			for (TargetInstance ti : targetInstanceDao.loadTargetInstances(lockedStatuses.keySet())) {
+				HarvesterStatusDTO harvesterStatusDto = lockedStatuses.get(ti.getOid());
+				updateStatusWithEnvironment(harvesterStatusDto);
+
+				boolean saveTargetInstance = false;
+				boolean statusChanged = false;
+				HarvesterStatus harvesterStatus = ti.getStatus();
+				if (harvesterStatus == null) {
+					harvesterStatus = new HarvesterStatus(harvesterStatusDto);
+					ti.setStatus(harvesterStatus);
+					harvesterStatus.setOid(ti.getOid());
+					saveTargetInstance = true;
+				} else {
+					statusChanged = harvesterStatus.update(harvesterStatusDto);
+				}
 
-			updateStatusWithEnvironment(harvesterStatusDto);
-			HarvesterStatus harvesterStatus = createHarvesterStatus(ti, harvesterStatusDto);
+				String harvesterStatusValue = harvesterStatus.getStatus();
+				if (harvesterStatusValue.startsWith("Paused")) {
+					saveTargetInstance |= doHeartbeatPaused(ti);
+				}
 
-			String harvesterStatusValue = harvesterStatus.getStatus();
-			if (harvesterStatusValue.startsWith("Paused")) {
-				doHeartbeatPaused(ti);
-			}
+				// We have seen cases where a running Harvest is showing as Queued
+				// in the UI. Once in this state, the user has no control over the
+				// harvest and cannot use it. This work around means that any
+				// TIs in the wrong state will be corrected on the next heartbeat
+				if (harvesterStatusValue.startsWith("Running")) {
+					saveTargetInstance |= doHeartbeatRunning(aStatus, ti, harvesterStatus);
+				}
 
-			// We have seen cases where a running Harvest is showing as Queued
-			// in the UI. Once in this state, the user has no control over the
-			// harvest and cannot use it. This work around means that any
-			// TIs in the wrong state will be corrected on the next heartbeat
-			if (harvesterStatusValue.startsWith("Running")) {
-				doHeartbeatRunning(aStatus, ti, harvesterStatus);
-			}
+				if (harvesterStatusValue.startsWith("Finished")) {
+					saveTargetInstance |= doHeartbeatFinished(ti);
+				}
 
-			if (harvesterStatusValue.startsWith("Finished")) {
-				doHeartbeatFinished(ti);
-			}
+				// This is a required because when a
+				// "Could not launch job - Fatal InitializationException" job occurs
+				// We do not get a notification that causes the job to stop nicely
+				if (harvesterStatusValue.startsWith("Could not launch job - Fatal InitializationException")) {
+					saveTargetInstance |= doHeartbeatLaunchFailed(ti);
+				}
 
-			// This is a required because when a
-			// "Could not launch job - Fatal InitializationException" job occurs
-			// We do not get a notification that causes the job to stop nicely
-			if (harvesterStatusValue.startsWith("Could not launch job - Fatal InitializationException")) {
-				doHeartbeatLaunchFailed(ti);
+				if (saveTargetInstance) {
+					targetInstanceManager.save(ti);
+				} else if (statusChanged) {
+					changedStatuses.add(harvesterStatus);
+				}
+			}
+			targetInstanceDao.updateHarvesterStatuses(changedStatuses);
+		} finally {
+			for (Long tiOid : lockedStatuses.keySet()) {
+				unLock(tiOid);
+				log.debug("Released lock for ti " + tiOid);
 			}
-
-			targetInstanceManager.save(ti);
-			unLock(tiOid);
-			log.debug("Released lock for ti " + tiOid);
-		}
-	}
-
-	private HarvesterStatus createHarvesterStatus(TargetInstance ti, HarvesterStatusDTO harvesterStatusDto) {
-		HarvesterStatus harvesterStatus = null;
-		if (ti.getStatus() == null) {
-			harvesterStatus = new HarvesterStatus(harvesterStatusDto);
-			ti.setStatus(harvesterStatus);
-			harvesterStatus.setOid(ti.getOid());
-		} else {
-			harvesterStatus = ti.getStatus();
-			harvesterStatus.update(harvesterStatusDto);
 		}
-		return harvesterStatus;
 	}
 
 	private void updateStatusWithEnvironment(HarvesterStatusDTO harvesterStatusDto) {
@@ -109,7 +164,7 @@ public class HarvestAgentManagerImpl implements HarvestAgentManager {
 		}
 	}
 
-	private void doHeartbeatLaunchFailed(TargetInstance ti) {
+	private boolean doHeartbeatLaunchFailed(TargetInstance ti) {
 		String state = ti.getState();
 		if (state.equals(TargetInstance.STATE_RUNNING)) {
 			ti.setState(TargetInstance.STATE_ABORTED);
@@ -120,17 +175,21 @@ public class HarvestAgentManagerImpl implements HarvestAgentManager {
 				HarvestAgent agent = harvestAgentFactory.getHarvestAgent(hs);
 				agent.abort(ti.getJobName());
 			}
+			return true;
 		}
+		return false;
 	}
 
-	private void doHeartbeatFinished(TargetInstance ti) {
+	private boolean doHeartbeatFinished(TargetInstance ti) {
 		String state = ti.getState();
 		if (state.equals(TargetInstance.STATE_RUNNING)) {
 			ti.setState(TargetInstance.STATE_STOPPING);
+			return true;
 		}
+		return false;
 	}
 
-	private void doHeartbeatRunning(HarvestAgentStatusDTO aStatus, TargetInstance ti, HarvesterStatus harvesterStatus) {
+	private boolean doHeartbeatRunning(HarvestAgentStatusDTO aStatus, TargetInstance ti, HarvesterStatus harvesterStatus) {
 		String state = ti.getState();
 		if (state.equals(TargetInstance.STATE_PAUSED) || state.equals(TargetInstance.STATE_QUEUED)) {
 
@@ -148,27 +207,25 @@ public class HarvestAgentManagerImpl implements HarvestAgentManager {
 				log.info("HarvestCoordinator: Target Instance start time set for target instance " + ti.getOid().toString());
 			}
 			ti.setState(TargetInstance.STATE_RUNNING);
+			return true;
 		}
+		return false;
 	}
 
-	private void doHeartbeatPaused(TargetInstance ti) {
+	private boolean doHeartbeatPaused(TargetInstance ti) {
 		String state = ti.getState();
 		if (state.equals(TargetInstance.STATE_RUNNING)) {
 			ti.setState(TargetInstance.STATE_PAUSED);
+			return true;
 		}
+		return false;
 	}
 
 	/**
 	 * @return a harvest agent status for the specified job name
 	 */
 	HarvestAgentStatusDTO getHarvestAgentStatusFor(String aJobName) {
-		for (HarvestAgentStatusDTO agentStatus : harvestAgents.values()) {
-			if (agentStatus.getHarvesterStatus() != null) {
-				if (agentHasJob(aJobName, agentStatus))
-					return agentStatus;
-			}
-		}
-		return null;
+		return harvestAgents.getAgentForJob(aJobName);
 	}
 
 	boolean agentHasJob(String aJobName, HarvestAgentStatusDTO agentStatus) {
@@ -333,19 +390,39 @@ public class HarvestAgentManagerImpl implements HarvestAgentManager {
 
 	@Override
 	public List<HarvestAgentStatusDTO> getHarvestersForAgency(String agencyName) {
+		expireStaleAgents();
 		List<HarvestAgentStatusDTO> result = new ArrayList<HarvestAgentStatusDTO>();
 		for (HarvestAgentStatusDTO agent : harvestAgents.values()) {
-			ArrayList<String> allowedAgencies = agent.getAllowedAgencies();
-			if (allowedAgencies == null || allowedAgencies.isEmpty() || allowedAgencies.contains(agencyName)) {
+			if (harvesterForAgency(agent, agencyName)) {
 				result.add(agent);
 			}
 		}
 		return result;
 	}
 
+	private boolean harvesterForAgency(HarvestAgentStatusDTO agent, String agencyName) {
+		ArrayList<String> allowedAgencies = agent.getAllowedAgencies();
+		return allowedAgencies == null || allowedAgencies.isEmpty() || allowedAgencies.contains(agencyName);
+	}
+
+	/**
+	 * Remove the harvest agents that have not sent a heartbeat within the
+	 * stale agent timeout, so that no more harvests are allocated to them.
+	 */
+	void expireStaleAgents() {
+		if (staleAgentTimeout <= 0) {
+			return;
+		}
+		for (HarvestAgentStatusDTO agent : harvestAgents.expire(new Date(System.currentTimeMillis() - staleAgentTimeout))) {
+			log.warn("Removing harvest agent {}: no heartbeat since {}", agent.getName(), agent.getLastUpdated());
+			harvestMetrics.removeAgent(agent.getName());
+		}
+	}
+
 	@Override
 	public void markDead(HarvestAgentStatusDTO agent) {
 		harvestAgents.remove(agent.getName());
+		harvestMetrics.removeAgent(agent.getName());
 	}
 
 	@Override
@@ -381,7 +458,7 @@ public class HarvestAgentManagerImpl implements HarvestAgentManager {
 
 	@Override
 	public HashMap<String, HarvestAgentStatusDTO> getHarvestAgents() {
-		return new HashMap<String, HarvestAgentStatusDTO>(harvestAgents);
+		return harvestAgents.toMap();
 	}
 
 	public void setTargetInstanceManager(TargetInstanceManager targetInstanceManager) {
@@ -396,6 +473,36 @@ public class HarvestAgentManagerImpl implements HarvestAgentManager {
 		this.targetInstanceDao = targetInstanceDao;
 	}
 
+	/**
+	 * Set the executor used to apply the job statuses of heartbeats to their
+	 * target instances, so that the harvest agent does not wait on the
+	 * database. If no executor is set the statuses are applied before the
+	 * heartbeat returns.
+	 * @param heartbeatExecutor the executor
+	 */
+	public void setHeartbeatExecutor(Executor heartbeatExecutor) {
+		this.heartbeatExecutor = heartbeatExecutor;
+	}
+
+	/**
+	 * Set the time after its last heartbeat that a harvest agent is treated
+	 * as dead and removed. If no timeout is set agents are only removed when
+	 * a harvest cannot be allocated to them.
+	 * @param staleAgentTimeout the timeout in milliseconds
+	 */
+	public void setStaleAgentTimeout(long staleAgentTimeout) {
+		this.staleAgentTimeout = staleAgentTimeout;
+	}
+
+	@Override
+	public HarvestMetrics getHarvestMetrics() {
+		return harvestMetrics;
+	}
+
+	public void setHarvestMetrics(HarvestMetrics harvestMetrics) {
+		this.harvestMetrics = harvestMetrics;
+	}
+
 	@Override
 	public void purgeAbortedTargetInstances(List<String> tiNames) {
 		for(HarvestAgentStatusDTO statusDto:harvestAgents.values()) {
@@ -410,20 +517,14 @@ public class HarvestAgentManagerImpl implements HarvestAgentManager {
 
 	@Override
 	public List<HarvestAgentStatusDTO> getAvailableHarvesters(String agencyName) {
+		expireStaleAgents();
+		// The most loaded agents are listed first
 		List<HarvestAgentStatusDTO> result = new ArrayList<HarvestAgentStatusDTO>();
-		List<HarvestAgentStatusDTO> harvestersForAgency = getHarvestersForAgency(agencyName);
-		for (HarvestAgentStatusDTO agent : harvestersForAgency) {
-			if (harvesterCanHarvestNow(agent)) {
+		for (HarvestAgentStatusDTO agent : harvestAgents.getAgentsByLoad(true)) {
+			if (harvesterForAgency(agent, agencyName) && harvesterCanHarvestNow(agent)) {
 				result.add(agent);
 			}
 		}
-		Collections.sort(result, new Comparator<HarvestAgentStatusDTO>() {
-			@Override
-			public int compare(HarvestAgentStatusDTO o1, HarvestAgentStatusDTO o2) {
-				// Result is negated to get a descending sort order
-				return -(o1.getHarvesterStatusCount() - o2.getHarvesterStatusCount());
-			}
-		});
 		return result;
 	}
 
@@ -438,17 +539,15 @@ public class HarvestAgentManagerImpl implements HarvestAgentManager {
 	 */
 	@Override
 	public HarvestAgentStatusDTO getHarvester(String agencyName, String harvesterType) {
-		HarvestAgentStatusDTO selectedAgent = null;
-
-		List<HarvestAgentStatusDTO> harvestersForAgency = getHarvestersForAgency(agencyName);
-		for (HarvestAgentStatusDTO agent : harvestersForAgency) {
-			if (selectedAgent == null || agent.getHarvesterStatusCount() < selectedAgent.getHarvesterStatusCount()) {
-				if (harvesterCanHarvestNow(agent) && agent.getHarvesterType().equals(harvesterType)) {
-					selectedAgent = agent;
-				}
+		expireStaleAgents();
+		// The least loaded agent that can take the harvest is selected
+		for (HarvestAgentStatusDTO agent : harvestAgents.getAgentsByLoad(false)) {
+			if (harvesterForAgency(agent, agencyName) && harvesterCanHarvestNow(agent)
+					&& agent.getHarvesterType().equals(harvesterType)) {
+				return agent;
 			}
 		}
-		return selectedAgent;
+		return null;
 	}
 
 	private boolean harvesterCanHarvestNow(HarvestAgentStatusDTO agent) {
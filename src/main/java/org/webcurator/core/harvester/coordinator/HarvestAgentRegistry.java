@@ -0,0 +1,245 @@
+/*
+ *  Copyright 2006 The National Library of New Zealand
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.webcurator.core.harvester.coordinator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import org.webcurator.domain.model.core.harvester.agent.HarvestAgentStatusDTO;
+import org.webcurator.domain.model.core.harvester.agent.HarvesterStatusDTO;
+
+/**
+ * The registered harvest agents, keyed by name. Alongside the agents the
+ * registry maintains an index of the agent running each job, the agents
+ * ordered by the number of harvests they are running, and the agents
+ * ordered by the time of their last heartbeat, so that none of these
+ * lookups need to scan the status of every agent.
+ *
+ * The registry may be read from any thread without locking; changes are
+ * made one at a time so that the indexes are updated together.
+ */
+public class HarvestAgentRegistry {
+	/** Orders the agents by the number of harvests they are running. */
+	private static final Comparator<AgentEntry> LOAD_ORDER = new Comparator<AgentEntry>() {
+		public int compare(AgentEntry o1, AgentEntry o2) {
+			int result = Integer.compare(o1.load, o2.load);
+			return result != 0 ? result : o1.name.compareTo(o2.name);
+		}
+	};
+
+	/** Orders the agents by the time of their last heartbeat. */
+	private static final Comparator<AgentEntry> HEARTBEAT_ORDER = new Comparator<AgentEntry>() {
+		public int compare(AgentEntry o1, AgentEntry o2) {
+			int result = Long.compare(o1.lastUpdated, o2.lastUpdated);
+			return result != 0 ? result : o1.name.compareTo(o2.name);
+		}
+	};
+
+	/** the agents keyed by name. */
+	private final ConcurrentMap<String, HarvestAgentStatusDTO> agents = new ConcurrentHashMap<String, HarvestAgentStatusDTO>();
+	/** the name of the agent running each job, keyed by job name. */
+	private final ConcurrentMap<String, String> jobAgents = new ConcurrentHashMap<String, String>();
+	/** the index entry of each agent, keyed by name. */
+	private final Map<String, AgentEntry> entries = new HashMap<String, AgentEntry>();
+	/** the agents in ascending order of load. */
+	private final NavigableSet<AgentEntry> byLoad = new ConcurrentSkipListSet<AgentEntry>(LOAD_ORDER);
+	/** the agents in ascending order of last heartbeat. */
+	private final NavigableSet<AgentEntry> byHeartbeat = new ConcurrentSkipListSet<AgentEntry>(HEARTBEAT_ORDER);
+
+	/**
+	 * Register or update a harvest agent.
+	 * @param aName the name of the agent
+	 * @param aStatus the status of the agent
+	 * @return the previous status of the agent, or null if it was not registered.
+	 */
+	public synchronized HarvestAgentStatusDTO put(String aName, HarvestAgentStatusDTO aStatus) {
+		HarvestAgentStatusDTO previous = agents.put(aName, aStatus);
+
+		// Index the new jobs before removing the finished ones, so that a
+		// job that is still running can always be found.
+		Collection<String> jobs = jobNames(aStatus);
+		for (String jobName : jobs) {
+			jobAgents.put(jobName, aName);
+		}
+		for (String jobName : jobNames(previous)) {
+			if (!jobs.contains(jobName)) {
+				jobAgents.remove(jobName, aName);
+			}
+		}
+
+		AgentEntry entry = new AgentEntry(aName, aStatus);
+		unindex(entries.put(aName, entry));
+		byLoad.add(entry);
+		byHeartbeat.add(entry);
+		return previous;
+	}
+
+	/**
+	 * @param aName the name of the agent
+	 * @return the status of the agent, or null if it is not registered.
+	 */
+	public HarvestAgentStatusDTO get(String aName) {
+		return agents.get(aName);
+	}
+
+	/**
+	 * @param aName the name of the agent
+	 * @return true if the agent is registered.
+	 */
+	public boolean containsKey(String aName) {
+		return agents.containsKey(aName);
+	}
+
+	/**
+	 * Remove a harvest agent, and the index of its jobs.
+	 * @param aName the name of the agent
+	 * @return the status of the agent, or null if it was not registered.
+	 */
+	public synchronized HarvestAgentStatusDTO remove(String aName) {
+		HarvestAgentStatusDTO previous = agents.remove(aName);
+		for (String jobName : jobNames(previous)) {
+			jobAgents.remove(jobName, aName);
+		}
+		unindex(entries.remove(aName));
+		return previous;
+	}
+
+	/**
+	 * Remove all the harvest agents.
+	 */
+	public synchronized void clear() {
+		agents.clear();
+		jobAgents.clear();
+		entries.clear();
+		byLoad.clear();
+		byHeartbeat.clear();
+	}
+
+	/**
+	 * @return a read only view of the registered agents.
+	 */
+	public Collection<HarvestAgentStatusDTO> values() {
+		return Collections.unmodifiableCollection(agents.values());
+	}
+
+	/**
+	 * @return a copy of the registered agents keyed by name.
+	 */
+	public HashMap<String, HarvestAgentStatusDTO> toMap() {
+		return new HashMap<String, HarvestAgentStatusDTO>(agents);
+	}
+
+	/**
+	 * Get the agent running the specified job.
+	 * @param aJobName the name of the job
+	 * @return the status of the agent, or null if no agent reported the job.
+	 */
+	public HarvestAgentStatusDTO getAgentForJob(String aJobName) {
+		if (aJobName == null) {
+			return null;
+		}
+		String name = jobAgents.get(aJobName);
+		return name == null ? null : agents.get(name);
+	}
+
+	/**
+	 * Get the agents in order of the number of harvests they were running at
+	 * their last heartbeat.
+	 * @param descending true to list the most loaded agent first
+	 * @return the agents
+	 */
+	public List<HarvestAgentStatusDTO> getAgentsByLoad(boolean descending) {
+		List<HarvestAgentStatusDTO> result = new ArrayList<HarvestAgentStatusDTO>(agents.size());
+		for (AgentEntry entry : descending ? byLoad.descendingSet() : byLoad) {
+			HarvestAgentStatusDTO agent = agents.get(entry.name);
+			if (agent != null) {
+				result.add(agent);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Remove the agents whose last heartbeat was before the specified time.
+	 * Agents that have never sent a heartbeat are not removed.
+	 * @param aCutoff the time of the oldest heartbeat to keep
+	 * @return the removed agents
+	 */
+	public synchronized List<HarvestAgentStatusDTO> expire(Date aCutoff) {
+		List<HarvestAgentStatusDTO> expired = new ArrayList<HarvestAgentStatusDTO>();
+		for (Iterator<AgentEntry> it = byHeartbeat.iterator(); it.hasNext();) {
+			AgentEntry entry = it.next();
+			if (entry.lastUpdated >= aCutoff.getTime()) {
+				break;
+			}
+			HarvestAgentStatusDTO agent = remove(entry.name);
+			if (agent != null) {
+				expired.add(agent);
+			}
+		}
+		return expired;
+	}
+
+	private void unindex(AgentEntry anEntry) {
+		if (anEntry != null) {
+			byLoad.remove(anEntry);
+			byHeartbeat.remove(anEntry);
+		}
+	}
+
+	private static Collection<String> jobNames(HarvestAgentStatusDTO aStatus) {
+		if (aStatus == null || aStatus.getHarvesterStatus() == null) {
+			return Collections.emptySet();
+		}
+		Set<String> jobNames = new HashSet<String>();
+		for (HarvesterStatusDTO harvesterStatus : aStatus.getHarvesterStatus().values()) {
+			String jobName = harvesterStatus.getJobName();
+			if (jobName != null) {
+				jobNames.add(jobName);
+			}
+		}
+		return jobNames;
+	}
+
+	/**
+	 * The load and last heartbeat of an agent at the time it was registered,
+	 * which must not change while the entry is in the ordered indexes.
+	 */
+	private static class AgentEntry {
+		private final String name;
+		private final int load;
+		private final long lastUpdated;
+
+		AgentEntry(String aName, HarvestAgentStatusDTO aStatus) {
+			name = aName;
+			load = aStatus.getHarvesterStatusCount();
+			lastUpdated = aStatus.getLastUpdated() == null ? Long.MAX_VALUE : aStatus.getLastUpdated().getTime();
+		}
+	}
+}
@@ -30,6 +30,12 @@ public interface HarvestBandwidthManager {
 
 	boolean isMiniumBandwidthAvailable(TargetInstance aTargetInstance);
 
+	HarvestQueuePlan planQueue(List<QueuedTargetInstanceDTO> aQueue);
+
+	void harvestStarted(TargetInstance aTargetInstance);
+
+	void harvestEnded(TargetInstance aTargetInstance);
+
 	void checkForBandwidthTransition();
 
 	boolean isHarvestOptimizationAllowed();
@@ -1,11 +1,13 @@
 package org.webcurator.core.harvester.coordinator;
 
-import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.slf4j.Logger;
@@ -32,13 +34,22 @@ public class HarvestBandwidthManagerImpl implements HarvestBandwidthManager {
 	private int maxBandwidthPercent = 80;
 	private long previousMaxGlobalBandwidth = 0;
 	private BandwidthCalculator bandwidthCalculator = new BandwidthCalculatorImpl();
+	/** the bandwidth settings of the running target instances. */
+	private final BandwidthLedger ledger = new BandwidthLedger();
+	/** the bandwidth restrictions, loaded when first needed and discarded when they change. */
+	private volatile BandwidthRestrictionTimeline timeline = null;
 
 	@Override
 	public void sendBandWidthRestrictions() {
-		// Allocate the bandwidth
-		HashMap<Long, TargetInstance> running = calculateBandwidthAllocation();
-		for (TargetInstance ti : running.values()) {
+		// Allocate the bandwidth and send the allocations that have changed.
+		// An allocation is recorded as sent only once the agent has been told,
+		// so one that fails to be sent is sent again on the next attempt.
+		HashMap<Long, TargetInstance> allocation = calculateBandwidthAllocation();
+		for (Map.Entry<Long, Long> changed : ledger.allocated(allocation).entrySet()) {
+			TargetInstance ti = targetInstanceDao.load(changed.getKey());
+			ti.setAllocatedBandwidth(changed.getValue());
 			harvestAgentManager.restrictBandwidthFor(ti);
+			ledger.sent(changed.getKey(), changed.getValue());
 		}
 	}
 
@@ -46,13 +57,12 @@ public class HarvestBandwidthManagerImpl implements HarvestBandwidthManager {
 	public HashMap<Long, TargetInstance> calculateBandwidthAllocation(TargetInstance aTargetInstance) {
 		// Check to see if there are other running target instances with a
 		// percentage allocation.
-		TargetInstanceCriteria tic = new TargetInstanceCriteria();
-		Set<String> states = new HashSet<String>();
-		states.add(TargetInstance.STATE_RUNNING);
-		states.add(TargetInstance.STATE_PAUSED);
-		tic.setStates(states);
-
-		List<TargetInstance> runningTIs = targetInstanceDao.findTargetInstances(tic);
+		List<TargetInstance> runningTIs = getRunningTargetInstances();
+		for (Iterator<TargetInstance> it = runningTIs.iterator(); it.hasNext();) {
+			if (it.next().getOid().equals(aTargetInstance.getOid())) {
+				it.remove();
+			}
+		}
 		runningTIs.add(aTargetInstance);
 
 		return calculateBandwidthAllocation(runningTIs);
@@ -62,15 +72,38 @@ public class HarvestBandwidthManagerImpl implements HarvestBandwidthManager {
 	public HashMap<Long, TargetInstance> calculateBandwidthAllocation() {
 		// Check to see if there are other running target instances with a
 		// percentage allocation.
+		return calculateBandwidthAllocation(getRunningTargetInstances());
+	}
+
+	@Override
+	public void harvestStarted(TargetInstance aTargetInstance) {
+		ledger.started(aTargetInstance);
+	}
+
+	@Override
+	public void harvestEnded(TargetInstance aTargetInstance) {
+		ledger.ended(aTargetInstance);
+	}
+
+	/**
+	 * Get the bandwidth settings of the running and paused target instances
+	 * from the ledger, loading it if this is the first time it is used.
+	 */
+	private List<TargetInstance> getRunningTargetInstances() {
+		if (!ledger.isLoaded()) {
+			ledger.load(findRunningTargetInstances());
+		}
+		return ledger.getRunning();
+	}
+
+	private List<TargetInstance> findRunningTargetInstances() {
 		TargetInstanceCriteria tic = new TargetInstanceCriteria();
 		Set<String> states = new HashSet<String>();
 		states.add(TargetInstance.STATE_RUNNING);
 		states.add(TargetInstance.STATE_PAUSED);
 		tic.setStates(states);
 
-		List<TargetInstance> runningTIs = targetInstanceDao.findTargetInstances(tic);
-
-		return calculateBandwidthAllocation(runningTIs);
+		return targetInstanceDao.findTargetInstances(tic);
 	}
 
 	/** @see HarvestBandwidthManager#calculateBandwidthAllocation(TargetInstance). */
@@ -82,30 +115,26 @@ public class HarvestBandwidthManagerImpl implements HarvestBandwidthManager {
 
 	@Override
 	public long getCurrentGlobalMaxBandwidth() {
-		return getGlobalMaxBandwidth(0);
+		BandwidthRestriction br = getTimeline().getRestriction(Calendar.getInstance());
+		if (br != null) {
+			return br.getBandwidth();
+		}else{
+			log.warn("No global max bandwidth configured. Return MAX_VALUE_OF_LONG: {}", Long.MAX_VALUE);
+			return Long.MAX_VALUE;
+		}
 	}
 
-	private long getGlobalMaxBandwidth(int aMillisBeforeNow) {
-		try {
-			Calendar now = Calendar.getInstance();
-			now.add(Calendar.MILLISECOND, (aMillisBeforeNow * -1));
-			String time = BandwidthRestriction.TIMEONLY_FORMAT.format(now.getTime());
-			log.info("getGlobalMaxBandwidth - Parsing date for the bandwidth restriction, time: " + time);
-			Date date = BandwidthRestriction.FULLDATE_FORMAT.parse(BandwidthRestriction.DEFAULT_DATE + time);
-			String day = BandwidthRestriction.FULLDAY_FORMAT.format(now.getTime()).toUpperCase();
-
-			BandwidthRestriction br = harvestCoordinatorDao.getBandwidthRestriction(day, date);
-			if (br != null) {
-				return br.getBandwidth();
-			}else{
-				log.warn("No global max bandwidth configured. Return MAX_VALUE_OF_LONG: {}", Long.MAX_VALUE);
-				return Long.MAX_VALUE;
-			}
-		} catch (ParseException e) {
-			log.error("Failed to parse the date for the bandwith restriction : " + e.getMessage(), e);
+	/**
+	 * Get the timeline of bandwidth restrictions, loading it if it has not
+	 * been loaded since the restrictions last changed.
+	 */
+	private BandwidthRestrictionTimeline getTimeline() {
+		BandwidthRestrictionTimeline current = timeline;
+		if (current == null) {
+			current = new BandwidthRestrictionTimeline(harvestCoordinatorDao.getBandwidthRestrictions());
+			timeline = current;
 		}
-
-		return 0;
+		return current;
 	}
 
 	/**
@@ -122,14 +151,7 @@ public class HarvestBandwidthManagerImpl implements HarvestBandwidthManager {
 			throw new WCTRuntimeException("The Target Instance passed in was null.");
 		}
 
-		if (getCurrentGlobalMaxBandwidth() < getMinimumBandwidth()) {
-			return false;
-		}
-
-		TargetInstance ti = targetInstanceDao.load(aTargetInstance.getOid());
-		ti = targetInstanceDao.populate(ti);
-
-		return isMiniumBandwidthAvailable(ti);
+		return planQueue(new ArrayList<QueuedTargetInstanceDTO>()).isMinimumBandwidthAvailable(aTargetInstance);
 	}
 
 	@Override
@@ -142,36 +164,23 @@ public class HarvestBandwidthManagerImpl implements HarvestBandwidthManager {
 			return false;
 		}
 
-		TargetInstance ti = targetInstanceDao.load(aTargetInstance.getOid());
-		ti = targetInstanceDao.populate(ti);
-
-		HashMap<Long, TargetInstance> targetInstances = null;
-		if (TargetInstance.STATE_PAUSED.equals(ti.getState())) {
-			targetInstances = calculateBandwidthAllocation();
-		} else {
-			targetInstances = calculateBandwidthAllocation(ti);
-		}
-
-		Integer bandwidthPercent = ti.getBandwidthPercent();
-		if (bandwidthPercent == null) {
-			long allocatedBandWidth = ti.getAllocatedBandwidth();
-			long minimumBandWidth = getMinimumBandwidth();
-			if (allocatedBandWidth < minimumBandWidth) {
-				// failure bandwidth setting is too low.
-				return false;
-			}
-		} else {
-			for (TargetInstance ati : targetInstances.values()) {
-				if (ati.getBandwidthPercent() == null) {
-					if (ati.getAllocatedBandwidth() < getMinimumBandwidth()) {
-						// failure bandwidth setting is too low.
-						return false;
-					}
-				}
-			}
-		}
+		return planQueue(new ArrayList<QueuedTargetInstanceDTO>()).isMinimumBandwidthAvailable(aTargetInstance.getOid(),
+				aTargetInstance.getBandwidthPercent());
+	}
 
-		return true;
+	/**
+	 * Take a snapshot of the bandwidth state of the running target instances
+	 * so that the entries in the queue can be checked for available bandwidth
+	 * without reloading them.
+	 *
+	 * @param aQueue
+	 *            the target instances due to be harvested
+	 * @return the plan for allocating the queue
+	 */
+	@Override
+	public HarvestQueuePlan planQueue(List<QueuedTargetInstanceDTO> aQueue) {
+		return new HarvestQueuePlan(aQueue, getRunningTargetInstances(), getCurrentGlobalMaxBandwidth(),
+				getMinimumBandwidth(), maxBandwidthPercent, bandwidthCalculator);
 	}
 
 	@Override
@@ -180,32 +189,25 @@ public class HarvestBandwidthManagerImpl implements HarvestBandwidthManager {
 		long currBW = getCurrentGlobalMaxBandwidth();
 		log.info("Checking bandwidth. prev = {} curr = {}", previousMaxGlobalBandwidth, currBW);
 
+		// Reconcile the ledger with the running target instances, in case a
+		// harvest changed state without passing through the coordinator.
+		// Only the allocations that have changed as a result are sent.
+		ledger.load(findRunningTargetInstances());
 		if (currBW != previousMaxGlobalBandwidth) {
 			log.info("Found bandwidth transition from {} to {} re-calulating bandwidth settings.", previousMaxGlobalBandwidth,
 					currBW);
-			sendBandWidthRestrictions();
 		}
+		sendBandWidthRestrictions();
 
 		previousMaxGlobalBandwidth = currBW;
 	}
 
 	@Override
 	public boolean isHarvestOptimizationAllowed() {
-		try {
-			Calendar now = Calendar.getInstance();
-			String time = BandwidthRestriction.TIMEONLY_FORMAT.format(now.getTime());
-			log.info("isHarvestOptimizationAllowed - Parsing date for the bandwidth restriction, time: " + time);
-			Date date = BandwidthRestriction.FULLDATE_FORMAT.parse(BandwidthRestriction.DEFAULT_DATE + time);
-			String day = BandwidthRestriction.FULLDAY_FORMAT.format(now.getTime()).toUpperCase();
-
-			BandwidthRestriction br = harvestCoordinatorDao.getBandwidthRestriction(day, date);
-			if (br == null)
-				return false;
-			return br.isAllowOptimize();
-		} catch (ParseException e) {
-			log.error("Failed to parse the date for the bandwith restriction : " + e.getMessage(), e);
-		}
-		return false;
+		BandwidthRestriction br = getTimeline().getRestriction(Calendar.getInstance());
+		if (br == null)
+			return false;
+		return br.isAllowOptimize();
 	}
 
 	@Override
@@ -217,6 +219,7 @@ public class HarvestBandwidthManagerImpl implements HarvestBandwidthManager {
 	public void saveOrUpdate(BandwidthRestriction bandwidthRestriction) {
 		boolean isNew = bandwidthRestriction.getOid() == null;
 		harvestCoordinatorDao.saveOrUpdate(bandwidthRestriction);
+		timeline = null;
 
 		if (isNew) {
 			auditor.audit(BandwidthRestriction.class.getName(), bandwidthRestriction.getOid(),
@@ -232,6 +235,7 @@ public class HarvestBandwidthManagerImpl implements HarvestBandwidthManager {
 		auditor.audit(BandwidthRestriction.class.getName(), null, Auditor.ACTION_DELETE_BANDWIDTH_RESTRICTION,
 				"Deleted bandwidth restriction: " + bandwidthRestriction.toString());
 		harvestCoordinatorDao.delete(bandwidthRestriction);
+		timeline = null;
 	}
 
 	@Override
@@ -54,6 +54,7 @@ import org.webcurator.domain.model.auth.Privilege;
 import org.webcurator.domain.model.core.*;
 import org.webcurator.domain.model.core.harvester.agent.HarvestAgentStatusDTO;
 import org.webcurator.domain.model.dto.QueuedTargetInstanceDTO;
+import org.webcurator.domain.model.dto.SeedPermissionEvaluation;
 
 /**
  * 
@@ -191,6 +192,7 @@ public class HarvestCoordinatorImpl implements HarvestCoordinator {
 
 		targetInstanceDao.save(arcHarvestResult);
 		targetInstanceDao.save(ti);
+		harvestBandwidthManager.harvestEnded(ti);
 		harvestBandwidthManager.sendBandWidthRestrictions();
 
 		// IF the associated target record for this TI has
@@ -360,24 +362,36 @@ public class HarvestCoordinatorImpl implements HarvestCoordinator {
 			throw new WCTRuntimeException("A null harvest agent status was provided to the harvest command.");
 		}
 
+		if (queuePaused) {
+			return;
+		}
+
+		// the seeds and permissions are evaluated once for the approval check
+		// and the preparation of the harvest
+		SeedPermissionEvaluation evaluation = targetManager.evaluateSeeds(aTargetInstance);
+
 		// if the target is not approved to be harvested then do not harvest
-		if (queuePaused || !isTargetApproved(aTargetInstance) || aHarvestAgent.getMemoryWarning()) {
+		if (!isTargetApproved(aTargetInstance, evaluation) || aHarvestAgent.getMemoryWarning()) {
 			return;
 		}
 
 		// Prepare the instance for harvesting by storing its current
 		// information.
-		prepareHarvest(aTargetInstance);
+		prepareHarvest(aTargetInstance, evaluation);
 
 		// Run the actual harvest.
-		_harvest(aTargetInstance, aHarvestAgent);
+		_harvest(aTargetInstance, aHarvestAgent, evaluation);
 	}
 
 	private void prepareHarvest(TargetInstance aTargetInstance) {
+		prepareHarvest(aTargetInstance, targetManager.evaluateSeeds(aTargetInstance));
+	}
+
+	private void prepareHarvest(TargetInstance aTargetInstance, SeedPermissionEvaluation evaluation) {
 		BusinessObjectFactory factory = new BusinessObjectFactory();
 		Set<String> originalSeeds = new HashSet<String>();
 		Set<SeedHistory> seedHistory = new HashSet<SeedHistory>();
-		for (Seed seed : targetManager.getSeeds(aTargetInstance)) {
+		for (Seed seed : evaluation.getSeeds()) {
 			originalSeeds.add(seed.getSeed());
 
 			if (targetInstanceManager.getStoreSeedHistory()) {
@@ -407,7 +421,7 @@ public class HarvestCoordinatorImpl implements HarvestCoordinator {
 			aTargetInstance.setSeedHistory(seedHistory);
 		}
 		// Generate some of the SIP.
-		Map<String, String> sipParts = sipBuilder.buildSipSections(aTargetInstance);
+		Map<String, String> sipParts = sipBuilder.buildSipSections(aTargetInstance, evaluation.getActivePermissions());
 		aTargetInstance.setSipParts(sipParts);
 
 		// Save the sip parts and seeds to the database.
@@ -421,8 +435,10 @@ public class HarvestCoordinatorImpl implements HarvestCoordinator {
 	 *            The instance to harvest.
 	 * @param aHarvestAgent
 	 *            The agent to harvest on.
+	 * @param evaluation
+	 *            The seeds and permissions evaluated for this harvest.
 	 */
-	private void _harvest(TargetInstance aTargetInstance, HarvestAgentStatusDTO aHarvestAgent) {
+	private void _harvest(TargetInstance aTargetInstance, HarvestAgentStatusDTO aHarvestAgent, SeedPermissionEvaluation evaluation) {
 		if (aTargetInstance == null) {
 			throw new WCTRuntimeException("A null target instance was provided to the harvest command.");
 		}
@@ -432,7 +448,7 @@ public class HarvestCoordinatorImpl implements HarvestCoordinator {
 		}
 
 		// if the target is not approved to be harvested then do not harvest
-		if (!isTargetApproved(aTargetInstance) || aHarvestAgent.getMemoryWarning()) {
+		if (!isTargetApproved(aTargetInstance, evaluation) || aHarvestAgent.getMemoryWarning()) {
 			return;
 		}
 
@@ -445,7 +461,7 @@ public class HarvestCoordinatorImpl implements HarvestCoordinator {
 		}
 
 		// Get the profile.
-		String profile = getHarvestProfileString(aTargetInstance);
+		String profile = getHarvestProfileString(aTargetInstance, evaluation.getSeeds().size());
 
 		// Update the state of the allocated Target Instance
 		long targetInstanceId=aTargetInstance.getOid();
@@ -463,6 +479,7 @@ public class HarvestCoordinatorImpl implements HarvestCoordinator {
 		log.info("HarvestCoordinator: Harvest initiated successfully for target instance " + aTargetInstance.getOid().toString());
 
 		// Run the bandwidth calculations.
+		harvestBandwidthManager.harvestStarted(aTargetInstance);
 		harvestBandwidthManager.sendBandWidthRestrictions();
 	}
 
@@ -477,6 +494,16 @@ public class HarvestCoordinatorImpl implements HarvestCoordinator {
 	 * @return
 	 */
 	private String getHarvestProfileString(TargetInstance aTargetInstance) {
+		return getHarvestProfileString(aTargetInstance, targetManager.getSeeds(aTargetInstance).size());
+	}
+
+	/**
+	 * Get the profile string with the overrides applied.
+	 *
+	 * @param seedCount the number of seeds to harvest, used to size the Heritrix 1 toe threads
+	 * @return
+	 */
+	private String getHarvestProfileString(TargetInstance aTargetInstance, int seedCount) {
 
 		Profile profile = aTargetInstance.getTarget().getProfile();
 		ProfileOverrides overrides = aTargetInstance.getProfileOverrides();
@@ -494,7 +521,7 @@ public class HarvestCoordinatorImpl implements HarvestCoordinator {
 				overrides.apply(heritrixProfile);
 			}
 
-			heritrixProfile.setToeThreads(targetManager.getSeeds(aTargetInstance).size() * 2);
+			heritrixProfile.setToeThreads(seedCount * 2);
 			return heritrixProfile.toString();
 		}
 		if (profile.getHarvesterType().equals(HarvesterType.HERITRIX3.name())) {
@@ -626,6 +653,7 @@ public class HarvestCoordinatorImpl implements HarvestCoordinator {
 		harvestAgentManager.resume(aTargetInstance);
 		// When profile overrides need updating we should also reset the
 		// bandwidth restrictions
+		harvestBandwidthManager.harvestStarted(aTargetInstance);
 		harvestBandwidthManager.sendBandWidthRestrictions();
 	}
 
@@ -637,6 +665,7 @@ public class HarvestCoordinatorImpl implements HarvestCoordinator {
 			throw new WCTRuntimeException("A null target instance was provided to the harvest command.");
 		}
 		harvestAgentManager.abort(aTargetInstance);
+		harvestBandwidthManager.harvestEnded(aTargetInstance);
 		harvestBandwidthManager.sendBandWidthRestrictions();
 	}
 
@@ -695,15 +724,16 @@ public class HarvestCoordinatorImpl implements HarvestCoordinator {
 	}
 
 	private void queueScheduledInstances() {
-		List<QueuedTargetInstanceDTO> theQueue = targetInstanceDao.getQueue();
+		// Take the queue and the bandwidth state of the running harvests once,
+		// then only load the target instances that are scheduled (and so must
+		// be approved) or that are allocated to a harvest agent.
+		HarvestQueuePlan plan = harvestBandwidthManager.planQueue(targetInstanceDao.getQueue());
+		List<QueuedTargetInstanceDTO> theQueue = plan.getQueue();
 		log.info("Start: Processing " + theQueue.size() + " entries from the queue.");
 
-		QueuedTargetInstanceDTO ti = null;
-		Iterator<QueuedTargetInstanceDTO> it = theQueue.iterator();
-		while (it.hasNext()) {
-			ti = it.next();
+		for (QueuedTargetInstanceDTO ti : theQueue) {
 			log.info("Processing queue entry: " + ti.toString());
-			harvestOrQueue(ti);
+			harvestOrQueue(ti, plan);
 		}
 		log.info("Finished: Processing {} entries from the queue.", theQueue.size());
 	}
@@ -730,28 +760,25 @@ public class HarvestCoordinatorImpl implements HarvestCoordinator {
 	}
 
 	private boolean loadAndStartOptimizable(QueuedTargetInstanceDTO qti) {
+		// Check for available harvesters before loading the target instance,
+		// as most upcoming jobs can not be optimized when the harvesters are busy.
+		List<HarvestAgentStatusDTO> harvesters = harvestAgentManager.getAvailableHarvesters(qti.getAgencyName());
+		if (harvesters.size() <= numHarvestersExcludedFromOptimisation) {
+			log.trace("No available harvesters to optimize target instance id {}", qti.getOid());
+			return false;
+		}
 		TargetInstance targetInstance = loadTargetInstance(qti.getOid());
 		AbstractTarget abstractTarget = targetInstance.getTarget();
 		if (abstractTarget.getObjectType() == AbstractTarget.TYPE_TARGET) {
 			Target target = targetManager.load(abstractTarget.getOid());
 			if (target.isAllowOptimize()) {
-				boolean harvesterWasAvailableForOptimize = startOptimisableInstance(targetInstance, qti.getAgencyName());
+				boolean harvesterWasAvailableForOptimize = startOptimizedHarvest(targetInstance, harvesters);
 				return harvesterWasAvailableForOptimize;
 			}
 		}
 		return false;
 	}
 
-	private boolean startOptimisableInstance(TargetInstance targetInstance, String agencyName) {
-		List<HarvestAgentStatusDTO> harvesters = harvestAgentManager.getAvailableHarvesters(agencyName);
-		if (harvesters.size() > numHarvestersExcludedFromOptimisation) {
-			return startOptimizedHarvest(targetInstance, harvesters);
-		} else {
-			log.trace("No available harvesters to optimize target instance id {}", targetInstance.getOid());
-			return false;
-		}
-	}
-
 	private boolean startOptimizedHarvest(TargetInstance targetInstance, List<HarvestAgentStatusDTO> harvesters) {
 		for (HarvestAgentStatusDTO agent : harvesters) {
 			log.trace("Harvester {} can optimize scheduled of target instance id {}", agent.getName(),
@@ -772,6 +799,21 @@ public class HarvestCoordinatorImpl implements HarvestCoordinator {
 	 *            the target instance to harvest
 	 */
 	public void harvestOrQueue(QueuedTargetInstanceDTO aTargetInstance) {
+		harvestOrQueue(aTargetInstance, null);
+	}
+
+	/**
+	 * Run the checks to see if the target instance can be harvested or if it
+	 * must be queued. If harvest is possible and there is a harvester available
+	 * then allocate it.
+	 *
+	 * @param aTargetInstance
+	 *            the target instance to harvest
+	 * @param aPlan
+	 *            the plan to check the bandwidth against, or null to check
+	 *            against the current state of the running harvests
+	 */
+	private void harvestOrQueue(QueuedTargetInstanceDTO aTargetInstance, HarvestQueuePlan aPlan) {
 		TargetInstance ti = null;
 		boolean approved = true;
 
@@ -787,37 +829,48 @@ public class HarvestCoordinatorImpl implements HarvestCoordinator {
 		}
 
 		if (approved) {
-			queueApprovedHarvest(aTargetInstance, ti, tiOid);
+			queueApprovedHarvest(aTargetInstance, ti, tiOid, aPlan);
 		}
 		// release the lock
 		harvestAgentManager.unLock(tiOid);
 		log.info("Released lock for ti " + tiOid);
 	}
 
-	private void queueApprovedHarvest(QueuedTargetInstanceDTO queuedTargetInstance, TargetInstance ti, Long tiOid) {
+	private void queueApprovedHarvest(QueuedTargetInstanceDTO queuedTargetInstance, TargetInstance ti, Long tiOid,
+			HarvestQueuePlan plan) {
 		boolean processed = false;
 		while (!processed) {
-			if (ti == null) {
-				ti = loadTargetInstance(tiOid);
+			String harvesterType = queuedTargetInstance.getHarvesterType();
+			if (harvesterType == null) {
+				if (ti == null) {
+					ti = loadTargetInstance(tiOid);
+				}
+				harvesterType = ti.getProfile().getHarvesterType();
 			}
 			// Check to see what harvester resource is available
 			HarvestAgentStatusDTO agent = harvestAgentManager.getHarvester(
 										queuedTargetInstance.getAgencyName(),
-										ti.getProfile().getHarvesterType());
+										harvesterType);
 
 			if (agent == null) {
 				log.warn(String.format("No available harvest agent of type %s found for agency %s",
-														ti.getProfile().getHarvesterType(),
+														harvesterType,
 														queuedTargetInstance.getAgencyName()
 										));
 			}
 
-			if (harvestAgentCanHarvest(agent, queuedTargetInstance)) {
+			if (harvestAgentCanHarvest(agent, queuedTargetInstance, plan)) {
+				if (ti == null) {
+					ti = loadTargetInstance(tiOid);
+				}
 				synchronized (agent) {
 					// allocate the target instance to the agent
 					log.info("Allocating TI " + tiOid + " to agent " + agent.getName());
 					processed = harvestTargetInstance(agent, ti);
 				}
+				if (processed && plan != null) {
+					plan.allocated(queuedTargetInstance);
+				}
 			} else {
 				processed = true;
 				log.info("Re-queueing TI " + tiOid);
@@ -849,10 +902,11 @@ public class HarvestCoordinatorImpl implements HarvestCoordinator {
 	private boolean harvestTargetInstance(HarvestAgentStatusDTO agent, TargetInstance ti) {
 		boolean processed = false;
 		try {
+			SeedPermissionEvaluation evaluation = targetManager.evaluateSeeds(ti);
 			if (!TargetInstance.STATE_QUEUED.equals(ti.getState())) {
-				prepareHarvest(ti);
+				prepareHarvest(ti, evaluation);
 			}
-			_harvest(ti, agent);
+			_harvest(ti, agent, evaluation);
 			agent.setInTransition(true);
 			processed = true;
 		} catch (Throwable e) {
@@ -862,9 +916,15 @@ public class HarvestCoordinatorImpl implements HarvestCoordinator {
 		return processed;
 	}
 
-	private boolean harvestAgentCanHarvest(HarvestAgentStatusDTO agent, QueuedTargetInstanceDTO aTargetInstance) {
-		return !queuePaused && agent != null && agent.isAcceptTasks()
-				&& harvestBandwidthManager.isMiniumBandwidthAvailable(aTargetInstance);
+	private boolean harvestAgentCanHarvest(HarvestAgentStatusDTO agent, QueuedTargetInstanceDTO aTargetInstance,
+			HarvestQueuePlan plan) {
+		if (queuePaused || agent == null || !agent.isAcceptTasks()) {
+			return false;
+		}
+		if (plan != null) {
+			return plan.isMinimumBandwidthAvailable(aTargetInstance);
+		}
+		return harvestBandwidthManager.isMiniumBandwidthAvailable(aTargetInstance);
 	}
 
 	/**
@@ -876,9 +936,23 @@ public class HarvestCoordinatorImpl implements HarvestCoordinator {
 	 * @return flag to indicat approval
 	 */
 	private boolean isTargetApproved(TargetInstance aTargetInstance) {
+		return isTargetApproved(aTargetInstance, targetManager.evaluateSeeds(aTargetInstance));
+	}
+
+	/**
+	 * Check that the target that the instance belongs to is approved and if not
+	 * don't harvest.
+	 *
+	 * @param aTargetInstance
+	 *            the target instance whos target should be checked.
+	 * @param evaluation
+	 *            the seeds and permissions evaluated for the target instance.
+	 * @return flag to indicat approval
+	 */
+	private boolean isTargetApproved(TargetInstance aTargetInstance, SeedPermissionEvaluation evaluation) {
 		// Check permissions if none defer the target instance and send and
 		// notification
-		if (!targetManager.isTargetHarvestable(aTargetInstance)) {
+		if (!evaluation.isHarvestable()) {
 			// Defer the schedule 24 hours and notifiy the owner.
 			Calendar cal = Calendar.getInstance();
 			cal.setTime(aTargetInstance.getScheduledTime());
@@ -1108,7 +1182,7 @@ public class HarvestCoordinatorImpl implements HarvestCoordinator {
 		for (HarvestResourceDTO dto : dtos) {
 			resources.add(new ArcHarvestResource((ArcHarvestResourceDTO) dto, (ArcHarvestResult) ahr));
 		}
-		targetInstanceDao.saveAll(resources);
+		targetInstanceDao.insertAll(resources);
 	}
 
 	public Long createHarvestResult(HarvestResultDTO harvestResultDTO) {
@@ -0,0 +1,75 @@
+/*
+ *  Copyright 2006 The National Library of New Zealand
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.webcurator.core.harvester.coordinator;
+
+import org.webcurator.domain.model.core.harvester.agent.HarvestAgentStatusDTO;
+import org.webcurator.domain.model.core.harvester.agent.HarvesterStatusDTO;
+
+/**
+ * The values sampled from each heartbeat by HarvestMetrics. Values that a
+ * harvest agent or job does not report are recorded as zero.
+ */
+public enum HarvestMetric {
+	/** the current download rate in KB per second. */
+	CURRENT_KBS,
+	/** the current download rate in URIs per second. */
+	CURRENT_URIS,
+	/** the number of URLs downloaded. */
+	URLS_DOWNLOADED,
+	/** the number of URLs queued. */
+	URLS_QUEUED,
+	/** the number of URLs that failed. */
+	URLS_FAILED,
+	/** the number of bytes downloaded. */
+	DATA_DOWNLOADED,
+	/** the number of alerts raised. */
+	ALERTS,
+	/** the memory used by the harvest agent. */
+	MEMORY_USED;
+
+	/**
+	 * Sample the metrics of a harvest agent.
+	 * @param aStatus the agent status
+	 * @return the values indexed by metric ordinal
+	 */
+	static double[] sample(HarvestAgentStatusDTO aStatus) {
+		double[] values = new double[values().length];
+		values[CURRENT_KBS.ordinal()] = aStatus.getCurrentKBs();
+		values[CURRENT_URIS.ordinal()] = aStatus.getCurrentURIs();
+		values[URLS_DOWNLOADED.ordinal()] = aStatus.getUrlsDownloaded();
+		values[URLS_QUEUED.ordinal()] = aStatus.getUrlsQueued();
+		values[DATA_DOWNLOADED.ordinal()] = aStatus.getDataDownloaded();
+		values[MEMORY_USED.ordinal()] = aStatus.getMemoryUsed();
+		return values;
+	}
+
+	/**
+	 * Sample the metrics of a harvest job.
+	 * @param aStatus the job status
+	 * @return the values indexed by metric ordinal
+	 */
+	static double[] sample(HarvesterStatusDTO aStatus) {
+		double[] values = new double[values().length];
+		values[CURRENT_KBS.ordinal()] = aStatus.getCurrentKBs();
+		values[CURRENT_URIS.ordinal()] = aStatus.getCurrentURIs();
+		values[URLS_DOWNLOADED.ordinal()] = aStatus.getUrlsDownloaded();
+		values[URLS_QUEUED.ordinal()] = aStatus.getUrlsQueued();
+		values[URLS_FAILED.ordinal()] = aStatus.getUrlsFailed();
+		values[DATA_DOWNLOADED.ordinal()] = aStatus.getDataDownloaded();
+		values[ALERTS.ordinal()] = aStatus.getAlertCount();
+		return values;
+	}
+}
@@ -0,0 +1,261 @@
+/*
+ *  Copyright 2006 The National Library of New Zealand
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.webcurator.core.harvester.coordinator;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.webcurator.domain.model.core.harvester.agent.HarvestAgentStatusDTO;
+import org.webcurator.domain.model.core.harvester.agent.HarvesterStatusDTO;
+
+/**
+ * A time series of the metrics reported in the heartbeats of each harvest
+ * agent and each of their jobs, so that trends such as the download rate or
+ * a stalled crawl can be seen without an external monitoring system.
+ *
+ * Each agent and job has a MetricSeries of fixed size, and at most
+ * maxSeries agents and maxSeries jobs are tracked; when the limit is
+ * reached the series that was updated least recently is dropped. The series
+ * of a job is also dropped once its agent stops reporting it. The memory
+ * used is therefore bounded by roughly
+ * 2 * maxSeries * (rawCapacity + rollupCapacity) * 72 bytes.
+ *
+ * The queries are made over a window ending at the latest sample of the
+ * series, and return NaN or false when there are not enough samples.
+ */
+public class HarvestMetrics {
+	/** the minimum time in milliseconds between raw samples. */
+	private long rawInterval = 10000;
+	/** the number of raw samples kept for each series. */
+	private int rawCapacity = 90;
+	/** the time in milliseconds covered by each rollup. */
+	private long rollupInterval = 300000;
+	/** the number of rollups kept for each series. */
+	private int rollupCapacity = 144;
+	/** the maximum number of agents and of jobs tracked. */
+	private int maxSeries = 500;
+
+	private final Map<String, MetricSeries> agents = new SeriesMap();
+	private final Map<String, MetricSeries> jobs = new SeriesMap();
+
+	/**
+	 * Record the metrics of a heartbeat from a harvest agent.
+	 * @param aStatus the status of the agent
+	 * @param aPreviousStatus the previous status of the agent, or null if
+	 *            it was not registered
+	 */
+	public synchronized void record(HarvestAgentStatusDTO aStatus, HarvestAgentStatusDTO aPreviousStatus) {
+		long time = aStatus.getLastUpdated() == null ? System.currentTimeMillis() : aStatus.getLastUpdated().getTime();
+		series(agents, aStatus.getName()).add(time, HarvestMetric.sample(aStatus));
+
+		Set<String> reported = new HashSet<String>();
+		if (aStatus.getHarvesterStatus() != null) {
+			for (HarvesterStatusDTO jobStatus : aStatus.getHarvesterStatus().values()) {
+				series(jobs, jobStatus.getJobName()).add(time, HarvestMetric.sample(jobStatus));
+				reported.add(jobStatus.getJobName());
+			}
+		}
+
+		if (aPreviousStatus != null && aPreviousStatus.getHarvesterStatus() != null) {
+			for (HarvesterStatusDTO jobStatus : aPreviousStatus.getHarvesterStatus().values()) {
+				if (!reported.contains(jobStatus.getJobName())) {
+					jobs.remove(jobStatus.getJobName());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stop tracking a harvest agent.
+	 * @param anAgentName the name of the agent
+	 */
+	public synchronized void removeAgent(String anAgentName) {
+		agents.remove(anAgentName);
+	}
+
+	/**
+	 * Get the rate at which a metric of a job changed over the window.
+	 * @param aJobName the name of the job
+	 * @param aMetric the metric
+	 * @param aWindow the window in milliseconds
+	 * @return the change per second
+	 */
+	public synchronized double getJobRate(String aJobName, HarvestMetric aMetric, long aWindow) {
+		return rate(jobs.get(aJobName), aMetric, aWindow);
+	}
+
+	/**
+	 * Get the rate at which a metric of an agent changed over the window.
+	 * @param anAgentName the name of the agent
+	 * @param aMetric the metric
+	 * @param aWindow the window in milliseconds
+	 * @return the change per second
+	 */
+	public synchronized double getAgentRate(String anAgentName, HarvestMetric aMetric, long aWindow) {
+		return rate(agents.get(anAgentName), aMetric, aWindow);
+	}
+
+	/**
+	 * Get the percentile of a metric of a job over the window, such as the
+	 * 95th percentile of the current download rate.
+	 * @param aJobName the name of the job
+	 * @param aMetric the metric
+	 * @param aPercentile the percentile, from 0 to 100
+	 * @param aWindow the window in milliseconds
+	 * @return the value at the percentile
+	 */
+	public synchronized double getJobPercentile(String aJobName, HarvestMetric aMetric, double aPercentile, long aWindow) {
+		return percentile(jobs.get(aJobName), aMetric, aPercentile, aWindow);
+	}
+
+	/**
+	 * Get the percentile of a metric of an agent over the window.
+	 * @param anAgentName the name of the agent
+	 * @param aMetric the metric
+	 * @param aPercentile the percentile, from 0 to 100
+	 * @param aWindow the window in milliseconds
+	 * @return the value at the percentile
+	 */
+	public synchronized double getAgentPercentile(String anAgentName, HarvestMetric aMetric, double aPercentile, long aWindow) {
+		return percentile(agents.get(anAgentName), aMetric, aPercentile, aWindow);
+	}
+
+	/**
+	 * A job is stalled if it has been tracked for at least the window and
+	 * neither the URLs nor the data downloaded have changed over it.
+	 * @param aJobName the name of the job
+	 * @param aWindow the window in milliseconds
+	 * @return true if the job is stalled
+	 */
+	public synchronized boolean isJobStalled(String aJobName, long aWindow) {
+		MetricSeries series = jobs.get(aJobName);
+		if (series == null) {
+			return false;
+		}
+		long from = series.latest() - aWindow;
+		return unchanged(series.collect(from, HarvestMetric.URLS_DOWNLOADED), from)
+				&& unchanged(series.collect(from, HarvestMetric.DATA_DOWNLOADED), from);
+	}
+
+	private boolean unchanged(MetricSeries.Samples samples, long aFrom) {
+		if (samples.size < 2 || samples.times[0] > aFrom) {
+			return false;
+		}
+		for (int i = 1; i < samples.size; i++) {
+			if (samples.values[i] != samples.values[0]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private double rate(MetricSeries aSeries, HarvestMetric aMetric, long aWindow) {
+		if (aSeries == null) {
+			return Double.NaN;
+		}
+		MetricSeries.Samples samples = aSeries.collect(aSeries.latest() - aWindow, aMetric);
+		if (samples.size < 2) {
+			return Double.NaN;
+		}
+		int last = samples.size - 1;
+		long elapsed = samples.times[last] - samples.times[0];
+		if (elapsed <= 0) {
+			return Double.NaN;
+		}
+		return (samples.values[last] - samples.values[0]) * 1000 / elapsed;
+	}
+
+	private double percentile(MetricSeries aSeries, HarvestMetric aMetric, double aPercentile, long aWindow) {
+		if (aSeries == null) {
+			return Double.NaN;
+		}
+		long from = aSeries.latest() - aWindow;
+		MetricSeries.Samples samples = aSeries.collect(from, aMetric);
+		// The sample before the window is only needed for rates
+		int first = samples.size > 0 && samples.times[0] < from ? 1 : 0;
+		if (samples.size <= first) {
+			return Double.NaN;
+		}
+		double[] values = Arrays.copyOfRange(samples.values, first, samples.size);
+		Arrays.sort(values);
+		int rank = (int) Math.ceil(aPercentile / 100 * values.length);
+		return values[Math.max(0, Math.min(values.length, rank) - 1)];
+	}
+
+	private MetricSeries series(Map<String, MetricSeries> aSeriesMap, String aName) {
+		MetricSeries series = aSeriesMap.get(aName);
+		if (series == null) {
+			series = new MetricSeries(rawCapacity, rawInterval, rollupCapacity, rollupInterval);
+			aSeriesMap.put(aName, series);
+		}
+		return series;
+	}
+
+	/**
+	 * The series keyed by name in order of use, dropping the least recently
+	 * used series when there are more than maxSeries.
+	 */
+	@SuppressWarnings("serial")
+	private class SeriesMap extends LinkedHashMap<String, MetricSeries> {
+		SeriesMap() {
+			super(16, 0.75f, true);
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, MetricSeries> eldest) {
+			return size() > maxSeries;
+		}
+	}
+
+	/**
+	 * @param rawInterval the minimum time in milliseconds between raw samples
+	 */
+	public void setRawInterval(long rawInterval) {
+		this.rawInterval = rawInterval;
+	}
+
+	/**
+	 * @param rawCapacity the number of raw samples kept for each series; the
+	 *            raw samples should cover at least one rollup interval
+	 */
+	public void setRawCapacity(int rawCapacity) {
+		this.rawCapacity = rawCapacity;
+	}
+
+	/**
+	 * @param rollupInterval the time in milliseconds covered by each rollup
+	 */
+	public void setRollupInterval(long rollupInterval) {
+		this.rollupInterval = rollupInterval;
+	}
+
+	/**
+	 * @param rollupCapacity the number of rollups kept for each series
+	 */
+	public void setRollupCapacity(int rollupCapacity) {
+		this.rollupCapacity = rollupCapacity;
+	}
+
+	/**
+	 * @param maxSeries the maximum number of agents and of jobs tracked
+	 */
+	public void setMaxSeries(int maxSeries) {
+		this.maxSeries = maxSeries;
+	}
+}
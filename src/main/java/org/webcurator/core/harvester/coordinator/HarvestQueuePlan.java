@@ -0,0 +1,163 @@
+/*
+ *  Copyright 2006 The National Library of New Zealand
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.webcurator.core.harvester.coordinator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.webcurator.domain.model.core.TargetInstance;
+import org.webcurator.domain.model.dto.QueuedTargetInstanceDTO;
+
+/**
+ * A snapshot of the harvest queue and the bandwidth state of the running
+ * target instances, taken once per run of the scheduler. The bandwidth
+ * checks for each queue entry are made against the snapshot rather than by
+ * reloading the target instance and the running target instances, and the
+ * snapshot is updated as target instances are allocated to harvest agents.
+ *
+ * A plan is used by a single thread for a single run of the scheduler.
+ */
+public class HarvestQueuePlan {
+	/** the target instances due to be harvested. */
+	private final List<QueuedTargetInstanceDTO> queue;
+	/** the running target instances, keyed by oid, holding only the bandwidth settings. */
+	private final Map<Long, TargetInstance> running = new LinkedHashMap<Long, TargetInstance>();
+	/** the global max bandwidth at the time the plan was made. */
+	private final long maxBandwidth;
+	/** the minimum bandwidth that must be available to each harvest. */
+	private final long minimumBandwidth;
+	/** the max bandwidth percentage to be allocated to target instances with a percentage override. */
+	private final int maxBandwidthPercent;
+	/** the calculator used to allocate the bandwidth. */
+	private final BandwidthCalculator bandwidthCalculator;
+
+	/**
+	 * Create the plan.
+	 * @param aQueue the target instances due to be harvested
+	 * @param aRunningTargetInstances the running and paused target instances
+	 * @param aMaxBandwidth the global max bandwidth
+	 * @param aMinimumBandwidth the minimum bandwidth for each harvest
+	 * @param aMaxBandwidthPercent the max bandwidth percentage
+	 * @param aBandwidthCalculator the bandwidth calculator
+	 */
+	public HarvestQueuePlan(List<QueuedTargetInstanceDTO> aQueue, Collection<TargetInstance> aRunningTargetInstances,
+			long aMaxBandwidth, long aMinimumBandwidth, int aMaxBandwidthPercent, BandwidthCalculator aBandwidthCalculator) {
+		queue = aQueue;
+		maxBandwidth = aMaxBandwidth;
+		minimumBandwidth = aMinimumBandwidth;
+		maxBandwidthPercent = aMaxBandwidthPercent;
+		bandwidthCalculator = aBandwidthCalculator;
+		for (TargetInstance ti : aRunningTargetInstances) {
+			running.put(ti.getOid(), bandwidthSettings(ti.getOid(), ti.getBandwidthPercent()));
+		}
+	}
+
+	/**
+	 * @return the target instances due to be harvested.
+	 */
+	public List<QueuedTargetInstanceDTO> getQueue() {
+		return queue;
+	}
+
+	/**
+	 * @return the global max bandwidth at the time the plan was made.
+	 */
+	public long getMaxBandwidth() {
+		return maxBandwidth;
+	}
+
+	/**
+	 * @return the number of running target instances, including those allocated by this plan.
+	 */
+	public int getRunningCount() {
+		return running.size();
+	}
+
+	/**
+	 * Check to see that at least the minimum amount of bandwidth can be
+	 * allocated to all the running target instances assuming that this target
+	 * instance is allocated to a harvest agent.
+	 * @param aTargetInstance the target instance that may be allocated
+	 * @return true if the minimum bandwidth will be available.
+	 */
+	public boolean isMinimumBandwidthAvailable(QueuedTargetInstanceDTO aTargetInstance) {
+		return isMinimumBandwidthAvailable(aTargetInstance.getOid(), aTargetInstance.getBandwidthPercent());
+	}
+
+	/**
+	 * Check to see that at least the minimum amount of bandwidth can be
+	 * allocated to all the running target instances assuming that this target
+	 * instance is allocated to a harvest agent.
+	 * @param anOid the oid of the target instance that may be allocated
+	 * @param aBandwidthPercent the bandwidth percentage of the target instance
+	 * @return true if the minimum bandwidth will be available.
+	 */
+	boolean isMinimumBandwidthAvailable(Long anOid, Integer aBandwidthPercent) {
+		if (maxBandwidth < minimumBandwidth) {
+			return false;
+		}
+
+		List<TargetInstance> candidates = new ArrayList<TargetInstance>(running.values());
+		TargetInstance candidate = running.get(anOid);
+		if (candidate == null) {
+			candidate = bandwidthSettings(anOid, aBandwidthPercent);
+			candidates.add(candidate);
+		}
+
+		HashMap<Long, TargetInstance> allocation = bandwidthCalculator.calculateBandwidthAllocation(candidates,
+				maxBandwidth, maxBandwidthPercent);
+
+		if (candidate.getBandwidthPercent() == null) {
+			return hasMinimumBandwidth(candidate);
+		}
+		for (TargetInstance ti : allocation.values()) {
+			if (ti.getBandwidthPercent() == null && !hasMinimumBandwidth(ti)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean hasMinimumBandwidth(TargetInstance aTargetInstance) {
+		Long allocated = aTargetInstance.getAllocatedBandwidth();
+		return allocated != null && allocated >= minimumBandwidth;
+	}
+
+	/**
+	 * Record that the target instance has been allocated to a harvest agent,
+	 * so that it shares the bandwidth with the remaining queue entries.
+	 * @param aTargetInstance the allocated target instance
+	 */
+	public void allocated(QueuedTargetInstanceDTO aTargetInstance) {
+		running.put(aTargetInstance.getOid(),
+				bandwidthSettings(aTargetInstance.getOid(), aTargetInstance.getBandwidthPercent()));
+	}
+
+	/**
+	 * Create a detached target instance holding only the settings used to
+	 * allocate bandwidth.
+	 */
+	private static TargetInstance bandwidthSettings(Long oid, Integer bandwidthPercent) {
+		TargetInstance ti = new TargetInstance();
+		ti.setOid(oid);
+		ti.setBandwidthPercent(bandwidthPercent);
+		return ti;
+	}
+}
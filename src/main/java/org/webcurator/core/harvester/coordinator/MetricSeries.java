@@ -0,0 +1,203 @@
+/*
+ *  Copyright 2006 The National Library of New Zealand
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.webcurator.core.harvester.coordinator;
+
+import java.util.Arrays;
+
+/**
+ * The recent samples of the metrics of one harvest agent or job, held in two
+ * fixed size ring buffers: the raw samples, at most one per raw interval,
+ * and the rollups, each holding the mean of the raw samples in one rollup
+ * interval. When a buffer is full the oldest sample is overwritten, so the
+ * memory used by a series never changes once it has been created.
+ *
+ * A series is not thread safe; HarvestMetrics synchronises access to it.
+ */
+class MetricSeries {
+	private final Ring raw;
+	private final Ring rollups;
+	private final long rawInterval;
+	private final long rollupInterval;
+
+	/** the rollup interval being accumulated, or -1 if none. */
+	private long bucket = -1;
+	private int bucketCount;
+	private long bucketTimes;
+	private final double[] bucketSums;
+	/** the end of the last rollup interval written to the rollups. */
+	private long rolledUpTo = Long.MIN_VALUE;
+
+	MetricSeries(int aRawCapacity, long aRawInterval, int aRollupCapacity, long aRollupInterval) {
+		int metrics = HarvestMetric.values().length;
+		raw = new Ring(aRawCapacity, metrics);
+		rollups = new Ring(aRollupCapacity, metrics);
+		rawInterval = aRawInterval;
+		rollupInterval = aRollupInterval;
+		bucketSums = new double[metrics];
+	}
+
+	/**
+	 * Add a sample. A sample taken in the same raw interval as the latest
+	 * sample replaces it in the raw buffer.
+	 * @param aTime the time of the sample
+	 * @param aValues the values indexed by metric ordinal
+	 */
+	void add(long aTime, double[] aValues) {
+		if (raw.size > 0 && aTime < raw.time(raw.size - 1)) {
+			// Ignore samples that arrive out of order
+			return;
+		}
+
+		long sampleBucket = aTime / rollupInterval;
+		if (sampleBucket != bucket) {
+			if (bucketCount > 0) {
+				double[] means = new double[bucketSums.length];
+				for (int i = 0; i < means.length; i++) {
+					means[i] = bucketSums[i] / bucketCount;
+				}
+				rollups.add(bucketTimes / bucketCount, means);
+				rolledUpTo = (bucket + 1) * rollupInterval;
+			}
+			bucket = sampleBucket;
+			bucketCount = 0;
+			bucketTimes = 0;
+			Arrays.fill(bucketSums, 0);
+		}
+		bucketCount++;
+		bucketTimes += aTime;
+		for (int i = 0; i < aValues.length; i++) {
+			bucketSums[i] += aValues[i];
+		}
+
+		if (raw.size > 0 && aTime / rawInterval == raw.time(raw.size - 1) / rawInterval) {
+			raw.replaceLast(aTime, aValues);
+		} else {
+			raw.add(aTime, aValues);
+		}
+	}
+
+	/**
+	 * @return the time of the latest sample, or -1 if there are none.
+	 */
+	long latest() {
+		return raw.size == 0 ? -1 : raw.time(raw.size - 1);
+	}
+
+	/**
+	 * Collect the samples of a metric taken from the specified time to the
+	 * latest sample, preceded by the last sample taken before that time if
+	 * there is one. The raw samples are used where they reach back far
+	 * enough, otherwise the rollups make up the older part of the window.
+	 * @param aFrom the start of the window
+	 * @param aMetric the metric
+	 * @return the times and values of the samples
+	 */
+	Samples collect(long aFrom, HarvestMetric aMetric) {
+		Samples samples = new Samples(raw.size + rollups.size);
+		int m = aMetric.ordinal();
+		boolean useRollups = raw.size > 0 && raw.time(0) > aFrom;
+		if (useRollups) {
+			int first = 0;
+			while (first < rollups.size - 1 && rollups.time(first + 1) <= aFrom) {
+				first++;
+			}
+			for (int i = first; i < rollups.size; i++) {
+				samples.add(rollups.time(i), rollups.value(m, i));
+			}
+		}
+		int first = 0;
+		while (first < raw.size - 1 && raw.time(first + 1) <= aFrom) {
+			first++;
+		}
+		for (int i = first; i < raw.size; i++) {
+			// The older raw samples are already included in the rollups
+			if (!useRollups || raw.time(i) >= rolledUpTo) {
+				samples.add(raw.time(i), raw.value(m, i));
+			}
+		}
+		return samples;
+	}
+
+	/**
+	 * The times and values of the samples of one metric, oldest first.
+	 */
+	static class Samples {
+		final long[] times;
+		final double[] values;
+		int size;
+
+		Samples(int aCapacity) {
+			times = new long[aCapacity];
+			values = new double[aCapacity];
+		}
+
+		private void add(long aTime, double aValue) {
+			times[size] = aTime;
+			values[size] = aValue;
+			size++;
+		}
+	}
+
+	/**
+	 * A ring buffer of samples. The values are held by metric so that a
+	 * sample is a column across the arrays.
+	 */
+	private static class Ring {
+		private final long[] times;
+		private final double[][] values;
+		/** the index of the oldest sample. */
+		private int head;
+		private int size;
+
+		Ring(int aCapacity, int aMetrics) {
+			times = new long[aCapacity];
+			values = new double[aMetrics][aCapacity];
+		}
+
+		void add(long aTime, double[] aValues) {
+			int index;
+			if (size < times.length) {
+				index = (head + size) % times.length;
+				size++;
+			} else {
+				index = head;
+				head = (head + 1) % times.length;
+			}
+			set(index, aTime, aValues);
+		}
+
+		void replaceLast(long aTime, double[] aValues) {
+			set((head + size - 1) % times.length, aTime, aValues);
+		}
+
+		private void set(int anIndex, long aTime, double[] aValues) {
+			times[anIndex] = aTime;
+			for (int i = 0; i < aValues.length; i++) {
+				values[i][anIndex] = aValues[i];
+			}
+		}
+
+		/** @return the time of the i'th oldest sample. */
+		long time(int i) {
+			return times[(head + i) % times.length];
+		}
+
+		/** @return the value of the metric in the i'th oldest sample. */
+		double value(int aMetric, int i) {
+			return values[aMetric][(head + i) % times.length];
+		}
+	}
+}
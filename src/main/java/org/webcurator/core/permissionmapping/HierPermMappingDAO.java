@@ -62,6 +62,13 @@ public interface HierPermMappingDAO {
 	 */
 	public List<MappingView> getMappingsView(String domain);
 	
+	/**
+	 * Get all the 'mappings via a database view', across all domains. Used to
+	 * build the in-memory index of the HierarchicalPermissionMappingStrategy.
+	 * @return A List of all MappingView entities.
+	 */
+	public List<MappingView> getAllMappingsView();
+	
 	/**
 	 * Delete a mapping.
 	 * @param aMapping The mapping to delete.
@@ -196,6 +196,16 @@ public class HierPermMappingDAOImpl extends HibernateDaoSupport implements HierP
                         .list());
     }
 
+    /* (non-Javadoc)
+     * @see org.webcurator.core.permissionmapping.HierPermMappingDAO#getAllMappingsView()
+     */
+    @SuppressWarnings("unchecked")
+    public List<MappingView> getAllMappingsView() {
+        return getHibernateTemplate().execute(session ->
+                session.createQuery("from MappingView")
+                        .list());
+    }
+
     /* (non-Javadoc)
      * @see org.webcurator.core.permissionmapping.HierPermMappingDAO#updateMappings(org.webcurator.domain.model.core.Site, java.util.Set)
      */
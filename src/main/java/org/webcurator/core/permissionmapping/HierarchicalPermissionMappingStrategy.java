@@ -15,13 +15,16 @@
  */
 package org.webcurator.core.permissionmapping;
 
+import java.util.Date;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.webcurator.core.permissionmapping.PermissionMappingIndex.IndexedMapping;
 import org.webcurator.domain.PermissionDAO;
-import org.webcurator.domain.PermissionDAOImpl;
 import org.webcurator.domain.model.core.Permission;
 import org.webcurator.domain.model.core.Seed;
 import org.webcurator.domain.model.core.Site;
@@ -48,6 +51,11 @@ import org.webcurator.domain.model.permissionmapping.MappingView;
  * If the expression matches are successful, then we have found a URL Pattern/
  * Permission mapping that is appropriate for a seed.
  * 
+ * The mappings are loaded once into a PermissionMappingIndex and searched in
+ * memory. The index is kept up to date as mappings are added and removed 
+ * through this strategy (for example, by the PermMappingSiteListener when a
+ * site is saved or deleted), so matching a seed needs no database queries.
+ * 
  * @author bbeaumont
  *
  */
@@ -57,6 +65,14 @@ public class HierarchicalPermissionMappingStrategy extends PermissionMappingStra
 	private HierPermMappingDAO dao = null;
 
 	private PermissionDAO permissionDAO=null;
+
+	/** The in-memory index of the mappings, loaded on first use */
+	private volatile PermissionMappingIndex index = null;
+	/** Guards the loading and updating of the index */
+	private final Object indexLock = new Object();
+	/** The logger */
+	private static Log log = LogFactory.getLog(HierarchicalPermissionMappingStrategy.class);
+	
 	/**
 	 * Constructor
 	 */
@@ -71,6 +87,11 @@ public class HierarchicalPermissionMappingStrategy extends PermissionMappingStra
 		Mapping m = new Mapping(aUrlPattern, aPermission);
 		dao.saveOrUpdate(m);
 		
+		synchronized (indexLock) {
+			if (index != null) {
+				addToIndex(index, aPermission, aUrlPattern, aPermission.getSite() == null || aPermission.getSite().isActive());
+			}
+		}
 	}
 	
 	/**
@@ -81,6 +102,12 @@ public class HierarchicalPermissionMappingStrategy extends PermissionMappingStra
 	public void remove(Permission aPermission, UrlPattern aUrlPattern) {
 		Mapping m = new Mapping(aUrlPattern, aPermission);
 		dao.delete(m);
+		
+		synchronized (indexLock) {
+			if (index != null && aPermission.getOid() != null) {
+				index.remove(aPermission.getOid(), aUrlPattern.getPattern());
+			}
+		}
 	}
 	
 	/**
@@ -89,6 +116,27 @@ public class HierarchicalPermissionMappingStrategy extends PermissionMappingStra
 	 */	
 	public void removeMappings(Site aSite) {
 		dao.deleteMappings(aSite);
+		
+		synchronized (indexLock) {
+			if (index != null) {
+				// the DAO deletes the mappings of the permissions stored against the 
+				// site, which may include permissions since removed from aSite 
+				Set<Long> permissionOids = new HashSet<Long>();
+				if (aSite.getOid() != null) {
+					for (Permission p: permissionDAO.loadBySiteId(aSite.getOid())) {
+						permissionOids.add(p.getOid());
+					}
+				}
+				for (Permission p: aSite.getPermissions()) {
+					if (p.getOid() != null) {
+						permissionOids.add(p.getOid());
+					}
+				}
+				for (Long oid: permissionOids) {
+					index.removePermission(oid);
+				}
+			}
+		}
 	}
 	
 	/**
@@ -105,6 +153,64 @@ public class HierarchicalPermissionMappingStrategy extends PermissionMappingStra
 		}	
 		
 		dao.saveMappings(newMappings);
+		
+		synchronized (indexLock) {
+			if (index != null) {
+				for(Permission p: aSite.getPermissions()) {
+					// replace any mappings already indexed for the permission
+					index.removePermission(p.getOid());
+					for(UrlPattern u: p.getUrls()) {
+						addToIndex(index, p, u, aSite.isActive());
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Discard the in-memory index so that it is reloaded from the database
+	 * the next time it is needed.
+	 */
+	public void invalidate() {
+		synchronized (indexLock) {
+			index = null;
+		}
+	}
+	
+	/**
+	 * Get the index of the mappings, loading it if necessary.
+	 * @return the index.
+	 */
+	private PermissionMappingIndex getIndex() {
+		PermissionMappingIndex current = index;
+		if (current != null) {
+			return current;
+		}
+		synchronized (indexLock) {
+			if (index == null) {
+				PermissionMappingIndex newIndex = new PermissionMappingIndex();
+				// Use the MappingView entity for performance (data fetched in single call)
+				for (MappingView m: dao.getAllMappingsView()) {
+					newIndex.add(m.getDomain(), new IndexedMapping(m.getUrlPattern(), m.getPermissionOId(), 
+							m.getOwningAgencyId(), m.getEndDate(), m.isSiteActive()));
+				}
+				log.info("Loaded " + newIndex.size() + " permission mappings");
+				index = newIndex;
+			}
+			return index;
+		}
+	}
+	
+	/**
+	 * Add a Permission/UrlPattern mapping to the index.
+	 */
+	private void addToIndex(PermissionMappingIndex anIndex, Permission aPermission, UrlPattern aUrlPattern, boolean isSiteActive) {
+		if (aPermission.getOid() == null) {
+			return;
+		}
+		Long agencyOid = aPermission.getOwningAgency() == null ? null : aPermission.getOwningAgency().getOid();
+		anIndex.add(calculateDomain(aUrlPattern.getPattern()), new IndexedMapping(aUrlPattern.getPattern(), 
+				aPermission.getOid(), agencyOid, aPermission.getEndDate(), isSiteActive));
 	}
 	
 	/**
@@ -166,45 +272,14 @@ public class HierarchicalPermissionMappingStrategy extends PermissionMappingStra
 		Set<Permission> permissions = new HashSet<Permission>();
 		Set<Long> oids = new HashSet<Long>();
 		
-		// Get the ALL mappings.
-		// Use the MappingView entity for performance (data fetched in single call)
-		List<MappingView> mappings = dao.getMappingsView("*");
-		for(MappingView m: mappings) {
-			if( matches(m.getUrlPattern(), aUrl) 
-					&& m.isActiveNowOrInFuture() 
-					&& m.getOwningAgencyId().equals(aTarget.getOwner().getAgency().getOid())
-					&& m.isSiteActive()) {
-				
-				if(!oids.contains(m.getPermissionOId())) {
-					// now fetch the main Mapping entity to get at the associated Permission
-					List<Mapping> mapping = dao.getMapping(m.getOid());
-					for(Mapping map: mapping) {
-						permissions.add(permissionDAO.load(map.getPermissionId()));
-					}
-					oids.add(m.getPermissionOId());
-				}
-			}			
-		}
-
-		DomainIterator di = new DomainIterator(UrlUtils.getHost(aUrl));
-		while(di.hasNext()) {
-			// Use the MappingView entity for performance (data fetched in single call)
-			mappings = dao.getMappingsView(di.next());
-			for(MappingView m: mappings) {
-				if( matches(m.getUrlPattern(), aUrl) 
-						&& m.isActiveNowOrInFuture() 
-						&& m.getOwningAgencyId().equals(aTarget.getOwner().getAgency().getOid())
-						&& m.isSiteActive()) {
-					
-					if(!oids.contains(m.getPermissionOId())) {
-						// now fetch the main Mapping entity to get at the associated Permission
-						List<Mapping> mapping = dao.getMapping(m.getOid());
-						for(Mapping map: mapping) {
-							permissions.add(permissionDAO.load(map.getPermissionId()));
-						}
-						oids.add(m.getPermissionOId());
-					}
-				}			
+		Long agencyOid = aTarget.getOwner().getAgency().getOid();
+		Date now = new Date();
+		for(IndexedMapping m: getIndex().find(aUrl)) {
+			if( m.isActiveNowOrInFuture(now)
+					&& agencyOid.equals(m.getOwningAgencyOid())
+					&& m.isSiteActive()
+					&& oids.add(m.getPermissionOid())) {
+				permissions.add(permissionDAO.load(m.getPermissionOid()));
 			}
 		}
 		
@@ -0,0 +1,327 @@
+/*
+ *  Copyright 2006 The National Library of New Zealand
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.webcurator.core.permissionmapping;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory index of the UrlPattern/Permission mappings, used by the
+ * HierarchicalPermissionMappingStrategy to match seeds without going to the
+ * database.
+ *
+ * The mappings are held in a trie keyed by the labels of their effective base
+ * domain in reverse order, so the URL Pattern http://*.govt.nz/* is held
+ * under nz -&gt; govt. Walking the host of a URL from its last label to its
+ * first visits the same domains as the DomainIterator, so a lookup for
+ * http://www.corrections.govt.nz/ finds the mappings held under nz, govt.nz,
+ * corrections.govt.nz and www.corrections.govt.nz, as well as those held
+ * under the "*" domain.
+ *
+ * Each pattern is parsed once when it is added to the index.
+ */
+public class PermissionMappingIndex {
+	/** The domain of URL Patterns that apply to every host */
+	public static final String ALL_DOMAINS = "*";
+
+	/** The root of the trie */
+	private final Node root = new Node();
+	/** The mappings that apply to every host */
+	private final List<IndexedMapping> allDomains = new LinkedList<IndexedMapping>();
+	/** The domains of the mappings of each permission, so they can be removed */
+	private final Map<Long, List<String>> domainsByPermission = new HashMap<Long, List<String>>();
+	/** Guards the index */
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Add a mapping to the index.
+	 * @param aDomain the effective base domain of the URL Pattern.
+	 * @param aMapping the mapping.
+	 */
+	public void add(String aDomain, IndexedMapping aMapping) {
+		lock.writeLock().lock();
+		try {
+			getMappings(aDomain, true).add(aMapping);
+			List<String> domains = domainsByPermission.get(aMapping.getPermissionOid());
+			if (domains == null) {
+				domains = new LinkedList<String>();
+				domainsByPermission.put(aMapping.getPermissionOid(), domains);
+			}
+			domains.add(aDomain);
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Remove the mapping between a permission and a URL Pattern.
+	 * @param aPermissionOid the oid of the permission.
+	 * @param aUrlPattern the URL Pattern.
+	 */
+	public void remove(Long aPermissionOid, String aUrlPattern) {
+		lock.writeLock().lock();
+		try {
+			List<String> domains = domainsByPermission.get(aPermissionOid);
+			if (domains == null) {
+				return;
+			}
+			Iterator<String> it = domains.iterator();
+			while (it.hasNext()) {
+				String domain = it.next();
+				if (removeMappings(domain, aPermissionOid, aUrlPattern)) {
+					it.remove();
+				}
+			}
+			if (domains.isEmpty()) {
+				domainsByPermission.remove(aPermissionOid);
+			}
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Remove all the mappings of a permission.
+	 * @param aPermissionOid the oid of the permission.
+	 */
+	public void removePermission(Long aPermissionOid) {
+		lock.writeLock().lock();
+		try {
+			List<String> domains = domainsByPermission.remove(aPermissionOid);
+			if (domains != null) {
+				for (String domain : domains) {
+					removeMappings(domain, aPermissionOid, null);
+				}
+			}
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Find the mappings whose URL Pattern matches a URL.
+	 * @param aUrl the URL to match.
+	 * @return the matching mappings. May be empty.
+	 */
+	public List<IndexedMapping> find(String aUrl) {
+		String schema = UrlUtils.getSchema(aUrl);
+		String host = UrlUtils.getHost(aUrl);
+		String resource = UrlUtils.getResource(aUrl);
+
+		List<IndexedMapping> matches = new ArrayList<IndexedMapping>();
+		lock.readLock().lock();
+		try {
+			addMatches(allDomains, schema, host, resource, matches);
+
+			String[] labels = host.split("\\.", -1);
+			Node node = root;
+			for (int i = labels.length - 1; i >= 0 && node != null; i--) {
+				node = node.children.get(labels[i]);
+				if (node != null) {
+					addMatches(node.mappings, schema, host, resource, matches);
+				}
+			}
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+		return matches;
+	}
+
+	/**
+	 * @return the number of mappings in the index.
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			int size = 0;
+			for (List<String> domains : domainsByPermission.values()) {
+				size += domains.size();
+			}
+			return size;
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private void addMatches(List<IndexedMapping> mappings, String schema, String host, String resource, List<IndexedMapping> matches) {
+		for (IndexedMapping m : mappings) {
+			if (m.matches(schema, host, resource)) {
+				matches.add(m);
+			}
+		}
+	}
+
+	/**
+	 * Remove a permission's mappings from a domain.
+	 * @return true if a mapping was removed.
+	 */
+	private boolean removeMappings(String aDomain, Long aPermissionOid, String aUrlPattern) {
+		List<IndexedMapping> mappings = getMappings(aDomain, false);
+		if (mappings == null) {
+			return false;
+		}
+		Iterator<IndexedMapping> it = mappings.iterator();
+		while (it.hasNext()) {
+			IndexedMapping m = it.next();
+			if (m.getPermissionOid().equals(aPermissionOid)
+					&& (aUrlPattern == null || m.getUrlPattern().equals(aUrlPattern))) {
+				it.remove();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Get the list of mappings for a domain.
+	 * @param aDomain the domain.
+	 * @param create true to create the trie nodes for the domain if they do not exist.
+	 * @return the list of mappings, or null if there is none and create is false.
+	 */
+	private List<IndexedMapping> getMappings(String aDomain, boolean create) {
+		if (ALL_DOMAINS.equals(aDomain)) {
+			return allDomains;
+		}
+		String[] labels = aDomain.split("\\.", -1);
+		Node node = root;
+		for (int i = labels.length - 1; i >= 0; i--) {
+			Node child = node.children.get(labels[i]);
+			if (child == null) {
+				if (!create) {
+					return null;
+				}
+				child = new Node();
+				node.children.put(labels[i], child);
+			}
+			node = child;
+		}
+		return node.mappings;
+	}
+
+	/**
+	 * A node of the trie, holding the mappings of one domain.
+	 */
+	private static class Node {
+		private final Map<String, Node> children = new HashMap<String, Node>(4);
+		private final List<IndexedMapping> mappings = new LinkedList<IndexedMapping>();
+	}
+
+	/**
+	 * A UrlPattern/Permission mapping with its pattern parsed and the
+	 * permission data needed to decide whether it applies to a target.
+	 */
+	public static class IndexedMapping {
+		/** The URL Pattern */
+		private final String urlPattern;
+		/** The oid of the permission */
+		private final Long permissionOid;
+		/** The oid of the agency that owns the permission */
+		private final Long owningAgencyOid;
+		/** The end date of the permission */
+		private final Date endDate;
+		/** True if the permission's site is active */
+		private final boolean siteActive;
+		/** The schema of the pattern */
+		private final String schema;
+		/** The host of the pattern after any star */
+		private final String hostSuffix;
+		/** The resource of the pattern before any star */
+		private final String resourcePrefix;
+
+		/**
+		 * Construct a new mapping.
+		 * @param aUrlPattern the URL Pattern.
+		 * @param aPermissionOid the oid of the permission.
+		 * @param anOwningAgencyOid the oid of the agency that owns the permission.
+		 * @param anEndDate the end date of the permission, or null if it does not end.
+		 * @param isSiteActive true if the permission's site is active.
+		 */
+		public IndexedMapping(String aUrlPattern, Long aPermissionOid, Long anOwningAgencyOid, Date anEndDate, boolean isSiteActive) {
+			urlPattern = aUrlPattern;
+			permissionOid = aPermissionOid;
+			owningAgencyOid = anOwningAgencyOid;
+			endDate = anEndDate;
+			siteActive = isSiteActive;
+
+			schema = UrlUtils.getSchema(aUrlPattern);
+			String host = UrlUtils.getHost(aUrlPattern);
+			hostSuffix = host.substring(host.lastIndexOf('*') + 1);
+			String resource = UrlUtils.getResource(aUrlPattern);
+			int resourceStar = resource.indexOf('*');
+			resourcePrefix = resourceStar < 0 ? resource : resource.substring(0, resourceStar);
+		}
+
+		/**
+		 * Tests if the pattern matches a parsed URL.
+		 * @param aSchema the schema of the URL.
+		 * @param aHost the host of the URL.
+		 * @param aResource the resource of the URL.
+		 * @return true if they match; otherwise false.
+		 */
+		public boolean matches(String aSchema, String aHost, String aResource) {
+			return aSchema.equals(schema) && aHost.endsWith(hostSuffix) && aResource.startsWith(resourcePrefix);
+		}
+
+		/**
+		 * Checks if the permission is active now or will be in the future.
+		 * @param now the current date.
+		 * @return true if the permission has not ended.
+		 */
+		public boolean isActiveNowOrInFuture(Date now) {
+			return endDate == null || now.compareTo(endDate) <= 0;
+		}
+
+		/**
+		 * @return the URL Pattern.
+		 */
+		public String getUrlPattern() {
+			return urlPattern;
+		}
+
+		/**
+		 * @return the oid of the permission.
+		 */
+		public Long getPermissionOid() {
+			return permissionOid;
+		}
+
+		/**
+		 * @return the oid of the agency that owns the permission.
+		 */
+		public Long getOwningAgencyOid() {
+			return owningAgencyOid;
+		}
+
+		/**
+		 * @return true if the permission's site is active.
+		 */
+		public boolean isSiteActive() {
+			return siteActive;
+		}
+	}
+}
@@ -0,0 +1,474 @@
+/*
+ *  Copyright 2006 The National Library of New Zealand
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.webcurator.core.reader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * An on-disk index from the URL column of a crawl.log to the byte offset of
+ * the first line for that URL, so that a line can be found with a few seeks
+ * rather than a scan of the whole log. URLs are matched ignoring case, as the
+ * hop path search does.
+ * <p>
+ * The index is an open addressing hash table of 8 byte slots, held in a file
+ * in the index directory (see LogIndexFiles) and memory mapped. Each slot holds the top bits of the URL
+ * hash and the line offset; a candidate line is read from the log to confirm
+ * the match. The log's length and modification time are recorded in the
+ * header. When the log has grown the lines written since are added to the
+ * index in place, and the index is only rebuilt, at twice the size, once the
+ * table would be more than half full. The index is rebuilt if the log has
+ * been replaced.
+ * <p>
+ * An open index is not thread safe, and its mappings are released when it is
+ * closed.
+ */
+public class CrawlLogUrlIndex implements Closeable {
+	private static Log log = LogFactory.getLog(CrawlLogUrlIndex.class);
+
+	/** The suffix added to the log file name to name its index. */
+	public static final String INDEX_SUFFIX = ".urlidx";
+
+	private static final long MAGIC = 0x5743544C4F475532L;
+	private static final int HEADER_SIZE = 48;
+	private static final int URL_COLUMN = 3;
+	private static final int SLOT_SIZE = 8;
+	private static final int OFFSET_BITS = 40;
+	private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+	/** Slots are mapped in segments as a single mapping is limited to 2GB. */
+	private static final int SEGMENT_SHIFT = 24;
+	private static final long SEGMENT_SLOTS = 1L << SEGMENT_SHIFT;
+	private static final int BUFFER_SIZE = 256 * 1024;
+
+	/** Locks that stop two readers building or extending the same index at once. */
+	private static final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<String, Object>();
+
+	private final RandomAccessFile logAccess;
+	private MappedByteBuffer[] segments;
+	private final long mask;
+
+	private CrawlLogUrlIndex(File logFile, MappedByteBuffer[] segments, long capacity) throws IOException {
+		this.logAccess = new RandomAccessFile(logFile, "r");
+		this.segments = segments;
+		this.mask = capacity - 1;
+	}
+
+	/**
+	 * @param logFile the crawl log
+	 * @param indexDirectory the index directory, or null to use the default
+	 * @return the index file for the crawl log
+	 */
+	public static File getIndexFile(File logFile, File indexDirectory) {
+		return LogIndexFiles.getIndexFile(logFile, indexDirectory, INDEX_SUFFIX);
+	}
+
+	/**
+	 * Open the index of the crawl log, building it first if it does not exist
+	 * or has been replaced, and extending it if the log has grown.
+	 * @param logFile the crawl log
+	 * @param indexDirectory the index directory, or null to use the default
+	 * @return the open index
+	 * @throws IOException thrown if the index cannot be read or built
+	 */
+	public static CrawlLogUrlIndex open(File logFile, File indexDirectory) throws IOException {
+		File indexFile = getIndexFile(logFile, indexDirectory);
+		long capacity;
+		synchronized (lock(indexFile)) {
+			Header header = update(logFile, indexFile);
+			capacity = header.capacity;
+			LogIndexFiles.markUsed(indexFile);
+		}
+		try (FileChannel channel = FileChannel.open(indexFile.toPath())) {
+			return new CrawlLogUrlIndex(logFile, map(channel, FileChannel.MapMode.READ_ONLY, capacity), capacity);
+		}
+	}
+
+	/**
+	 * Build the index of the crawl log, replacing any existing index.
+	 * @param logFile the crawl log
+	 * @param indexDirectory the index directory, or null to use the default
+	 * @throws IOException thrown if the log cannot be read or the index written
+	 */
+	public static void build(File logFile, File indexDirectory) throws IOException {
+		File indexFile = getIndexFile(logFile, indexDirectory);
+		synchronized (lock(indexFile)) {
+			build(logFile, indexFile, logFile.length(), logFile.lastModified());
+		}
+	}
+
+	/**
+	 * Bring the index up to date with the log.
+	 * @return the header of the up to date index
+	 */
+	private static Header update(File logFile, File indexFile) throws IOException {
+		long length = logFile.length();
+		long lastModified = logFile.lastModified();
+		Header header = Header.read(indexFile);
+		if(header != null && header.length == length && header.lastModified == lastModified) {
+			return header;
+		}
+		if(header != null && length > header.length && endsLine(logFile, header.resumeOffset)) {
+			if((header.entries + countLines(logFile, header.resumeOffset, length)) * 2L <= header.capacity) {
+				extend(logFile, indexFile, header, length, lastModified);
+				return header;
+			}
+		}
+		return build(logFile, indexFile, length, lastModified);
+	}
+
+	/**
+	 * Write a new index of the first length bytes of the log.
+	 */
+	private static Header build(File logFile, File indexFile, long length, long lastModified) throws IOException {
+		if(length >= OFFSET_MASK) {
+			throw new IOException("The crawl log " + logFile.getAbsolutePath() + " is too large to index");
+		}
+
+		// Keep the table at most half full so that probe sequences stay short.
+		long slots = Math.max(512L, countLines(logFile, 0L, length) * 2L);
+		long capacity = Long.highestOneBit(slots);
+		if(capacity < slots) {
+			capacity <<= 1;
+		}
+		Header header = new Header(capacity);
+
+		LogIndexFiles.createParentDirectory(indexFile);
+		File tempFile = File.createTempFile(indexFile.getName(), ".tmp", indexFile.getAbsoluteFile().getParentFile());
+		try {
+			try (RandomAccessFile raf = new RandomAccessFile(tempFile, "rw");
+					FileChannel channel = raf.getChannel()) {
+				raf.setLength(HEADER_SIZE + capacity * SLOT_SIZE);
+				fill(logFile, channel, header, length, lastModified);
+			}
+			Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		finally {
+			if(tempFile.exists() && !tempFile.delete()) {
+				log.warn("Could not delete " + tempFile.getAbsolutePath());
+			}
+		}
+		log.debug("Built URL index of " + logFile.getAbsolutePath() + " with " + capacity + " slots");
+		return header;
+	}
+
+	/**
+	 * Add the lines written to the log since the index was last updated.
+	 */
+	private static void extend(File logFile, File indexFile, Header header, long length, long lastModified) throws IOException {
+		if(length >= OFFSET_MASK) {
+			throw new IOException("The crawl log " + logFile.getAbsolutePath() + " is too large to index");
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(indexFile, "rw");
+				FileChannel channel = raf.getChannel()) {
+			// Clear the header first so that an interrupted update leads to a rebuild.
+			channel.write(ByteBuffer.allocate(HEADER_SIZE), 0L);
+			fill(logFile, channel, header, length, lastModified);
+		}
+		log.debug("Extended URL index of " + logFile.getAbsolutePath() + " to " + header.entries + " URLs");
+	}
+
+	/**
+	 * Add the lines of the log from the header's resume offset up to the
+	 * length to the table, then write the updated header.
+	 */
+	private static void fill(File logFile, FileChannel channel, Header header, long length, long lastModified) throws IOException {
+		MappedByteBuffer[] segments = map(channel, FileChannel.MapMode.READ_WRITE, header.capacity);
+		try {
+			fill(logFile, segments, header, length);
+			for(MappedByteBuffer segment: segments) {
+				segment.force();
+			}
+		}
+		finally {
+			for(MappedByteBuffer segment: segments) {
+				LogIndexFiles.unmap(segment);
+			}
+		}
+		header.length = length;
+		header.lastModified = lastModified;
+		header.write(channel);
+	}
+
+	/**
+	 * Find the first line of the log with the URL, ignoring case.
+	 * @param url the URL to find
+	 * @return the line, or null if no line has the URL
+	 * @throws IOException thrown if the log cannot be read
+	 */
+	public String findLine(String url) throws IOException {
+		if(segments == null) {
+			throw new IOException("The URL index is closed");
+		}
+		long hash = hash(url);
+		long tag = hash >>> OFFSET_BITS;
+		for(long i = hash & mask; ; i = (i + 1) & mask) {
+			long slot = getSlot(segments, i);
+			if(slot == 0L) {
+				return null;
+			}
+			if(slot >>> OFFSET_BITS == tag) {
+				String line = readLine((slot & OFFSET_MASK) - 1L);
+				String[] columns = line.split(" ");
+				if(columns.length > URL_COLUMN && columns[URL_COLUMN].equalsIgnoreCase(url)) {
+					return line;
+				}
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if(segments != null) {
+			for(MappedByteBuffer segment: segments) {
+				LogIndexFiles.unmap(segment);
+			}
+			segments = null;
+		}
+		logAccess.close();
+	}
+
+	private String readLine(long offset) throws IOException {
+		logAccess.seek(offset);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+		byte[] buffer = new byte[512];
+		int read;
+		while((read = logAccess.read(buffer)) > 0) {
+			for(int i = 0; i < read; i++) {
+				if(buffer[i] == '\n') {
+					bytes.write(buffer, 0, i);
+					return trimLine(bytes);
+				}
+			}
+			bytes.write(buffer, 0, read);
+		}
+		return trimLine(bytes);
+	}
+
+	private static String trimLine(ByteArrayOutputStream bytes) {
+		String line = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+		return line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+	}
+
+	private static Object lock(File indexFile) {
+		return locks.computeIfAbsent(indexFile.getAbsolutePath(), k -> new Object());
+	}
+
+	/**
+	 * @return true if the log has a new line just before the offset.
+	 */
+	private static boolean endsLine(File logFile, long offset) throws IOException {
+		if(offset == 0L) {
+			return true;
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(logFile, "r")) {
+			raf.seek(offset - 1L);
+			return raf.read() == '\n';
+		}
+	}
+
+	private static MappedByteBuffer[] map(FileChannel channel, FileChannel.MapMode mode, long capacity) throws IOException {
+		int count = (int) ((capacity + SEGMENT_SLOTS - 1) / SEGMENT_SLOTS);
+		MappedByteBuffer[] segments = new MappedByteBuffer[count];
+		for(int i = 0; i < count; i++) {
+			long slots = Math.min(SEGMENT_SLOTS, capacity - i * SEGMENT_SLOTS);
+			segments[i] = channel.map(mode, HEADER_SIZE + i * SEGMENT_SLOTS * SLOT_SIZE, slots * SLOT_SIZE);
+		}
+		return segments;
+	}
+
+	private static long getSlot(MappedByteBuffer[] segments, long i) {
+		return segments[(int) (i >>> SEGMENT_SHIFT)].getLong((int) (i & (SEGMENT_SLOTS - 1)) * SLOT_SIZE);
+	}
+
+	private static void putSlot(MappedByteBuffer[] segments, long i, long slot) {
+		segments[(int) (i >>> SEGMENT_SHIFT)].putLong((int) (i & (SEGMENT_SLOTS - 1)) * SLOT_SIZE, slot);
+	}
+
+	private static long countLines(File logFile, long start, long end) throws IOException {
+		long lines = 0L;
+		byte[] buffer = new byte[BUFFER_SIZE];
+		try (FileInputStream in = new FileInputStream(logFile)) {
+			in.getChannel().position(start);
+			long offset = start;
+			int read;
+			while(offset < end && (read = in.read(buffer, 0, (int) Math.min(buffer.length, end - offset))) > 0) {
+				for(int i = 0; i < read; i++) {
+					if(buffer[i] == '\n') {
+						lines++;
+					}
+				}
+				offset += read;
+			}
+		}
+		return lines + 1L;
+	}
+
+	/**
+	 * Add the offset of each line from the resume offset up to the end to the
+	 * table. Lines are added in log order, so the first line for a URL is
+	 * always found first on its probe sequence.
+	 */
+	private static void fill(File logFile, MappedByteBuffer[] segments, Header header, long end) throws IOException {
+		ByteArrayOutputStream url = new ByteArrayOutputStream(256);
+		byte[] previousUrl = null;
+		byte[] buffer = new byte[BUFFER_SIZE];
+		long offset = header.resumeOffset;
+		long lineStart = offset;
+		int column = 0;
+		try (FileInputStream in = new FileInputStream(logFile)) {
+			in.getChannel().position(offset);
+			int read;
+			while(offset < end && (read = in.read(buffer, 0, (int) Math.min(buffer.length, end - offset))) > 0) {
+				for(int i = 0; i < read; i++) {
+					byte b = buffer[i];
+					if(b == '\n') {
+						previousUrl = addLine(segments, header, column, url, previousUrl, lineStart);
+						url.reset();
+						column = 0;
+						lineStart = offset + i + 1L;
+					}
+					else if(b == ' ') {
+						column++;
+					}
+					else if(column == URL_COLUMN && b != '\r') {
+						url.write(b);
+					}
+				}
+				offset += read;
+			}
+		}
+		// The last line of the log may not end with a new line, or may still be
+		// being written, so it is indexed now and again when the index is extended.
+		addLine(segments, header, column, url, previousUrl, lineStart);
+		header.resumeOffset = lineStart;
+	}
+
+	/**
+	 * Add a line to the table unless it has no URL or has the same URL as the
+	 * line before it; a sorted log holds the lines for a URL together and only
+	 * the first is needed.
+	 * @return the URL of the last line added
+	 */
+	private static byte[] addLine(MappedByteBuffer[] segments, Header header, int column, ByteArrayOutputStream url, byte[] previousUrl, long lineStart) {
+		if(column < URL_COLUMN || url.size() == 0) {
+			return previousUrl;
+		}
+		byte[] urlBytes = url.toByteArray();
+		if(previousUrl != null && Arrays.equals(previousUrl, urlBytes)) {
+			return previousUrl;
+		}
+		insert(segments, header.capacity - 1, hash(new String(urlBytes, StandardCharsets.UTF_8)), lineStart);
+		header.entries++;
+		return urlBytes;
+	}
+
+	private static void insert(MappedByteBuffer[] segments, long mask, long hash, long offset) {
+		long i = hash & mask;
+		while(getSlot(segments, i) != 0L) {
+			i = (i + 1) & mask;
+		}
+		putSlot(segments, i, (hash >>> OFFSET_BITS) << OFFSET_BITS | (offset + 1L));
+	}
+
+	/**
+	 * A 64 bit FNV-1a hash of the lower case URL, with a final mix so that
+	 * both the low bits (the slot) and the high bits (the tag) are well spread.
+	 */
+	static long hash(String url) {
+		String key = url.toLowerCase(Locale.ROOT);
+		long h = 0xcbf29ce484222325L;
+		for(int i = 0; i < key.length(); i++) {
+			h ^= key.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * The header of an index file: the length and modification time of the
+	 * log when it was indexed, the number of slots and of entries in the
+	 * table, and the offset of the last line, from which the index is
+	 * extended.
+	 */
+	private static final class Header {
+		private long length;
+		private long lastModified;
+		private final long capacity;
+		private long entries;
+		private long resumeOffset;
+
+		private Header(long capacity) {
+			this.capacity = capacity;
+		}
+
+		/**
+		 * @return the header, or null if the index is missing or not valid
+		 */
+		private static Header read(File indexFile) throws IOException {
+			if(!indexFile.exists() || indexFile.length() < HEADER_SIZE) {
+				return null;
+			}
+			ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+			try (FileChannel channel = FileChannel.open(indexFile.toPath())) {
+				while(buffer.hasRemaining() && channel.read(buffer) >= 0) {
+				}
+			}
+			buffer.flip();
+			if(buffer.getLong() != MAGIC) {
+				return null;
+			}
+			long length = buffer.getLong();
+			long lastModified = buffer.getLong();
+			long capacity = buffer.getLong();
+			if(capacity <= 0L || Long.bitCount(capacity) != 1 || indexFile.length() < HEADER_SIZE + capacity * SLOT_SIZE) {
+				return null;
+			}
+			Header header = new Header(capacity);
+			header.length = length;
+			header.lastModified = lastModified;
+			header.entries = buffer.getLong();
+			header.resumeOffset = buffer.getLong();
+			return header;
+		}
+
+		private void write(FileChannel channel) throws IOException {
+			ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+			buffer.putLong(MAGIC).putLong(length).putLong(lastModified).putLong(capacity).putLong(entries).putLong(resumeOffset);
+			buffer.flip();
+			channel.write(buffer, 0L);
+		}
+	}
+}
@@ -0,0 +1,246 @@
+/*
+ *  Copyright 2006 The National Library of New Zealand
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.webcurator.core.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Locates the index files built for log files. The indexes are kept in an
+ * index directory rather than beside the logs, so that they are never listed
+ * or archived with the logs of a harvest. The index of a log is held at the
+ * log's absolute path below the index directory, so logs with the same name
+ * in different jobs have different indexes.
+ * <p>
+ * The index directory is swept from time to time: the indexes of logs that
+ * no longer exist, such as those of purged harvests, are deleted, and then
+ * the least recently used indexes are deleted until the directory is within
+ * its size limit.
+ */
+public final class LogIndexFiles {
+	private static Log log = LogFactory.getLog(LogIndexFiles.class);
+
+	/** The index directory used if none is configured. */
+	public static final File DEFAULT_INDEX_DIRECTORY = new File(System.getProperty("java.io.tmpdir"), "wct-log-indexes");
+	/** The default limit on the total size of the indexes in an index directory. */
+	public static final long DEFAULT_MAX_INDEX_SIZE = 1024L * 1024L * 1024L;
+	/** The shortest time between two sweeps of an index directory. */
+	public static final long SWEEP_INTERVAL = 10L * 60L * 1000L;
+
+	/** Indexes used or files written this recently are never deleted, as they may be in use. */
+	private static final long MIN_IDLE_TIME = 60L * 1000L;
+	private static final String[] INDEX_SUFFIXES = { LogLineIndex.INDEX_SUFFIX, CrawlLogUrlIndex.INDEX_SUFFIX };
+
+	/** The time each index directory was last swept. */
+	private static final ConcurrentMap<String, Long> lastSweeps = new ConcurrentHashMap<String, Long>();
+
+	private LogIndexFiles() {
+	}
+
+	/**
+	 * Get the index file of a log.
+	 * @param logFile the log
+	 * @param indexDirectory the index directory, or null to use the default
+	 * @param suffix the suffix added to the log file name to name the index
+	 * @return the index file
+	 */
+	public static File getIndexFile(File logFile, File indexDirectory, String suffix) {
+		Path logPath = logFile.getAbsoluteFile().toPath().normalize();
+		Path relativePath = logPath.getRoot() == null ? logPath : logPath.getRoot().relativize(logPath);
+		File directory = indexDirectory == null ? DEFAULT_INDEX_DIRECTORY : indexDirectory;
+		return new File(directory, relativePath.toString() + suffix);
+	}
+
+	/**
+	 * Create the directory that holds an index file if it does not exist.
+	 * @param indexFile the index file
+	 * @throws IOException thrown if the directory cannot be created
+	 */
+	public static void createParentDirectory(File indexFile) throws IOException {
+		File parent = indexFile.getAbsoluteFile().getParentFile();
+		if(!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+			throw new IOException("Could not create the index directory " + parent.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * Record that an index has been used, so that it is among the last to be
+	 * deleted when the index directory is swept.
+	 * @param indexFile the index file
+	 */
+	public static void markUsed(File indexFile) {
+		if(!indexFile.setLastModified(System.currentTimeMillis())) {
+			log.debug("Could not set the last modified time of " + indexFile.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * Sweep the index directory if it has not been swept in the last
+	 * SWEEP_INTERVAL milliseconds.
+	 * @param indexDirectory the index directory, or null to use the default
+	 * @param maxIndexSize the limit on the total size of the indexes
+	 * @see #sweep(File, long)
+	 */
+	public static void sweepIfDue(File indexDirectory, long maxIndexSize) {
+		File directory = (indexDirectory == null ? DEFAULT_INDEX_DIRECTORY : indexDirectory).getAbsoluteFile();
+		long now = System.currentTimeMillis();
+		Long lastSweep = lastSweeps.get(directory.getPath());
+		if(lastSweep != null && now - lastSweep < SWEEP_INTERVAL) {
+			return;
+		}
+		if(lastSweep == null ? lastSweeps.putIfAbsent(directory.getPath(), now) != null
+				: !lastSweeps.replace(directory.getPath(), lastSweep, now)) {
+			// Another thread is sweeping the directory.
+			return;
+		}
+		sweep(directory, maxIndexSize);
+	}
+
+	/**
+	 * Delete the indexes of logs that no longer exist, then delete the least
+	 * recently used indexes until the total size of the indexes is no more
+	 * than the limit. Indexes used in the last minute are kept.
+	 * @param indexDirectory the index directory, or null to use the default
+	 * @param maxIndexSize the limit on the total size of the indexes
+	 */
+	public static void sweep(File indexDirectory, long maxIndexSize) {
+		File directory = (indexDirectory == null ? DEFAULT_INDEX_DIRECTORY : indexDirectory).getAbsoluteFile();
+		long idleSince = System.currentTimeMillis() - MIN_IDLE_TIME;
+		List<File> indexes = new ArrayList<File>();
+		long totalSize = 0L;
+		for(File file: listFiles(directory, new ArrayList<File>())) {
+			File logFile = getLogFile(directory, file);
+			if(file.lastModified() >= idleSince) {
+				totalSize += file.length();
+			}
+			else if(logFile == null || !logFile.exists()) {
+				// An orphaned index, or a temporary file left by an interrupted build.
+				delete(file);
+			}
+			else {
+				indexes.add(file);
+				totalSize += file.length();
+			}
+		}
+
+		indexes.sort((a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+		for(int i = 0; i < indexes.size() && totalSize > maxIndexSize; i++) {
+			totalSize -= indexes.get(i).length();
+			delete(indexes.get(i));
+		}
+		deleteEmptyDirectories(directory, directory);
+	}
+
+	/**
+	 * Get the log that an index file was built for.
+	 * @return the log, or null if the file is not an index
+	 */
+	static File getLogFile(File indexDirectory, File indexFile) {
+		String path = indexDirectory.toPath().relativize(indexFile.toPath()).toString();
+		for(String suffix: INDEX_SUFFIXES) {
+			if(path.endsWith(suffix)) {
+				// The root is not part of the index path, so the log is taken to be on the current root.
+				return new File(File.separator + path.substring(0, path.length() - suffix.length()));
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Release a mapping of an index file now, rather than when the buffer is
+	 * garbage collected, so that the file is not held open by the mapping.
+	 * The buffer must not be used afterwards. If the mapping cannot be
+	 * released it is left for the garbage collector.
+	 * @param buffer the mapped buffer
+	 */
+	static void unmap(MappedByteBuffer buffer) {
+		try {
+			try {
+				// Java 9 and later
+				Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+				Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+				Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+				theUnsafe.setAccessible(true);
+				invokeCleaner.invoke(theUnsafe.get(null), buffer);
+			}
+			catch(NoSuchMethodException e) {
+				// Java 8
+				Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				Object cleaner = cleanerMethod.invoke(buffer);
+				if(cleaner != null) {
+					cleaner.getClass().getMethod("clean").invoke(cleaner);
+				}
+			}
+		}
+		catch(Exception e) {
+			log.debug("Could not release a mapping of an index file: " + e.getMessage());
+		}
+	}
+
+	private static List<File> listFiles(File directory, List<File> files) {
+		File[] children = directory.listFiles();
+		if(children != null) {
+			for(File child: children) {
+				if(child.isDirectory()) {
+					listFiles(child, files);
+				}
+				else {
+					files.add(child);
+				}
+			}
+		}
+		return files;
+	}
+
+	private static void deleteEmptyDirectories(File directory, File indexDirectory) {
+		File[] children = directory.listFiles();
+		if(children == null) {
+			return;
+		}
+		for(File child: children) {
+			if(child.isDirectory()) {
+				deleteEmptyDirectories(child, indexDirectory);
+			}
+		}
+		children = directory.listFiles();
+		if(!directory.equals(indexDirectory) && children != null && children.length == 0
+				&& directory.lastModified() < System.currentTimeMillis() - MIN_IDLE_TIME) {
+			delete(directory);
+		}
+	}
+
+	private static void delete(File file) {
+		if(file.delete()) {
+			log.debug("Deleted " + file.getAbsolutePath() + " from the log index directory");
+		}
+		else {
+			log.warn("Could not delete " + file.getAbsolutePath() + " from the log index directory");
+		}
+	}
+}
@@ -0,0 +1,394 @@
+/*
+ *  Copyright 2006 The National Library of New Zealand
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.webcurator.core.reader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A sparse index of the lines of a log file, recording the byte offset of
+ * every K-th line and the earliest and latest timestamps in each block of K
+ * lines. Paging, counting lines and finding a timestamp become a seek to a
+ * checkpoint and a scan of at most one block.
+ * <p>
+ * The index is held in a file in the index directory (see LogIndexFiles),
+ * not beside the log. Only complete lines are
+ * indexed, and each time the index is opened it is extended over any lines
+ * appended since, so the log of a running harvest is never read twice. The
+ * index is rebuilt if the log has become shorter than the indexed length.
+ */
+public class LogLineIndex {
+	private static Log log = LogFactory.getLog(LogLineIndex.class);
+
+	/** The suffix added to the log file name to name its index. */
+	public static final String INDEX_SUFFIX = ".lineidx";
+	/** The default number of lines between checkpoints. */
+	public static final int DEFAULT_INTERVAL = 1000;
+	/** The timestamp bound of a block with no timestamped lines. */
+	public static final long NO_TIMESTAMP = -1L;
+
+	private static final long MAGIC = 0x5743544C494E4531L;
+	private static final int HEADER_SIZE = 32;
+	private static final int BLOCK_SIZE = 24;
+	private static final int BUFFER_SIZE = 256 * 1024;
+	/** The length of a yyyy-MM-ddTHH:mm:ss timestamp. */
+	private static final int TIMESTAMP_LENGTH = 19;
+
+	/** Locks that stop two readers extending the same index at once. */
+	private static final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<String, Object>();
+
+	private final File logFile;
+	private final int interval;
+	private long indexedLength = 0L;
+	private long indexedLines = 0L;
+	private int blocks = 0;
+	private long[] offsets = new long[16];
+	private long[] minTimestamps = new long[16];
+	private long[] maxTimestamps = new long[16];
+
+	private LogLineIndex(File logFile, int interval) {
+		this.logFile = logFile;
+		this.interval = interval;
+	}
+
+	/**
+	 * @param logFile the log
+	 * @param indexDirectory the index directory, or null to use the default
+	 * @return the index file for the log
+	 */
+	public static File getIndexFile(File logFile, File indexDirectory) {
+		return LogIndexFiles.getIndexFile(logFile, indexDirectory, INDEX_SUFFIX);
+	}
+
+	/**
+	 * Open the index of the log with a checkpoint every DEFAULT_INTERVAL lines.
+	 * @see #open(File, File, int)
+	 */
+	public static LogLineIndex open(File logFile, File indexDirectory) throws IOException {
+		return open(logFile, indexDirectory, DEFAULT_INTERVAL);
+	}
+
+	/**
+	 * Open the index of the log, extending it over any lines written since it
+	 * was last opened. If the index cannot be saved it is still returned, but
+	 * the next open will index the log again.
+	 * @param logFile the log
+	 * @param indexDirectory the index directory, or null to use the default
+	 * @param interval the number of lines between checkpoints
+	 * @return the up to date index
+	 * @throws IOException thrown if the log cannot be read
+	 */
+	public static LogLineIndex open(File logFile, File indexDirectory, int interval) throws IOException {
+		File indexFile = getIndexFile(logFile, indexDirectory);
+		Object lock = locks.computeIfAbsent(indexFile.getAbsolutePath(), k -> new Object());
+		synchronized (lock) {
+			LogLineIndex index = new LogLineIndex(logFile, interval);
+			index.load(indexFile);
+			int firstChangedBlock = index.extend();
+			if(firstChangedBlock >= 0) {
+				try {
+					index.save(indexFile, firstChangedBlock);
+				}
+				catch(IOException e) {
+					log.warn("Could not save the line index of " + logFile.getAbsolutePath() + ": " + e.getMessage());
+				}
+			}
+			else if(indexFile.exists()) {
+				LogIndexFiles.markUsed(indexFile);
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * @return the number of lines in the log, including a final line that has
+	 * not yet been terminated.
+	 */
+	public long countLines() {
+		return indexedLines + (logFile.length() > indexedLength ? 1L : 0L);
+	}
+
+	/**
+	 * Return the block to start reading from to reach a line.
+	 * @param lineNumber the line to reach, counting from 1
+	 * @return the block holding the line, or the last block if the line is after the indexed lines
+	 */
+	public int getBlock(long lineNumber) {
+		if(lineNumber <= 1L || blocks == 0) {
+			return 0;
+		}
+		return (int) Math.min(blocks - 1, (lineNumber - 1L) / interval);
+	}
+
+	/**
+	 * @param block a block returned by getBlock or findBlockAfterTimeStamp
+	 * @return the byte offset of the first line of the block
+	 */
+	public long getBlockOffset(int block) {
+		return block < blocks ? offsets[block] : 0L;
+	}
+
+	/**
+	 * @param block a block returned by getBlock or findBlockAfterTimeStamp
+	 * @return the line number, counting from 1, of the first line of the block
+	 */
+	public long getBlockFirstLine(int block) {
+		return (long) block * interval + 1L;
+	}
+
+	/**
+	 * Find the first block with a timestamp at or after the given timestamp.
+	 * The timestamps in a log are not strictly ordered, so the blocks are
+	 * checked in order rather than by a binary search; there are few enough
+	 * of them for this to be cheap.
+	 * @param timestamp the timestamp as a yyyyMMddHHmmss number
+	 * @return the block holding the first such line, or -1 if the line can
+	 * only be after the indexed lines
+	 */
+	public int findBlockAfterTimeStamp(long timestamp) {
+		for(int i = 0; i < blocks; i++) {
+			if(maxTimestamps[i] != NO_TIMESTAMP && maxTimestamps[i] >= timestamp) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the byte offset of the first line after the indexed lines
+	 */
+	public long getIndexedLength() {
+		return indexedLength;
+	}
+
+	/**
+	 * @return the number of complete lines in the index
+	 */
+	public long getIndexedLines() {
+		return indexedLines;
+	}
+
+	/**
+	 * @param block the block
+	 * @return the earliest timestamp in the block, or NO_TIMESTAMP
+	 */
+	public long getMinTimestamp(int block) {
+		return minTimestamps[block];
+	}
+
+	/**
+	 * @param block the block
+	 * @return the latest timestamp in the block, or NO_TIMESTAMP
+	 */
+	public long getMaxTimestamp(int block) {
+		return maxTimestamps[block];
+	}
+
+	/**
+	 * @return the number of checkpoints in the index
+	 */
+	public int getBlockCount() {
+		return blocks;
+	}
+
+	/**
+	 * Read a saved index, leaving this index empty if the saved index does not
+	 * fit the log.
+	 */
+	private void load(File indexFile) throws IOException {
+		if(!indexFile.exists() || indexFile.length() < HEADER_SIZE) {
+			return;
+		}
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(indexFile.toPath())) {
+			buffer = ByteBuffer.allocate((int) channel.size());
+			while(buffer.hasRemaining() && channel.read(buffer) >= 0) {
+			}
+		}
+		buffer.flip();
+		if(buffer.remaining() < HEADER_SIZE || buffer.getLong() != MAGIC || buffer.getInt() != interval) {
+			return;
+		}
+		buffer.getInt();
+		long length = buffer.getLong();
+		long lines = buffer.getLong();
+		int count = (int) ((lines + interval - 1) / interval);
+		if(length > logFile.length() || buffer.remaining() < count * BLOCK_SIZE || !endsLine(length)) {
+			// The log has been replaced, so index it again.
+			return;
+		}
+		ensureCapacity(count);
+		for(int i = 0; i < count; i++) {
+			offsets[i] = buffer.getLong();
+			minTimestamps[i] = buffer.getLong();
+			maxTimestamps[i] = buffer.getLong();
+		}
+		blocks = count;
+		indexedLength = length;
+		indexedLines = lines;
+	}
+
+	/**
+	 * @return true if the log has a new line just before the offset.
+	 */
+	private boolean endsLine(long offset) throws IOException {
+		if(offset == 0L) {
+			return true;
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(logFile, "r")) {
+			raf.seek(offset - 1L);
+			return raf.read() == '\n';
+		}
+	}
+
+	/**
+	 * Index the complete lines written after the indexed length.
+	 * @return the first block that was changed, or -1 if there were no new lines
+	 */
+	private int extend() throws IOException {
+		long length = logFile.length();
+		if(length <= indexedLength) {
+			return -1;
+		}
+		int firstChangedBlock = -1;
+		byte[] buffer = new byte[BUFFER_SIZE];
+		byte[] lineHead = new byte[TIMESTAMP_LENGTH];
+		int headLength = 0;
+		long offset = indexedLength;
+		long lineStart = indexedLength;
+		try (FileInputStream in = new FileInputStream(logFile)) {
+			in.getChannel().position(indexedLength);
+			int read;
+			while(offset < length && (read = in.read(buffer, 0, (int) Math.min(buffer.length, length - offset))) > 0) {
+				for(int i = 0; i < read; i++) {
+					byte b = buffer[i];
+					if(b == '\n') {
+						int block = (int) (indexedLines / interval);
+						if(block == blocks) {
+							ensureCapacity(blocks + 1);
+							offsets[block] = lineStart;
+							minTimestamps[block] = NO_TIMESTAMP;
+							maxTimestamps[block] = NO_TIMESTAMP;
+							blocks++;
+						}
+						if(firstChangedBlock < 0) {
+							firstChangedBlock = block;
+						}
+						long timestamp = parseTimestamp(lineHead, headLength);
+						if(timestamp != NO_TIMESTAMP) {
+							if(minTimestamps[block] == NO_TIMESTAMP || timestamp < minTimestamps[block]) {
+								minTimestamps[block] = timestamp;
+							}
+							if(timestamp > maxTimestamps[block]) {
+								maxTimestamps[block] = timestamp;
+							}
+						}
+						indexedLines++;
+						lineStart = offset + i + 1L;
+						headLength = 0;
+					}
+					else if(headLength < TIMESTAMP_LENGTH) {
+						lineHead[headLength++] = b;
+					}
+				}
+				offset += read;
+			}
+		}
+		// A final line without a new line may still be being written.
+		indexedLength = lineStart;
+		return firstChangedBlock;
+	}
+
+	/**
+	 * Write the header and the blocks from the first changed block onwards.
+	 */
+	private void save(File indexFile, int firstChangedBlock) throws IOException {
+		LogIndexFiles.createParentDirectory(indexFile);
+		try (RandomAccessFile raf = new RandomAccessFile(indexFile, "rw");
+				FileChannel channel = raf.getChannel()) {
+			if(raf.length() < HEADER_SIZE + (long) firstChangedBlock * BLOCK_SIZE) {
+				firstChangedBlock = 0;
+			}
+			ByteBuffer buffer = ByteBuffer.allocate((blocks - firstChangedBlock) * BLOCK_SIZE);
+			for(int i = firstChangedBlock; i < blocks; i++) {
+				buffer.putLong(offsets[i]).putLong(minTimestamps[i]).putLong(maxTimestamps[i]);
+			}
+			buffer.flip();
+			channel.write(buffer, HEADER_SIZE + (long) firstChangedBlock * BLOCK_SIZE);
+			raf.setLength(HEADER_SIZE + (long) blocks * BLOCK_SIZE);
+
+			// Write the header last so an interrupted save leaves the old lines indexed.
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putLong(MAGIC).putInt(interval).putInt(0).putLong(indexedLength).putLong(indexedLines);
+			header.flip();
+			channel.write(header, 0L);
+		}
+	}
+
+	private void ensureCapacity(int count) {
+		if(count > offsets.length) {
+			int size = Math.max(count, offsets.length * 2);
+			offsets = Arrays.copyOf(offsets, size);
+			minTimestamps = Arrays.copyOf(minTimestamps, size);
+			maxTimestamps = Arrays.copyOf(maxTimestamps, size);
+		}
+	}
+
+	/**
+	 * Parse the timestamp at the start of a line, in either the crawl.log
+	 * yyyy-MM-ddTHH:mm:ss form or the yyyyMMddHHmmss form.
+	 * @param head the first bytes of the line
+	 * @param length the number of bytes of the line in head
+	 * @return the timestamp as a yyyyMMddHHmmss number, or NO_TIMESTAMP
+	 */
+	static long parseTimestamp(byte[] head, int length) {
+		if(length >= TIMESTAMP_LENGTH && head[4] == '-' && head[7] == '-' && head[10] == 'T'
+				&& head[13] == ':' && head[16] == ':') {
+			long timestamp = 0L;
+			for(int i = 0; i < TIMESTAMP_LENGTH; i++) {
+				if(i == 4 || i == 7 || i == 10 || i == 13 || i == 16) {
+					continue;
+				}
+				if(head[i] < '0' || head[i] > '9') {
+					return NO_TIMESTAMP;
+				}
+				timestamp = timestamp * 10 + (head[i] - '0');
+			}
+			return timestamp;
+		}
+		if(length >= 14) {
+			long timestamp = 0L;
+			for(int i = 0; i < 14; i++) {
+				if(head[i] < '0' || head[i] > '9') {
+					return NO_TIMESTAMP;
+				}
+				timestamp = timestamp * 10 + (head[i] - '0');
+			}
+			return timestamp;
+		}
+		return NO_TIMESTAMP;
+	}
+}
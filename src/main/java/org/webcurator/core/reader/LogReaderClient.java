@@ -55,7 +55,7 @@ public class LogReaderClient extends AbstractRestClient implements LogReader {
      * @see org.webcurator.core.reader.LogReader#listLogFiles(java.lang.String)
      */
     public List<String> listLogFiles(String job) {
-        RestTemplate restTemplate = restTemplateBuilder.build();
+        RestTemplate restTemplate = getRestTemplate();
         ResponseEntity<List<String>> listResponse = restTemplate.exchange(getUrl(LogReaderPaths.LOG_FILE),
                 HttpMethod.GET, null, new ParameterizedTypeReference<List<String>>() { });
         List<String> logFiles = listResponse.getBody();
@@ -70,7 +70,7 @@ public class LogReaderClient extends AbstractRestClient implements LogReader {
         Map<String, String> pathVariables = ImmutableMap.of("job", job);
         UriComponentsBuilder uriComponentsBuilder = UriComponentsBuilder.fromHttpUrl(getUrl(LogReaderPaths.LOG_FILE_PROPERTIES));
 
-        RestTemplate restTemplate = restTemplateBuilder.build();
+        RestTemplate restTemplate = getRestTemplate();
 
         ResponseEntity<List<LogFilePropertiesDTO>> listResponse = restTemplate.exchange(
                 uriComponentsBuilder.buildAndExpand(pathVariables).toUriString(),
@@ -95,7 +95,7 @@ public class LogReaderClient extends AbstractRestClient implements LogReader {
      * @see org.webcurator.core.reader.LogReader#countLines(java.lang.String, java.lang.String)
      */
     public Integer countLines(String job, String filename) {
-        RestTemplate restTemplate = restTemplateBuilder.build();
+        RestTemplate restTemplate = getRestTemplate();
 
         UriComponentsBuilder uriComponentsBuilder = UriComponentsBuilder.fromHttpUrl(getUrl(LogReaderPaths.LOG_FILE_LINE_COUNT))
                 .queryParam("filename", filename);
@@ -111,7 +111,7 @@ public class LogReaderClient extends AbstractRestClient implements LogReader {
      * @see org.webcurator.core.reader.LogReader#get(java.lang.String, java.lang.String, int, int)
      */
     public List<String> get(String job, String filename, int startLine, int numberOfLines) {
-        RestTemplate restTemplate = restTemplateBuilder.build();
+        RestTemplate restTemplate = getRestTemplate();
         UriComponentsBuilder uriComponentsBuilder = UriComponentsBuilder.fromHttpUrl(getUrl(LogReaderPaths.LOG_FILE_JOB))
                 .queryParam("filename", filename)
                 .queryParam("start-line", startLine)
@@ -142,7 +142,7 @@ public class LogReaderClient extends AbstractRestClient implements LogReader {
      * @see LogReader#findFirstLineBeginning(String, String, String). 
      */
     public Integer findFirstLineBeginning(String job, String filename, String match) {
-        RestTemplate restTemplate = restTemplateBuilder.build();
+        RestTemplate restTemplate = getRestTemplate();
 
         UriComponentsBuilder uriComponentsBuilder = UriComponentsBuilder.fromHttpUrl(getUrl(LogReaderPaths.LOG_FILE_FIRST_LINE_BEGINNING))
                 .queryParam("filename", filename)
@@ -159,7 +159,7 @@ public class LogReaderClient extends AbstractRestClient implements LogReader {
      * @see LogReader#findFirstLineContaining(String, String, String). 
      */
     public Integer findFirstLineContaining(String job, String filename, String match) {
-        RestTemplate restTemplate = restTemplateBuilder.build();
+        RestTemplate restTemplate = getRestTemplate();
 
         UriComponentsBuilder uriComponentsBuilder = UriComponentsBuilder.fromHttpUrl(getUrl(LogReaderPaths.LOG_FILE_FIRST_LINE_CONTAINING_MATCH))
                 .queryParam("filename", filename)
@@ -176,7 +176,7 @@ public class LogReaderClient extends AbstractRestClient implements LogReader {
      * @see LogReader#findFirstLineAfterTimeStamp(String, String, Long). 
      */
     public Integer findFirstLineAfterTimeStamp(String job, String filename, Long timestamp) {
-        RestTemplate restTemplate = restTemplateBuilder.build();
+        RestTemplate restTemplate = getRestTemplate();
 
         UriComponentsBuilder uriComponentsBuilder = UriComponentsBuilder.fromHttpUrl(getUrl(LogReaderPaths.LOG_FILE_FIRST_LINE_AFTER_TIMESTAMP))
                 .queryParam("filename", filename)
@@ -206,7 +206,7 @@ public class LogReaderClient extends AbstractRestClient implements LogReader {
     }
 
     private List<String> getStringList(String job, UriComponentsBuilder uriComponentsBuilder) {
-        RestTemplate restTemplate = restTemplateBuilder.build();
+        RestTemplate restTemplate = getRestTemplate();
 
         Map<String, String> pathVariables = ImmutableMap.of("job", job);
         ResponseEntity<List<String>> listResponse = restTemplate.exchange(
@@ -19,6 +19,9 @@ import java.io.*;
 import java.util.*;
 import java.util.regex.Pattern;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
 import org.webcurator.domain.model.core.LogFilePropertiesDTO;
 
 /** 
@@ -27,8 +30,14 @@ import org.webcurator.domain.model.core.LogFilePropertiesDTO;
  * @author nwaight
  */
 public class LogReaderImpl implements LogReader {
+	private static Log log = LogFactory.getLog(LogReaderImpl.class);
+
 	/** the log provider to delegate to. */
 	private LogProvider logProvider;
+	/** the directory the indexes of the logs are kept in, or null for the default. */
+	private File indexDirectory;
+	/** the limit on the total size of the indexes in the index directory. */
+	private long maxIndexSize = LogIndexFiles.DEFAULT_MAX_INDEX_SIZE;
 	
 	/** @see LogReader#listLogFiles(String). */
 	public List<String> listLogFiles(String job) {
@@ -47,12 +56,9 @@ public class LogReaderImpl implements LogReader {
 
 		File logFile = logProvider.getLogFile(job, filename);
 		if (logFile != null) {
+			sweepIndexes();
 	        try{
-	            BufferedReader bf = new BufferedReader(new FileReader(logFile), 8192);
-
-	            while (bf.readLine() != null){
-	            	count++;
-	            }
+	            count = (int) LogLineIndex.open(logFile, indexDirectory).countLines();
 	        } catch(IOException e){
 	            e.printStackTrace();
 	            return null;
@@ -82,7 +88,8 @@ public class LogReaderImpl implements LogReader {
 
 		File logFile = logProvider.getLogFile(job, filename);
 		if (logFile != null) {
-			theLines = Utils.get(logFile.toString(), startLine, numberOfLines);
+			sweepIndexes();
+			theLines = Utils.get(logFile.toString(), startLine, numberOfLines, indexDirectory);
 		} else {
 		    theLines = Arrays.asList("");
         }
@@ -95,71 +102,81 @@ public class LogReaderImpl implements LogReader {
 		
 		File logFile = logProvider.getLogFile(job, filename);
 		List<String> hopPaths = new ArrayList<>();
+		if (logFile == null) {
+			return hopPaths;
+		}
 
-		searchForUrl(logFile, resultOid, url, hopPaths);
+		// Each hop is found through the URL index of the log, falling back to a 
+		// scan of the log if the index cannot be built.
+		sweepIndexes();
+		CrawlLogUrlIndex index = null;
+		try {
+			index = CrawlLogUrlIndex.open(logFile, indexDirectory);
+		} catch (IOException e) {
+			log.warn("Could not open the URL index of " + logFile.getAbsolutePath() + ", scanning the log instead: " + e.getMessage());
+		}
+
+		try {
+			searchForUrl(logFile, index, resultOid, url, hopPaths);
+		} finally {
+			if (index != null) {
+				try {
+					index.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
 
 		Collections.reverse(hopPaths);
 
 		return hopPaths;
 	}
 
-	private void searchForUrl(File theFile, String resultOid, String theUrl, List<String> resultsList) {
-
-        String inLine = null;
-        String referrer = null;
-        boolean foundLast = false;
-    	boolean foundUrl = false;
+	private void searchForUrl(File theFile, CrawlLogUrlIndex index, String resultOid, String theUrl, List<String> resultsList) {
 
+		// Stop if a referrer loops back to a URL already on the path.
+		Set<String> visited = new HashSet<>();
+		String nextUrl = theUrl;
 
-        BufferedReader inputStream;
 		try {
-			inputStream = new BufferedReader(new FileReader(theFile.getAbsolutePath()));
-		} catch (FileNotFoundException e1) {
-			e1.printStackTrace();
-			return;
-		}
-
-    	try {
-        
-    		while ((inLine = inputStream.readLine()) != null) {
-            	String [] columns = inLine.split(" ");
-            	String dateTime = columns[0];
-            	String url = columns[3];
-            	if (url.equalsIgnoreCase(theUrl)) {
-            		foundUrl = true;
-            		String paths = columns[4];
-            		String lastPathChar = paths.substring(paths.length()-1);
-            		String liveSite = "<a href='" + url + "' target='_blank'><b><u>Live Site</u></b></a>";
-                    String browseTool = "<a href='curator/tools/browse/" + resultOid + "/" + url +
-                            "' target='_blank'><b><u>Browse Tool</u></b></a>";
-                    resultsList.add(browseTool + " " + liveSite + " " + dateTime.substring(0, 10) + " " +
-                            dateTime.substring(11, 16) + " " + lastPathChar + " " + url + "\r");
-            		if (lastPathChar.equals("-")) {
-            			foundLast = true;
-            			break;
-            		}
-            		else {
-            			referrer = columns[5];
-            			break;
-            		}
-            	}
-            }
-
-        } catch (IOException e) {
-            e.printStackTrace();
-            return;
-        }
-
-       	try {
-			inputStream.close();
+			while (nextUrl != null && visited.add(nextUrl.toLowerCase())) {
+				String inLine = index != null ? index.findLine(nextUrl) : scanForUrl(theFile, nextUrl);
+				if (inLine == null) {
+					break;
+				}
+				String [] columns = inLine.split(" ");
+				String dateTime = columns[0];
+				String url = columns[3];
+				String paths = columns[4];
+				String lastPathChar = paths.substring(paths.length()-1);
+				String liveSite = "<a href='" + url + "' target='_blank'><b><u>Live Site</u></b></a>";
+				String browseTool = "<a href='curator/tools/browse/" + resultOid + "/" + url +
+						"' target='_blank'><b><u>Browse Tool</u></b></a>";
+				resultsList.add(browseTool + " " + liveSite + " " + dateTime.substring(0, 10) + " " +
+						dateTime.substring(11, 16) + " " + lastPathChar + " " + url + "\r");
+				nextUrl = lastPathChar.equals("-") ? null : columns[5];
+			}
 		} catch (IOException e) {
 			e.printStackTrace();
-            return;
 		}
-		
-		if (foundUrl && !foundLast) {
-			searchForUrl(theFile, resultOid, referrer, resultsList);
+	}
+
+	/**
+	 * Scan the log for the first line with the URL, ignoring case.
+	 * @return the line, or null if the URL is not in the log
+	 */
+	private String scanForUrl(File theFile, String theUrl) throws IOException {
+		try (BufferedReader inputStream = new BufferedReader(new FileReader(theFile.getAbsolutePath()))) {
+			String inLine;
+			while ((inLine = inputStream.readLine()) != null) {
+				String [] columns = inLine.split(" ");
+				if (columns[3].equalsIgnoreCase(theUrl)) {
+					return inLine;
+				}
+			}
 		}
+		return null;
 	}
 
 	/** @see LogReader#getByRegularExpression(String, String, String, String, boolean, int, int). */
@@ -225,7 +242,20 @@ public class LogReaderImpl implements LogReader {
 		{
 			File logFile = logProvider.getLogFile(job, filename);
 			if (logFile != null) {
-				line = findFirstLineAfterTimeStamp(new FileReader(logFile), timestamp);
+				// Only the lines from the first block holding a later timestamp 
+				// need to be read.
+				sweepIndexes();
+				LogLineIndex index = LogLineIndex.open(logFile, indexDirectory);
+				int block = index.findBlockAfterTimeStamp(timestamp);
+				long offset = block < 0 ? index.getIndexedLength() : index.getBlockOffset(block);
+				long firstLine = block < 0 ? index.getIndexedLines() + 1 : index.getBlockFirstLine(block);
+				try (FileInputStream in = new FileInputStream(logFile)) {
+					in.getChannel().position(offset);
+					line = findFirstLineAfterTimeStamp(new InputStreamReader(in), timestamp);
+				}
+				if (line > 0) {
+					line = (int) (line + firstLine - 1);
+				}
 			}
 		}
 		catch(IOException e)
@@ -244,6 +274,31 @@ public class LogReaderImpl implements LogReader {
 		this.logProvider = logProvider;
 	}
 
+	/**
+	 * @param indexDirectory the directory the indexes of the logs are kept in; 
+	 * LogIndexFiles.DEFAULT_INDEX_DIRECTORY is used if not set.
+	 */
+	public void setIndexDirectory(String indexDirectory) {
+		this.indexDirectory = indexDirectory == null ? null : new File(indexDirectory);
+	}
+
+	/**
+	 * @param maxIndexSize the limit, in bytes, on the total size of the indexes 
+	 * in the index directory; the least recently used indexes are deleted when 
+	 * it is exceeded. LogIndexFiles.DEFAULT_MAX_INDEX_SIZE is used if not set.
+	 */
+	public void setMaxIndexSize(long maxIndexSize) {
+		this.maxIndexSize = maxIndexSize;
+	}
+
+	/**
+	 * Delete the indexes of purged logs and the least recently used indexes 
+	 * if the index directory has not been swept recently.
+	 */
+	private void sweepIndexes() {
+		LogIndexFiles.sweepIfDue(indexDirectory, maxIndexSize);
+	}
+
 	public File retrieveLogfile(String job, String filename) {
 		File logFile = logProvider.getLogFile(job, filename);
 		return logFile;
@@ -0,0 +1,449 @@
+/*
+ *  Copyright 2006 The National Library of New Zealand
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.webcurator.core.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Searches a log file for the lines that match a regular expression, with the
+ * same results as Utils.getByRegularExpression over a reader.
+ * <p>
+ * The file is memory mapped in segments that end on a new line, and the
+ * segments are scanned in parallel. Where the expression requires a literal
+ * string, lines that do not contain it are skipped without being decoded or
+ * matched. The matches of each segment are merged in line order as they
+ * complete and passed to a consumer, and no further segments are scanned
+ * once the requested number of matches has been found.
+ */
+public class LogSearcher {
+	/** The default approximate size of a segment. */
+	public static final int DEFAULT_SEGMENT_SIZE = 32 * 1024 * 1024;
+
+	/** The escapes that stand for a single character class or boundary. */
+	private static final String SINGLE_CHARACTER_ESCAPES = "dDsSwWbBhHvVRXtnrfeaAzZG";
+
+	private final int segmentSize;
+	private final int threads;
+	private final Charset charset;
+
+	/**
+	 * Create a searcher with the default segment size, a thread per processor
+	 * and the platform charset.
+	 */
+	public LogSearcher() {
+		this(DEFAULT_SEGMENT_SIZE, Runtime.getRuntime().availableProcessors(), Charset.defaultCharset());
+	}
+
+	/**
+	 * @param segmentSize the approximate size of a segment in bytes
+	 * @param threads the number of segments scanned in parallel
+	 * @param charset the charset of the log
+	 */
+	public LogSearcher(int segmentSize, int threads, Charset charset) {
+		this.segmentSize = Math.max(1, segmentSize);
+		this.threads = Math.max(1, threads);
+		this.charset = charset;
+	}
+
+	/**
+	 * A line found by the scan of a segment.
+	 */
+	private static final class Found {
+		/** The line number within the segment, counting from 0. */
+		final int line;
+		final String text;
+		/** True if the line matched, false if it may continue a match. */
+		final boolean match;
+
+		Found(int line, String text, boolean match) {
+			this.line = line;
+			this.text = text;
+			this.match = match;
+		}
+	}
+
+	/**
+	 * The lines found in a segment and the number of lines in the segment.
+	 */
+	private static final class SegmentResult {
+		final List<Found> found = new ArrayList<Found>();
+		int lines;
+	}
+
+	/**
+	 * Search the log, passing each matching line to the consumer in line order.
+	 * @param file the log
+	 * @param regularExpression the expression each whole line is matched against
+	 * @param addLines lines following a match that begin with this string are also passed
+	 * @param prependLineNumbers true to prefix each line with its line number
+	 * @param skipFirstMatches the number of matches to skip over
+	 * @param numberOfMatches the number of matches to pass once past those skipped, or 0 for all of them
+	 * @param consumer the consumer of the lines, without their new lines
+	 * @throws IOException thrown if the log cannot be read
+	 * @throws java.util.regex.PatternSyntaxException thrown if the expression is invalid
+	 */
+	public void search(File file, String regularExpression, String addLines, boolean prependLineNumbers,
+			int skipFirstMatches, int numberOfMatches, Consumer<String> consumer) throws IOException {
+		Pattern pattern = Pattern.compile(regularExpression);
+		String literal = requiredLiteral(regularExpression);
+		byte[] literalBytes = literal != null && isAsciiCompatible(charset) ? literal.getBytes(charset) : null;
+
+		ExecutorService executor = null;
+		Deque<Future<SegmentResult>> pending = new ArrayDeque<Future<SegmentResult>>();
+		try (FileChannel channel = FileChannel.open(file.toPath())) {
+			long length = channel.size();
+			if(length > segmentSize && threads > 1) {
+				executor = Executors.newFixedThreadPool(threads);
+			}
+
+			Merger merger = new Merger(addLines, prependLineNumbers, skipFirstMatches, numberOfMatches, consumer);
+			long start = 0L;
+			while(!merger.done && (start < length || !pending.isEmpty())) {
+				// Keep a couple of segments per thread queued ahead of the merge.
+				while(start < length && pending.size() < threads * 2) {
+					long end = segmentEnd(channel, start, length);
+					final long segmentStart = start;
+					if(executor != null) {
+						pending.add(executor.submit(() -> scanSegment(channel, segmentStart, end, pattern, literal, literalBytes, addLines)));
+					}
+					else {
+						merger.merge(scanSegment(channel, segmentStart, end, pattern, literal, literalBytes, addLines));
+					}
+					start = end;
+					if(merger.done) {
+						break;
+					}
+				}
+				if(!pending.isEmpty() && !merger.done) {
+					merger.merge(await(pending.poll()));
+				}
+			}
+		}
+		finally {
+			for(Future<SegmentResult> future: pending) {
+				future.cancel(true);
+			}
+			if(executor != null) {
+				executor.shutdownNow();
+			}
+		}
+	}
+
+	/**
+	 * Applies the matching rules of Utils.getByRegularExpression to the lines
+	 * found in each segment, in segment order.
+	 */
+	private static final class Merger {
+		private final String addLines;
+		private final boolean prependLineNumbers;
+		private final int skipFirstMatches;
+		private final int numberOfMatches;
+		private final Consumer<String> consumer;
+		private long linesBefore = 0L;
+		private long lastLine = 0L;
+		private long linesMatched = 0L;
+		private boolean doAdd = false;
+		boolean done = false;
+
+		Merger(String addLines, boolean prependLineNumbers, int skipFirstMatches, int numberOfMatches, Consumer<String> consumer) {
+			this.addLines = addLines;
+			this.prependLineNumbers = prependLineNumbers;
+			this.skipFirstMatches = skipFirstMatches;
+			this.numberOfMatches = numberOfMatches;
+			this.consumer = consumer;
+		}
+
+		void merge(SegmentResult result) {
+			for(Found found: result.found) {
+				long lineNumber = linesBefore + found.line + 1L;
+				if(lineNumber != lastLine + 1L) {
+					// The lines in between neither matched nor continued a match.
+					doAdd = false;
+				}
+				lastLine = lineNumber;
+				if(found.match) {
+					if(numberOfMatches > 0 && linesMatched >= skipFirstMatches + numberOfMatches) {
+						done = true;
+						return;
+					}
+					linesMatched++;
+					if(linesMatched > skipFirstMatches) {
+						add(lineNumber, found.text);
+						doAdd = true;
+					}
+				}
+				else if(doAdd && addLines != null) {
+					linesMatched++;
+					add(lineNumber, found.text);
+				}
+			}
+			linesBefore += result.lines;
+			if(numberOfMatches > 0 && linesMatched >= skipFirstMatches + numberOfMatches
+					&& (!doAdd || lastLine != linesBefore)) {
+				// Only lines continuing the last match could still be added.
+				done = true;
+			}
+		}
+
+		private void add(long lineNumber, String line) {
+			consumer.accept(prependLineNumbers ? lineNumber + ". " + line : line);
+		}
+	}
+
+	/**
+	 * Scan a segment for the lines that match, and the lines that begin with
+	 * addLines that follow a match or start the segment.
+	 */
+	private SegmentResult scanSegment(FileChannel channel, long start, long end,
+			Pattern pattern, String literal, byte[] literalBytes, String addLines) throws IOException {
+		SegmentResult result = new SegmentResult();
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+		Matcher matcher = pattern.matcher("");
+		int size = buffer.limit();
+		int lineStart = 0;
+		// A segment may start with the continuation of a match in the previous segment.
+		boolean continuing = true;
+		while(lineStart < size) {
+			if(Thread.currentThread().isInterrupted()) {
+				return result;
+			}
+			int lineEnd = indexOf(buffer, (byte) '\n', lineStart, size);
+			int next = lineEnd < 0 ? size : lineEnd + 1;
+			int textEnd = lineEnd < 0 ? size : lineEnd;
+			if(textEnd > lineStart && buffer.get(textEnd - 1) == '\r') {
+				textEnd--;
+			}
+
+			String text = null;
+			boolean match = false;
+			if(literalBytes == null || indexOf(buffer, literalBytes, lineStart, textEnd) >= 0) {
+				text = decode(buffer, lineStart, textEnd);
+				match = (literalBytes != null || literal == null || text.contains(literal)) && matcher.reset(text).matches();
+			}
+			if(match) {
+				result.found.add(new Found(result.lines, text, true));
+				continuing = true;
+			}
+			else if(continuing && addLines != null) {
+				if(text == null) {
+					text = decode(buffer, lineStart, textEnd);
+				}
+				continuing = text.startsWith(addLines);
+				if(continuing) {
+					result.found.add(new Found(result.lines, text, false));
+				}
+			}
+			else {
+				continuing = false;
+			}
+			result.lines++;
+			lineStart = next;
+		}
+		return result;
+	}
+
+	private String decode(ByteBuffer buffer, int start, int end) {
+		byte[] bytes = new byte[end - start];
+		for(int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(start + i);
+		}
+		return new String(bytes, charset);
+	}
+
+	private static int indexOf(ByteBuffer buffer, byte b, int from, int to) {
+		for(int i = from; i < to; i++) {
+			if(buffer.get(i) == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int indexOf(ByteBuffer buffer, byte[] target, int from, int to) {
+		int last = to - target.length;
+		byte first = target[0];
+		for(int i = from; i <= last; i++) {
+			if(buffer.get(i) != first) {
+				continue;
+			}
+			int j = 1;
+			while(j < target.length && buffer.get(i + j) == target[j]) {
+				j++;
+			}
+			if(j == target.length) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the offset just after the first new line at or after start plus
+	 * the segment size, or the length of the file.
+	 */
+	private long segmentEnd(FileChannel channel, long start, long length) throws IOException {
+		long position = start + segmentSize;
+		ByteBuffer buffer = ByteBuffer.allocate(8192);
+		while(position < length) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if(read <= 0) {
+				break;
+			}
+			for(int i = 0; i < read; i++) {
+				if(buffer.get(i) == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+		return length;
+	}
+
+	private static SegmentResult await(Future<SegmentResult> future) throws IOException {
+		try {
+			return future.get();
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while searching the log", e);
+		}
+		catch(ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException("Could not search the log", cause);
+		}
+	}
+
+	/**
+	 * A literal search is only safe on the encoded bytes if the charset
+	 * encodes each character the same way wherever it appears.
+	 */
+	private static boolean isAsciiCompatible(Charset charset) {
+		return charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.ISO_8859_1)
+				|| charset.equals(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Find the longest string that every line matching the expression must
+	 * contain. Only literal text outside groups, character classes and the
+	 * bounds of {n,m} quantifiers is considered, and expressions with
+	 * alternation, embedded flags or escapes that carry a payload (such as
+	 * \x41 or \p{L}) have no required literal.
+	 * @param regularExpression the expression
+	 * @return the literal, or null if none was found
+	 */
+	static String requiredLiteral(String regularExpression) {
+		if(regularExpression.indexOf('|') >= 0 || regularExpression.contains("(?")) {
+			return null;
+		}
+		String best = "";
+		StringBuilder run = new StringBuilder();
+		int depth = 0;
+		int length = regularExpression.length();
+		for(int i = 0; i < length; i++) {
+			char c = regularExpression.charAt(i);
+			Character literal = null;
+			if(c == '\\') {
+				if(i + 1 >= length) {
+					return null;
+				}
+				char escaped = regularExpression.charAt(++i);
+				if(escaped == 'Q') {
+					// Quoted text is never a literal run here; keep it simple.
+					return best.isEmpty() ? null : best;
+				}
+				if(!Character.isLetterOrDigit(escaped)) {
+					literal = escaped;
+				}
+				else if(SINGLE_CHARACTER_ESCAPES.indexOf(escaped) < 0) {
+					// Escapes such as \x41, \u0041, \0101, \cJ, \p{L} and back
+					// references carry a payload that is not literal text.
+					return null;
+				}
+			}
+			else if(c == '[') {
+				// Skip the character class, which may contain an escaped ].
+				for(i++; i < length && regularExpression.charAt(i) != ']'; i++) {
+					if(regularExpression.charAt(i) == '\\') {
+						i++;
+					}
+				}
+			}
+			else if(c == '{') {
+				// Skip the bounds of the quantifier, which are not literal text.
+				i = regularExpression.indexOf('}', i);
+				if(i < 0) {
+					return null;
+				}
+			}
+			else if(c == '(') {
+				depth++;
+			}
+			else if(c == ')') {
+				depth--;
+			}
+			else if(".^$*+?}".indexOf(c) < 0) {
+				literal = c;
+			}
+
+			if(literal != null && depth == 0) {
+				char following = i + 1 < length ? regularExpression.charAt(i + 1) : 0;
+				if(following == '*' || following == '?' || following == '{') {
+					// The character is optional or repeated, so the run ends before it.
+					best = longer(best, run);
+					run.setLength(0);
+				}
+				else {
+					run.append(literal.charValue());
+					if(following == '+') {
+						best = longer(best, run);
+						run.setLength(0);
+					}
+				}
+			}
+			else {
+				best = longer(best, run);
+				run.setLength(0);
+			}
+		}
+		best = longer(best, run);
+		return best.isEmpty() ? null : best;
+	}
+
+	private static String longer(String best, StringBuilder run) {
+		return run.length() > best.length() ? run.toString() : best;
+	}
+}
@@ -165,13 +165,41 @@ public class Utils {
      *         Null is returned if errors occur (file not found or io exception)
      */
     public static List<String> get(String aFileName, int lineNumber, int n) {
+        return get(aFileName, lineNumber, n, null);
+    }
+
+    /**
+     * Gets a portion of a log file, reading from the checkpoint of the line
+     * held in the line index of the log.
+     *
+     * @param aFileName The filename of the log/file
+     * @param lineNumber The number of the first line to get
+     * @param n How many lines to return
+     * @param indexDirectory The directory the line index of the log is kept
+     *                   in, or null to use the default
+     *
+     * @return the portion of the file and the informational string, as for
+     *         get(String, int, int)
+     */
+    public static List<String> get(String aFileName, int lineNumber, int n, File indexDirectory) {
         File f = new File(aFileName);
         long logsize = f.length();
         try {
-            return get(new FileReader(aFileName),lineNumber,n,logsize);
+            // Start reading at the checkpoint of the line rather than the
+            // start of the log.
+            LogLineIndex index = LogLineIndex.open(f, indexDirectory);
+            int block = index.getBlock(lineNumber);
+            long firstLine = index.getBlockFirstLine(block);
+            try (FileInputStream in = new FileInputStream(f)) {
+                in.getChannel().position(index.getBlockOffset(block));
+                return get(new InputStreamReader(in), (int) (lineNumber - firstLine + 1), n, logsize);
+            }
         } catch (FileNotFoundException e) {
             e.printStackTrace();
             return new ArrayList<>();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
         }
     }
 
@@ -255,20 +283,23 @@ public class Utils {
                                                       boolean prependLineNumbers,
                                                       int skipFirstMatches,
                                                       int numberOfMatches) {
+        File f = new File(filename);
+        if (!f.exists()) {
+            return new ArrayList<>();
+        }
+        // The log is searched in parallel; the matching lines are appended
+        // in line order as each segment is merged.
+        final StringBuilder ret = new StringBuilder();
         try {
-            File f = new File(filename);
-            return getByRegularExpression(
-                    new FileReader(f),
-                    regularExpression,
-                    addLines,
-                    prependLineNumbers,
-                    skipFirstMatches,
-                    numberOfMatches,
-                    f.length());
-        } catch (FileNotFoundException e) {
+            new LogSearcher().search(f, regularExpression, addLines, prependLineNumbers,
+                    skipFirstMatches, numberOfMatches, line -> ret.append(line).append('\n'));
+        } catch (IOException e) {
             e.printStackTrace();
             return new ArrayList<>();
+        } catch (PatternSyntaxException e) {
+            return Arrays.asList(e.getMessage(), "");
         }
+        return Arrays.asList(ret.toString(), buildDisplayingHeader(ret.length(), f.length()));
     }
 
     /**
@@ -1,14 +1,15 @@
 package org.webcurator.core.rest;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.web.client.RestTemplate;
 
+import java.net.URI;
 import java.time.Duration;
 
 abstract public class AbstractRestClient {
@@ -29,6 +30,10 @@ abstract public class AbstractRestClient {
 
     protected final RestTemplateBuilder restTemplateBuilder;
 
+    /**
+     * the RestTemplate shared by the requests of the client, built on first use.
+     */
+    private volatile RestTemplate restTemplate;
 
     public AbstractRestClient(String scheme, String host, int port, RestTemplateBuilder restTemplateBuilder) {
         this.scheme = scheme;
@@ -39,6 +44,25 @@ abstract public class AbstractRestClient {
                 .setConnectTimeout(Duration.ofSeconds(15L));
     }
 
+    /**
+     * Get the RestTemplate used to send requests. A RestTemplate is thread
+     * safe, so one is built for the client and reused, along with any
+     * connections held by its request factory.
+     */
+    protected RestTemplate getRestTemplate() {
+        RestTemplate template = restTemplate;
+        if (template == null) {
+            synchronized (this) {
+                template = restTemplate;
+                if (template == null) {
+                    template = restTemplateBuilder.build();
+                    restTemplate = template;
+                }
+            }
+        }
+        return template;
+    }
+
     public String baseUrl() {
         return String.format("%s://%s:%d", scheme, host, port);
     }
@@ -73,10 +97,9 @@ abstract public class AbstractRestClient {
     }
 
     public String encode2json(Object objRequest) {
-        ObjectMapper objectMapper = new ObjectMapper();
         String jsonRequest = null;
         try {
-            jsonRequest = objectMapper.writeValueAsString(objRequest);
+            jsonRequest = JsonMapperRegistry.toJson(objRequest);
             log.debug(jsonRequest);
         } catch (JsonProcessingException e) {
             log.error("Encode json failed", e);
@@ -86,6 +109,15 @@ abstract public class AbstractRestClient {
         return jsonRequest.toString();
     }
 
+    /**
+     * Post an object as JSON, streaming it into the request body rather than
+     * encoding it as a String first.
+     * @see JsonMapperRegistry#postJson(RestTemplate, URI, Object, Class)
+     */
+    protected <T> T postJson(URI uri, Object objRequest, Class<T> responseType) throws JsonProcessingException {
+        return JsonMapperRegistry.postJson(getRestTemplate(), uri, objRequest, responseType);
+    }
+
     public String toString() {
         return String.format("%s@%s",this.getClass().getName(), this.baseUrl());
     }
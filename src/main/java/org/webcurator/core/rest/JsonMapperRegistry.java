@@ -0,0 +1,125 @@
+package org.webcurator.core.rest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.client.HttpMessageConverterExtractor;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * The ObjectMapper shared by the REST clients to encode their requests as
+ * JSON, with an ObjectWriter cached for each type written.
+ *
+ * An ObjectMapper is expensive to create, as it builds its serializers on
+ * first use, but is thread safe once configured, so one is created and kept
+ * here. It is configured in the same way as a new ObjectMapper, so the JSON
+ * sent does not change.
+ *
+ * Large requests can be streamed into the request body with postJson rather
+ * than being encoded as a String first.
+ */
+public final class JsonMapperRegistry {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final ConcurrentMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<Class<?>, ObjectWriter>();
+
+    private JsonMapperRegistry() {
+    }
+
+    /**
+     * Get the shared ObjectMapper. It must not be reconfigured, as it is
+     * used by all of the clients.
+     * @return the shared ObjectMapper
+     */
+    public static ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
+    /**
+     * Get the ObjectWriter for a type, creating it on first use.
+     * @param type the type to write
+     * @return the writer
+     */
+    public static ObjectWriter getWriter(Class<?> type) {
+        ObjectWriter writer = writers.get(type);
+        if (writer == null) {
+            writer = writers.computeIfAbsent(type, objectMapper::writerFor);
+        }
+        return writer;
+    }
+
+    /**
+     * Encode an object as JSON.
+     * @param value the object
+     * @return the JSON
+     * @throws JsonProcessingException if the object can't be encoded
+     */
+    public static String toJson(Object value) throws JsonProcessingException {
+        return getWriter(value.getClass()).writeValueAsString(value);
+    }
+
+    /**
+     * Write an object as JSON to a stream, leaving the stream open.
+     * @param value the object
+     * @param out the stream
+     * @throws IOException if the object can't be encoded or written
+     */
+    public static void writeJson(Object value, OutputStream out) throws IOException {
+        getWriter(value.getClass()).writeValue(StreamUtils.nonClosing(out), value);
+    }
+
+    /**
+     * Create a callback that sends an object as the JSON body of a request.
+     * The JSON is written straight to the body, or streamed to the connection
+     * if the request factory supports it.
+     * @param restTemplate the template that sends the request
+     * @param value the object to send
+     * @param responseType the type of the response, used to set the Accept header
+     * @return the callback
+     */
+    public static RequestCallback jsonRequestCallback(RestTemplate restTemplate, Object value, Class<?> responseType) {
+        RequestCallback acceptHeaderCallback = restTemplate.acceptHeaderRequestCallback(responseType);
+        return request -> {
+            acceptHeaderCallback.doWithRequest(request);
+            request.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+            if (request instanceof StreamingHttpOutputMessage) {
+                ((StreamingHttpOutputMessage) request).setBody(out -> writeJson(value, out));
+            } else {
+                writeJson(value, request.getBody());
+            }
+        };
+    }
+
+    /**
+     * Post an object as JSON, streaming it into the request body.
+     * @param restTemplate the template that sends the request
+     * @param uri the URI to post to
+     * @param value the object to send
+     * @param responseType the type of the response
+     * @return the response, or null if there is no response body
+     * @throws JsonProcessingException if the object can't be encoded
+     */
+    public static <T> T postJson(RestTemplate restTemplate, URI uri, Object value, Class<T> responseType) throws JsonProcessingException {
+        try {
+            return restTemplate.execute(uri, HttpMethod.POST, jsonRequestCallback(restTemplate, value, responseType),
+                    new HttpMessageConverterExtractor<T>(responseType, restTemplate.getMessageConverters()));
+        } catch (ResourceAccessException e) {
+            // The template reports any failure to write the request as an I/O error
+            if (e.getCause() instanceof JsonProcessingException) {
+                throw (JsonProcessingException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package org.webcurator.core.rest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
+import org.apache.commons.httpclient.methods.DeleteMethod;
+import org.apache.commons.httpclient.methods.EntityEnclosingMethod;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.methods.HeadMethod;
+import org.apache.commons.httpclient.methods.OptionsMethod;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.methods.PutMethod;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.apache.commons.httpclient.methods.TraceMethod;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.http.client.AbstractClientHttpRequest;
+import org.springframework.http.client.AbstractClientHttpResponse;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.StreamUtils;
+
+/**
+ * A ClientHttpRequestFactory that sends the requests of a RestTemplate
+ * through a shared pool of keep-alive connections, so that the calls made to
+ * the harvest agents and the digital asset store reuse open connections
+ * rather than opening a new one for each request.
+ *
+ * The number of connections to each host and in total is limited, and the
+ * size of the pool can be read for monitoring. The pool is closed when the
+ * factory is destroyed.
+ */
+public class PooledClientHttpRequestFactory implements ClientHttpRequestFactory, DisposableBean {
+    /** The default maximum number of connections to each host. */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 10;
+    /** The default maximum number of connections to all hosts. */
+    public static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 100;
+    /** The default time to wait for a connection to be established, in milliseconds. */
+    public static final int DEFAULT_CONNECT_TIMEOUT = 15000;
+
+    private final MultiThreadedHttpConnectionManager connectionManager = new MultiThreadedHttpConnectionManager();
+    private final HttpClient httpClient = new HttpClient(connectionManager);
+
+    public PooledClientHttpRequestFactory() {
+        HttpConnectionManagerParams params = connectionManager.getParams();
+        params.setDefaultMaxConnectionsPerHost(DEFAULT_MAX_CONNECTIONS_PER_HOST);
+        params.setMaxTotalConnections(DEFAULT_MAX_TOTAL_CONNECTIONS);
+        params.setStaleCheckingEnabled(true);
+        setConnectTimeout(DEFAULT_CONNECT_TIMEOUT);
+    }
+
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+        return new PooledClientHttpRequest(uri, httpMethod);
+    }
+
+    /**
+     * @return the number of open connections to all hosts.
+     */
+    public int getConnectionsInPool() {
+        return connectionManager.getConnectionsInPool();
+    }
+
+    /**
+     * Get the number of open connections to a host, whether idle or in use.
+     * @param scheme the protocol used to connect to the host
+     * @param host the name of the host
+     * @param port the port number
+     * @return the number of connections
+     */
+    public int getConnectionsInPool(String scheme, String host, int port) {
+        HostConfiguration hostConfiguration = new HostConfiguration();
+        hostConfiguration.setHost(host, port, scheme);
+        return connectionManager.getConnectionsInPool(hostConfiguration);
+    }
+
+    /**
+     * Close the connections that have not been used for the specified time.
+     * @param idleTime the idle time in milliseconds
+     */
+    public void closeIdleConnections(long idleTime) {
+        connectionManager.closeIdleConnections(idleTime);
+    }
+
+    public void destroy() {
+        connectionManager.shutdown();
+    }
+
+    /**
+     * @param maxConnectionsPerHost the maximum number of connections to each host
+     */
+    public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+        connectionManager.getParams().setDefaultMaxConnectionsPerHost(maxConnectionsPerHost);
+    }
+
+    /**
+     * @param maxTotalConnections the maximum number of connections to all hosts
+     */
+    public void setMaxTotalConnections(int maxTotalConnections) {
+        connectionManager.getParams().setMaxTotalConnections(maxTotalConnections);
+    }
+
+    /**
+     * Set the time to wait for a connection to be established, or for a
+     * pooled connection to become free.
+     * @param connectTimeout the timeout in milliseconds, or 0 to wait indefinitely
+     */
+    public void setConnectTimeout(int connectTimeout) {
+        connectionManager.getParams().setConnectionTimeout(connectTimeout);
+        httpClient.getParams().setConnectionManagerTimeout(connectTimeout);
+    }
+
+    /**
+     * @param readTimeout the time to wait for data in milliseconds, or 0 to
+     *            wait indefinitely
+     */
+    public void setReadTimeout(int readTimeout) {
+        connectionManager.getParams().setSoTimeout(readTimeout);
+    }
+
+    private static org.apache.commons.httpclient.HttpMethod createMethod(HttpMethod httpMethod, String uri) {
+        switch (httpMethod) {
+        case GET:
+            return new GetMethod(uri);
+        case POST:
+            return new PostMethod(uri);
+        case PUT:
+            return new PutMethod(uri);
+        case DELETE:
+            return new DeleteMethod(uri);
+        case HEAD:
+            return new HeadMethod(uri);
+        case OPTIONS:
+            return new OptionsMethod(uri);
+        case TRACE:
+            return new TraceMethod(uri);
+        default:
+            return new EntityEnclosingMethod(uri) {
+                public String getName() {
+                    return httpMethod.name();
+                }
+            };
+        }
+    }
+
+    /**
+     * A request whose body is either buffered and sent once the request is
+     * executed, or if it is set as a streaming body, written straight to the
+     * connection using chunked encoding.
+     */
+    private class PooledClientHttpRequest extends AbstractClientHttpRequest implements StreamingHttpOutputMessage {
+        private final URI uri;
+        private final HttpMethod httpMethod;
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream(1024);
+        private Body streamingBody;
+
+        PooledClientHttpRequest(URI uri, HttpMethod httpMethod) {
+            this.uri = uri;
+            this.httpMethod = httpMethod;
+        }
+
+        public String getMethodValue() {
+            return httpMethod.name();
+        }
+
+        public URI getURI() {
+            return uri;
+        }
+
+        protected OutputStream getBodyInternal(HttpHeaders headers) {
+            return body;
+        }
+
+        public void setBody(Body body) {
+            this.streamingBody = body;
+        }
+
+        protected ClientHttpResponse executeInternal(HttpHeaders headers) throws IOException {
+            org.apache.commons.httpclient.HttpMethod method = createMethod(httpMethod, uri.toASCIIString());
+            for (String name : headers.keySet()) {
+                if (!HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                    for (String value : headers.get(name)) {
+                        method.addRequestHeader(name, value);
+                    }
+                }
+            }
+            if (method instanceof EntityEnclosingMethod) {
+                String contentType = headers.getContentType() == null ? null : headers.getContentType().toString();
+                RequestEntity entity;
+                if (streamingBody != null) {
+                    entity = new StreamingRequestEntity(streamingBody, contentType);
+                } else {
+                    entity = new ByteArrayRequestEntity(body.toByteArray(), contentType);
+                }
+                ((EntityEnclosingMethod) method).setRequestEntity(entity);
+            }
+
+            try {
+                httpClient.executeMethod(method);
+            } catch (IOException | RuntimeException e) {
+                method.releaseConnection();
+                throw e;
+            }
+            return new PooledClientHttpResponse(method);
+        }
+    }
+
+    /**
+     * A request entity of unknown length that is written by a streaming body.
+     * The body can be written again if the request is retried.
+     */
+    private static class StreamingRequestEntity implements RequestEntity {
+        private final StreamingHttpOutputMessage.Body body;
+        private final String contentType;
+
+        StreamingRequestEntity(StreamingHttpOutputMessage.Body body, String contentType) {
+            this.body = body;
+            this.contentType = contentType;
+        }
+
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        public void writeRequest(OutputStream out) throws IOException {
+            body.writeTo(out);
+        }
+
+        public long getContentLength() {
+            return -1;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+    }
+
+    /**
+     * A response that returns its connection to the pool when it is closed.
+     */
+    private static class PooledClientHttpResponse extends AbstractClientHttpResponse {
+        private final org.apache.commons.httpclient.HttpMethod method;
+        private HttpHeaders headers;
+
+        PooledClientHttpResponse(org.apache.commons.httpclient.HttpMethod method) {
+            this.method = method;
+        }
+
+        public int getRawStatusCode() {
+            return method.getStatusCode();
+        }
+
+        public String getStatusText() {
+            return method.getStatusText();
+        }
+
+        public HttpHeaders getHeaders() {
+            if (headers == null) {
+                headers = new HttpHeaders();
+                for (Header header : method.getResponseHeaders()) {
+                    headers.add(header.getName(), header.getValue());
+                }
+            }
+            return headers;
+        }
+
+        public InputStream getBody() throws IOException {
+            InputStream body = method.getResponseBodyAsStream();
+            return body == null ? StreamUtils.emptyInput() : body;
+        }
+
+        public void close() {
+            // Reads any remaining content so the connection can be reused
+            method.releaseConnection();
+        }
+    }
+}
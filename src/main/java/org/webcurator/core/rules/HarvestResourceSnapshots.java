@@ -0,0 +1,53 @@
+package org.webcurator.core.rules;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.webcurator.core.store.tools.QualityReviewFacade;
+import org.webcurator.domain.model.dto.HarvestResourceSnapshot;
+
+/**
+ * The resource snapshots of the harvest results used in a QA run. The 
+ * snapshots are inserted into the knowledge session as a single fact, so each
+ * harvest result's resources are loaded once, by the first rule that needs 
+ * them, and shared by every other rule in the run.
+ */
+public class HarvestResourceSnapshots {
+	private final QualityReviewFacade qualityReviewFacade;
+	private final UrlDiffService urlDiffService;
+	private final Map<Long, HarvestResourceSnapshot> snapshots = new ConcurrentHashMap<Long, HarvestResourceSnapshot>();
+	/** Holds equal resource names in the harvest results once */
+	private final Map<String, String> namePool = new ConcurrentHashMap<String, String>();
+	/** The URL differences computed in this QA run, keyed by harvest result and reference crawl result oid */
+	private final Map<String, UrlDiff> urlDiffs = new ConcurrentHashMap<String, UrlDiff>();
+
+	public HarvestResourceSnapshots(QualityReviewFacade qualityReviewFacade, UrlDiffService urlDiffService) {
+		this.qualityReviewFacade = qualityReviewFacade;
+		this.urlDiffService = urlDiffService;
+	}
+
+	/**
+	 * Get the snapshot of the resources of a harvest result, loading it if it
+	 * has not been loaded in this QA run.
+	 * @param harvestResultOid the oid of the harvest result
+	 * @return the snapshot
+	 */
+	public HarvestResourceSnapshot get(Long harvestResultOid) {
+		return snapshots.computeIfAbsent(harvestResultOid, oid -> qualityReviewFacade.getHarvestResourceSnapshot(oid, namePool));
+	}
+
+	/**
+	 * Get the difference between the URLs of a harvest result and those of its
+	 * reference crawl. The difference is computed once per QA run and shared 
+	 * by the matching, new and missing URI rules. The resources of the 
+	 * reference crawl are only loaded if its fingerprints are not cached or 
+	 * some of its URLs are missing from the harvest result.
+	 * @param harvestResultOid the oid of the harvest result
+	 * @param referenceCrawlResultOid the oid of the endorsed harvest result of the reference crawl
+	 * @return the difference
+	 */
+	public UrlDiff getUrlDiff(Long harvestResultOid, Long referenceCrawlResultOid) {
+		return urlDiffs.computeIfAbsent(harvestResultOid + "/" + referenceCrawlResultOid,
+				key -> urlDiffService.diff(get(harvestResultOid), referenceCrawlResultOid, this::get));
+	}
+}
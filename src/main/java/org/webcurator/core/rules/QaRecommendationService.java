@@ -30,6 +30,10 @@ public interface QaRecommendationService {
 	 */
 	public void applyRules(TargetInstance ti, TargetInstance referenceCrawl, List<IndicatorCriteria> criterias) throws DroolsParserException, IOException;
 	
+	/**
+	 * Compile the rules file into the knowledge base shared by each call to applyRules, 
+	 * if it has not been compiled yet or the rules file has changed.
+	 */
 	public void buildKnowledgeSession();
 	
 	public void setQualityReviewFacade(QualityReviewFacade qaFacade);
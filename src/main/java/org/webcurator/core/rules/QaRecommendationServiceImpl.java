@@ -1,6 +1,9 @@
 package org.webcurator.core.rules;
 
+import java.io.File;
 import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
@@ -10,13 +13,13 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.drools.core.impl.InternalKnowledgeBase;
 import org.drools.core.impl.KnowledgeBaseFactory;
+import org.kie.api.KieBase;
 import org.kie.api.runtime.KieSession;
 import org.kie.internal.builder.KnowledgeBuilder;
 import org.kie.internal.builder.KnowledgeBuilderFactory;
 import org.kie.api.io.ResourceType;
 import org.drools.compiler.compiler.DroolsParserException;
 import org.kie.internal.io.ResourceFactory;
-import org.kie.internal.runtime.StatefulKnowledgeSession;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.webcurator.core.harvester.coordinator.HarvestCoordinator;
 import org.webcurator.core.scheduler.TargetInstanceManager;
@@ -28,15 +31,31 @@ import org.webcurator.domain.model.core.TargetInstance;
 public class QaRecommendationServiceImpl implements QaRecommendationService {
 	
 	/**
-	 * The drools knowledge session though which all rules are executed
+	 * The compiled rules, shared by the knowledge session of each QA run
 	 */
-	//private StatefulKnowledgeSession ksession = null;
-	private KieSession ksession = null;
+	private volatile KieBase kbase = null;
+
+	/**
+	 * The modification time of the rules file when it was compiled, or -1 if 
+	 * the rules file is not a file that can change (eg: it is in a jar)
+	 */
+	private volatile long rulesLastModified = -1L;
+
+	/**
+	 * Guards the compilation of the rules
+	 */
+	private final Object kbaseLock = new Object();
 
 	/**
 	 * The interface for retrieving <code>HarvestResourceDTO</code>s
 	 */
 	private QualityReviewFacade qualityReviewFacade = null;
+
+	/**
+	 * Compares the URLs of a harvest with its reference crawl, caching the
+	 * reference crawl fingerprints between runs
+	 */
+	private UrlDiffService urlDiffService = new UrlDiffService();
 	
 	/**
 	 * The interface for retrieving log files from the server or digital asset store
@@ -97,36 +116,72 @@ public class QaRecommendationServiceImpl implements QaRecommendationService {
 		return advice;
 	}
 	
+	/**
+	 * Compile the rules file into the shared knowledge base if it has not been
+	 * compiled yet, or if the rules file has changed since it was compiled.
+	 * Each QA run creates its own knowledge session from the knowledge base.
+	 */
 	public final void buildKnowledgeSession() {
-		if (ksession == null) {
-			LOG.debug("Building Drools Knowledge Session");
-			// initialise the rules
-	        final KnowledgeBuilder kbuilder = KnowledgeBuilderFactory
-	                .newKnowledgeBuilder();
-	
-	        // pickup the rules file from the classpath
-	        // this will parse and compile in one step
-	        LOG.info("Loading rules file " + rulesFileName);
-	        kbuilder.add( ResourceFactory.newClassPathResource( rulesFileName, QaRecommendationServiceImpl.class ),
-	                      ResourceType.DRL );
-	
-	        // Check the builder for errors
-	        if ( kbuilder.hasErrors() ) {
-	        	LOG.error(kbuilder.getErrors().toString());
-	            throw new RuntimeException( "Unable to compile \"" + rulesFileName + "\"." );
-	        }
-	
-	        // add the packages to a knowledgebase (deploy the knowledge packages).
-	        final InternalKnowledgeBase kbase = KnowledgeBaseFactory.newKnowledgeBase();
-			kbase.addPackages( kbuilder.getKnowledgePackages() );
-			
-			// set the knowledge session
-			ksession = kbase.newKieSession();
-			
-			// set the configured message formats and advice
-			ksession.setGlobal("globals", globals);
+		getKnowledgeBase();
+	}
+
+	private KieBase getKnowledgeBase() {
+		KieBase current = kbase;
+		if (current != null && !rulesFileChanged()) {
+			return current;
+		}
+		synchronized (kbaseLock) {
+			if (kbase == null || rulesFileChanged()) {
+				long lastModified = getRulesFileLastModified();
+				kbase = compileRules();
+				rulesLastModified = lastModified;
+			}
+			return kbase;
+		}
+	}
+
+	private KieBase compileRules() {
+		LOG.debug("Building Drools Knowledge Base");
+		// initialise the rules
+        final KnowledgeBuilder kbuilder = KnowledgeBuilderFactory
+                .newKnowledgeBuilder();
+
+        // pickup the rules file from the classpath
+        // this will parse and compile in one step
+        LOG.info("Loading rules file " + rulesFileName);
+        kbuilder.add( ResourceFactory.newClassPathResource( rulesFileName, QaRecommendationServiceImpl.class ),
+                      ResourceType.DRL );
+
+        // Check the builder for errors
+        if ( kbuilder.hasErrors() ) {
+        	LOG.error(kbuilder.getErrors().toString());
+            throw new RuntimeException( "Unable to compile \"" + rulesFileName + "\"." );
+        }
+
+        // add the packages to a knowledgebase (deploy the knowledge packages).
+        final InternalKnowledgeBase newKbase = KnowledgeBaseFactory.newKnowledgeBase();
+        newKbase.addPackages( kbuilder.getKnowledgePackages() );
+        return newKbase;
+	}
+
+	private boolean rulesFileChanged() {
+		return rulesLastModified >= 0 && getRulesFileLastModified() != rulesLastModified;
+	}
+
+	/**
+	 * @return the modification time of the rules file, or -1 if it is not a 
+	 * file on disk.
+	 */
+	private long getRulesFileLastModified() {
+		URL url = QaRecommendationServiceImpl.class.getResource(rulesFileName);
+		if (url == null || !"file".equals(url.getProtocol())) {
+			return -1L;
+		}
+		try {
+			return new File(url.toURI()).lastModified();
+		} catch (URISyntaxException | IllegalArgumentException e) {
+			return -1L;
 		}
-		
 	}
 	
     /**
@@ -150,6 +205,12 @@ public class QaRecommendationServiceImpl implements QaRecommendationService {
 		
     	LOG.info(indicators.size() + " QA indicators retrieved, submitting to Rules Engine for target instance with oid " + ti.getOid() + " ...");
 
+		// each run has its own session so that runs can be evaluated concurrently
+		KieSession ksession = getKnowledgeBase().newKieSession();
+		
+		// set the configured message formats and advice
+		ksession.setGlobal("globals", globals);
+
         // insert the rule parameters
         ksession.insert(ti);
     	LOG.info("inserted ti with oid " + ti.getOid());
@@ -188,6 +249,9 @@ public class QaRecommendationServiceImpl implements QaRecommendationService {
 		// pass in the Quality Review Facade so that we can process the robots.txt file within the rules engine
 		ksession.insert(qualityReviewFacade);
 		
+		// the harvest resources are loaded once per harvest result and shared by the rules
+		ksession.insert(new HarvestResourceSnapshots(qualityReviewFacade, urlDiffService));
+		
 		// pass in the Harvest Coordinator so that we can retrieve log files (eg: Heritrix Error Codes)
 		ksession.insert(harvestCoordinator);
 		
@@ -208,7 +272,6 @@ public class QaRecommendationServiceImpl implements QaRecommendationService {
         } finally {
             // clean up the knowledge session
             ksession.dispose();
-            ksession = null;
         }
         
         LOG.info("Returning supporting facts: ");
@@ -275,6 +338,13 @@ public class QaRecommendationServiceImpl implements QaRecommendationService {
 		this.qualityReviewFacade = qaFacade;
 	}
 	
+	/**
+	 *	Setter for the URL Diff Service used by Spring 
+	 */
+	public void setUrlDiffService(UrlDiffService urlDiffService) {
+		this.urlDiffService = urlDiffService;
+	}
+	
 	/**
 	 *	Setter for the Harvest Coordinator used by Spring 
 	 */
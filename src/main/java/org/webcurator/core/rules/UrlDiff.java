@@ -0,0 +1,52 @@
+package org.webcurator.core.rules;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of comparing the resource names (URLs) of a harvest result with
+ * those of its reference crawl. The matching URLs are in crawl order and the
+ * new and missing URLs are sorted alphabetically.
+ */
+public class UrlDiff {
+	private final int matchingCount;
+	private final List<String> matchingUris;
+	private final List<String> newUris;
+	private final List<String> missingUris;
+
+	public UrlDiff(int matchingCount, List<String> matchingUris, List<String> newUris, List<String> missingUris) {
+		this.matchingCount = matchingCount;
+		this.matchingUris = Collections.unmodifiableList(matchingUris);
+		this.newUris = Collections.unmodifiableList(newUris);
+		this.missingUris = Collections.unmodifiableList(missingUris);
+	}
+
+	/**
+	 * @return the number of resources in the harvest result whose URL is in the
+	 * reference crawl, counting a URL once for each time it was downloaded
+	 */
+	public int getMatchingCount() {
+		return matchingCount;
+	}
+
+	/**
+	 * @return the matching URLs in crawl order, repeated once for each time they were downloaded
+	 */
+	public List<String> getMatchingUris() {
+		return matchingUris;
+	}
+
+	/**
+	 * @return the distinct URLs of the harvest result that are not in the reference crawl
+	 */
+	public List<String> getNewUris() {
+		return newUris;
+	}
+
+	/**
+	 * @return the distinct URLs of the reference crawl that are not in the harvest result
+	 */
+	public List<String> getMissingUris() {
+		return missingUris;
+	}
+}
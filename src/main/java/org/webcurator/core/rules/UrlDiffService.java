@@ -0,0 +1,240 @@
+package org.webcurator.core.rules;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.webcurator.domain.model.dto.HarvestResourceSnapshot;
+
+/**
+ * Compares the resource names (URLs) of a harvest result with those of its
+ * reference crawl. Each side is reduced to a sorted array of the 64 bit
+ * fingerprints of its distinct URLs, so the matching, new and missing URLs
+ * are found together in a single merge pass rather than by building and
+ * differencing hash sets of strings for each rule.
+ * <p>
+ * A reference crawl is endorsed and archived before it is used, so its
+ * fingerprints do not change and are cached between QA runs. Only the
+ * fingerprints and counts are cached, not the URLs; the names of the missing
+ * URLs are read from the reference crawl's resources when the difference is
+ * built, and only if some are missing. URLs are compared by fingerprint, so
+ * two different URLs would only be confused if their 64 bit fingerprints
+ * collided.
+ * <p>
+ * The matching URLs are listed in crawl order, and the new and missing URLs
+ * alphabetically, as the QA rules reported them before.
+ */
+public class UrlDiffService {
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	/** the logger */
+	private static final Log log = LogFactory.getLog(UrlDiffService.class);
+
+	/** The maximum number of reference crawls whose fingerprints are cached */
+	private int maxCachedReferenceCrawls = 4;
+
+	/** The cached reference crawl fingerprints by harvest result oid, least recently used first */
+	private final Map<Long, UrlFingerprints> referenceCrawls = new LinkedHashMap<Long, UrlFingerprints>(16, 0.75f, true);
+
+	/**
+	 * Compare the resources of a harvest result with those of its reference crawl.
+	 * @param resources the resources of the harvest result
+	 * @param referenceCrawlResultOid the oid of the endorsed harvest result of the reference crawl
+	 * @param referenceCrawlLoader loads the resources of the reference crawl if its
+	 * fingerprints are not cached, or to name the missing URLs
+	 * @return the difference
+	 */
+	public UrlDiff diff(HarvestResourceSnapshot resources, Long referenceCrawlResultOid,
+			Function<Long, HarvestResourceSnapshot> referenceCrawlLoader) {
+		UrlFingerprints reference = getReferenceCrawl(referenceCrawlResultOid, referenceCrawlLoader);
+		return diff(resources, reference, () -> referenceCrawlLoader.apply(referenceCrawlResultOid));
+	}
+
+	private UrlFingerprints getReferenceCrawl(Long harvestResultOid, Function<Long, HarvestResourceSnapshot> loader) {
+		synchronized (referenceCrawls) {
+			UrlFingerprints fingerprints = referenceCrawls.get(harvestResultOid);
+			if (fingerprints != null) {
+				return fingerprints;
+			}
+		}
+		// load outside the lock, two runs racing for the same crawl build equal fingerprints
+		UrlFingerprints fingerprints = UrlFingerprints.of(fingerprints(loader.apply(harvestResultOid)));
+		synchronized (referenceCrawls) {
+			referenceCrawls.put(harvestResultOid, fingerprints);
+			while (referenceCrawls.size() > maxCachedReferenceCrawls) {
+				Long eldest = referenceCrawls.keySet().iterator().next();
+				referenceCrawls.remove(eldest);
+				log.debug("Evicted the URL fingerprints of reference crawl harvest result " + eldest);
+			}
+		}
+		return fingerprints;
+	}
+
+	/**
+	 * Merge the fingerprints of a harvest result with those of its reference crawl.
+	 * @param resources the resources of the harvest result
+	 * @param reference the fingerprints of the reference crawl
+	 * @param referenceLoader loads the resources of the reference crawl to name the missing URLs
+	 * @return the difference
+	 */
+	static UrlDiff diff(HarvestResourceSnapshot resources, UrlFingerprints reference,
+			Supplier<HarvestResourceSnapshot> referenceLoader) {
+		long[] hashes = fingerprints(resources);
+		UrlFingerprints current = UrlFingerprints.of(hashes);
+
+		int matchingCount = 0;
+		boolean[] matched = new boolean[current.size()];
+		long[] missing = new long[reference.size()];
+		int missingCount = 0;
+
+		int c = 0;
+		int r = 0;
+		while (c < current.size() && r < reference.size()) {
+			int cmp = Long.compare(current.fingerprints[c], reference.fingerprints[r]);
+			if (cmp == 0) {
+				matched[c] = true;
+				matchingCount += current.counts[c];
+				c++;
+				r++;
+			} else if (cmp < 0) {
+				c++;
+			} else {
+				missing[missingCount++] = reference.fingerprints[r++];
+			}
+		}
+		while (r < reference.size()) {
+			missing[missingCount++] = reference.fingerprints[r++];
+		}
+
+		// name the matching and new urls in crawl order
+		List<String> matching = new ArrayList<String>(matchingCount);
+		List<String> added = new ArrayList<String>();
+		boolean[] named = new boolean[current.size()];
+		for (int i = 0; i < hashes.length; i++) {
+			int index = Arrays.binarySearch(current.fingerprints, hashes[i]);
+			if (matched[index]) {
+				matching.add(resources.getName(i));
+			} else if (!named[index]) {
+				named[index] = true;
+				added.add(resources.getName(i));
+			}
+		}
+		Collections.sort(added);
+
+		// the reference crawl's resources are only needed to name the missing urls
+		List<String> missingNames = missingCount == 0 ? new ArrayList<String>()
+				: names(referenceLoader.get(), Arrays.copyOf(missing, missingCount));
+		Collections.sort(missingNames);
+		return new UrlDiff(matchingCount, matching, added, missingNames);
+	}
+
+	/**
+	 * Find the names of the resources with the fingerprints, naming each fingerprint once.
+	 * @param resources the resources
+	 * @param fingerprints the sorted fingerprints to name
+	 * @return the names
+	 */
+	private static List<String> names(HarvestResourceSnapshot resources, long[] fingerprints) {
+		List<String> names = new ArrayList<String>(fingerprints.length);
+		boolean[] named = new boolean[fingerprints.length];
+		for (int i = 0; i < resources.size() && names.size() < fingerprints.length; i++) {
+			String name = resources.getName(i);
+			int index = Arrays.binarySearch(fingerprints, fingerprint(name));
+			if (index >= 0 && !named[index]) {
+				named[index] = true;
+				names.add(name);
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * @param resources the resources
+	 * @return the fingerprints of the resource names, in crawl order
+	 */
+	private static long[] fingerprints(HarvestResourceSnapshot resources) {
+		long[] hashes = new long[resources.size()];
+		for (int i = 0; i < hashes.length; i++) {
+			hashes[i] = fingerprint(resources.getName(i));
+		}
+		return hashes;
+	}
+
+	/**
+	 * @param url the URL
+	 * @return the 64 bit FNV-1a fingerprint of the URL
+	 */
+	static long fingerprint(String url) {
+		long hash = FNV_OFFSET_BASIS;
+		for (int i = 0; i < url.length(); i++) {
+			char ch = url.charAt(i);
+			hash ^= (ch & 0xff);
+			hash *= FNV_PRIME;
+			hash ^= (ch >>> 8);
+			hash *= FNV_PRIME;
+		}
+		return hash;
+	}
+
+	/**
+	 * Clear the cached reference crawl fingerprints.
+	 */
+	public void clear() {
+		synchronized (referenceCrawls) {
+			referenceCrawls.clear();
+		}
+	}
+
+	/**
+	 * @param maxCachedReferenceCrawls the maximum number of reference crawls
+	 * whose fingerprints are cached between QA runs
+	 */
+	public void setMaxCachedReferenceCrawls(int maxCachedReferenceCrawls) {
+		this.maxCachedReferenceCrawls = maxCachedReferenceCrawls;
+	}
+
+	/**
+	 * The distinct URL fingerprints of a harvest result in ascending order,
+	 * with the number of times each was downloaded.
+	 */
+	static class UrlFingerprints {
+		private final long[] fingerprints;
+		private final int[] counts;
+
+		private UrlFingerprints(long[] fingerprints, int[] counts) {
+			this.fingerprints = fingerprints;
+			this.counts = counts;
+		}
+
+		static UrlFingerprints of(long[] hashes) {
+			long[] sorted = hashes.clone();
+			Arrays.sort(sorted);
+
+			long[] fingerprints = new long[sorted.length];
+			int[] counts = new int[sorted.length];
+			int distinct = 0;
+			for (long hash : sorted) {
+				if (distinct > 0 && fingerprints[distinct - 1] == hash) {
+					counts[distinct - 1]++;
+				} else {
+					fingerprints[distinct] = hash;
+					counts[distinct] = 1;
+					distinct++;
+				}
+			}
+			return new UrlFingerprints(Arrays.copyOf(fingerprints, distinct), Arrays.copyOf(counts, distinct));
+		}
+
+		int size() {
+			return fingerprints.length;
+		}
+	}
+}
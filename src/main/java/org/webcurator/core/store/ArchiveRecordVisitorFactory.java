@@ -0,0 +1,22 @@
+package org.webcurator.core.store;
+
+import java.io.File;
+
+import org.webcurator.domain.model.core.ArchiveRecordVisitor;
+import org.webcurator.domain.model.core.HarvestResultDTO;
+
+/**
+ * Creates the visitors that are plugged in to the WCTIndexer's single pass 
+ * over each archive file of a harvest result. A new visitor is created for 
+ * each archive file, so visitors of files indexed in parallel do not share state.
+ */
+public interface ArchiveRecordVisitorFactory {
+
+	/**
+	 * Create a visitor for one archive file of the harvest result.
+	 * @param result the harvest result being indexed
+	 * @param archiveFile the archive file that will be scanned
+	 * @return the visitor
+	 */
+	ArchiveRecordVisitor createVisitor(HarvestResultDTO result, File archiveFile);
+}
@@ -0,0 +1,74 @@
+package org.webcurator.core.store;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.archive.io.ArchiveRecordHeader;
+import org.webcurator.domain.model.core.ArcHarvestFileDTO;
+import org.webcurator.domain.model.core.HarvestResourceDTO;
+
+/**
+ * Collects record, status code and MIME type counts for an archive file
+ * during the WCTIndexer's pass over it.
+ */
+public class ArchiveStatisticsVisitor extends ArcHarvestFileDTO.ResourceVisitor {
+	private long recordCount = 0L;
+	private long resourceCount = 0L;
+	private long resourceLength = 0L;
+	private final Map<Integer, Long> statusCodeCounts = new TreeMap<Integer, Long>();
+	private final Map<String, Long> mimeTypeCounts = new TreeMap<String, Long>();
+
+	@Override
+	public void visitRecord(ArchiveRecordHeader header, HarvestResourceDTO resource) {
+		recordCount++;
+		String mimeType = header.getMimetype();
+		if(mimeType != null) {
+			mimeTypeCounts.merge(mimeType, 1L, Long::sum);
+		}
+		if(resource != null) {
+			resourceCount++;
+			resourceLength += resource.getLength();
+			statusCodeCounts.merge(resource.getStatusCode(), 1L, Long::sum);
+		}
+	}
+
+	/**
+	 * @return the number of records in the archive file.
+	 */
+	public long getRecordCount() {
+		return recordCount;
+	}
+
+	/**
+	 * @return the number of records indexed as harvest resources.
+	 */
+	public long getResourceCount() {
+		return resourceCount;
+	}
+
+	/**
+	 * @return the total length of the harvest resources.
+	 */
+	public long getResourceLength() {
+		return resourceLength;
+	}
+
+	/**
+	 * @return the number of harvest resources for each status code.
+	 */
+	public Map<Integer, Long> getStatusCodeCounts() {
+		return statusCodeCounts;
+	}
+
+	/**
+	 * @return the number of records for each MIME type.
+	 */
+	public Map<String, Long> getMimeTypeCounts() {
+		return mimeTypeCounts;
+	}
+
+	@Override
+	public String toString() {
+		return recordCount + " records, " + resourceCount + " resources (" + resourceLength + " bytes), status codes " + statusCodeCounts;
+	}
+}
@@ -1,18 +1,12 @@
 package org.webcurator.core.store;
 
-import it.unipi.di.util.ExternalSort;
-
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.webcurator.core.reader.CrawlLogUrlIndex;
 import org.webcurator.domain.model.core.HarvestResultDTO;
 
 public class CrawlLogIndexer extends IndexerBase {
@@ -28,6 +22,10 @@ public class CrawlLogIndexer extends IndexerBase {
 	private String strippedLogFileName;
 	private String sortedLogFileName;
 	private String logsSubFolder;
+	private long sortMemoryBudget = 64L * 1024L * 1024L;
+	private int sortThreads = Runtime.getRuntime().availableProcessors();
+	private String sortTempDirectory;
+	private String logIndexDirectory;
 
 	private boolean enabled = false;
 
@@ -46,6 +44,10 @@ public class CrawlLogIndexer extends IndexerBase {
 		strippedLogFileName = original.strippedLogFileName;
 		sortedLogFileName = original.sortedLogFileName;
 		logsSubFolder = original.logsSubFolder;
+		sortMemoryBudget = original.sortMemoryBudget;
+		sortThreads = original.sortThreads;
+		sortTempDirectory = original.sortTempDirectory;
+		logIndexDirectory = original.logIndexDirectory;
 		enabled = original.enabled;
 	}
 	
@@ -80,54 +82,29 @@ public class CrawlLogIndexer extends IndexerBase {
 		String logPath = directory.getAbsolutePath().substring(0, directory.getAbsolutePath().length()-1);
         logPath = logPath + logsSubFolder + directory.separator;
 
-        // write new 'stripped' crawl.log, replacing multiple spaces with a single space in each record..
-        try {
-            
-            BufferedReader inputStream = new BufferedReader(new FileReader(logPath + crawlLogFileName));
-            PrintWriter outputStream   = new PrintWriter(new FileWriter(logPath + strippedLogFileName));
-
-            String inLine = null;
-
-            while ((inLine = inputStream.readLine()) != null) {
-                outputStream.println(inLine.replaceAll(" +", " "));
-            }
-
-            outputStream.close();
-            inputStream.close();
-
-        } catch (IOException e) {
-
-        	log.error("Could not create " + strippedLogFileName + " file in directory: " + logPath );
-        	return;
+        // sort the crawl.log on the url column then the timestamp column, collapsing 
+        // multiple spaces to a single space in each record, to create a 'sorted' crawl.log..
+        CrawlLogSorter sorter = new CrawlLogSorter();
+        sorter.setMemoryBudget(sortMemoryBudget);
+        sorter.setThreads(sortThreads);
+        if(sortTempDirectory != null) {
+        	sorter.setTempDirectory(new File(sortTempDirectory));
         }
-        
-		// sort the 'stripped' crawl.log file to create a 'sorted' crawl.log file...
-        ExternalSort sort = new ExternalSort();
         try {
-			sort.setInFile(logPath + strippedLogFileName);
-		} catch (FileNotFoundException e1) {
-        	log.error("Could not find " + strippedLogFileName + " file in directory: " + logPath );
-        	return;
-		}
-        try {
-			sort.setOutFile(logPath + sortedLogFileName);
-		} catch (FileNotFoundException e1) {
-        	log.error("Could not find directory: " + logPath );
-        	return;
-		}
-		// sort on fourth column (url) then first column (timestamp)..
-		int[] cols = {3,0};
-		sort.setColumns(cols);
-		sort.setSeparator(' ');  // space 
-        
-		try {
-			sort.run();
-		} catch (IOException e1) {
-        	log.error("Could not sort " + crawlLogFileName + " file in directory: " + logPath );
+			sorter.sort(new File(logPath + crawlLogFileName), new File(logPath + sortedLogFileName));
+		} catch (IOException e) {
+        	log.error("Could not sort " + crawlLogFileName + " file in directory: " + logPath + ": " + e.getMessage());
         	return;
 		}
 		
 		log.info("Completed sort of crawl.log for job " + getResult().getTargetInstanceOid());
+
+		// index the sorted log by url now, rather than on the first hop path request.
+		try {
+			CrawlLogUrlIndex.build(new File(logPath + sortedLogFileName), logIndexDirectory == null ? null : new File(logIndexDirectory));
+		} catch (IOException e) {
+			log.warn("Could not index " + sortedLogFileName + " file in directory: " + logPath + ": " + e.getMessage());
+		}
 	}
 	
 	@Override
@@ -150,6 +127,10 @@ public class CrawlLogIndexer extends IndexerBase {
 		return crawlLogFileName;
 	}
 
+	/**
+	 * The stripped crawl.log is no longer written; the sorted log is stripped as it is sorted.
+	 * @param strippedLogFileName the name of the stripped crawl.log
+	 */
 	public void setStrippedLogFileName(String strippedLogFileName) {
 		this.strippedLogFileName = strippedLogFileName;
 	}
@@ -174,6 +155,52 @@ public class CrawlLogIndexer extends IndexerBase {
 		return logsSubFolder;
 	}
 
+	/**
+	 * @param sortMemoryBudget the approximate number of bytes of heap used to sort the crawl.log.
+	 */
+	public void setSortMemoryBudget(long sortMemoryBudget) {
+		this.sortMemoryBudget = sortMemoryBudget;
+	}
+
+	public long getSortMemoryBudget() {
+		return sortMemoryBudget;
+	}
+
+	/**
+	 * @param sortThreads the number of runs of the crawl.log sorted in parallel.
+	 */
+	public void setSortThreads(int sortThreads) {
+		this.sortThreads = sortThreads;
+	}
+
+	public int getSortThreads() {
+		return sortThreads;
+	}
+
+	/**
+	 * @param sortTempDirectory the directory for the sorted runs of the crawl.log; the logs folder is used if not set.
+	 */
+	public void setSortTempDirectory(String sortTempDirectory) {
+		this.sortTempDirectory = sortTempDirectory;
+	}
+
+	public String getSortTempDirectory() {
+		return sortTempDirectory;
+	}
+
+	/**
+	 * @param logIndexDirectory the directory the URL index of the sorted crawl.log is written to. It should 
+	 * be the index directory of the log reader that reads the log. LogIndexFiles.DEFAULT_INDEX_DIRECTORY 
+	 * is used if not set.
+	 */
+	public void setLogIndexDirectory(String logIndexDirectory) {
+		this.logIndexDirectory = logIndexDirectory;
+	}
+
+	public String getLogIndexDirectory() {
+		return logIndexDirectory;
+	}
+
 	public void setEnabled(boolean enabled) {
 		this.enabled = enabled;
 	}
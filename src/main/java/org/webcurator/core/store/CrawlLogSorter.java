@@ -0,0 +1,380 @@
+package org.webcurator.core.store;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Sorts a Heritrix crawl.log on the URL column and then the timestamp column,
+ * the order used by the hop path and QA features. Runs of spaces between the
+ * columns are collapsed to a single space as each line is read, so the sorted
+ * log is written without an intermediate stripped copy of the crawl.log.
+ * <p>
+ * Lines are read into runs bounded by the memory budget. The runs are sorted
+ * in parallel and spilled to the temporary directory, then merged into the
+ * output file. At most mergeFanIn runs are merged at once; when there are
+ * more, they are first merged in groups into longer intermediate runs. A log
+ * that fits in a single run is written without any temporary files.
+ */
+public class CrawlLogSorter {
+	private static Log log = LogFactory.getLog(CrawlLogSorter.class);
+
+	/** The index of the URL column in a crawl.log line. */
+	private static final int URL_COLUMN = 3;
+	/** An estimate of the heap used by a line in addition to its characters. */
+	private static final long LINE_OVERHEAD = 96L;
+	private static final int BUFFER_SIZE = 256 * 1024;
+	/** The smallest buffer used to read a run being merged. */
+	private static final int MIN_MERGE_BUFFER_SIZE = 8 * 1024;
+	/** The default maximum number of runs merged at once. */
+	public static final int DEFAULT_MERGE_FAN_IN = 64;
+
+	/** The approximate number of bytes of heap used to hold lines being sorted. */
+	private long memoryBudget = 64L * 1024L * 1024L;
+	/** The directory for the sorted runs, or null to use the output directory. */
+	private File tempDirectory;
+	/** The number of runs sorted in parallel. */
+	private int threads = Runtime.getRuntime().availableProcessors();
+	/** The maximum number of runs merged at once. */
+	private int mergeFanIn = DEFAULT_MERGE_FAN_IN;
+
+	/**
+	 * A crawl.log line with the offsets of its sort columns.
+	 */
+	static final class SortLine implements Comparable<SortLine> {
+		final String line;
+		final int timestampEnd;
+		final int urlStart;
+		final int urlEnd;
+
+		SortLine(String line) {
+			this.line = line;
+			int column = 0;
+			int start = 0;
+			int tsEnd = line.length();
+			int uStart = line.length();
+			int uEnd = line.length();
+			for(int i = 0; i <= line.length() && column <= URL_COLUMN; i++) {
+				if(i == line.length() || line.charAt(i) == ' ') {
+					if(column == 0) {
+						tsEnd = i;
+					}
+					else if(column == URL_COLUMN) {
+						uStart = start;
+						uEnd = i;
+					}
+					column++;
+					start = i + 1;
+				}
+			}
+			this.timestampEnd = tsEnd;
+			this.urlStart = uStart;
+			this.urlEnd = uEnd;
+		}
+
+		@Override
+		public int compareTo(SortLine other) {
+			int result = compareRegion(line, urlStart, urlEnd, other.line, other.urlStart, other.urlEnd);
+			if(result == 0) {
+				result = compareRegion(line, 0, timestampEnd, other.line, 0, other.timestampEnd);
+			}
+			return result;
+		}
+
+		private static int compareRegion(String a, int aStart, int aEnd, String b, int bStart, int bEnd) {
+			int aLength = aEnd - aStart;
+			int bLength = bEnd - bStart;
+			int length = Math.min(aLength, bLength);
+			for(int i = 0; i < length; i++) {
+				char ac = a.charAt(aStart + i);
+				char bc = b.charAt(bStart + i);
+				if(ac != bc) {
+					return ac - bc;
+				}
+			}
+			return aLength - bLength;
+		}
+	}
+
+	/**
+	 * A sorted run being merged, positioned on its next line.
+	 */
+	private static final class RunReader implements Comparable<RunReader> {
+		private final BufferedReader reader;
+		private SortLine current;
+
+		RunReader(File run, int bufferSize) throws IOException {
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(run), StandardCharsets.UTF_8), bufferSize);
+		}
+
+		boolean advance() throws IOException {
+			String line = reader.readLine();
+			current = line == null ? null : new SortLine(line);
+			return current != null;
+		}
+
+		@Override
+		public int compareTo(RunReader other) {
+			return current.compareTo(other.current);
+		}
+
+		void close() {
+			try {
+				reader.close();
+			}
+			catch(IOException e) {
+				log.warn("Could not close sorted run: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Collapse each run of spaces in the line to a single space.
+	 * @param line the line to strip
+	 * @return the stripped line
+	 */
+	static String collapseSpaces(String line) {
+		int i = line.indexOf("  ");
+		if(i < 0) {
+			return line;
+		}
+		StringBuilder sb = new StringBuilder(line.length());
+		sb.append(line, 0, i + 1);
+		for(i++; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if(c != ' ' || line.charAt(i - 1) != ' ') {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Sort the crawl log into the output file.
+	 * @param crawlLog the crawl.log to sort
+	 * @param sortedLog the file to write the sorted log to
+	 * @throws IOException thrown if the log cannot be read or the sorted log written
+	 */
+	public void sort(File crawlLog, File sortedLog) throws IOException {
+		File runDirectory = tempDirectory != null ? tempDirectory : sortedLog.getAbsoluteFile().getParentFile();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+		List<Future<File>> runs = new ArrayList<Future<File>>();
+		List<File> runFiles = new ArrayList<File>();
+		try {
+			// Each in-flight run may hold its share of the budget.
+			long runBudget = Math.max(1L, memoryBudget / Math.max(1, threads));
+			List<SortLine> lines = new ArrayList<SortLine>();
+			long used = 0L;
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(crawlLog), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+				String line;
+				while((line = reader.readLine()) != null) {
+					SortLine sortLine = new SortLine(collapseSpaces(line));
+					lines.add(sortLine);
+					used += LINE_OVERHEAD + 2L * sortLine.line.length();
+					if(used >= runBudget) {
+						waitForRuns(runs, runFiles, threads - 1);
+						runs.add(executor.submit(sortRun(lines, runDirectory)));
+						lines = new ArrayList<SortLine>();
+						used = 0L;
+					}
+				}
+			}
+
+			if(runs.isEmpty()) {
+				// The whole log fitted in memory, so write it directly.
+				Collections.sort(lines);
+				writeLines(lines, sortedLog);
+				return;
+			}
+			if(!lines.isEmpty()) {
+				runs.add(executor.submit(sortRun(lines, runDirectory)));
+			}
+			waitForRuns(runs, runFiles, 0);
+			merge(runFiles, sortedLog, runDirectory);
+		}
+		finally {
+			executor.shutdown();
+			// Only reached with runs outstanding if the sort failed, wait for 
+			// them so that their files can be removed.
+			for(Future<File> run: runs) {
+				try {
+					runFiles.add(run.get());
+				}
+				catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				catch(ExecutionException e) {
+					log.warn("Could not sort a run of the crawl log: " + e.getCause());
+				}
+			}
+			for(File runFile: runFiles) {
+				if(runFile.exists() && !runFile.delete()) {
+					log.warn("Could not delete sorted run " + runFile.getAbsolutePath());
+				}
+			}
+		}
+	}
+
+	private Callable<File> sortRun(final List<SortLine> lines, final File runDirectory) {
+		return () -> {
+			Collections.sort(lines);
+			File run = File.createTempFile("crawl-log-run", ".tmp", runDirectory);
+			writeLines(lines, run);
+			return run;
+		};
+	}
+
+	/**
+	 * Wait until no more than maxPending runs are still being sorted,
+	 * moving the files of completed runs to runFiles.
+	 */
+	private void waitForRuns(List<Future<File>> runs, List<File> runFiles, int maxPending) throws IOException {
+		try {
+			while(runs.size() > maxPending) {
+				runFiles.add(runs.remove(0).get());
+			}
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while sorting the crawl log", e);
+		}
+		catch(ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException("Could not sort the crawl log", cause);
+		}
+	}
+
+	private void writeLines(List<SortLine> lines, File file) throws IOException {
+		try (Writer writer = newWriter(file, BUFFER_SIZE)) {
+			for(SortLine sortLine: lines) {
+				writer.write(sortLine.line);
+				writer.write('\n');
+			}
+		}
+	}
+
+	/**
+	 * Merge the runs into the sorted log. While there are more than
+	 * mergeFanIn runs, the oldest runs are merged in groups into new runs,
+	 * which are added to runFiles, and the merged runs are deleted.
+	 */
+	private void merge(List<File> runFiles, File sortedLog, File runDirectory) throws IOException {
+		int fanIn = Math.max(2, mergeFanIn);
+		while(runFiles.size() > fanIn) {
+			List<File> group = new ArrayList<File>(runFiles.subList(0, fanIn));
+			File merged = File.createTempFile("crawl-log-run", ".tmp", runDirectory);
+			runFiles.add(merged);
+			mergeRuns(group, merged, fanIn);
+			for(File runFile: group) {
+				runFiles.remove(runFile);
+				if(!runFile.delete()) {
+					log.warn("Could not delete sorted run " + runFile.getAbsolutePath());
+				}
+			}
+		}
+		mergeRuns(runFiles, sortedLog, fanIn);
+	}
+
+	/**
+	 * Merge the runs into a file. The memory budget is shared between the
+	 * buffers of the runs being read and the output.
+	 */
+	private void mergeRuns(List<File> runFiles, File output, int fanIn) throws IOException {
+		log.debug("Merging " + runFiles.size() + " sorted runs into " + output.getAbsolutePath());
+		int bufferSize = (int) Math.max(MIN_MERGE_BUFFER_SIZE, Math.min(BUFFER_SIZE, memoryBudget / (2L * (fanIn + 1))));
+		PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>(runFiles.size());
+		List<RunReader> readers = new ArrayList<RunReader>(runFiles.size());
+		try (Writer writer = newWriter(output, bufferSize)) {
+			for(File runFile: runFiles) {
+				RunReader reader = new RunReader(runFile, bufferSize);
+				readers.add(reader);
+				if(reader.advance()) {
+					queue.add(reader);
+				}
+			}
+			while(!queue.isEmpty()) {
+				RunReader reader = queue.poll();
+				writer.write(reader.current.line);
+				writer.write('\n');
+				if(reader.advance()) {
+					queue.add(reader);
+				}
+			}
+		}
+		finally {
+			for(RunReader reader: readers) {
+				reader.close();
+			}
+		}
+	}
+
+	private Writer newWriter(File file, int bufferSize) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), bufferSize);
+	}
+
+	public long getMemoryBudget() {
+		return memoryBudget;
+	}
+
+	/**
+	 * @param memoryBudget the approximate number of bytes of heap used to hold lines being sorted.
+	 */
+	public void setMemoryBudget(long memoryBudget) {
+		this.memoryBudget = memoryBudget;
+	}
+
+	public File getTempDirectory() {
+		return tempDirectory;
+	}
+
+	/**
+	 * @param tempDirectory the directory for sorted runs; the directory of the sorted log is used if not set.
+	 */
+	public void setTempDirectory(File tempDirectory) {
+		this.tempDirectory = tempDirectory;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * @param threads the number of runs sorted in parallel.
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	public int getMergeFanIn() {
+		return mergeFanIn;
+	}
+
+	/**
+	 * @param mergeFanIn the maximum number of runs merged at once; the lowest allowed is 2.
+	 */
+	public void setMergeFanIn(int mergeFanIn) {
+		this.mergeFanIn = mergeFanIn;
+	}
+}
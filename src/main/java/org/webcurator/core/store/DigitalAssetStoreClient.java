@@ -1,6 +1,5 @@
 package org.webcurator.core.store;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.primitives.Bytes;
 import org.apache.commons.httpclient.Header;
@@ -39,14 +38,11 @@ public class DigitalAssetStoreClient extends AbstractRestClient implements Digit
 
     private void internalSave(String targetInstanceName, HarvestStoreDTO harvestStoreDTO) throws DigitalAssetStoreException{
         try {
-            HttpEntity<String> request = this.createHttpRequestEntity(harvestStoreDTO);
-
             Map<String, String> pathVariables = ImmutableMap.of("target-instance-name", targetInstanceName);
             UriComponentsBuilder uriComponentsBuilder = UriComponentsBuilder.fromHttpUrl(getUrl(DigitalAssetStorePaths.SAVE));
             URI uri=uriComponentsBuilder.buildAndExpand(pathVariables).toUri();
 
-            RestTemplate restTemplate = restTemplateBuilder.build();
-            restTemplate.postForObject(uri, request, Void.class);
+            this.postJson(uri, harvestStoreDTO, Void.class);
         } catch (Exception e) {
             log.error(e.getMessage());
             throw new DigitalAssetStoreException(e);
@@ -90,7 +86,6 @@ public class DigitalAssetStoreClient extends AbstractRestClient implements Digit
     }
 
     public Path getResource(String targetInstanceName, int harvestResultNumber, HarvestResourceDTO resource) throws DigitalAssetStoreException {
-        ObjectMapper objectMapper = new ObjectMapper();
         String jsonStr = this.encode2json(resource);
 
         Map<String, String> pathVariables = ImmutableMap.of("target-instance-name", targetInstanceName);
@@ -141,7 +136,7 @@ public class DigitalAssetStoreClient extends AbstractRestClient implements Digit
         Map<String, String> pathVariables = ImmutableMap.of("target-instance-name", targetInstanceName);
         URI uri =  uriComponentsBuilder.buildAndExpand(pathVariables).toUri();
 
-        RestTemplate restTemplate = restTemplateBuilder.build();
+        RestTemplate restTemplate = getRestTemplate();
         ResponseEntity<List<Header>> listResponse = restTemplate.exchange(uri, HttpMethod.POST, request,
                 new ParameterizedTypeReference<List<Header>>() {
                 });
@@ -165,7 +160,7 @@ public class DigitalAssetStoreClient extends AbstractRestClient implements Digit
         Map<String, String> pathVariables = ImmutableMap.of("target-instance-name", targetInstanceName);
         URI uri = uriComponentsBuilder.buildAndExpand(pathVariables).toUri();
 
-        RestTemplate restTemplate = restTemplateBuilder.build();
+        RestTemplate restTemplate = getRestTemplate();
         HarvestResultDTO harvestResultDTO = restTemplate.postForObject(uri, request, HarvestResultDTO.class);
         return harvestResultDTO;
     }
@@ -178,7 +173,7 @@ public class DigitalAssetStoreClient extends AbstractRestClient implements Digit
 
         UriComponentsBuilder uriComponentsBuilder = UriComponentsBuilder.fromHttpUrl(getUrl(DigitalAssetStorePaths.PURGE));
 
-        RestTemplate restTemplate = restTemplateBuilder.build();
+        RestTemplate restTemplate = getRestTemplate();
         // TODO Process any exceptions or 404s, etc. as DigitalAssetStoreException, currently thrown as WCTRuntimeException.
         Boolean result = restTemplate.postForObject(uriComponentsBuilder.buildAndExpand().toUri(),
                 request, Boolean.class);
@@ -192,7 +187,7 @@ public class DigitalAssetStoreClient extends AbstractRestClient implements Digit
 
         UriComponentsBuilder uriComponentsBuilder = UriComponentsBuilder.fromHttpUrl(getUrl(DigitalAssetStorePaths.PURGE_ABORTED_TARGET_INSTANCES));
 
-        RestTemplate restTemplate = restTemplateBuilder.build();
+        RestTemplate restTemplate = getRestTemplate();
         // TODO Process any exceptions or 404s, etc. as DigitalAssetStoreException, currently thrown as WCTRuntimeException.
         Boolean result = restTemplate.postForObject(uriComponentsBuilder.buildAndExpand().toUri(),
                 request, Boolean.class);
@@ -207,7 +202,7 @@ public class DigitalAssetStoreClient extends AbstractRestClient implements Digit
                 .queryParam("harvest-number", harvestNumber);
         Map<String, String> pathVariables = ImmutableMap.of("target-instance-oid", targetInstanceOid);
 
-        RestTemplate restTemplate = restTemplateBuilder.build();
+        RestTemplate restTemplate = getRestTemplate();
         restTemplate.postForObject(uriComponentsBuilder.buildAndExpand(pathVariables).toUri(),
                 request, Boolean.class);
     }
@@ -220,7 +215,7 @@ public class DigitalAssetStoreClient extends AbstractRestClient implements Digit
         Map<String, String> pathVariables = ImmutableMap.of("target-instance-name", targetInstanceName);
 
         // TODO Process any exceptions or 404s, etc. as DigitalAssetStoreException, currently thrown as WCTRuntimeException.
-        RestTemplate restTemplate = restTemplateBuilder.build();
+        RestTemplate restTemplate = getRestTemplate();
         ResponseEntity<List<Byte>> listResponse = restTemplate.exchange(
                 uriComponentsBuilder.buildAndExpand(pathVariables).toUri(),
                 HttpMethod.POST, request, new ParameterizedTypeReference<List<Byte>>() {
@@ -235,7 +230,7 @@ public class DigitalAssetStoreClient extends AbstractRestClient implements Digit
         UriComponentsBuilder uriComponentsBuilder = UriComponentsBuilder.fromHttpUrl(getUrl(DigitalAssetStorePaths.INITIATE_INDEXING));
 
         // TODO Process any exceptions or 404s, etc. as DigitalAssetStoreException, currently thrown as WCTRuntimeException.
-        RestTemplate restTemplate = restTemplateBuilder.build();
+        RestTemplate restTemplate = getRestTemplate();
         Boolean result = restTemplate.postForObject(uriComponentsBuilder.buildAndExpand().toUri(), request, Boolean.class);
     }
 
@@ -245,12 +240,12 @@ public class DigitalAssetStoreClient extends AbstractRestClient implements Digit
         UriComponentsBuilder uriComponentsBuilder = UriComponentsBuilder.fromHttpUrl(getUrl(DigitalAssetStorePaths.INITIATE_REMOVE_INDEXES));
 
         // TODO Process any exceptions or 404s, etc. as DigitalAssetStoreException, currently thrown as WCTRuntimeException.
-        RestTemplate restTemplate = restTemplateBuilder.build();
+        RestTemplate restTemplate = getRestTemplate();
         Boolean result = restTemplate.postForObject(uriComponentsBuilder.buildAndExpand().toUri(), request, Boolean.class);
     }
 
     public Boolean checkIndexing(Long harvestResultOid) throws DigitalAssetStoreException {
-        RestTemplate restTemplate = restTemplateBuilder.build();
+        RestTemplate restTemplate = getRestTemplate();
         UriComponentsBuilder uriComponentsBuilder = UriComponentsBuilder.fromHttpUrl(getUrl(DigitalAssetStorePaths.CHECK_INDEXING))
                 .queryParam("harvest-result-oid", harvestResultOid);
 
@@ -267,7 +262,7 @@ public class DigitalAssetStoreClient extends AbstractRestClient implements Digit
         UriComponentsBuilder uriComponentsBuilder = UriComponentsBuilder.fromHttpUrl(getUrl(DigitalAssetStorePaths.CUSTOM_DEPOSIT_FORM_DETAILS));
 
         // TODO Process any exceptions or 404s, etc. as DigitalAssetStoreException, currently thrown as WCTRuntimeException.
-        RestTemplate restTemplate = restTemplateBuilder.build();
+        RestTemplate restTemplate = getRestTemplate();
         CustomDepositFormResultDTO customDepositFormResultDTO = restTemplate.postForObject(uriComponentsBuilder.buildAndExpand().toUri(), request, CustomDepositFormResultDTO.class);
 
         toAbsoluteUrl(customDepositFormResultDTO);
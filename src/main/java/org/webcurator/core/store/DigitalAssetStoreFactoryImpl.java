@@ -1,22 +1,58 @@
 package org.webcurator.core.store;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.webcurator.core.reader.LogReader;
+import org.webcurator.core.rest.PooledClientHttpRequestFactory;
 
 
 /**
  * Factory to store DigitalAssetStore and LogReader instances that use Restful API to communicate
  * with a remote DigitalAssetStore
+ * <p>
+ * The DigitalAssetStore is either set through the DAS property, or created from the scheme, host
+ * and port properties. The clients created are cached, one for each DigitalAssetStore endpoint, and
+ * send their requests through the pool of the PooledClientHttpRequestFactory set through the
+ * requestFactory property. Set the same PooledClientHttpRequestFactory bean here and on the
+ * HarvestAgentFactoryImpl to share one pool of connections; the pool is closed by that bean when
+ * it is destroyed, not by this factory.
  *
  * @author kurwin
  */
 public class DigitalAssetStoreFactoryImpl implements DigitalAssetStoreFactory {
+    private final ConcurrentMap<String, DigitalAssetStoreClient> clients = new ConcurrentHashMap<String, DigitalAssetStoreClient>();
+
     private DigitalAssetStore digitalAssetStore;
     private LogReader logReader;
 
+    private String scheme = "http";
+    private String host;
+    private int port = 8080;
+
+    private volatile PooledClientHttpRequestFactory requestFactory;
+    private volatile RestTemplateBuilder restTemplateBuilder = new RestTemplateBuilder();
+
     public DigitalAssetStore getDAS() {
+        if (this.digitalAssetStore == null && host != null) {
+            return getDAS(scheme, host, port);
+        }
         return this.digitalAssetStore;
     }
 
+    /**
+     * Get the client of a DigitalAssetStore. One client is created for each endpoint and reused.
+     * @param scheme the protocol used to connect to the DigitalAssetStore
+     * @param host the name of the host
+     * @param port the port number
+     * @return the DigitalAssetStore client
+     */
+    public DigitalAssetStore getDAS(String scheme, String host, int port) {
+        return clients.computeIfAbsent(String.format("%s://%s:%d", scheme, host, port),
+                k -> new DigitalAssetStoreClient(scheme, host, port, restTemplateBuilder));
+    }
+
     public void setDAS(DigitalAssetStore digitalAssetStore){
         this.digitalAssetStore = digitalAssetStore;
     }
@@ -28,4 +64,43 @@ public class DigitalAssetStoreFactoryImpl implements DigitalAssetStoreFactory {
     public void setLogReader(LogReader logReader){
         this.logReader = logReader;
     }
-}
\ No newline at end of file
+
+    /**
+     * @param scheme the protocol used to connect to the DigitalAssetStore if no DAS is set
+     */
+    public void setScheme(String scheme) {
+        this.scheme = scheme;
+    }
+
+    /**
+     * @param host the host of the DigitalAssetStore if no DAS is set
+     */
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    /**
+     * @param port the port of the DigitalAssetStore if no DAS is set
+     */
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    /**
+     * @return the factory holding the pool of connections to the DigitalAssetStore, or null if none is set.
+     */
+    public PooledClientHttpRequestFactory getRequestFactory() {
+        return requestFactory;
+    }
+
+    /**
+     * Set the factory holding the pool of connections to the DigitalAssetStore. The clients already
+     * created are discarded.
+     * @param requestFactory the request factory
+     */
+    public synchronized void setRequestFactory(PooledClientHttpRequestFactory requestFactory) {
+        this.requestFactory = requestFactory;
+        this.restTemplateBuilder = new RestTemplateBuilder().requestFactory(() -> requestFactory);
+        clients.clear();
+    }
+}
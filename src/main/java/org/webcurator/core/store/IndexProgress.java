@@ -0,0 +1,57 @@
+package org.webcurator.core.store;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The progress of one indexer over one harvest result. Instances are held in
+ * the Indexer's running index registry while the index is queued or running.
+ */
+public class IndexProgress {
+	private final String indexerName;
+	private final long queuedTime = System.currentTimeMillis();
+	private final AtomicLong recordsProcessed = new AtomicLong();
+	private final AtomicLong bytesRead = new AtomicLong();
+	private volatile boolean complete = false;
+
+	public IndexProgress(String indexerName) {
+		this.indexerName = indexerName;
+	}
+
+	/**
+	 * Add to the records processed and bytes read by the indexer.
+	 * @param records the number of records processed
+	 * @param bytes the number of bytes read
+	 */
+	public void add(long records, long bytes) {
+		recordsProcessed.addAndGet(records);
+		bytesRead.addAndGet(bytes);
+	}
+
+	public String getIndexerName() {
+		return indexerName;
+	}
+
+	public long getQueuedTime() {
+		return queuedTime;
+	}
+
+	public long getRecordsProcessed() {
+		return recordsProcessed.get();
+	}
+
+	public long getBytesRead() {
+		return bytesRead.get();
+	}
+
+	/**
+	 * @return true once the indexer has finished indexing and is waiting for the
+	 * harvest result to be finalised.
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+	void setComplete(boolean complete) {
+		this.complete = complete;
+	}
+}
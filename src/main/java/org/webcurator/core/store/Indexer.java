@@ -2,118 +2,192 @@ package org.webcurator.core.store;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.webcurator.core.store.RunnableIndex.Mode;
 import org.webcurator.core.util.WebServiceEndPoint;
 import org.webcurator.domain.model.core.HarvestResultDTO;
 
-public class Indexer {
+public class Indexer implements DisposableBean {
 	private static Log log = LogFactory.getLog(Indexer.class);
-	private static Map<String, Map<Long, RunnableIndex>> runningIndexes = new HashMap<String, Map<Long, RunnableIndex>>();
-	public static final Object lock = new Object();
+	/** The key used for indexes run before their harvest result has been created. */
+	private static final Long NO_HARVEST_RESULT = Long.MIN_VALUE;
+	/** The running indexes keyed by harvest result oid and then by indexer name. */
+	private static final ConcurrentMap<Long, ConcurrentMap<String, IndexProgress>> runningIndexes = new ConcurrentHashMap<Long, ConcurrentMap<String, IndexProgress>>();
+
+	private static Long key(Long harvestResultOid)
+	{
+		return harvestResultOid == null ? NO_HARVEST_RESULT : harvestResultOid;
+	}
 
 	public static void addRunningIndex(RunnableIndex indexer, Long harvestResultOid)
 	{
-    	synchronized(lock)
-    	{
-    		Map<Long, RunnableIndex> indexerRunningIndexes;
-    		
-    		if(runningIndexes.containsKey(indexer.getName()))
-    		{
-        		indexerRunningIndexes = runningIndexes.get(indexer.getName());
-    		}
-    		else
-    		{
-    			indexerRunningIndexes = new HashMap<Long, RunnableIndex>();
-    			runningIndexes.put(indexer.getName(), indexerRunningIndexes);
-    		}
-    		
-    		indexerRunningIndexes.put(harvestResultOid, indexer);
-    	}
+		runningIndexes.compute(key(harvestResultOid), (oid, indexes) -> {
+			ConcurrentMap<String, IndexProgress> result = indexes == null ? new ConcurrentHashMap<String, IndexProgress>() : indexes;
+			result.put(indexer.getName(), new IndexProgress(indexer.getName()));
+			return result;
+		});
+	}
+
+	/**
+	 * Register the indexer as running for the harvest result unless that type of
+	 * indexer is already running for it.
+	 * @return true if the indexer was registered, false if it was already running
+	 */
+	public static boolean startRunningIndex(RunnableIndex indexer, Long harvestResultOid)
+	{
+		final boolean[] started = {false};
+		runningIndexes.compute(key(harvestResultOid), (oid, indexes) -> {
+			ConcurrentMap<String, IndexProgress> result = indexes == null ? new ConcurrentHashMap<String, IndexProgress>() : indexes;
+			started[0] = result.putIfAbsent(indexer.getName(), new IndexProgress(indexer.getName())) == null;
+			return result;
+		});
+		return started[0];
 	}
 
 	public static void removeRunningIndex(String indexerName, Long harvestResultOid)
 	{
-    	synchronized(lock)
-    	{
-    		Map<Long, RunnableIndex> indexerRunningIndexes;
-
-    		if(runningIndexes.containsKey(indexerName))
-    		{
-        		indexerRunningIndexes = runningIndexes.get(indexerName);
-        		if(indexerRunningIndexes.containsKey(harvestResultOid))
-        		{
-        			indexerRunningIndexes.remove(harvestResultOid);
-        		}
-    		}
-    	}
+		runningIndexes.computeIfPresent(key(harvestResultOid), (oid, indexes) -> {
+			indexes.remove(indexerName);
+			return indexes.isEmpty() ? null : indexes;
+		});
 	}
-	
+
+	/**
+	 * Mark the indexer as complete for the harvest result. The indexer stays
+	 * registered until it is removed, so the harvest result is still reported
+	 * as indexing while it is finalised.
+	 * @return true if every other indexer for the harvest result has completed
+	 */
+	public static boolean completeRunningIndex(String indexerName, Long harvestResultOid)
+	{
+		final boolean[] last = {true};
+		runningIndexes.computeIfPresent(key(harvestResultOid), (oid, indexes) -> {
+			for(IndexProgress progress: indexes.values())
+			{
+				if(progress.getIndexerName().equals(indexerName))
+				{
+					progress.setComplete(true);
+				}
+				else if(!progress.isComplete())
+				{
+					last[0] = false;
+				}
+			}
+			return indexes;
+		});
+		return last[0];
+	}
+
 	public static boolean lastRunningIndex(String callingIndexerName, Long harvestResultOid)
 	{
-    	synchronized(lock)
-    	{
-    		Iterator<String> it = runningIndexes.keySet().iterator();
-    		while(it.hasNext())
-    		{
-    			String indexerName = it.next();
-    			if(!indexerName.equals(callingIndexerName) && 
-    				containsRunningIndex(indexerName, harvestResultOid))
-    			{
-    				return false;
-    			}
-    		}
-        	
-        	return true;
-    	}
+		Map<String, IndexProgress> indexes = runningIndexes.get(key(harvestResultOid));
+		if(indexes != null)
+		{
+			for(IndexProgress progress: indexes.values())
+			{
+				if(!progress.getIndexerName().equals(callingIndexerName) && !progress.isComplete())
+				{
+					return false;
+				}
+			}
+		}
+		return true;
 	}
 	
 	public static boolean containsRunningIndex(Long harvestResultOid)
 	{
-    	synchronized(lock)
-    	{
-    		Iterator<String> it = runningIndexes.keySet().iterator();
-    		while(it.hasNext())
-    		{
-    			String indexerName = it.next();
-    			if(containsRunningIndex(indexerName, harvestResultOid))
-    			{
-    				return true;
-    			}
-    		}
-        	
-        	return false;
-    	}
+		return runningIndexes.containsKey(key(harvestResultOid));
+	}
+
+	/**
+	 * Add to the records processed and bytes read by a running indexer.
+	 */
+	public static void recordProgress(String indexerName, Long harvestResultOid, long records, long bytes)
+	{
+		Map<String, IndexProgress> indexes = runningIndexes.get(key(harvestResultOid));
+		IndexProgress progress = indexes == null ? null : indexes.get(indexerName);
+		if(progress != null)
+		{
+			progress.add(records, bytes);
+		}
 	}
 
-	private static boolean containsRunningIndex(String indexerName, Long harvestResultOid)
+	/**
+	 * @return the progress of each indexer queued or running for the harvest 
+	 * result, keyed by indexer name. The map is empty if it is not being indexed.
+	 */
+	public static Map<String, IndexProgress> getRunningIndexProgress(Long harvestResultOid)
 	{
-    	synchronized(lock)
-    	{
-    		if(runningIndexes.containsKey(indexerName))
-    		{
-				Map<Long, RunnableIndex> indexerRunningIndexes = runningIndexes.get(indexerName);
-	    		if(indexerRunningIndexes != null && indexerRunningIndexes.containsKey(harvestResultOid))
-	    		{
-	    			return true;
-	    		}
-    		}
-        	
-        	return false;
-    	}
+		Map<String, IndexProgress> indexes = runningIndexes.get(key(harvestResultOid));
+		if(indexes == null)
+		{
+			return Collections.emptyMap();
+		}
+		return Collections.unmodifiableMap(new HashMap<String, IndexProgress>(indexes));
+	}
+
+	/**
+	 * An index job queued on the indexing executor. Removals are cheap so are 
+	 * run ahead of queued index jobs, otherwise jobs run in the order submitted.
+	 */
+	private static class IndexJob implements Runnable, Comparable<IndexJob> {
+		private static final AtomicLong sequence = new AtomicLong();
+		private final RunnableIndex indexer;
+		private final Mode mode;
+		private final long seqNo;
+
+		IndexJob(RunnableIndex indexer, Mode mode) {
+			this.indexer = indexer;
+			this.mode = mode;
+			this.seqNo = sequence.getAndIncrement();
+		}
+
+		@Override
+		public void run() {
+			try {
+				indexer.run();
+			}
+			catch(RuntimeException e) {
+				log.error("Index job " + indexer.getName() + " failed, the index was not finalised: " + e.getMessage(), e);
+			}
+		}
+
+		@Override
+		public int compareTo(IndexJob other) {
+			if(mode != other.mode) {
+				return mode == Mode.REMOVE ? -1 : 1;
+			}
+			return Long.compare(seqNo, other.seqNo);
+		}
 	}
 
 	private boolean doCreate = false;
 	private List<RunnableIndex> indexers;
+	/** The maximum number of index jobs run concurrently. */
+	private int maxIndexingThreads = Runtime.getRuntime().availableProcessors();
+	/** The number of seconds to wait for running index jobs on shutdown. */
+	private long shutdownTimeout = 60L;
+	private ThreadPoolExecutor executor;
 	
 	public Indexer() {
 		this(false);
@@ -143,7 +217,7 @@ public class Indexer {
 						theCopy.initialise(dto, directory);
 						
 						theCopy.setMode(Mode.INDEX);
-						runIndex(dto.getOid(), theCopy);
+						runIndex(dto.getOid(), theCopy, Mode.INDEX);
 						
 					} catch (Exception e) {
 						log.error("Unable to instantiate indexer: "+e.getMessage(), e);
@@ -172,7 +246,7 @@ public class Indexer {
 						theCopy.initialise(dto, directory);
 						
 						theCopy.setMode(Mode.REMOVE);
-						runIndex(dto.getOid(), theCopy);
+						runIndex(dto.getOid(), theCopy, Mode.REMOVE);
 						
 					} catch (Exception e) {
 						log.error("Unable to instantiate indexer: "+e.getMessage(), e);
@@ -186,16 +260,105 @@ public class Indexer {
 	{
 		return containsRunningIndex(hrOid);
 	}
+
+	public Map<String, IndexProgress> getIndexingProgress(Long hrOid)
+	{
+		return getRunningIndexProgress(hrOid);
+	}
 	
-	private void runIndex(Long hrOid, RunnableIndex indexer)
+	private void runIndex(Long hrOid, RunnableIndex indexer, Mode mode)
 	{
 		//don't allow the same HR to be indexed concurrently on the same type of indexer multiple times
-		if(!containsRunningIndex(indexer.getName(), hrOid))
+		if(startRunningIndex(indexer, hrOid))
 		{
-			addRunningIndex(indexer, hrOid);
+			try {
+				getExecutor().execute(new IndexJob(indexer, mode));
+			}
+			catch (RejectedExecutionException e) {
+				log.error("Unable to queue " + indexer.getName() + " for harvest result " + hrOid + ": " + e.getMessage());
+				removeRunningIndex(indexer.getName(), hrOid);
+			}
+		}
+	}
 
-			new Thread(indexer).start();
+	private synchronized ThreadPoolExecutor getExecutor()
+	{
+		if(executor == null)
+		{
+			final AtomicInteger threadCount = new AtomicInteger();
+			ThreadFactory threadFactory = runnable -> new Thread(runnable, "Indexer-" + threadCount.incrementAndGet());
+			// The queue is unbounded so the pool never grows beyond its core size.
+			executor = new ThreadPoolExecutor(maxIndexingThreads, maxIndexingThreads, 60L, TimeUnit.SECONDS,
+					new PriorityBlockingQueue<Runnable>(), threadFactory);
+			executor.allowCoreThreadTimeOut(true);
 		}
+		return executor;
+	}
+
+	/**
+	 * @return the number of index jobs waiting for an indexing thread.
+	 */
+	public int getQueueDepth()
+	{
+		ThreadPoolExecutor current = executor;
+		return current == null ? 0 : current.getQueue().size();
+	}
+
+	/**
+	 * @return the number of index jobs currently running.
+	 */
+	public int getActiveJobCount()
+	{
+		ThreadPoolExecutor current = executor;
+		return current == null ? 0 : current.getActiveCount();
+	}
+
+	/**
+	 * @return the number of index jobs that have completed.
+	 */
+	public long getCompletedJobCount()
+	{
+		ThreadPoolExecutor current = executor;
+		return current == null ? 0L : current.getCompletedTaskCount();
+	}
+
+	/**
+	 * Stop accepting new index jobs and wait for the queued and running jobs 
+	 * to complete, up to the shutdown timeout.
+	 */
+	public void shutdown()
+	{
+		ThreadPoolExecutor current;
+		synchronized(this)
+		{
+			current = executor;
+		}
+		if(current == null)
+		{
+			return;
+		}
+
+		current.shutdown();
+		try {
+			if(!current.awaitTermination(shutdownTimeout, TimeUnit.SECONDS))
+			{
+				log.warn("Index jobs did not complete within " + shutdownTimeout + " seconds, " + current.getQueue().size() + " jobs were still queued");
+				current.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			current.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Shut down the index jobs when the application context is closed.
+	 * @see #shutdown()
+	 */
+	@Override
+	public void destroy()
+	{
+		shutdown();
 	}
 
 	public static class CommandLine {
@@ -272,7 +435,19 @@ public class Indexer {
 
 	public List<RunnableIndex> getIndexers() {
 		return indexers;
-	}	
+	}
+
+	public void setMaxIndexingThreads(int maxIndexingThreads) {
+		this.maxIndexingThreads = maxIndexingThreads;
+	}
+
+	public int getMaxIndexingThreads() {
+		return maxIndexingThreads;
+	}
+
+	public void setShutdownTimeout(long shutdownTimeout) {
+		this.shutdownTimeout = shutdownTimeout;
+	}
 }
 
 
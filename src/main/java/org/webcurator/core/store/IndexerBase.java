@@ -69,6 +69,11 @@ public abstract class IndexerBase implements RunnableIndex {
 	{
 		this.mode = mode;
 	}
+
+	protected Mode getMode()
+	{
+		return mode;
+	}
 	
 	@Override
 	public void run() {
@@ -82,32 +87,43 @@ public abstract class IndexerBase implements RunnableIndex {
         	else
         	{
 				indexFiles(harvestResultOid);
-				markComplete(harvestResultOid);
+				if(Thread.currentThread().isInterrupted())
+				{
+					// A partial index must not be finalised
+					log.warn("Indexing of job " + getResult().getTargetInstanceOid() + " was interrupted, the index is not complete");
+				}
+				else
+				{
+					markComplete(harvestResultOid);
+				}
         		
         	}
         } finally {
-    		synchronized(Indexer.lock)
-    		{
-    			Indexer.removeRunningIndex(getName(), harvestResultOid);
-    		}
+			Indexer.removeRunningIndex(getName(), harvestResultOid);
         }
 	}
 
 	@Override
 	public final void markComplete(Long harvestResultOid) {
-
-		synchronized(Indexer.lock)
+		// Only the last indexer to complete for the harvest result finalises it.
+		if(Indexer.completeRunningIndex(this.getName(), harvestResultOid))
 		{
-			if(Indexer.lastRunningIndex(this.getName(), harvestResultOid))
-			{
-		        log.info("Marking harvest result for job " + getResult().getTargetInstanceOid() + " as ready");
-                finaliseIndex(harvestResultOid);
+	        log.info("Marking harvest result for job " + getResult().getTargetInstanceOid() + " as ready");
+            finaliseIndex(harvestResultOid);
 
-				log.info("Index for job " + getResult().getTargetInstanceOid() + " is now ready");
-			}
-
-        	Indexer.removeRunningIndex(getName(), harvestResultOid);
+			log.info("Index for job " + getResult().getTargetInstanceOid() + " is now ready");
 		}
+
+    	Indexer.removeRunningIndex(getName(), harvestResultOid);
+	}
+
+	/**
+	 * Record the progress of this indexer for the harvest result being indexed.
+	 * @param records the number of records processed
+	 * @param bytes the number of bytes read
+	 */
+	protected void recordProgress(long records, long bytes) {
+		Indexer.recordProgress(getName(), getResult().getOid(), records, bytes);
 	}
 
     @Retryable(maxAttempts = Integer.MAX_VALUE, backoff = @Backoff(delay = 30_000L))
@@ -2,38 +2,53 @@ package org.webcurator.core.store;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.UndeclaredThrowableException;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableMap;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.archive.io.ArchiveRecordHeader;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.boot.web.client.RestTemplateBuilder;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
 import org.springframework.retry.annotation.Backoff;
 import org.springframework.retry.annotation.Retryable;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 import org.webcurator.core.harvester.coordinator.HarvestCoordinatorPaths;
+import org.webcurator.core.rest.JsonMapperRegistry;
 import org.webcurator.domain.model.core.ArcHarvestFileDTO;
 import org.webcurator.domain.model.core.ArcHarvestResourceDTO;
+import org.webcurator.domain.model.core.ArchiveRecordVisitor;
 import org.webcurator.domain.model.core.HarvestResultDTO;
 import org.webcurator.domain.model.core.HarvestResourceDTO;
 
 // TODO Note that the spring boot application needs @EnableRetry for the @Retryable to work.
-public class WCTIndexer extends IndexerBase
+public class WCTIndexer extends IndexerBase implements DisposableBean
 {
 	private static Log log = LogFactory.getLog(WCTIndexer.class);
 	
 	private HarvestResultDTO result;
 	private File directory;
 	private boolean doCreate = false;
+	private int resourceBatchSize = ArcHarvestFileDTO.DEFAULT_BATCH_SIZE;
+	private int fileIndexingThreads = 1;
+	/** The executor shared by the copies of this indexer to index files in parallel, or null to index them in turn. */
+	private ThreadPoolExecutor fileExecutor;
+	private List<ArchiveRecordVisitorFactory> recordVisitorFactories = new ArrayList<ArchiveRecordVisitorFactory>();
 
     public WCTIndexer() {
         super();
@@ -46,6 +61,10 @@ public class WCTIndexer extends IndexerBase
     protected WCTIndexer(WCTIndexer original)
 	{
 		super(original);
+		resourceBatchSize = original.resourceBatchSize;
+		fileIndexingThreads = original.fileIndexingThreads;
+		fileExecutor = original.fileExecutor;
+		recordVisitorFactories = original.recordVisitorFactories;
 	}
 
     @Retryable(maxAttempts = Integer.MAX_VALUE, backoff = @Backoff(delay = 30_000L))
@@ -55,20 +74,11 @@ public class WCTIndexer extends IndexerBase
 		log.info("Initialising index for job " + getResult().getTargetInstanceOid());
 
 		try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            String jsonStr = objectMapper.writeValueAsString(getResult());
-            log.debug(jsonStr);
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-
-            HttpEntity<String> request = new HttpEntity<String>(jsonStr.toString(), headers);
-
             RestTemplate restTemplate = restTemplateBuilder.build();
 
             UriComponentsBuilder uriComponentsBuilder = UriComponentsBuilder.fromHttpUrl(getUrl(HarvestCoordinatorPaths.CREATE_HARVEST_RESULT));
 
-            harvestResultOid = restTemplate.postForObject(uriComponentsBuilder.buildAndExpand().toUri(), request, Long.class);
+            harvestResultOid = JsonMapperRegistry.postJson(restTemplate, uriComponentsBuilder.buildAndExpand().toUri(), getResult(), Long.class);
             log.info("Initialised index for job " + getResult().getTargetInstanceOid());
         }catch (JsonProcessingException e){
             log.error("Parsing json failed.");
@@ -100,44 +110,102 @@ public class WCTIndexer extends IndexerBase
         if(fileList == null) { 
         	log.error("Could not find any archive files in directory: " + directory.getAbsolutePath() );
         }
-        else {
+        else if(fileExecutor == null || fileList.length <= 1) {
             for(File f: fileList) {
-        		ArcHarvestFileDTO ahf = new ArcHarvestFileDTO();
-                ahf.setName(f.getName());
-                ahf.setBaseDir(directory.getAbsolutePath());
-            	
-                try {
-                    ahf.setCompressed(ahf.checkIsCompressed());
-
-                	log.info("Indexing " + ahf.getName());
-                    Map<String, HarvestResourceDTO> resources = ahf.index();
-                    Collection<HarvestResourceDTO> dtos = resources.values();
-
-                    addToHarvestResult(harvestResultOid, ahf);
-
-                    log.info("Sending Resources for " + ahf.getName());
-                    addHarvestResources(harvestResultOid, dtos);
-
-                    //Release memory used by Collections///////////////
-                    dtos.clear();
-                    resources.clear();
-                    if(ahf.getHarvestResult() != null) {
-                        ahf.getHarvestResult().getArcFiles().clear();
-                        ahf.getHarvestResult().getResources().clear();
-                    }
-                    //////////////////////////////////////////////////////
-
-                    log.info("Completed indexing of " + ahf.getName());
-                }
-                catch(IOException ex) { 
-                	log.error("Could not index file " + ahf.getName() + ". Ignoring and continuing with other files. "+ex.getClass().getCanonicalName()+": "+ ex.getMessage());
+                indexFile(harvestResultOid, f);
+            }
+        }
+        else {
+            indexFilesInParallel(harvestResultOid, fileList);
+        }
+        log.info("Completed indexing for job " + getResult().getTargetInstanceOid());		
+	}
+
+	/**
+	 * Index the files on the shared file executor, waiting for all of them 
+	 * before the index is marked complete. If a file fails the remaining 
+	 * files are cancelled and the failure is thrown, as it would be if the 
+	 * files were indexed in turn, so the index is not finalised.
+	 */
+	private void indexFilesInParallel(Long harvestResultOid, File[] fileList) {
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		try {
+			for(File f: fileList) {
+				futures.add(fileExecutor.submit(() -> indexFile(harvestResultOid, f)));
+			}
+			for(Future<?> future: futures) {
+				future.get();
+			}
+		}
+		catch(ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if(cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if(cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new UndeclaredThrowableException(cause);
+		}
+		catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new CancellationException("Interrupted while indexing files for job " + getResult().getTargetInstanceOid());
+		}
+		finally {
+			for(Future<?> future: futures) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	protected void indexFile(Long harvestResultOid, File f) {
+		ArcHarvestFileDTO ahf = new ArcHarvestFileDTO();
+        ahf.setName(f.getName());
+        ahf.setBaseDir(directory.getAbsolutePath());
+    	
+        try {
+        	log.info("Indexing " + ahf.getName());
+            // Read the file once, passing each record to the resource index, the 
+            // statistics and any plugged in visitors. The resources are sent in 
+            // bounded batches so memory use does not depend on the size of the file.
+            List<ArchiveRecordVisitor> visitors = new ArrayList<ArchiveRecordVisitor>();
+            visitors.add(new ArcHarvestFileDTO.ResourceVisitor() {
+                @Override
+                public void startFile(ArcHarvestFileDTO archiveFile) {
+                    addToHarvestResult(harvestResultOid, archiveFile);
                 }
-                catch(ParseException ex) { 
-                	log.error("Could not index file " + ahf.getName() + ". Ignoring and continuing with other files. "+ex.getClass().getCanonicalName()+": "+ ex.getMessage());
+
+                @Override
+                public void visitRecord(ArchiveRecordHeader header, HarvestResourceDTO resource) {
                 }
+            });
+            visitors.add(ArcHarvestFileDTO.batchingVisitor(resourceBatchSize, dtos -> {
+                log.info("Sending " + dtos.size() + " Resources for " + ahf.getName());
+                addHarvestResources(harvestResultOid, dtos);
+                recordProgress(dtos.size(), 0L);
+            }));
+            ArchiveStatisticsVisitor statistics = new ArchiveStatisticsVisitor();
+            visitors.add(statistics);
+            for(ArchiveRecordVisitorFactory factory: recordVisitorFactories) {
+                visitors.add(factory.createVisitor(getResult(), f));
             }
+
+            ahf.scan(visitors);
+            recordProgress(0L, f.length());
+
+            if(ahf.getHarvestResult() != null) {
+                ahf.getHarvestResult().getArcFiles().clear();
+                ahf.getHarvestResult().getResources().clear();
+            }
+
+            log.info("Completed indexing of " + ahf.getName() + ": " + statistics);
+        }
+        catch(IOException ex) { 
+        	log.error("Could not index file " + ahf.getName() + ". Ignoring and continuing with other files. "+ex.getClass().getCanonicalName()+": "+ ex.getMessage());
+        }
+        catch(ParseException ex) { 
+        	log.error("Could not index file " + ahf.getName() + ". Ignoring and continuing with other files. "+ex.getClass().getCanonicalName()+": "+ ex.getMessage());
         }
-        log.info("Completed indexing for job " + getResult().getTargetInstanceOid());		
 	}
 
     @Retryable(maxAttempts = Integer.MAX_VALUE, backoff = @Backoff(delay = 30_000L))
@@ -146,21 +214,12 @@ public class WCTIndexer extends IndexerBase
             // Submit to the server.
             log.info("Sending Arc Harvest File " + arcHarvestFileDTO.getName());
 
-            ObjectMapper objectMapper = new ObjectMapper();
-            String jsonStr = objectMapper.writeValueAsString(arcHarvestFileDTO);
-            log.debug(jsonStr);
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-
-            HttpEntity<String> request = new HttpEntity<String>(jsonStr.toString(), headers);
-
             RestTemplate restTemplate = restTemplateBuilder.build();
 
             UriComponentsBuilder uriComponentsBuilder = UriComponentsBuilder.fromHttpUrl(getUrl(HarvestCoordinatorPaths.ADD_HARVEST_RESULT));
 
             Map<String, Long> pathVariables = ImmutableMap.of("harvest-result-oid", harvestResultOid);
-            restTemplate.postForObject(uriComponentsBuilder.buildAndExpand(pathVariables).toUri(), request, Void.class);
+            JsonMapperRegistry.postJson(restTemplate, uriComponentsBuilder.buildAndExpand(pathVariables).toUri(), arcHarvestFileDTO, Void.class);
         }catch (JsonProcessingException e){
             log.error("Parsing json failed.");
             log.error(e);
@@ -175,21 +234,12 @@ public class WCTIndexer extends IndexerBase
                 arcHarvestResourceDTOs.add((ArcHarvestResourceDTO)dto);
             });
 
-            ObjectMapper objectMapper = new ObjectMapper();
-            String jsonStr = objectMapper.writeValueAsString(arcHarvestResourceDTOs);
-            log.debug(jsonStr);
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-
-            HttpEntity<String> request = new HttpEntity<String>(jsonStr.toString(), headers);
-
             RestTemplate restTemplate = restTemplateBuilder.build();
 
             UriComponentsBuilder uriComponentsBuilder = UriComponentsBuilder.fromHttpUrl(getUrl(HarvestCoordinatorPaths.ADD_HARVEST_RESOURCES));
 
             Map<String, Long> pathVariables = ImmutableMap.of("harvest-result-oid", harvestResultOid);
-            restTemplate.postForObject(uriComponentsBuilder.buildAndExpand(pathVariables).toUri(), request, Void.class);
+            JsonMapperRegistry.postJson(restTemplate, uriComponentsBuilder.buildAndExpand(pathVariables).toUri(), arcHarvestResourceDTOs, Void.class);
         }catch (JsonProcessingException e){
             log.error("Parsing json failed.");
             log.error(e);
@@ -205,6 +255,70 @@ public class WCTIndexer extends IndexerBase
 		this.doCreate = doCreate;
 	}
 
+	/**
+	 * @param resourceBatchSize the maximum number of resources sent to the core in one request.
+	 */
+	public void setResourceBatchSize(int resourceBatchSize) {
+		this.resourceBatchSize = resourceBatchSize;
+	}
+
+	public int getResourceBatchSize() {
+		return resourceBatchSize;
+	}
+
+	/**
+	 * Set the number of archive files indexed in parallel. The files of every 
+	 * harvest being indexed share one pool of this many threads, so the number 
+	 * of files indexed at once does not grow with the number of index jobs.
+	 * @param fileIndexingThreads the number of archive files indexed in parallel, 
+	 * or 1 to index the files of each harvest in turn.
+	 */
+	public synchronized void setFileIndexingThreads(int fileIndexingThreads) {
+		this.fileIndexingThreads = fileIndexingThreads;
+		if(fileExecutor != null) {
+			fileExecutor.shutdown();
+			fileExecutor = null;
+		}
+		if(fileIndexingThreads > 1) {
+			final AtomicInteger threadCount = new AtomicInteger();
+			ThreadFactory threadFactory = runnable -> new Thread(runnable, "FileIndexer-" + threadCount.incrementAndGet());
+			// The queue is unbounded so the pool never grows beyond its core size.
+			fileExecutor = new ThreadPoolExecutor(fileIndexingThreads, fileIndexingThreads, 60L, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), threadFactory);
+			fileExecutor.allowCoreThreadTimeOut(true);
+		}
+	}
+
+	/**
+	 * Stop the threads used to index files in parallel. Index jobs should be 
+	 * shut down first, as files that are still queued are not indexed.
+	 */
+	@Override
+	public synchronized void destroy() {
+		if(fileExecutor != null) {
+			fileExecutor.shutdownNow();
+		}
+	}
+
+	ThreadPoolExecutor getFileExecutor() {
+		return fileExecutor;
+	}
+
+	public int getFileIndexingThreads() {
+		return fileIndexingThreads;
+	}
+
+	/**
+	 * @param recordVisitorFactories the factories of visitors plugged in to the pass over each archive file.
+	 */
+	public void setRecordVisitorFactories(List<ArchiveRecordVisitorFactory> recordVisitorFactories) {
+		this.recordVisitorFactories = recordVisitorFactories;
+	}
+
+	public List<ArchiveRecordVisitorFactory> getRecordVisitorFactories() {
+		return recordVisitorFactories;
+	}
+
 	@Override
 	public void initialise(HarvestResultDTO result, File directory) {
 		this.result = result;
@@ -10,13 +10,28 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.webcurator.domain.model.core.HarvestResultDTO;
 
-public class WaybackIndexer extends IndexerBase {
+/**
+ * Indexes harvests by copying their archive files to the Wayback input folder 
+ * and watching the Wayback merged and failed folders until every file appears. 
+ * The folders are checked every waittime milliseconds on a monitor thread shared 
+ * by the copies of this indexer, so an index job does not hold an indexing 
+ * thread while Wayback indexes its files.
+ */
+public class WaybackIndexer extends IndexerBase implements DisposableBean {
 
 	//Static variables
 	private static Logger log = LoggerFactory.getLogger(WaybackIndexer.class);
@@ -33,17 +48,20 @@ public class WaybackIndexer extends IndexerBase {
 	private long waittime;
 	private long timeout;
 	private boolean enabled = false;
+	/** The executor shared by the copies of this indexer to watch the Wayback folders. */
+	private ScheduledThreadPoolExecutor monitorExecutor;
 	
 	//Internal variables
 	private List<MonitoredFile> indexFiles = new ArrayList<MonitoredFile>();
-	private boolean allIndexed = false;
 
     public WaybackIndexer() {
         super();
+        monitorExecutor = createMonitorExecutor();
     }
 
     public WaybackIndexer(RestTemplateBuilder restTemplateBuilder) {
         super(restTemplateBuilder);
+        monitorExecutor = createMonitorExecutor();
     }
 
     protected WaybackIndexer(WaybackIndexer original)
@@ -51,9 +69,26 @@ public class WaybackIndexer extends IndexerBase {
 		super(original);
 		waybackInputFolder = original.waybackInputFolder;
 		waybackMergedFolder = original.waybackMergedFolder;
+		waybackFailedFolder = original.waybackFailedFolder;
 		waittime = original.waittime;
 		timeout = original.timeout;
 		enabled = original.enabled;
+		monitorExecutor = original.monitorExecutor;
+	}
+
+	private static ScheduledThreadPoolExecutor createMonitorExecutor()
+	{
+		final AtomicInteger threadCount = new AtomicInteger();
+		ThreadFactory threadFactory = runnable -> {
+			Thread thread = new Thread(runnable, "WaybackMonitor-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		// The thread is only started when a harvest is being watched.
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, threadFactory);
+		executor.setKeepAliveTime(60L, TimeUnit.SECONDS);
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
 	}
 	
 	@Override
@@ -77,12 +112,89 @@ public class WaybackIndexer extends IndexerBase {
 		return getClass().getCanonicalName();
 	}
 
+	/**
+	 * Copy the archive files to the Wayback input folder and return, leaving 
+	 * the monitor thread to mark the index complete once Wayback has indexed 
+	 * them, rather than holding the indexing thread while waiting.
+	 */
+	@Override
+	public void run() {
+		if(getMode() == Mode.REMOVE)
+		{
+			super.run();
+			return;
+		}
+
+		Long harvestResultOid = null;
+		boolean watching = false;
+		try {
+			harvestResultOid = begin();
+			final Long oid = harvestResultOid;
+			watchIndexing(harvestResultOid).whenComplete((allIndexed, failure) -> finishWatching(oid, failure));
+			watching = true;
+		}
+		catch(RejectedExecutionException e) {
+			log.error("Unable to watch the Wayback indexing of job " + getResult().getTargetInstanceOid() + ": " + e.getMessage());
+		}
+		finally {
+			if(!watching)
+			{
+				Indexer.removeRunningIndex(getName(), harvestResultOid);
+			}
+		}
+	}
+
+	/**
+	 * Mark the index complete once the Wayback folders are no longer watched, 
+	 * as the index job did when it waited for them itself.
+	 */
+	private void finishWatching(Long harvestResultOid, Throwable failure) {
+		try {
+			if(failure != null)
+			{
+				log.error("Watching the Wayback indexing of job " + getResult().getTargetInstanceOid() + " failed, the index was not finalised", failure);
+			}
+			else
+			{
+				markComplete(harvestResultOid);
+			}
+		}
+		catch(RuntimeException e) {
+			log.error("Index job " + getName() + " failed, the index was not finalised: " + e.getMessage(), e);
+		}
+		finally {
+			Indexer.removeRunningIndex(getName(), harvestResultOid);
+		}
+	}
+
+	/**
+	 * Copy the archive files to the Wayback input folder and wait until 
+	 * Wayback has indexed them, one of them has failed, or the timeout has 
+	 * passed.
+	 */
 	@Override
 	public void indexFiles(Long harvestResultOid) {
+		try {
+			watchIndexing(harvestResultOid).get();
+		}
+		catch(InterruptedException e) {
+			log.warn("Wayback indexing thread was interrupted.", e);
+			Thread.currentThread().interrupt();
+		}
+		catch(ExecutionException e) {
+			log.error("Watching the Wayback indexing of job " + getResult().getTargetInstanceOid() + " failed", e.getCause());
+		}
+	}
+
+	/**
+	 * Copy the archive files to the Wayback input folder and start checking 
+	 * the Wayback merged and failed folders every waittime milliseconds.
+	 * @return a future completed with true once every file has been indexed, 
+	 * or false once a file has failed or the timeout has passed
+	 */
+	private CompletableFuture<Boolean> watchIndexing(Long harvestResultOid) {
 		//Copy the Archive files to the Wayback input folder
         log.info("Generating indexes for " + getResult().getTargetInstanceOid());
-        boolean failed = false;
-        allIndexed = false;
         if(indexFiles.size() <= 0)
         {
         	log.error("Could not find any archive files in directory: " + directory.getAbsolutePath() );
@@ -98,50 +210,91 @@ public class WaybackIndexer extends IndexerBase {
 	        }
         }
 
-		MonitoredFile lastFileNotIndexed = null;
-
 		//Watch the Wayback merged/failed folders until the files appear
-        long maxloops = timeout/waittime;
-		for(long count = 0; count < maxloops && !allIndexed && !failed; count++)
+		IndexingMonitor monitor = new IndexingMonitor(timeout/waittime);
+		if(monitor.maxloops <= 0)
 		{
-			try {
-				Thread.sleep(waittime);
-			} catch (InterruptedException e) {
-    			log.warn("Wayback indexing thread was interrupted.", e);
-				break; //out of count < maxloops
-			}
-			
-	        for(MonitoredFile f: indexFiles)
-	        {
-	        	allIndexed = true;
-	        	FileStatus status = f.getStatus();
-	        	if(status != FileStatus.INDEXED)
-	        	{
-	        		if(status == FileStatus.FAILED)
-	        		{
-	        			failed = true;
-	        			log.warn("Archive file failed Wayback indexing: "+f.getPath());
-	        		}
-	        		lastFileNotIndexed = f;
-	        		if (log.isDebugEnabled()) {
-						log.debug("Found at least one archive file not indexed: " + f.getPath() +
-								" (this will mean that indexing will fail to complete in a timely manner).");
-					}
-	            	allIndexed = false;
-	        		break; //out of for MonitoredFile loop
-	        	}
-	        }
+			monitor.finish();
 		}
-		if(allIndexed)
+		else
 		{
-			log.info("Completed indexing for job " + getResult().getTargetInstanceOid());
+			monitorExecutor.schedule(monitor, waittime, TimeUnit.MILLISECONDS);
 		}
-		else
+		return monitor.result;
+	}
+
+	/**
+	 * Checks the Wayback folders once, and schedules the next check until the 
+	 * files have been indexed, one has failed, or maxloops checks have been made.
+	 */
+	private class IndexingMonitor implements Runnable
+	{
+		private final long maxloops;
+		private final CompletableFuture<Boolean> result = new CompletableFuture<Boolean>();
+		private long count = 0;
+		private boolean allIndexed = false;
+		private boolean failed = false;
+		private MonitoredFile lastFileNotIndexed = null;
+
+		private IndexingMonitor(long maxloops)
+		{
+			this.maxloops = maxloops;
+		}
+
+		@Override
+		public void run()
+		{
+			try {
+				count++;
+		        for(MonitoredFile f: indexFiles)
+		        {
+		        	allIndexed = true;
+		        	FileStatus status = f.getStatus();
+		        	if(status != FileStatus.INDEXED)
+		        	{
+		        		if(status == FileStatus.FAILED)
+		        		{
+		        			failed = true;
+		        			log.warn("Archive file failed Wayback indexing: "+f.getPath());
+		        		}
+		        		lastFileNotIndexed = f;
+		        		if (log.isDebugEnabled()) {
+							log.debug("Found at least one archive file not indexed: " + f.getPath() +
+									" (this will mean that indexing will fail to complete in a timely manner).");
+						}
+		            	allIndexed = false;
+		        		break; //out of for MonitoredFile loop
+		        	}
+		        }
+
+				if(count < maxloops && !allIndexed && !failed)
+				{
+					monitorExecutor.schedule(this, waittime, TimeUnit.MILLISECONDS);
+				}
+				else
+				{
+					finish();
+				}
+			}
+			catch(RuntimeException e) {
+				result.completeExceptionally(e);
+			}
+		}
+
+		private void finish()
 		{
-	    	log.warn("Job " + getResult().getTargetInstanceOid() + " failed to complete indexing in a timely manner.");
-	    	if (lastFileNotIndexed != null) {
-				log.warn("Job " + getResult().getTargetInstanceOid() + " last file not indexed: " + lastFileNotIndexed.getPath());
+			if(allIndexed)
+			{
+				log.info("Completed indexing for job " + getResult().getTargetInstanceOid());
 			}
+			else
+			{
+		    	log.warn("Job " + getResult().getTargetInstanceOid() + " failed to complete indexing in a timely manner.");
+		    	if (lastFileNotIndexed != null) {
+					log.warn("Job " + getResult().getTargetInstanceOid() + " last file not indexed: " + lastFileNotIndexed.getPath());
+				}
+			}
+			result.complete(allIndexed);
 		}
 	}
 	
@@ -230,6 +383,19 @@ public class WaybackIndexer extends IndexerBase {
 		return enabled;
 	}
 
+	/**
+	 * Stop watching the Wayback folders when the application context is 
+	 * closed. The harvests still being watched are not marked complete.
+	 */
+	@Override
+	public void destroy() {
+		monitorExecutor.shutdownNow();
+	}
+
+	ScheduledThreadPoolExecutor getMonitorExecutor() {
+		return monitorExecutor;
+	}
+
 	protected class MonitoredFile
 	{
 		private File theFile;
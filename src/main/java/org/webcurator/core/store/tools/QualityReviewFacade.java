@@ -20,6 +20,7 @@ import java.net.MalformedURLException;
 import java.nio.file.Path;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.httpclient.Header;
 import org.webcurator.core.exceptions.DigitalAssetStoreException;
@@ -28,6 +29,7 @@ import org.webcurator.core.util.Auditor;
 import org.webcurator.core.util.AuthUtil;
 import org.webcurator.domain.TargetInstanceDAO;
 import org.webcurator.domain.model.core.*;
+import org.webcurator.domain.model.dto.HarvestResourceSnapshot;
 
 /**
  * This facade provides the methods required for the Quality Review Tools.
@@ -186,6 +188,16 @@ public class QualityReviewFacade {
 	public List<HarvestResourceDTO> getHarvestResourceDTOs(long harvestResultOid) throws IOException {
 		return targetInstanceDao.getHarvestResourceDTOs(harvestResultOid);
 	}	
+
+	/**
+	 * Get a read only snapshot of the names, lengths and status codes of the resources of a harvest result
+	 * @param harvestResultOid The OID of harvest result to get the resources from.
+	 * @param namePool a pool of resource names shared with other snapshots, or null.
+	 * @return the <code>HarvestResourceSnapshot</code>.
+	 */
+	public HarvestResourceSnapshot getHarvestResourceSnapshot(long harvestResultOid, Map<String, String> namePool) {
+		return targetInstanceDao.getHarvestResourceSnapshot(harvestResultOid, namePool);
+	}
 	
 	/**
 	 * Copy a Harvest Result and remove all the URLs in the urisToDelete list and import all the HarvestResourceDTOs in the hrsToImport list.
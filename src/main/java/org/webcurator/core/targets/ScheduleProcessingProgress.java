@@ -0,0 +1,181 @@
+/*
+ *  Copyright 2006 The National Library of New Zealand
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.webcurator.core.targets;
+
+import java.util.Date;
+
+/**
+ * The progress of the schedule processing job. A pass works through every
+ * schedule that needs processing, a chunk at a time, and may be spread over
+ * several runs of the job when the work per run is bounded.
+ * <p>
+ * The progress is held in memory and is lost on a restart.
+ */
+public class ScheduleProcessingProgress {
+	/** The date the current pass started, or null if no pass is in progress */
+	private Date passStartDate = null;
+	/** The oid of the last schedule processed in the current pass */
+	private Long cursorOid = null;
+	/** The number of schedules processed in the current pass */
+	private long passSchedules = 0L;
+	/** The number of schedules that failed in the current pass */
+	private long passFailures = 0L;
+	/** The number of target instances created in the current pass */
+	private long passTargetInstances = 0L;
+	/** The number of passes completed */
+	private long passesCompleted = 0L;
+	/** The date the last pass completed */
+	private Date lastPassEndDate = null;
+	/** The number of schedules processed in the last completed pass */
+	private long lastPassSchedules = 0L;
+	/** The number of schedules processed by the last run of the job */
+	private long lastRunSchedules = 0L;
+	/** The time taken by the last run of the job in milliseconds */
+	private long lastRunMillis = 0L;
+	/** The number of schedules processed since startup */
+	private long totalSchedules = 0L;
+	/** The number of target instances created since startup */
+	private long totalTargetInstances = 0L;
+
+	/**
+	 * Start a pass if one is not already in progress.
+	 * @return the date the current pass started.
+	 */
+	synchronized Date startPass() {
+		if (passStartDate == null) {
+			passStartDate = new Date();
+			cursorOid = null;
+			passSchedules = 0L;
+			passFailures = 0L;
+			passTargetInstances = 0L;
+		}
+		return passStartDate;
+	}
+
+	/**
+	 * Record a processed chunk of schedules.
+	 * @param lastOid the oid of the last schedule in the chunk.
+	 * @param schedules the number of schedules in the chunk.
+	 * @param failures the number of schedules that failed.
+	 * @param targetInstances the number of target instances created.
+	 */
+	synchronized void chunkProcessed(Long lastOid, int schedules, int failures, long targetInstances) {
+		cursorOid = lastOid;
+		passSchedules += schedules;
+		passFailures += failures;
+		passTargetInstances += targetInstances;
+		totalSchedules += schedules;
+		totalTargetInstances += targetInstances;
+	}
+
+	/**
+	 * Record the end of the current pass.
+	 */
+	synchronized void passCompleted() {
+		passesCompleted++;
+		lastPassEndDate = new Date();
+		lastPassSchedules = passSchedules;
+		passStartDate = null;
+		cursorOid = null;
+	}
+
+	/**
+	 * Record the end of a run of the job.
+	 * @param schedules the number of schedules processed by the run.
+	 * @param millis the time taken by the run.
+	 */
+	synchronized void runCompleted(long schedules, long millis) {
+		lastRunSchedules = schedules;
+		lastRunMillis = millis;
+	}
+
+	/**
+	 * @return the date the current pass started, or null if no pass is in progress.
+	 */
+	public synchronized Date getPassStartDate() {
+		return passStartDate;
+	}
+
+	/**
+	 * @return the oid of the last schedule processed in the current pass.
+	 */
+	public synchronized Long getCursorOid() {
+		return cursorOid;
+	}
+
+	/**
+	 * @return the number of schedules processed in the current pass.
+	 */
+	public synchronized long getPassSchedules() {
+		return passSchedules;
+	}
+
+	/**
+	 * @return the number of schedules that failed in the current pass.
+	 */
+	public synchronized long getPassFailures() {
+		return passFailures;
+	}
+
+	/**
+	 * @return the number of target instances created in the current pass.
+	 */
+	public synchronized long getPassTargetInstances() {
+		return passTargetInstances;
+	}
+
+	/**
+	 * @return the number of passes completed since startup.
+	 */
+	public synchronized long getPassesCompleted() {
+		return passesCompleted;
+	}
+
+	/**
+	 * @return the date the last pass completed.
+	 */
+	public synchronized Date getLastPassEndDate() {
+		return lastPassEndDate;
+	}
+
+	/**
+	 * @return the number of schedules processed in the last completed pass.
+	 */
+	public synchronized long getLastPassSchedules() {
+		return lastPassSchedules;
+	}
+
+	/**
+	 * @return the number of schedules processed per second by the last run of the job.
+	 */
+	public synchronized double getLastRunSchedulesPerSecond() {
+		return lastRunMillis == 0L ? 0.0d : lastRunSchedules * 1000.0d / lastRunMillis;
+	}
+
+	/**
+	 * @return the number of schedules processed since startup.
+	 */
+	public synchronized long getTotalSchedules() {
+		return totalSchedules;
+	}
+
+	/**
+	 * @return the number of target instances created since startup.
+	 */
+	public synchronized long getTotalTargetInstances() {
+		return totalTargetInstances;
+	}
+}
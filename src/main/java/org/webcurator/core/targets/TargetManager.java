@@ -34,6 +34,7 @@ import org.webcurator.domain.model.core.TargetGroup;
 import org.webcurator.domain.model.core.TargetInstance;
 import org.webcurator.domain.model.dto.GroupMemberDTO;
 import org.webcurator.domain.model.dto.PermissionSeedDTO;
+import org.webcurator.domain.model.dto.SeedPermissionEvaluation;
 import org.webcurator.common.ui.target.TargetEditorContext;
 
 /**
@@ -192,6 +193,17 @@ public interface TargetManager {
 	 */
 	boolean isTargetHarvestable(TargetInstance aTargetInstance);
 
+	/**
+	 * Evaluate the seeds of the AbstractTarget associated with this 
+	 * TargetInstance and their active permissions in one pass, so that the
+	 * approval check, the seed history and the SIP of a harvest can share the
+	 * result. For a group, only the seeds of the approved member targets in
+	 * the target instance owner's agency are included.
+	 * @param aTargetInstance the target instance to evaluate
+	 * @return the evaluation
+	 */
+	SeedPermissionEvaluation evaluateSeeds(TargetInstance aTargetInstance);
+
 	/**
 	 * Get the members of the target group.
 	 * @param aTargetGroup The target group.
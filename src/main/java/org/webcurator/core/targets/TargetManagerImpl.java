@@ -22,17 +22,29 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.PrimitiveIterator;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.LongStream;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.Hibernate;
 import org.springframework.context.MessageSource;
+import org.springframework.security.concurrent.DelegatingSecurityContextExecutorService;
 import org.webcurator.auth.AuthorityManager;
 import org.webcurator.core.common.EnvironmentFactory;
 import org.webcurator.core.common.WCTTreeSet;
@@ -66,9 +78,12 @@ import org.webcurator.domain.model.dto.AbstractTargetDTO;
 import org.webcurator.domain.model.dto.GroupMemberDTO;
 import org.webcurator.domain.model.dto.GroupMemberDTO.SAVE_STATE;
 import org.webcurator.domain.model.dto.PermissionSeedDTO;
+import org.webcurator.domain.model.dto.SeedPermissionEvaluation;
 import org.webcurator.common.ui.Constants;
 import org.webcurator.common.ui.target.TargetEditorContext;
 
+import com.google.common.util.concurrent.Striped;
+
 /**
  * The implementation of the TargetManager interface.
  * 
@@ -109,6 +124,17 @@ public class TargetManagerImpl implements TargetManager {
 
 	private String subGroupTypeName = null;
 
+	/** The number of targets whose scheduled instances are created at the same time. */
+	private int scheduleExpansionThreads = 4;
+	/** The number of schedules loaded and processed together by the schedule processing job. */
+	private int scheduleChunkSize = 50;
+	/** The maximum number of schedules processed by each run of the job, or 0 for no limit. */
+	private int maxSchedulesPerRun = 0;
+	/** The progress of the schedule processing job. */
+	private final ScheduleProcessingProgress scheduleProgress = new ScheduleProcessingProgress();
+	/** Locks the targets whose instances are being created. */
+	private final Striped<Lock> targetLocks = Striped.lock(64);
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -899,32 +925,32 @@ public class TargetManagerImpl implements TargetManager {
 
 	/** @see TargetManager#isTargetHarvestable(TargetInstance). */
 	public boolean isTargetHarvestable(TargetInstance aTargetInstance) {
-		boolean harvestable = false;
-		boolean foundBadSeed = false;
+		return evaluateSeeds(aTargetInstance).isHarvestable();
+	}
+
+	/** @see TargetManager#evaluateSeeds(TargetInstance). */
+	public SeedPermissionEvaluation evaluateSeeds(TargetInstance aTargetInstance) {
+		Date now = new Date();
 
 		AbstractTarget aTarget = aTargetInstance.getTarget();
 		if (aTarget.getObjectType() == AbstractTarget.TYPE_GROUP) {
-			return getSeeds(aTargetInstance).size() > 0;
+			// the group's seeds are already restricted to approved targets
+			Set<Seed> seeds = getSeeds(aTargetInstance);
+			return new SeedPermissionEvaluation(seeds, seeds.size() > 0, now);
 		} else {
 			Long oid = aTarget.getOid();
 			Target target = targetDao.load(oid, true);
 
-			Seed seed = null;
+			boolean foundBadSeed = false;
 			Set<Seed> seeds = target.getSeeds();
-			Iterator<Seed> it = seeds.iterator();
-			while (it.hasNext()) {
-				seed = (Seed) it.next();
-				if (!seed.isHarvestable(new Date())) {
+			for (Seed seed : seeds) {
+				if (!seed.isHarvestable(now)) {
 					foundBadSeed = true;
 					break;
 				}
 			}
 
-			if (!seeds.isEmpty() && !foundBadSeed) {
-				harvestable = true;
-			}
-
-			return harvestable;
+			return new SeedPermissionEvaluation(new HashSet<Seed>(seeds), !seeds.isEmpty() && !foundBadSeed, now);
 		}
 	}
 
@@ -1044,12 +1070,61 @@ public class TargetManagerImpl implements TargetManager {
 	}
 
 	/**
-	 * Look up all schedules that need to be processed.
+	 * Look up all schedules that need to be processed and process them a
+	 * chunk at a time. The targets of all the schedules in a chunk are
+	 * processed together on up to scheduleExpansionThreads threads.
+	 * 
+	 * A pass over the schedules may be spread over several runs of the job
+	 * when maxSchedulesPerRun is set. Each processed schedule has its last
+	 * processed date saved, so a pass only picks up schedules that it has not
+	 * processed yet.
+	 * 
+	 * The pass start and cursor are held in memory, so the first run after a
+	 * restart starts a new pass at the current time. The schedules that the
+	 * interrupted pass processed have had their next schedule after period
+	 * moved beyond the scheduling window, so they are not due and the new
+	 * pass picks up the schedules that the interrupted pass did not reach.
 	 */
 	public void processSchedulesJob() {
-		List<Schedule> schedules = targetDao.getSchedulesToRun();
-		// STK - use below line instead of above line in test environment due to performance issues.
-		// List<Schedule> schedules = new LinkedList<Schedule>();
+		long runStart = System.currentTimeMillis();
+		Date passStart = scheduleProgress.startPass();
+		Long cursor = scheduleProgress.getCursorOid();
+		int runSchedules = 0;
+
+		while (maxSchedulesPerRun <= 0 || runSchedules < maxSchedulesPerRun) {
+			int chunkSize = maxSchedulesPerRun <= 0 ? scheduleChunkSize : Math.min(scheduleChunkSize, maxSchedulesPerRun - runSchedules);
+			List<Schedule> schedules = targetDao.getSchedulesToRun(passStart, cursor, chunkSize);
+			if (!schedules.isEmpty()) {
+				cursor = schedules.get(schedules.size() - 1).getOid();
+				processScheduleChunk(schedules, cursor);
+				runSchedules += schedules.size();
+			}
+
+			if (schedules.size() < chunkSize) {
+				scheduleProgress.passCompleted();
+				log.info("Completed processing schedules: " + scheduleProgress.getLastPassSchedules() + " schedules in the pass");
+				break;
+			}
+		}
+
+		long runMillis = System.currentTimeMillis() - runStart;
+		scheduleProgress.runCompleted(runSchedules, runMillis);
+		log.debug(" Processed " + runSchedules + " schedules in " + runMillis + "ms");
+	}
+
+	/**
+	 * Process a chunk of the schedules. A schedule is only marked as
+	 * processed if all of its target instances were created.
+	 * 
+	 * @param schedules
+	 *            The schedules to process.
+	 * @param lastOid
+	 *            The oid of the last schedule in the chunk.
+	 */
+	private void processScheduleChunk(List<Schedule> schedules, Long lastOid) {
+		Map<Schedule, Throwable> failures = new IdentityHashMap<Schedule, Throwable>();
+		List<Schedule> toComplete = new ArrayList<Schedule>(schedules.size());
+		List<ScheduledTarget> work = new ArrayList<ScheduledTarget>();
 
 		for (Schedule s : schedules) {
 			if (s.getTarget() == null) {
@@ -1060,9 +1135,32 @@ public class TargetManagerImpl implements TargetManager {
 				targetDao.save(s);
 			} else {
 				log.debug(" Processing schedule: " + s.getOid());
-				processBatchSchedule(s);
+				try {
+					work.addAll(planBatchSchedule(s));
+					toComplete.add(s);
+				} catch (RuntimeException ex) {
+					failures.put(s, ex);
+				}
+			}
+		}
+
+		AtomicLong created = new AtomicLong();
+		failures.putAll(createAndSaveTargetInstances(work, created));
+
+		for (Schedule s : toComplete) {
+			if (!failures.containsKey(s)) {
+				try {
+					completeBatchSchedule(s);
+				} catch (RuntimeException ex) {
+					failures.put(s, ex);
+				}
 			}
 		}
+
+		for (Map.Entry<Schedule, Throwable> failure : failures.entrySet()) {
+			log.error("Failed to process schedule " + failure.getKey().getOid(), failure.getValue());
+		}
+		scheduleProgress.chunkProcessed(lastOid, schedules.size(), failures.size(), created.get());
 	}
 
 	/**
@@ -1117,6 +1215,19 @@ public class TargetManagerImpl implements TargetManager {
 	 * @return A Set of Target instances.
 	 */
 	public void processBatchSchedule(Schedule aSchedule) {
+		Map<Schedule, Throwable> failures = createAndSaveTargetInstances(planBatchSchedule(aSchedule), new AtomicLong());
+		rethrowFirst(failures.values());
+		completeBatchSchedule(aSchedule);
+	}
+
+	/**
+	 * Find the targets that a batch schedule creates target instances for.
+	 * 
+	 * @param aSchedule
+	 *            The schedule to evaluate.
+	 * @return The targets that can be scheduled.
+	 */
+	private List<ScheduledTarget> planBatchSchedule(Schedule aSchedule) {
 
 		AbstractTarget aTarget = aSchedule.getTarget();
 
@@ -1141,8 +1252,19 @@ public class TargetManagerImpl implements TargetManager {
 			log.debug(" Schedules target is a target.");
 		}
 
-		createBatchTargetInstances(aTarget, aSchedule, group, checkAgency);
+		Map<Long, AbstractTarget> scheduledTargets = new LinkedHashMap<Long, AbstractTarget>();
+		collectBatchScheduledTargets(aTarget, group, scheduledTargets);
+		return getSchedulableTargets(scheduledTargets.values(), aSchedule, checkAgency);
+	}
 
+	/**
+	 * Mark a batch schedule as processed once its target instances have been
+	 * created.
+	 * 
+	 * @param aSchedule
+	 *            The processed schedule.
+	 */
+	private void completeBatchSchedule(Schedule aSchedule) {
 		// Get the schedule ahead time from our environment.
 		int daysToSchedule = EnvironmentFactory.getEnv().getDaysToSchedule();
 
@@ -1168,20 +1290,24 @@ public class TargetManagerImpl implements TargetManager {
 	}
 
 	/**
-	 * Create target instances for the target.
+	 * Find the targets and One SIP groups that a batch schedule creates
+	 * target instances for.
 	 * 
-	 * @param aSchedule
-	 *            The schedule to use.
+	 * @param aTarget
+	 *            The scheduled target or group.
+	 * @param aGroup
+	 *            The scheduled group, or null if a target is scheduled.
+	 * @param destMap
+	 *            The map to add the targets to, by oid.
 	 */
-
-	private void createBatchTargetInstances(AbstractTarget aTarget, Schedule aSchedule, TargetGroup aGroup, boolean checkAgency) {
+	private void collectBatchScheduledTargets(AbstractTarget aTarget, TargetGroup aGroup, Map<Long, AbstractTarget> destMap) {
 
 		int objectType = aTarget.getObjectType();
 
 		if (objectType == AbstractTarget.TYPE_TARGET
 				|| (objectType == AbstractTarget.TYPE_GROUP && aGroup.getSipType() == TargetGroup.ONE_SIP)) {
 
-			createAndSaveTargetInstances(aTarget, aSchedule, checkAgency);
+			destMap.put(aTarget.getOid(), aTarget);
 			return;
 		} else if (objectType == AbstractTarget.TYPE_GROUP && aGroup.getSipType() == TargetGroup.MANY_SIP) {
 
@@ -1193,7 +1319,7 @@ public class TargetManagerImpl implements TargetManager {
 				}
 
 				// Only want to add them if they're unique.
-				createBatchTargetInstances(child, aSchedule, null, checkAgency);
+				collectBatchScheduledTargets(child, null, destMap);
 			}
 
 			return;
@@ -1204,6 +1330,23 @@ public class TargetManagerImpl implements TargetManager {
 	}
 
 	public void createTargetInstances(AbstractTarget aTarget, Schedule aSchedule, boolean checkAgency) {
+		Map<Long, AbstractTarget> scheduledTargets = new LinkedHashMap<Long, AbstractTarget>();
+		collectScheduledTargets(aTarget, scheduledTargets, new HashSet<Long>());
+		createAndSaveTargetInstances(scheduledTargets.values(), aSchedule, checkAgency);
+	}
+
+	/**
+	 * Find the targets and One SIP groups that a schedule creates target
+	 * instances for, expanding Many SIP groups into their members.
+	 * 
+	 * @param aTarget
+	 *            The scheduled target or group.
+	 * @param destMap
+	 *            The map to add the targets to, by oid.
+	 * @param expandedGroups
+	 *            The oids of the Many SIP groups already expanded.
+	 */
+	private void collectScheduledTargets(AbstractTarget aTarget, Map<Long, AbstractTarget> destMap, Set<Long> expandedGroups) {
 		int objectType = aTarget.getObjectType();
 		if (objectType == AbstractTarget.TYPE_GROUP) {
 			// Lets make sure it is loaded before we start casting!
@@ -1215,10 +1358,13 @@ public class TargetManagerImpl implements TargetManager {
 		if (objectType == AbstractTarget.TYPE_TARGET || objectType == AbstractTarget.TYPE_GROUP
 				&& ((TargetGroup) aTarget).getSipType() == TargetGroup.ONE_SIP) {
 			
-			createAndSaveTargetInstances(aTarget, aSchedule, checkAgency);
+			destMap.put(aTarget.getOid(), aTarget);
 			return;
 		} else if (objectType == AbstractTarget.TYPE_GROUP && ((TargetGroup) aTarget).getSipType() == TargetGroup.MANY_SIP) {
 			TargetGroup aTargetGroup = (TargetGroup) aTarget;
+			if (!expandedGroups.add(aTargetGroup.getOid())) {
+				return;
+			}
 
 			for (GroupMember member : aTargetGroup.getChildren()) {
 				// If the child is a Sub-Group, we don't want to propagate the schedule to its members
@@ -1231,7 +1377,7 @@ public class TargetManagerImpl implements TargetManager {
 				}
 
 				// Only want to add them if they're unique.
-				createTargetInstances(child, aSchedule, checkAgency);
+				collectScheduledTargets(child, destMap, expandedGroups);
 			}
 
 			return;
@@ -1244,13 +1390,150 @@ public class TargetManagerImpl implements TargetManager {
 		}
 	}
 
+	/**
+	 * Create and save the target instances of a schedule for each of the
+	 * targets.
+	 * 
+	 * @param targets
+	 *            The targets and One SIP groups to create instances for.
+	 * @param aSchedule
+	 *            The schedule to use.
+	 * @param checkAgency
+	 *            true to skip targets that belong to a different agency to the schedule.
+	 */
+	private void createAndSaveTargetInstances(Collection<AbstractTarget> targets, Schedule aSchedule, boolean checkAgency) {
+		Map<Schedule, Throwable> failures = createAndSaveTargetInstances(getSchedulableTargets(targets, aSchedule, checkAgency),
+				new AtomicLong());
+		rethrowFirst(failures.values());
+	}
+
+	/**
+	 * Check the targets of a schedule in the calling thread, while any lazy
+	 * associations they need can still be loaded.
+	 * 
+	 * @param targets
+	 *            The targets and One SIP groups to check.
+	 * @param aSchedule
+	 *            The schedule.
+	 * @param checkAgency
+	 *            true to skip targets that belong to a different agency to the schedule.
+	 * @return The targets that can be scheduled.
+	 */
+	private List<ScheduledTarget> getSchedulableTargets(Collection<AbstractTarget> targets, Schedule aSchedule, boolean checkAgency) {
+		List<ScheduledTarget> schedulable = new ArrayList<ScheduledTarget>(targets.size());
+		long[] executionTimes = null;
+		for (AbstractTarget aTarget : targets) {
+			if (isSchedulable(aTarget, aSchedule, checkAgency)) {
+				if (executionTimes == null) {
+					executionTimes = getExecutionTimes(aSchedule);
+				}
+				schedulable.add(new ScheduledTarget(aTarget, aSchedule, executionTimes));
+			}
+		}
+		return schedulable;
+	}
+
+	/**
+	 * Calculate the execution times of a schedule from now or its start date
+	 * until the end of the scheduling window.
+	 * 
+	 * @param aSchedule
+	 *            The schedule.
+	 * @return The execution times in order.
+	 */
+	private long[] getExecutionTimes(Schedule aSchedule) {
+		LongStream.Builder times = LongStream.builder();
+		for (PrimitiveIterator.OfLong it = aSchedule.getExecutionTimes(aSchedule.getStartDate(), getScheduleUntilDate(aSchedule)); it.hasNext();) {
+			times.add(it.nextLong());
+		}
+		return times.build().toArray();
+	}
 
 	/**
+	 * Create and save the target instances for each target, each in its own
+	 * transaction. When there is more than one target they are created
+	 * concurrently, on at most scheduleExpansionThreads threads. The workers
+	 * are only given the oids and values they need, never the targets and
+	 * schedules loaded by the calling thread's session.
+	 * 
+	 * @param work
+	 *            The targets and their schedules.
+	 * @param created
+	 *            Incremented by the number of target instances created.
+	 * @return The first failure of each schedule that failed.
+	 */
+	private Map<Schedule, Throwable> createAndSaveTargetInstances(List<ScheduledTarget> work, final AtomicLong created) {
+		Map<Schedule, Throwable> failures = new IdentityHashMap<Schedule, Throwable>();
+
+		if (work.size() <= 1 || scheduleExpansionThreads <= 1) {
+			for (ScheduledTarget st : work) {
+				if (!failures.containsKey(st.schedule)) {
+					try {
+						created.addAndGet(createAndSaveTargetInstances(st));
+					} catch (RuntimeException ex) {
+						failures.put(st.schedule, ex);
+					}
+				}
+			}
+			return failures;
+		}
+
+		// Run each worker with the caller's security context so that the new
+		// instances are audited against the current user.
+		ExecutorService executor = new DelegatingSecurityContextExecutorService(
+				Executors.newFixedThreadPool(Math.min(scheduleExpansionThreads, work.size())));
+		try {
+			List<Future<Integer>> futures = new ArrayList<Future<Integer>>(work.size());
+			for (final ScheduledTarget st : work) {
+				futures.add(executor.submit(() -> createAndSaveTargetInstances(st)));
+			}
+
+			for (int i = 0; i < futures.size(); i++) {
+				try {
+					created.addAndGet(futures.get(i).get());
+				} catch (ExecutionException ex) {
+					Schedule failed = work.get(i).schedule;
+					if (!failures.containsKey(failed)) {
+						failures.put(failed, ex.getCause());
+					}
+				}
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new WCTRuntimeException("Interrupted while creating target instances", ex);
+		} finally {
+			executor.shutdownNow();
+		}
+		return failures;
+	}
+
+	/**
+	 * Rethrow the first of the failures, if there are any.
+	 */
+	private void rethrowFirst(Collection<Throwable> failures) {
+		for (Throwable failure : failures) {
+			if (failure instanceof RuntimeException) {
+				throw (RuntimeException) failure;
+			}
+			if (failure instanceof Error) {
+				throw (Error) failure;
+			}
+			throw new WCTRuntimeException(failure);
+		}
+	}
+
+	/**
+	 * Check that a schedule can create target instances for a target.
+	 * 
 	 * @param aTarget
+	 *            The target to check.
 	 * @param aSchedule
+	 *            The schedule.
 	 * @param checkAgency
+	 *            true if the target must belong to the schedule's agency.
+	 * @return true if the target can be scheduled; otherwise false.
 	 */
-	private void createAndSaveTargetInstances(AbstractTarget aTarget, Schedule aSchedule, boolean checkAgency) {
+	private boolean isSchedulable(AbstractTarget aTarget, Schedule aSchedule, boolean checkAgency) {
 		User targetOwner = aTarget.getOwner();
 		User scheduleOwner = aSchedule.getOwningUser();
 		Agency scheduleAgency = scheduleOwner.getAgency();
@@ -1258,31 +1541,33 @@ public class TargetManagerImpl implements TargetManager {
 		if (checkAgency && !targetAgency.equals(scheduleAgency)) {
 			// We should not schedule this one because it belongs to a different
 			// agency to the schedule.
-			return;
+			return false;
 		}
 		if (!aTarget.isSchedulable()) {
 			// We cannot schedule an unschedulable target.
-			return;
+			return false;
 		}
-		
-		Date scheduleTill = getScheduleUntilDate(aSchedule);
-		Date startFrom = getScheduleStartDate(aTarget, aSchedule);
-		createAndSaveTargetInstances(aTarget, aSchedule, scheduleTill, startFrom);
-
+		return true;
 	}
 
-	private Date getScheduleStartDate(AbstractTarget aTarget, Schedule aSchedule) {
-		// Determine when to schedule from. This is the latest of:
-		// 1. Today
-		// 2. The start date.
-		// 3. The latest current target instance.
-		Date startFrom = targetDao.getLatestScheduledDate(aTarget, aSchedule);
-
-		if (startFrom == null) {
-			startFrom = new Date();
+	/**
+	 * Create the target instances of a schedule for a target. The target is
+	 * locked while its instances are created so that two threads scheduling
+	 * the same target do not both start from the same latest scheduled date.
+	 * 
+	 * @param st
+	 *            The target and its schedule.
+	 * @return the number of target instances created.
+	 */
+	private int createAndSaveTargetInstances(ScheduledTarget st) {
+		Lock lock = targetLocks.get(st.targetOid);
+		lock.lock();
+		try {
+			Date latestScheduled = targetDao.getLatestScheduledDate(st.targetOid, st.scheduleOid);
+			return createAndSaveTargetInstances(st, latestScheduled);
+		} finally {
+			lock.unlock();
 		}
-		startFrom = DateUtils.latestDate(startFrom, aSchedule.getStartDate());
-		return startFrom;
 	}
 
 	private Date getScheduleUntilDate(Schedule aSchedule) {
@@ -1300,57 +1585,92 @@ public class TargetManagerImpl implements TargetManager {
 	}
 
 	/**
-	 * Create target instances for the target.
+	 * Create target instances for the target at the schedule's execution
+	 * times after the latest instance already scheduled. The facts about the
+	 * target that every instance shares are looked up once; the instances and
+	 * their annotations are then inserted together in one batched transaction.
 	 * 
-	 * @param aSchedule
-	 *            The schedule to use.
-	 * @return 
-	 */
-	private void createAndSaveTargetInstances(AbstractTarget aTarget, Schedule aSchedule, Date scheduleUntil, Date startFrom) {
-		int objectType = aTarget.getObjectType();
+	 * @param st
+	 *            The target and its schedule.
+	 * @param latestScheduled
+	 *            The latest instance of the target already scheduled, or null.
+	 * @return the number of target instances created.
+	 */
+	private int createAndSaveTargetInstances(ScheduledTarget st, Date latestScheduled) {
+		List<Date> executionDates = new ArrayList<Date>();
+		for (long time : st.executionTimes) {
+			if (latestScheduled == null || time > latestScheduled.getTime()) {
+				executionDates.add(new Date(time));
+			}
+		}
+		if (executionDates.isEmpty()) {
+			log.debug(" Created 0");
+			return 0;
+		}
 
-		List<Annotation> targetAnnotations = getAnnotations(aTarget);
-		boolean firstForTarget = false;
-		int targetInstanceCount = 0;
-		for (startFrom = aSchedule.getNextExecutionDate(startFrom); startFrom != null && startFrom.before(scheduleUntil); startFrom = aSchedule
-				.getNextExecutionDate(startFrom)) {
+		// if this is the first TargetInstance ever to be created for
+		// a particular target then set the firstFromTarget flag on the TI.
+		boolean firstForTarget = instanceManager.countTargetInstancesByTarget(st.targetOid) == 0L;
 
+		Target target = null;
+		List<Annotation> targetAnnotations = null;
+		if (st.targetType == AbstractTarget.TYPE_TARGET) {
+			target = targetDao.load(st.targetOid, true);
+			if (target != null) {
+				targetAnnotations = getAnnotations(target);
+			}
+		}
+
+		List<TargetInstance> targetInstances = new ArrayList<TargetInstance>(executionDates.size());
+		for (Date scheduledTime : executionDates) {
 			TargetInstance ti = new TargetInstance();
-			ti.setTarget(aTarget);
-			ti.setSchedule(aSchedule);
-			ti.setScheduledTime(startFrom);
-			ti.setOwner(aSchedule.getOwningUser());
+			ti.setScheduledTime(scheduledTime);
 
-			// if this is the first TargetInstance ever to be created for
-			// a particular target then set the firstFromTarget flag on the TI.
-			if (!firstForTarget && instanceManager.countTargetInstancesByTarget(aTarget.getOid()) == 0L) {
+			if (firstForTarget && targetInstances.isEmpty()) {
 				ti.setFirstFromTarget(true);
-				firstForTarget = true;
 			}
 
-			if (objectType == AbstractTarget.TYPE_TARGET) {
-				Target target = targetDao.load(aTarget.getOid(), true);
+			if (target != null) {
 				ti.setAllowOptimize(target.isAllowOptimize());
 
 				copyAltertableAnnotations(targetAnnotations, ti);
 
 				// if the useAQA flag is set on the Target then set
 				// it on the Target Instance too.
-				ti.setUseAQA(isTargetUsingAQA(aTarget.getOid()));
-
+				ti.setUseAQA(target.isUseAQA());
 			}
 
-			targetInstanceDao.save(ti);
-			// Update the OIDs for the target.
-			for (Annotation anno : ti.getAnnotations()) {
-				anno.setObjectOid(ti.getOid());
-			}
-			// Save the annotations
-			annotationDAO.saveAnnotations(ti.getAnnotations());
-			log.debug(" Saved TI: " + ti.getOid());
-			targetInstanceCount++;
+			targetInstances.add(ti);
+		}
+
+		targetInstanceDao.insertTargetInstances(st.targetOid, st.scheduleOid, st.ownerOid, targetInstances);
+		log.debug(" Created " + targetInstances.size());
+		return targetInstances.size();
+	}
+
+	/**
+	 * A target and the schedule to create its target instances from. The
+	 * oids and execution times are read in the calling thread, so that the
+	 * threads creating the instances do not use the calling thread's
+	 * entities. The schedule itself is only used by the calling thread to
+	 * record failures.
+	 */
+	private static class ScheduledTarget {
+		private final Schedule schedule;
+		private final long targetOid;
+		private final int targetType;
+		private final long scheduleOid;
+		private final long ownerOid;
+		private final long[] executionTimes;
+
+		private ScheduledTarget(AbstractTarget target, Schedule schedule, long[] executionTimes) {
+			this.schedule = schedule;
+			this.targetOid = target.getOid();
+			this.targetType = target.getObjectType();
+			this.scheduleOid = schedule.getOid();
+			this.ownerOid = schedule.getOwningUser().getOid();
+			this.executionTimes = executionTimes;
 		}
-		log.debug(" Created " + targetInstanceCount);
 	}
 
 	private void copyAltertableAnnotations(List<Annotation> targetAnnotations, TargetInstance ti) {
@@ -1651,30 +1971,7 @@ public class TargetManagerImpl implements TargetManager {
 
 	/** @see TargetManager#getActivePermissions(TargetInstance). */
 	public Collection<PermissionSeedDTO> getActivePermissions(TargetInstance aTargetInstance) {
-		HashMap<Long, PermissionSeedDTO> permissions = new HashMap<Long, PermissionSeedDTO>();
-		Set<Seed> seeds = getSeeds(aTargetInstance);
-		Date now = new Date();
-
-		PermissionSeedDTO psdto = null;
-		Set<Permission> ps = null;
-		for (Seed seed : seeds) {
-			ps = seed.getPermissions();
-			for (Permission p : ps) {
-				if (p.getStartDate().before(now) && (p.getEndDate() == null || p.getEndDate().after(now))) {
-					if (permissions.containsKey(p.getOid())) {
-						psdto = (PermissionSeedDTO) permissions.get(p.getOid());
-					} else {
-						psdto = new PermissionSeedDTO(p);
-					}
-
-					psdto.getSeeds().add(seed.getSeed());
-
-					permissions.put(psdto.getPermissionOid(), psdto);
-				}
-			}
-		}
-
-		return permissions.values();
+		return evaluateSeeds(aTargetInstance).getActivePermissions();
 	}
 
 	/**
@@ -1870,6 +2167,37 @@ public class TargetManagerImpl implements TargetManager {
 		this.subGroupTypeName = subGroupTypeName;
 	}
 
+	/**
+	 * @param scheduleExpansionThreads
+	 *            The number of targets whose scheduled instances are created at the same time.
+	 */
+	public void setScheduleExpansionThreads(int scheduleExpansionThreads) {
+		this.scheduleExpansionThreads = scheduleExpansionThreads;
+	}
+
+	/**
+	 * @param scheduleChunkSize
+	 *            The number of schedules loaded and processed together by the schedule processing job.
+	 */
+	public void setScheduleChunkSize(int scheduleChunkSize) {
+		this.scheduleChunkSize = Math.max(1, scheduleChunkSize);
+	}
+
+	/**
+	 * @param maxSchedulesPerRun
+	 *            The maximum number of schedules processed by each run of the job, or 0 for no limit.
+	 */
+	public void setMaxSchedulesPerRun(int maxSchedulesPerRun) {
+		this.maxSchedulesPerRun = maxSchedulesPerRun;
+	}
+
+	/**
+	 * @return the progress of the schedule processing job.
+	 */
+	public ScheduleProcessingProgress getScheduleProgress() {
+		return scheduleProgress;
+	}
+
 	@Override
 	public void moveTargets(TargetGroup sourceGroup, TargetGroup targetGroup, List<Long> targetsToMove) {
 		Iterator<Long> it = targetsToMove.iterator();
@@ -0,0 +1,61 @@
+/*
+ *  Copyright 2006 The National Library of New Zealand
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.webcurator.core.util;
+
+import java.text.ParseException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.quartz.CronExpression;
+
+/**
+ * A cache of parsed cron expressions, keyed by the expression. Schedules
+ * share a small number of distinct patterns, so each is parsed once rather
+ * than every time a schedule's next execution time is calculated.
+ *
+ * Calculating fire times does not modify a parsed expression, so the cached
+ * expressions are shared between threads.
+ */
+public final class CronExpressionCache {
+	/** The maximum number of expressions held before the cache is cleared. */
+	private static final int MAX_SIZE = 1000;
+	/** The parsed expressions. */
+	private static final Map<String, CronExpression> expressions = new ConcurrentHashMap<String, CronExpression>();
+
+	private CronExpressionCache() {
+	}
+
+	/**
+	 * Get the parsed form of a cron expression.
+	 * @param aCronPattern The cron expression.
+	 * @return The parsed expression.
+	 * @throws ParseException if the expression is not valid.
+	 */
+	public static CronExpression get(String aCronPattern) throws ParseException {
+		if (aCronPattern == null) {
+			throw new IllegalArgumentException("cronExpression cannot be null");
+		}
+		CronExpression expression = expressions.get(aCronPattern);
+		if (expression == null) {
+			expression = new CronExpression(aCronPattern);
+			if (expressions.size() >= MAX_SIZE) {
+				expressions.clear();
+			}
+			expressions.put(aCronPattern, expression);
+		}
+		return expression;
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ *  Copyright 2006 The National Library of New Zealand
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.webcurator.domain;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * An in-process cache of the group membership graph, used by the TargetDAO
+ * to resolve the ancestors and descendants of a target or group without a
+ * query per level of the hierarchy.
+ *
+ * The whole graph is loaded with one query the first time it is needed and
+ * then held until the membership changes. The DAO invalidates the cache
+ * whenever it adds or removes a GroupMember; the next lookup reloads it.
+ * A graph loaded while an invalidation was in progress is used for that
+ * lookup but is not kept, so a stale graph is never cached.
+ */
+public class GroupHierarchyCache {
+	/** The cached graph; null if it must be reloaded */
+	private volatile GroupHierarchy hierarchy = null;
+	/** Incremented each time the cache is invalidated */
+	private long generation = 0L;
+
+	/**
+	 * Get the membership graph, loading it if it is not cached.
+	 * @param edgeLoader supplies every membership as a {parentOid, childOid} pair.
+	 * @return the membership graph.
+	 */
+	public GroupHierarchy get(Supplier<List<Object[]>> edgeLoader) {
+		GroupHierarchy cached = hierarchy;
+		if (cached != null) {
+			return cached;
+		}
+
+		long loadGeneration;
+		synchronized (this) {
+			loadGeneration = generation;
+		}
+		GroupHierarchy loaded = new GroupHierarchy(edgeLoader.get());
+		synchronized (this) {
+			if (loadGeneration == generation) {
+				hierarchy = loaded;
+			}
+		}
+		return loaded;
+	}
+
+	/**
+	 * Discard the cached graph so that it is reloaded by the next lookup.
+	 */
+	public synchronized void invalidate() {
+		generation++;
+		hierarchy = null;
+	}
+
+	/**
+	 * An immutable snapshot of the group membership graph.
+	 */
+	public static class GroupHierarchy {
+		/** The oids of the parents of each member */
+		private final Map<Long, Set<Long>> parents = new HashMap<Long, Set<Long>>();
+		/** The oids of the children of each group */
+		private final Map<Long, Set<Long>> children = new HashMap<Long, Set<Long>>();
+
+		/**
+		 * Build the graph.
+		 * @param edges every membership as a {parentOid, childOid} pair.
+		 */
+		public GroupHierarchy(List<Object[]> edges) {
+			for (Object[] edge : edges) {
+				Long parentOid = (Long) edge[0];
+				Long childOid = (Long) edge[1];
+				link(parents, childOid, parentOid);
+				link(children, parentOid, childOid);
+			}
+		}
+
+		/**
+		 * Get the oids of all the groups that an object is a member of,
+		 * directly or through other groups.
+		 * @param childOid the oid of the target or group.
+		 * @return the oids of the ancestors. Never includes the child itself.
+		 */
+		public Set<Long> getAncestorOids(Long childOid) {
+			return closure(parents, childOid);
+		}
+
+		/**
+		 * Get the oids of all the members of a group, directly or through
+		 * other groups.
+		 * @param parentOid the oid of the group.
+		 * @return the oids of the descendants. Never includes the group itself.
+		 */
+		public Set<Long> getDescendantOids(Long parentOid) {
+			return closure(children, parentOid);
+		}
+
+		/**
+		 * Get the oids of the groups that an object is directly a member of.
+		 * @param childOid the oid of the target or group.
+		 * @return the oids of the parents.
+		 */
+		public Set<Long> getParentOids(Long childOid) {
+			Set<Long> oids = parents.get(childOid);
+			return oids == null ? Collections.<Long>emptySet() : Collections.unmodifiableSet(oids);
+		}
+
+		private static void link(Map<Long, Set<Long>> links, Long from, Long to) {
+			Set<Long> oids = links.get(from);
+			if (oids == null) {
+				oids = new HashSet<Long>(4);
+				links.put(from, oids);
+			}
+			oids.add(to);
+		}
+
+		/**
+		 * Walk the links breadth first. Each node is visited once, so loops
+		 * in the hierarchy do not cause the walk to recurse forever.
+		 */
+		private static Set<Long> closure(Map<Long, Set<Long>> links, Long start) {
+			Set<Long> visited = new HashSet<Long>();
+			if (start == null) {
+				return visited;
+			}
+			Deque<Long> toVisit = new ArrayDeque<Long>();
+			toVisit.add(start);
+			while (!toVisit.isEmpty()) {
+				Set<Long> next = links.get(toVisit.poll());
+				if (next != null) {
+					for (Long oid : next) {
+						if (!oid.equals(start) && visited.add(oid)) {
+							toVisit.add(oid);
+						}
+					}
+				}
+			}
+			return visited;
+		}
+	}
+}
@@ -73,6 +73,20 @@ public interface TargetDAO extends BaseDAO {
 	 * populated.
 	 */
 	public List<Schedule> getSchedulesToRun();	
+
+	/**
+	 * Get a chunk of the schedules to re-run, fully populated in the same way
+	 * as getSchedulesToRun. The schedules are returned in oid order so that
+	 * the caller can work through them a chunk at a time.
+	 * @param processedBefore only return schedules that have not been processed 
+	 * since this date, or null for all schedules.
+	 * @param afterOid only return schedules with a greater oid, or null to start 
+	 * from the first schedule.
+	 * @param maxResults the maximum number of schedules to return, or 0 for all.
+	 * @return A list of schedules with their targets and child targets 
+	 * populated.
+	 */
+	public List<Schedule> getSchedulesToRun(Date processedBefore, Long afterOid, int maxResults);
 	
 	/**
 	 * Save a TargetGroup to the database.
@@ -338,6 +352,15 @@ public interface TargetDAO extends BaseDAO {
 	 * @return the last scheduled date
 	 */
 	public Date getLatestScheduledDate(AbstractTarget aTarget, Schedule aSchedule);
+
+	/**
+	 * Return the date and time of the last scheduled target instance 
+	 * for the specified AbstractTarget and Schedule
+	 * @param targetOid the oid of the AbstractTarget to get the date for
+	 * @param scheduleOid the oid of the schedule to get the date for
+	 * @return the last scheduled date
+	 */
+	public Date getLatestScheduledDate(long targetOid, long scheduleOid);
 	
 	/**
 	 * Retrun a Set of seeds for the specified target.
@@ -34,6 +34,8 @@ import org.springframework.orm.hibernate5.HibernateCallback;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.transaction.support.TransactionTemplate;
 import org.webcurator.common.ui.CommandConstants;
 import org.webcurator.core.common.EnvironmentFactory;
@@ -54,6 +56,8 @@ import org.webcurator.domain.model.dto.GroupMemberDTO.SAVE_STATE;
 import org.webcurator.common.ui.Constants;
 import org.webcurator.common.util.Utils;
 
+import com.google.common.collect.Lists;
+
 
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
@@ -71,6 +75,8 @@ import javax.persistence.criteria.Root;
 @Transactional
 public class TargetDAOImpl extends BaseDAOImpl implements TargetDAO {
     private Log log = LogFactory.getLog(TargetDAOImpl.class);
+    /** The cached group membership graph used to resolve ancestors and descendants. */
+    private GroupHierarchyCache groupHierarchyCache = new GroupHierarchyCache();
 
     public void save(final Target aTarget) {
         save(aTarget, null);
@@ -85,6 +91,9 @@ public class TargetDAOImpl extends BaseDAOImpl implements TargetDAO {
                             Session session=currentSession();
                             session.saveOrUpdate(aTarget);
 
+                            if (changesMembership(parents)) {
+                                invalidateGroupHierarchy();
+                            }
                             if (parents != null) {
                                 for (GroupMemberDTO parent : parents) {
                                     switch (parent.getSaveState()) {
@@ -151,6 +160,9 @@ public class TargetDAOImpl extends BaseDAOImpl implements TargetDAO {
 
                             // Save all the new children.
                             if (withChildren) {
+                                if (!aTargetGroup.getNewChildren().isEmpty() || !aTargetGroup.getRemovedChildren().isEmpty()) {
+                                    invalidateGroupHierarchy();
+                                }
                                 List<GroupMemberDTO> groupMemberDTOs = aTargetGroup.getNewChildren();
                                 for (GroupMemberDTO dto : groupMemberDTOs) {
 
@@ -173,6 +185,9 @@ public class TargetDAOImpl extends BaseDAOImpl implements TargetDAO {
                                 }
                             }
 
+                            if (changesMembership(parents)) {
+                                invalidateGroupHierarchy();
+                            }
                             if (parents != null) {
                                 for (GroupMemberDTO parent : parents) {
                                     switch (parent.getSaveState()) {
@@ -586,6 +601,13 @@ public class TargetDAOImpl extends BaseDAOImpl implements TargetDAO {
         this.txTemplate = txTemplate;
     }
 
+    /**
+     * @param groupHierarchyCache The group membership cache to set.
+     */
+    public void setGroupHierarchyCache(GroupHierarchyCache groupHierarchyCache) {
+        this.groupHierarchyCache = groupHierarchyCache;
+    }
+
     public boolean isNameOk(AbstractTarget aTarget) {
         Criteria criteria = currentSession().createCriteria(AbstractTarget.class);
         criteria.setProjection(Projections.rowCount());
@@ -742,11 +764,15 @@ public class TargetDAOImpl extends BaseDAOImpl implements TargetDAO {
     }
 
     public Date getLatestScheduledDate(final AbstractTarget aTarget, final Schedule aSchedule) {
+        return getLatestScheduledDate(aTarget.getOid(), aSchedule.getOid());
+    }
+
+    public Date getLatestScheduledDate(final long targetOid, final long scheduleOid) {
         return (Date) getHibernateTemplate().execute(new HibernateCallback() {
             public Object doInHibernate(Session aSession) {
                 Query query = aSession.getNamedQuery(TargetInstance.QUERY_GET_LATEST_FOR_TARGET);
-                query.setParameter("targetOid", aTarget.getOid());
-                query.setParameter("scheduleOid", aSchedule.getOid());
+                query.setParameter("targetOid", targetOid);
+                query.setParameter("scheduleOid", scheduleOid);
 
                 Date dt = (Date) query.uniqueResult();
                 return dt;
@@ -771,81 +797,107 @@ public class TargetDAOImpl extends BaseDAOImpl implements TargetDAO {
     }
 
 
+    /**
+     * The maximum number of oids to bind to a single "in" clause.
+     */
+    private static final int MAX_IN_CLAUSE_SIZE = 1000;
+
+    /**
+     * Resolves the seeds of a group with a few set based queries rather than
+     * loading each member in turn: one query per level of nesting to flatten
+     * the membership, then one query (per thousand targets) each for the
+     * approved targets of the agency and for their seeds, fetched with their
+     * permissions so that the approval check needs no further queries.
+     */
     @SuppressWarnings("unchecked")
     public Set<Seed> getSeeds(final TargetGroup aTarget, final Long agencyOid, final String subGroupTypeName) {
-        Set<Seed> seeds = new HashSet<Seed>();
-        seeds.addAll((Set) getHibernateTemplate().execute(new HibernateCallback() {
+        return (Set<Seed>) getHibernateTemplate().execute(new HibernateCallback() {
             public Object doInHibernate(Session aSession) {
-                TargetGroup tg = (TargetGroup) aSession.load(TargetGroup.class, aTarget.getOid());
-                return getSeeds(aSession, tg);
-            }
-
-            public Set<Seed> getSeeds(Session aSession, AbstractTarget target) {
-                if (target.getObjectType() == AbstractTarget.TYPE_GROUP) {
-                    Set<Seed> seeds = new HashSet<Seed>();
-                    for (GroupMember groupMember : ((TargetGroup) target).getChildren()) {
-                        AbstractTarget child = groupMember.getChild();
-
-                        if (child.getObjectType() == AbstractTarget.TYPE_GROUP) {
-                            TargetGroup childGroup;
-                            if (child instanceof TargetGroup) {
-                                childGroup = (TargetGroup) child;
-                            } else {
-                                childGroup = (TargetGroup) aSession.load(TargetGroup.class, child.getOid());
-                            }
-
-                            //If the childGroup is a sub-group, we don't want to include the seeds from the sub-group members
-                            if (!subGroupTypeName.equals(childGroup.getType())) {
-                                seeds.addAll(getSeeds(aSession, childGroup));
-                            }
-                        } else {
-                            Target childTarget;
-                            if (child instanceof Target) {
-                                childTarget = (Target) child;
+                // Flatten the membership of the group a level at a time.
+                Set<Long> visitedGroups = new HashSet<Long>();
+                Set<Long> memberTargets = new HashSet<Long>();
+                List<Long> parents = Collections.singletonList(aTarget.getOid());
+                visitedGroups.add(aTarget.getOid());
+                while (!parents.isEmpty()) {
+                    List<Long> childGroups = new LinkedList<Long>();
+                    for (List<Long> chunk : Lists.partition(parents, MAX_IN_CLAUSE_SIZE)) {
+                        List<Object[]> members = aSession.createQuery("select gm.child.oid, gm.child.objectType from GroupMember gm where gm.parent.oid in (:parentOids)")
+                                .setParameterList("parentOids", chunk)
+                                .list();
+                        for (Object[] member : members) {
+                            Long childOid = (Long) member[0];
+                            if (((Number) member[1]).intValue() == AbstractTarget.TYPE_GROUP) {
+                                if (visitedGroups.add(childOid)) {
+                                    childGroups.add(childOid);
+                                }
                             } else {
-                                childTarget = (Target) aSession.load(Target.class, child.getOid());
-                            }
-
-                            if (isApprovedForHarvest(childTarget) && childTarget.getOwner().getAgency().getOid().equals(agencyOid)) {
-                                seeds.addAll(childTarget.getSeeds());
+                                memberTargets.add(childOid);
                             }
                         }
                     }
-                    return seeds;
-                } else {
-                    return target.getSeeds();
-                }
-            }
 
-        }));
-        return seeds;
-    }
-
-    private boolean isApprovedForHarvest(Target aTarget) {
+                    //If the childGroup is a sub-group, we don't want to include the seeds from the sub-group members
+                    List<Long> nextParents = new LinkedList<Long>();
+                    for (List<Long> chunk : Lists.partition(childGroups, MAX_IN_CLAUSE_SIZE)) {
+                        nextParents.addAll(aSession.createQuery("select g.oid from TargetGroup g where g.oid in (:groupOids) and (g.type is null or g.type <> :subGroupType)")
+                                .setParameterList("groupOids", chunk)
+                                .setParameter("subGroupType", subGroupTypeName)
+                                .list());
+                    }
+                    parents = nextParents;
+                }
 
-        if (aTarget.getState() == Target.STATE_APPROVED || aTarget.getState() == Target.STATE_COMPLETED) {
-            boolean approved = false;
-            boolean foundBadSeed = false;
+                // Only targets of the agency that are approved or completed can be harvested.
+                List<Long> candidateTargets = new LinkedList<Long>();
+                for (List<Long> chunk : Lists.partition(new ArrayList<Long>(memberTargets), MAX_IN_CLAUSE_SIZE)) {
+                    candidateTargets.addAll(aSession.createQuery("select t.oid from Target t where t.oid in (:targetOids) and t.state in (:states) and t.owner.agency.oid = :agencyOid")
+                            .setParameterList("targetOids", chunk)
+                            .setParameterList("states", Arrays.asList(Target.STATE_APPROVED, Target.STATE_COMPLETED))
+                            .setParameter("agencyOid", agencyOid)
+                            .list());
+                }
 
-            Seed seed = null;
-            Set<Seed> seeds = aTarget.getSeeds();
-            Iterator<Seed> it = seeds.iterator();
-            while (it.hasNext()) {
-                seed = (Seed) it.next();
-                if (!seed.isHarvestable(new Date())) {
-                    foundBadSeed = true;
-                    break;
+                Map<Long, Set<Seed>> seedsByTarget = new HashMap<Long, Set<Seed>>();
+                for (List<Long> chunk : Lists.partition(candidateTargets, MAX_IN_CLAUSE_SIZE)) {
+                    List<Seed> seeds = aSession.createQuery("select distinct s from Seed s left join fetch s.permissions where s.target.oid in (:targetOids)")
+                            .setParameterList("targetOids", chunk)
+                            .list();
+                    for (Seed seed : seeds) {
+                        Set<Seed> targetSeeds = seedsByTarget.get(seed.getTarget().getOid());
+                        if (targetSeeds == null) {
+                            targetSeeds = new HashSet<Seed>();
+                            seedsByTarget.put(seed.getTarget().getOid(), targetSeeds);
+                        }
+                        targetSeeds.add(seed);
+                    }
                 }
-            }
 
-            if (!seeds.isEmpty() && !foundBadSeed) {
-                approved = true;
+                Set<Seed> seeds = new HashSet<Seed>();
+                Date now = new Date();
+                for (Set<Seed> targetSeeds : seedsByTarget.values()) {
+                    if (isApprovedForHarvest(targetSeeds, now)) {
+                        seeds.addAll(targetSeeds);
+                    }
+                }
+                return seeds;
             }
+        });
+    }
 
-            return approved;
-        } else {
+    /**
+     * A target is approved for harvest if it has seeds and every seed has an
+     * approved permission at the given time.
+     */
+    private boolean isApprovedForHarvest(Set<Seed> seeds, Date aDate) {
+        if (seeds.isEmpty()) {
             return false;
         }
+        for (Seed seed : seeds) {
+            if (!seed.isHarvestable(aDate)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public boolean causesLoop(TargetGroup parentOid, AbstractTarget childOid) {
@@ -854,74 +906,72 @@ public class TargetDAOImpl extends BaseDAOImpl implements TargetDAO {
         return false;
     }
 
-    @SuppressWarnings("unchecked")
     public Set<Long> getAncestorOids(final Long childOid) {
-        Map<Long, Long> duplicateValidator=new HashMap<>();
-        Set<Long> parents=getAncestorOidsInternal(childOid,duplicateValidator);
-        duplicateValidator.clear();
-        return parents;
-    }
-    private Set<Long> getAncestorOidsInternal(final Long childOid, final  Map<Long, Long> duplicateValidator) {
         if (childOid == null) {
             return Collections.EMPTY_SET;
         }
+        return getGroupHierarchy().getAncestorOids(childOid);
+    }
 
-        if(!duplicateValidator.containsKey(childOid.longValue())){
-            duplicateValidator.put(childOid.longValue(), childOid);
+    @SuppressWarnings("unchecked")
+    public Set<AbstractTargetDTO> getAncestorDTOs(final Long childOid) {
+        final Set<Long> ancestorOids = getAncestorOids(childOid);
+        if (ancestorOids.isEmpty()) {
+            return Collections.EMPTY_SET;
         }
 
-        Set<Long> parentOids = new HashSet<Long>();
-
-        List<Long> immediateParents = getHibernateTemplate().execute(session ->
-                session.createQuery("SELECT new java.lang.Long(gm.parent.oid) FROM GroupMember gm where gm.child.oid = :childOid")
-                        .setParameter("childOid", childOid)
+        return getHibernateTemplate().execute(session -> {
+            Set<AbstractTargetDTO> parents = new HashSet<AbstractTargetDTO>();
+            for (List<Long> chunk : Lists.partition(new ArrayList<Long>(ancestorOids), MAX_IN_CLAUSE_SIZE)) {
+                parents.addAll(session.createQuery("SELECT new org.webcurator.domain.model.dto.AbstractTargetDTO(t.oid, t.name, t.owner.oid, t.owner.username, t.owner.agency.name, t.state, t.profile.oid, t.objectType) FROM TargetGroup t where t.oid in (:groupOids)")
+                        .setParameterList("groupOids", chunk)
                         .list());
-
-        for (Long parentOid : immediateParents) {
-            if(!duplicateValidator.containsKey(parentOid.longValue())) {
-                parentOids.add(parentOid);
-                parentOids.addAll(getAncestorOidsInternal(parentOid, duplicateValidator));
             }
-        }
-
-        return parentOids;
-
+            return parents;
+        });
     }
 
+    /**
+     * Get the group membership graph from the cache, loading every
+     * membership in one query if it is not cached.
+     */
     @SuppressWarnings("unchecked")
-    public Set<AbstractTargetDTO> getAncestorDTOs(final Long childOid) {
-        Map<Long, Long> duplicateValidator=new HashMap<>();
-        Set<AbstractTargetDTO> parents=getAncestorDTOsInternal(childOid,duplicateValidator);
-        duplicateValidator.clear();
-        return parents;
+    private GroupHierarchyCache.GroupHierarchy getGroupHierarchy() {
+        return groupHierarchyCache.get(() -> getHibernateTemplate().execute(session ->
+                (List<Object[]>) session.createQuery("select gm.parent.oid, gm.child.oid from GroupMember gm").list()));
     }
 
-    private Set<AbstractTargetDTO> getAncestorDTOsInternal(final Long childOid, final  Map<Long, Long> duplicateValidator) {
-        if (childOid == null) {
-            return Collections.EMPTY_SET;
-        }
-
-        if(!duplicateValidator.containsKey(childOid.longValue())) {
-            duplicateValidator.put(childOid.longValue(),childOid);
-        }
-
-        Set<AbstractTargetDTO> parents = new HashSet<AbstractTargetDTO>();
-
-        List<AbstractTargetDTO> immediateParents = getHibernateTemplate().execute(session ->
-                session.createQuery("SELECT new org.webcurator.domain.model.dto.AbstractTargetDTO(t.oid, t.name, t.owner.oid, t.owner.username, t.owner.agency.name, t.state, t.profile.oid, t.objectType) FROM TargetGroup t LEFT JOIN t.children AS gm INNER JOIN gm.child AS child where child.oid = :childOid")
-                        .setParameter("childOid", childOid)
-                        .list());
-
-        for (AbstractTargetDTO parent : immediateParents) {
-            if(!duplicateValidator.containsKey(parent.getOid().longValue())) {
-                parents.add(parent);
-                parents.addAll(getAncestorDTOsInternal(parent.getOid(), duplicateValidator));
+    /**
+     * @param members the parents or children of a target or group being saved
+     * @return true if any membership is added or removed by the save
+     */
+    private static boolean changesMembership(List<GroupMemberDTO> members) {
+        if (members != null) {
+            for (GroupMemberDTO member : members) {
+                if (member.getSaveState() == GroupMemberDTO.SAVE_STATE.NEW || member.getSaveState() == GroupMemberDTO.SAVE_STATE.DELETED) {
+                    return true;
+                }
             }
         }
-
-        return parents;
+        return false;
     }
 
+    /**
+     * Invalidate the cached group membership graph after a membership has
+     * been added or removed. The cache is invalidated again when the
+     * transaction completes so that a graph read by another thread before
+     * the change was committed is not kept.
+     */
+    private void invalidateGroupHierarchy() {
+        groupHierarchyCache.invalidate();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                public void afterCompletion(int status) {
+                    groupHierarchyCache.invalidate();
+                }
+            });
+        }
+    }
 
     @SuppressWarnings("unchecked")
     public Set<Long> getImmediateChildrenOids(final Long parentOid) {
@@ -1107,6 +1157,10 @@ public class TargetDAOImpl extends BaseDAOImpl implements TargetDAO {
                     public Object doInTransaction(TransactionStatus ts) {
                         try {
                             log.debug("Before Deleting Object");
+                            // The parents of a detached target may not be loaded, in which case they are assumed to exist.
+                            if (!Hibernate.isInitialized(aTarget.getParents()) || !aTarget.getParents().isEmpty()) {
+                                invalidateGroupHierarchy();
+                            }
                             currentSession().delete(aTarget);
                             log.debug("Object deleted successfully");
                         } catch (Exception ex) {
@@ -1174,10 +1228,13 @@ public class TargetDAOImpl extends BaseDAOImpl implements TargetDAO {
                             // There are no instances, so delete away.
                             else {
                                 // Delete all links to parents and children.
-                                currentSession()
+                                int deletedMembers = currentSession()
                                         .createQuery("delete from GroupMember g where g.child.oid = :groupOid or g.parent.oid = :groupOid")
                                         .setParameter("groupOid", aTargetGroup.getOid())
                                         .executeUpdate();
+                                if (deletedMembers > 0) {
+                                    invalidateGroupHierarchy();
+                                }
 
                                 // Finally delete the group.
                                 currentSession().delete(aTargetGroup);
@@ -1201,6 +1258,13 @@ public class TargetDAOImpl extends BaseDAOImpl implements TargetDAO {
      * Get schedules to re-run
      */
     public List<Schedule> getSchedulesToRun() {
+        return getSchedulesToRun(null, null, 0);
+    }
+
+    /**
+     * Get a chunk of the schedules to re-run, in oid order.
+     */
+    public List<Schedule> getSchedulesToRun(final Date processedBefore, final Long afterOid, final int maxResults) {
 
         return (List<Schedule>) getHibernateTemplate().execute(
                 new HibernateCallback() {
@@ -1215,9 +1279,20 @@ public class TargetDAOImpl extends BaseDAOImpl implements TargetDAO {
                         cal.set(Calendar.SECOND, 59);
                         cal.set(Calendar.MILLISECOND, 999);
 
-                        List<Schedule> schedules = session.createCriteria(Schedule.class)
-                                .add(Restrictions.le("nextScheduleAfterPeriod", cal.getTime()))
-                                .list();
+                        Criteria criteria = session.createCriteria(Schedule.class)
+                                .add(Restrictions.le("nextScheduleAfterPeriod", cal.getTime()));
+                        if (processedBefore != null) {
+                            criteria.add(Restrictions.or(Restrictions.isNull("lastProcessedDate"),
+                                    Restrictions.lt("lastProcessedDate", processedBefore)));
+                        }
+                        if (afterOid != null) {
+                            criteria.add(Restrictions.gt("oid", afterOid));
+                        }
+                        if (maxResults > 0) {
+                            criteria.addOrder(Order.asc("oid"))
+                                    .setMaxResults(maxResults);
+                        }
+                        List<Schedule> schedules = criteria.list();
 
                         for (Schedule s : schedules) {
                             if (s.getTarget() == null) {
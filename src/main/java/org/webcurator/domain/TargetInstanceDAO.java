@@ -19,9 +19,11 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import org.webcurator.domain.model.core.*;
 import org.webcurator.domain.model.dto.HarvestHistoryDTO;
+import org.webcurator.domain.model.dto.HarvestResourceSnapshot;
 import org.webcurator.domain.model.dto.QueuedTargetInstanceDTO;
 import org.webcurator.domain.model.dto.TargetInstanceDTO;
 
@@ -59,6 +61,30 @@ public interface TargetInstanceDAO {
 	 * @param collection the collection of objects to save
 	 */
 	void saveAll(Collection collection);
+
+	/**
+	 * Insert all the new objects in the collection to the persistent data 
+	 * store using JDBC batching. The session is flushed and cleared after 
+	 * each batch so the objects are not retained in the first-level cache.
+	 * This is intended for large volumes of harvest resources and files.
+	 * @param collection the collection of new objects to insert
+	 */
+	void insertAll(Collection collection);
+
+	/**
+	 * Insert new target instances and their annotations in a single 
+	 * transaction using JDBC batching. The target, schedule and owner of the 
+	 * instances are looked up by oid in the transaction's session, and the 
+	 * annotations of each instance are linked to the instance once its oid 
+	 * has been assigned. The creation of each instance is audited once the 
+	 * transaction commits. If any instance cannot be inserted the transaction 
+	 * is rolled back and a WCTRuntimeException is thrown.
+	 * @param targetOid the oid of the target of the instances
+	 * @param scheduleOid the oid of the schedule of the instances
+	 * @param ownerOid the oid of the user that owns the instances
+	 * @param targetInstances the new target instances to insert
+	 */
+	void insertTargetInstances(long targetOid, long scheduleOid, long ownerOid, List<TargetInstance> targetInstances);
 	
 	/**
 	 * Load the specified target instance from the persistent data store.
@@ -66,6 +92,24 @@ public interface TargetInstanceDAO {
 	 * @return the TargetInstance
 	 */
     TargetInstance load(final long targetInstanceOid);
+
+	/**
+	 * Load the specified target instances, with their harvester status and
+	 * locked profile, using one query per thousand oids rather than one per
+	 * instance.
+	 * Oids that do not match a target instance are ignored.
+	 * @param targetInstanceOids the ids of the target instances to load
+	 * @return the TargetInstances
+	 */
+	List<TargetInstance> loadTargetInstances(Collection<Long> targetInstanceOids);
+
+	/**
+	 * Update the harvester statuses of existing target instances in a 
+	 * single transaction using JDBC batching. The target instances 
+	 * themselves are not updated or audited.
+	 * @param statuses the harvester statuses to update
+	 */
+	void updateHarvesterStatuses(Collection<HarvesterStatus> statuses);
     
     /**
      * Load the specified harvest result from the persistent data store.
@@ -97,6 +141,15 @@ public interface TargetInstanceDAO {
 	 */
 	List<HarvestResourceDTO> getHarvestResourceDTOs(final long harvestResultOid);
 
+	/**
+	 * Load the name, length and status code of each resource of a harvest result 
+	 * into a read only snapshot, without building a DTO per resource.
+	 * @param harvestResultOid the oid of the harvest result
+	 * @param namePool a pool of names shared with other snapshots, or null
+	 * @return the snapshot of the resources
+	 */
+	HarvestResourceSnapshot getHarvestResourceSnapshot(final long harvestResultOid, final Map<String, String> namePool);
+
 	
 	/**
 	 * Return a list of HarvestResults for the specified target instance.
@@ -24,6 +24,8 @@ import org.apache.commons.logging.LogFactory;
 import org.hibernate.Criteria;
 import org.hibernate.Hibernate;
 import org.hibernate.HibernateException;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.criterion.*;
 import org.hibernate.query.Query;
 import org.hibernate.Session;
@@ -36,11 +38,15 @@ import org.springframework.transaction.support.TransactionTemplate;
 import org.webcurator.common.ui.CommandConstants;
 import org.webcurator.core.exceptions.WCTRuntimeException;
 import org.webcurator.core.util.Auditor;
+import org.webcurator.domain.model.auth.User;
 import org.webcurator.domain.model.core.*;
 import org.webcurator.domain.model.dto.HarvestHistoryDTO;
+import org.webcurator.domain.model.dto.HarvestResourceSnapshot;
 import org.webcurator.domain.model.dto.QueuedTargetInstanceDTO;
 import org.webcurator.domain.model.dto.TargetInstanceDTO;
 
+import com.google.common.collect.Lists;
+
 /**
  * The implementation of the TargetInstanceDAO interface.
  * @author nwaight
@@ -56,6 +62,15 @@ public class TargetInstanceDAOImpl extends HibernateDaoSupport implements Target
     private TransactionTemplate txTemplate = null;
     
     private Auditor auditor;
+
+    /** The number of rows sent in each JDBC batch by insertAll. */
+    private int insertBatchSize = 500;
+
+    /** The maximum number of oids to bind to a single "in" clause. */
+    private static final int MAX_IN_CLAUSE_SIZE = 1000;
+
+    /** The number of rows fetched at a time when loading a resource snapshot. */
+    private int snapshotFetchSize = 1000;
     
 	public void save(final Object aObj) {
 		
@@ -224,11 +239,143 @@ public class TargetInstanceDAOImpl extends HibernateDaoSupport implements Target
 	}
 	
 	
+	public void insertAll(final Collection coll) {
+        txTemplate.execute(
+                new TransactionCallback() {
+                    public Object doInTransaction(TransactionStatus ts) {
+                        try { 
+                            log.debug("Before Inserting Objects");
+                            Session session = currentSession();
+                            session.setJdbcBatchSize(insertBatchSize);
+                            int count = 0;
+                            for(Object o: coll) {
+                                session.save(o);
+                                if(++count % insertBatchSize == 0) {
+                                    session.flush();
+                                    session.clear();
+                                }
+                            }
+                            session.flush();
+                            session.clear();
+                            log.debug("After Inserting " + count + " Objects");
+                        }
+                        catch(Exception ex) {
+                            log.warn("Setting Rollback Only " + ex.getMessage(), ex);
+                            ts.setRollbackOnly();
+                        }
+                        return null;
+                    }
+                }
+        );
+	}
+	
+	public void insertTargetInstances(final long targetOid, final long scheduleOid, final long ownerOid,
+			final List<TargetInstance> targetInstances) {
+		if (targetInstances.isEmpty()) {
+			return;
+		}
+
+		txTemplate.execute(
+                new TransactionCallback() {
+                    public Object doInTransaction(TransactionStatus ts) {
+                        try { 
+                            log.debug("Before Inserting Target Instances");
+                            Session session = currentSession();
+                            session.setJdbcBatchSize(insertBatchSize);
+                            AbstractTarget target = session.load(AbstractTarget.class, targetOid);
+                            Schedule schedule = session.load(Schedule.class, scheduleOid);
+                            User owner = session.load(User.class, ownerOid);
+                            int rows = 0;
+                            for(TargetInstance ti: targetInstances) {
+                                ti.setTarget(target);
+                                ti.setSchedule(schedule);
+                                ti.setOwner(owner);
+                                session.save(ti);
+                                rows++;
+                                // Update the OIDs for the annotations.
+                                for(Annotation anno: ti.getAnnotations()) {
+                                    anno.setObjectOid(ti.getOid());
+                                    session.save(anno);
+                                    rows++;
+                                }
+                                if(rows >= insertBatchSize) {
+                                    session.flush();
+                                    session.clear();
+                                    rows = 0;
+                                }
+                            }
+                            session.flush();
+                            session.clear();
+                            log.debug("After Inserting " + targetInstances.size() + " Target Instances");
+                            return null;
+                        }
+                        catch(Exception ex) {
+                            log.warn("Setting Rollback Only " + ex.getMessage(), ex);
+                            ts.setRollbackOnly();
+                            throw new WCTRuntimeException("Failed to insert the target instances of target " + targetOid
+                                    + " for schedule " + scheduleOid, ex);
+                        }
+                    }
+                }
+        );
+
+		for (TargetInstance ti : targetInstances) {
+			auditor.audit(TargetInstance.class.getName(), ti.getOid(), Auditor.ACTION_NEW_TARGET_INSTANCE, "The TargetInstance '"+ ti.getOid() +"' has been created");
+		}
+	}
+	
 	public TargetInstance load(final long targetInstanceOid) {
 		return (TargetInstance) getHibernateTemplate().load(TargetInstance.class, targetInstanceOid);
 	}
 	
 
+	@SuppressWarnings("unchecked")
+	public List<TargetInstance> loadTargetInstances(final Collection<Long> targetInstanceOids) {
+		if (targetInstanceOids.isEmpty()) {
+			return new ArrayList<TargetInstance>();
+		}
+
+		return (List<TargetInstance>) getHibernateTemplate().execute(new HibernateCallback() {
+			public Object doInHibernate(Session aSession) {
+				List<TargetInstance> targetInstances = new ArrayList<TargetInstance>(targetInstanceOids.size());
+				for (List<Long> chunk : Lists.partition(new ArrayList<Long>(targetInstanceOids), MAX_IN_CLAUSE_SIZE)) {
+					targetInstances.addAll(aSession.createQuery("select distinct ti from TargetInstance ti left join fetch ti.status left join fetch ti.lockedProfile where ti.oid in (:oids)")
+							.setParameterList("oids", chunk)
+							.list());
+				}
+				return targetInstances;
+			}
+		});
+	}
+
+	public void updateHarvesterStatuses(final Collection<HarvesterStatus> statuses) {
+		if (statuses.isEmpty()) {
+			return;
+		}
+
+        txTemplate.execute(
+                new TransactionCallback() {
+                    public Object doInTransaction(TransactionStatus ts) {
+                        try { 
+                            log.debug("Before Updating Harvester Statuses");
+                            Session session = currentSession();
+                            session.setJdbcBatchSize(insertBatchSize);
+                            for(HarvesterStatus status: statuses) {
+                                session.update(status);
+                            }
+                            session.flush();
+                            log.debug("After Updating " + statuses.size() + " Harvester Statuses");
+                        }
+                        catch(Exception ex) {
+                            log.warn("Setting Rollback Only " + ex.getMessage(), ex);
+                            ts.setRollbackOnly();
+                        }
+                        return null;
+                    }
+                }
+        );
+	}
+
 	public ArcHarvestResult getHarvestResult(final Long harvestResultOid) {
 		return getHarvestResult(harvestResultOid, true);
 	}
@@ -284,6 +431,30 @@ public class TargetInstanceDAOImpl extends HibernateDaoSupport implements Target
 		return resources;
 	}
 	
+	public HarvestResourceSnapshot getHarvestResourceSnapshot(final long harvestResultOid, final Map<String, String> namePool) {
+		return (HarvestResourceSnapshot) getHibernateTemplate().execute(new HibernateCallback() {
+			public Object doInHibernate(Session aSession) {
+				// scroll through the columns rather than building a DTO per resource
+				Query q = aSession.createQuery("select ahr.result.targetInstance.oid, ahr.name, ahr.length, ahr.statusCode from org.webcurator.domain.model.core.ArcHarvestResource ahr where ahr.result.oid=?1");
+				q.setParameter(1, harvestResultOid);
+				q.setFetchSize(snapshotFetchSize);
+				q.setReadOnly(true);
+				HarvestResourceSnapshot.Builder builder = new HarvestResourceSnapshot.Builder(harvestResultOid, namePool);
+				ScrollableResults results = q.scroll(ScrollMode.FORWARD_ONLY);
+				try {
+					while (results.next()) {
+						Object[] row = results.get();
+						builder.add((Long) row[0], (String) row[1], ((Number) row[2]).longValue(), ((Number) row[3]).intValue());
+					}
+				}
+				finally {
+					results.close();
+				}
+				return builder.build();
+			}
+		});
+	}
+	
 	@SuppressWarnings("unchecked")
 	public List<HarvestResult> getHarvestResults(final long targetInstanceId) {
 		return (List<HarvestResult>) getHibernateTemplate().find("select hr from ArcHarvestResult hr where hr.targetInstance.oid=?0 order by hr.harvestNumber", targetInstanceId);
@@ -574,8 +745,9 @@ public class TargetInstanceDAOImpl extends HibernateDaoSupport implements Target
 				public Object doInHibernate(Session session) {
 					
 					StringBuffer q = new StringBuffer();
-					q.append("select new org.webcurator.domain.model.dto.QueuedTargetInstanceDTO(ti.oid, ti.scheduledTime, ti.priority, ti.state, ti.bandwidthPercent, ti.owner.agency.name) ");
-					q.append("from TargetInstance ti where ti.scheduledTime <= :ed ");
+					q.append("select new org.webcurator.domain.model.dto.QueuedTargetInstanceDTO(ti.oid, ti.scheduledTime, ti.priority, ti.state, ti.bandwidthPercent, ti.owner.agency.name, coalesce(lp.harvesterType, tp.harvesterType)) ");
+					q.append("from TargetInstance ti left join ti.lockedProfile lp left join ti.target t left join t.profile tp ");
+					q.append("where ti.scheduledTime <= :ed ");
 					q.append("and ti.state in ('Scheduled', 'Queued') ");
 					q.append("order by ti.priority asc, ti.scheduledTime asc, ti.oid asc ");
 					
@@ -596,8 +768,9 @@ public class TargetInstanceDAOImpl extends HibernateDaoSupport implements Target
 				public Object doInHibernate(Session session) {
 					
 					StringBuffer q = new StringBuffer();
-					q.append("select new org.webcurator.domain.model.dto.QueuedTargetInstanceDTO(ti.oid, ti.scheduledTime, ti.priority, ti.state, ti.bandwidthPercent, ti.owner.agency.name) ");
-					q.append("from TargetInstance ti where ti.scheduledTime <= :ed ");
+					q.append("select new org.webcurator.domain.model.dto.QueuedTargetInstanceDTO(ti.oid, ti.scheduledTime, ti.priority, ti.state, ti.bandwidthPercent, ti.owner.agency.name, coalesce(lp.harvesterType, tp.harvesterType)) ");
+					q.append("from TargetInstance ti left join ti.lockedProfile lp left join ti.target t left join t.profile tp ");
+					q.append("where ti.scheduledTime <= :ed ");
 					q.append("and ti.state in ('Scheduled', 'Queued') ");
 					q.append("order by ti.priority asc, ti.scheduledTime asc, ti.oid asc ");
 					
@@ -1042,6 +1215,20 @@ public class TargetInstanceDAOImpl extends HibernateDaoSupport implements Target
 	public void setAuditor(Auditor auditor) {
 		this.auditor = auditor;
 	}
+
+	/**
+	 * @param insertBatchSize the number of rows sent in each JDBC batch by insertAll
+	 */
+	public void setInsertBatchSize(int insertBatchSize) {
+		this.insertBatchSize = insertBatchSize;
+	}
+
+	/**
+	 * @param snapshotFetchSize the number of rows fetched at a time by getHarvestResourceSnapshot
+	 */
+	public void setSnapshotFetchSize(int snapshotFetchSize) {
+		this.snapshotFetchSize = snapshotFetchSize;
+	}
 	
 	public List<HarvestHistoryDTO> getHarvestHistory(final Long targetOid) {
 		return (List<HarvestHistoryDTO>) getHibernateTemplate().execute(session ->
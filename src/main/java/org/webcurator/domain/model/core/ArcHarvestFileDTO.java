@@ -18,9 +18,17 @@ package org.webcurator.domain.model.core;
 import java.io.File;
 import java.io.IOException;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
 import org.apache.commons.httpclient.HttpParser;
 import org.apache.commons.httpclient.StatusLine;
@@ -41,6 +49,8 @@ import org.archive.io.RecoverableIOException;
  * @author bbeaumont
  */
 public class ArcHarvestFileDTO {
+	private static Log log = LogFactory.getLog(ArcHarvestFileDTO.class);
+
 	/** The id of the Arc Harvest File. */
 	private Long oid;
 	/** the harvest file name. */
@@ -53,6 +63,10 @@ public class ArcHarvestFileDTO {
 	private HarvestResultDTO harvestResult;
 	/** The maximum URL length to capture */
 	public static final int MAX_URL_LENGTH = 1020;
+	/** The default number of resources handed to a batch consumer at a time. */
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+	/** The size of the buffer used to pass record content to visitors. */
+	private static final int CONTENT_BUFFER_SIZE = 64 * 1024;
 
 	/**
 	 * @return true if the ARC file is compressed.
@@ -145,35 +159,327 @@ public class ArcHarvestFileDTO {
 	 * @throws ParseException 
 	 */
 	public Map<String, HarvestResourceDTO> index(File baseDir) throws IOException, ParseException {
-		Map<String, HarvestResourceDTO> results = new HashMap<String, HarvestResourceDTO>();
-		
+		final Map<String, HarvestResourceDTO> results = new HashMap<String, HarvestResourceDTO>();
+		scan(baseDir, Collections.<ArchiveRecordVisitor>singletonList(new ResourceVisitor() {
+			@Override
+			public void visitRecord(ArchiveRecordHeader header, HarvestResourceDTO resource) {
+				if(resource != null) {
+					results.put(resource.getName(), resource);
+				}
+			}
+		}));
+		return results;
+	}
+
+	/**
+	 * Index the ArcHarvestFile described by this DTO, handing the resources 
+	 * to the consumer in batches rather than building the whole index in memory.
+	 * @param batchSize the maximum number of resources in each batch
+	 * @param batchConsumer the consumer of each batch of resources
+	 * @throws IOException thrown if there is an error
+	 * @throws ParseException 
+	 */
+	public void index(int batchSize, Consumer<Collection<HarvestResourceDTO>> batchConsumer) throws IOException, ParseException {
+		if( this.baseDir == null ) {
+			throw new IllegalStateException("Cannot index ArcHarvestFile without a base dir");
+		}
+
+		index(new File(this.baseDir), batchSize, batchConsumer);
+	}
+
+	/**
+	 * Index the ArcHarvestFile, handing the resources to the consumer in batches 
+	 * of at most batchSize resources as the archive is read. Each URL is handed 
+	 * over once, for the first record of the file that has it; unlike index(File), 
+	 * which keeps the last. Peak memory depends on the batch size and, at 16 
+	 * bytes each, the number of distinct URLs in the file rather than on the 
+	 * size of the archive file.
+	 * @param baseDir the base directory of the arcs
+	 * @param batchSize the maximum number of resources in each batch
+	 * @param batchConsumer the consumer of each batch of resources
+	 * @throws IOException thrown if there is an error
+	 * @throws ParseException 
+	 */
+	public void index(File baseDir, int batchSize, Consumer<Collection<HarvestResourceDTO>> batchConsumer) throws IOException, ParseException {
+		scan(baseDir, Collections.<ArchiveRecordVisitor>singletonList(batchingVisitor(batchSize, batchConsumer)));
+	}
+
+	/**
+	 * Create a visitor that hands the resources of the archive file to the 
+	 * consumer in batches of at most batchSize resources. A URL that appears 
+	 * in more than one record of the file is only handed over for the first 
+	 * record, as the harvest result may hold only one resource for each URL 
+	 * and a batch cannot be taken back once it has been handed over. The URLs 
+	 * handed over are kept in a SeenUrlSet until the end of the file.
+	 * @param batchSize the maximum number of resources in each batch
+	 * @param batchConsumer the consumer of each batch of resources
+	 * @return the visitor
+	 */
+	public static ArchiveRecordVisitor batchingVisitor(final int batchSize, final Consumer<Collection<HarvestResourceDTO>> batchConsumer) {
+		if(batchSize <= 0) {
+			throw new IllegalArgumentException("The batch size must be greater than zero");
+		}
+
+		return new ResourceVisitor() {
+			private SeenUrlSet seen = new SeenUrlSet();
+			private List<HarvestResourceDTO> batch = new ArrayList<HarvestResourceDTO>();
+
+			@Override
+			public void startFile(ArcHarvestFileDTO archiveFile) throws IOException {
+				seen.close();
+				batch = new ArrayList<HarvestResourceDTO>();
+			}
+
+			@Override
+			public void visitRecord(ArchiveRecordHeader header, HarvestResourceDTO resource) throws IOException {
+				if(resource != null && seen.add(resource.getName())) {
+					batch.add(resource);
+					if(batch.size() >= batchSize) {
+						batchConsumer.accept(batch);
+						batch = new ArrayList<HarvestResourceDTO>();
+					}
+				}
+			}
+
+			@Override
+			public void endFile(ArcHarvestFileDTO archiveFile) throws IOException {
+				try {
+					if(!batch.isEmpty()) {
+						batchConsumer.accept(batch);
+						batch = new ArrayList<HarvestResourceDTO>();
+					}
+				}
+				finally {
+					seen.close();
+				}
+			}
+
+			@Override
+			public void abortFile(ArcHarvestFileDTO archiveFile, Exception cause) {
+				batch = new ArrayList<HarvestResourceDTO>();
+				try {
+					seen.close();
+				}
+				catch(IOException ex) {
+					log.warn("Could not delete the URLs seen in " + archiveFile.getName() + ": " + ex.getMessage());
+				}
+			}
+		};
+	}
+
+	/**
+	 * Read the ArcHarvestFile described by this DTO once, passing every record 
+	 * to each of the visitors.
+	 * @param visitors the visitors of the archive records
+	 * @throws IOException thrown if there is an error
+	 * @throws ParseException 
+	 */
+	public void scan(List<ArchiveRecordVisitor> visitors) throws IOException, ParseException {
+		if( this.baseDir == null ) {
+			throw new IllegalStateException("Cannot scan ArcHarvestFile without a base dir");
+		}
+
+		scan(new File(this.baseDir), visitors);
+	}
+
+	/**
+	 * Read the ArcHarvestFile once, passing every record to each of the visitors. 
+	 * The file is opened and each record decompressed only once however many 
+	 * visitors there are, and the remaining content of each record is only read 
+	 * if a visitor wants it.
+	 * <p>
+	 * The reader is not strict, so records it cannot read are skipped, and a 
+	 * record that cannot be indexed is passed to the visitors without a 
+	 * resource. A visitor that fails is aborted and the others carry on; the 
+	 * first failure of a visitor is thrown once the file has been read. Every 
+	 * visitor has either endFile or abortFile called.
+	 * @param baseDir the base directory of the arcs
+	 * @param visitors the visitors of the archive records
+	 * @throws IOException thrown if there is an error
+	 * @throws ParseException 
+	 */
+	public void scan(File baseDir, List<ArchiveRecordVisitor> visitors) throws IOException, ParseException {
+		boolean content = false;
+		boolean digest = false;
+		for(ArchiveRecordVisitor visitor: visitors) {
+			content |= visitor.wantsContent();
+			digest |= visitor.wantsDigest();
+		}
+		byte[] buffer = content ? new byte[CONTENT_BUFFER_SIZE] : null;
+
 		File theArchiveFile = new File(baseDir, this.getName());
 		ArchiveReader reader = ArchiveReaderFactory.get(theArchiveFile);
-		this.compressed = reader.isCompressed();
-		
-		Iterator<ArchiveRecord> it = reader.iterator();
-		while(it.hasNext()) {
-			ArchiveRecord rec = it.next();
-			
-			if(rec instanceof WARCRecord) {
-				String type = rec.getHeader().getHeaderValue(WARCConstants.HEADER_KEY_TYPE).toString();
-				if(type.equals(WARCConstants.RESPONSE)) {
-					String mime = rec.getHeader().getMimetype();
-					if(!mime.equals("text/dns")) {
-						indexWARCResponse(rec, results);
+		List<ArchiveRecordVisitor> active = new ArrayList<ArchiveRecordVisitor>(visitors);
+		Exception failure = null;
+		try {
+			reader.setStrict(false);
+			reader.setDigest(digest);
+			this.compressed = reader.isCompressed();
+
+			failure = visitAll(active, visitor -> visitor.startFile(this), failure);
+
+			Iterator<ArchiveRecord> it = reader.iterator();
+			while(it.hasNext() && !active.isEmpty()) {
+				ArchiveRecord rec = it.next();
+				try {
+					HarvestResourceDTO res = null;
+					try {
+						res = indexRecord(rec);
+					}
+					catch(IOException | RuntimeException ex) {
+						log.warn("Could not index a record of " + getName() + ": " + ex.getMessage());
+					}
+					final HarvestResourceDTO resource = res;
+					failure = visitAll(active, visitor -> visitor.visitRecord(rec.getHeader(), resource), failure);
+					if(buffer != null) {
+						try {
+							int read;
+							while((read = rec.read(buffer, 0, buffer.length)) != -1) {
+								final int length = read;
+								failure = visitAll(active, visitor -> {
+									if(visitor.wantsContent()) {
+										visitor.visitContent(buffer, 0, length);
+									}
+								}, failure);
+							}
+						}
+						catch(IOException ex) {
+							log.warn("Could not read the content of a record of " + getName() + ": " + ex.getMessage());
+						}
 					}
+					failure = visitAll(active, visitor -> visitor.endRecord(rec), failure);
 				}
+				finally {
+					closeRecord(rec);
+				}
+			}
+
+			failure = visitAll(active, visitor -> visitor.endFile(this), failure);
+			active.clear();
+		}
+		catch(RuntimeException ex) {
+			failure = failure == null ? ex : failure;
+		}
+		finally {
+			for(ArchiveRecordVisitor visitor: active) {
+				abort(visitor, failure);
 			}
-			else {
-				indexARCRecord(rec, results);
+			reader.close();
+		}
+
+		if(failure instanceof IOException) {
+			throw (IOException) failure;
+		}
+		if(failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		}
+	}
+
+	/**
+	 * A call made to each of the visitors.
+	 */
+	private interface VisitorCall {
+		void call(ArchiveRecordVisitor visitor) throws IOException;
+	}
+
+	/**
+	 * Make the call to each of the active visitors. A visitor that fails is 
+	 * aborted and removed from the active visitors.
+	 * @return the first failure
+	 */
+	private Exception visitAll(List<ArchiveRecordVisitor> active, VisitorCall call, Exception failure) {
+		for(Iterator<ArchiveRecordVisitor> it = active.iterator(); it.hasNext();) {
+			ArchiveRecordVisitor visitor = it.next();
+			try {
+				call.call(visitor);
+			}
+			catch(IOException | RuntimeException ex) {
+				log.warn("Visitor " + visitor.getClass().getName() + " failed on " + getName() + ": " + ex.getMessage());
+				it.remove();
+				abort(visitor, ex);
+				failure = failure == null ? ex : failure;
 			}
 		}
-		reader.close();
-		
-		return results;
+		return failure;
+	}
+
+	private void closeRecord(ArchiveRecord rec) {
+		try {
+			rec.close();
+		}
+		catch(IOException ex) {
+			// The reader skips to the next record it can read.
+			log.warn("Could not read to the end of a record of " + getName() + ": " + ex.getMessage());
+		}
+	}
+
+	private void abort(ArchiveRecordVisitor visitor, Exception cause) {
+		try {
+			visitor.abortFile(this, cause);
+		}
+		catch(RuntimeException ex) {
+			log.warn("Could not abort visitor " + visitor.getClass().getName() + ": " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * A base visitor for visitors that only need the resources of the archive file.
+	 */
+	public abstract static class ResourceVisitor implements ArchiveRecordVisitor {
+		@Override
+		public void startFile(ArcHarvestFileDTO archiveFile) throws IOException {
+		}
+
+		@Override
+		public void visitContent(byte[] buffer, int offset, int length) throws IOException {
+		}
+
+		@Override
+		public void endRecord(ArchiveRecord record) throws IOException {
+		}
+
+		@Override
+		public void endFile(ArcHarvestFileDTO archiveFile) throws IOException {
+		}
+
+		@Override
+		public void abortFile(ArcHarvestFileDTO archiveFile, Exception cause) {
+		}
+
+		@Override
+		public boolean wantsContent() {
+			return false;
+		}
+
+		@Override
+		public boolean wantsDigest() {
+			return false;
+		}
+	}
+
+	/**
+	 * Build the resource for a single archive record.
+	 * @param rec the archive record
+	 * @return the resource, or null if the record is not indexed
+	 * @throws IOException thrown if there is an error
+	 */
+	private HarvestResourceDTO indexRecord(ArchiveRecord rec) throws IOException {
+		if(rec instanceof WARCRecord) {
+			String type = rec.getHeader().getHeaderValue(WARCConstants.HEADER_KEY_TYPE).toString();
+			if(type.equals(WARCConstants.RESPONSE)) {
+				String mime = rec.getHeader().getMimetype();
+				if(!mime.equals("text/dns")) {
+					return indexWARCResponse(rec);
+				}
+			}
+			return null;
+		}
+		else {
+			return indexARCRecord(rec);
+		}
 	}
 	
-	private void indexARCRecord(ArchiveRecord rec, Map<String, HarvestResourceDTO> results) throws IOException {
+	private HarvestResourceDTO indexARCRecord(ArchiveRecord rec) throws IOException {
 		
 		ARCRecord record = (ARCRecord) rec;
 		ArchiveRecordHeader header = record.getHeader();
@@ -181,29 +487,24 @@ public class ArcHarvestFileDTO {
 		// If the URL length is too long for the database, skip adding the URL
 		// to the index. This ensures that the harvest completes successfully. 
 		if(header.getUrl().length() > MAX_URL_LENGTH) { 
-			return;
+			return null;
 		}
 			
-		try {
-			ArcHarvestResourceDTO res = new ArcHarvestResourceDTO();
-			res.setArcFileName(this.getName());
-			res.setName(header.getUrl());
-			res.setResourceOffset(header.getOffset());
-			res.setCompressed(this.isCompressed());
-			res.setStatusCode(record.getStatusCode());
-
-			// Calculate the length.
-			long length = header.getLength() - header.getContentBegin();
-			res.setLength(length);
-				
-			results.put(res.getName(), res);
-		}
-		finally {
-			rec.close();
-		}
+		ArcHarvestResourceDTO res = new ArcHarvestResourceDTO();
+		res.setArcFileName(this.getName());
+		res.setName(header.getUrl());
+		res.setResourceOffset(header.getOffset());
+		res.setCompressed(this.isCompressed());
+		res.setStatusCode(record.getStatusCode());
+
+		// Calculate the length.
+		long length = header.getLength() - header.getContentBegin();
+		res.setLength(length);
+			
+		return res;
 	}
 
-	private void indexWARCResponse(ArchiveRecord rec, Map<String, HarvestResourceDTO> results) throws IOException {
+	private HarvestResourceDTO indexWARCResponse(ArchiveRecord rec) throws IOException {
 		
 		WARCRecord record = (WARCRecord) rec;
 		ArchiveRecordHeader header = record.getHeader();
@@ -211,44 +512,39 @@ public class ArcHarvestFileDTO {
 		// If the URL length is too long for the database, skip adding the URL
 		// to the index. This ensures that the harvest completes successfully. 
 		if(header.getUrl().length() > MAX_URL_LENGTH) { 
-			return;
+			return null;
 		}
 			
-		try {
-			ArcHarvestResourceDTO res = new ArcHarvestResourceDTO();
-			res.setArcFileName(this.getName());
-			res.setName(header.getUrl());
-			res.setResourceOffset(header.getOffset());
-			res.setCompressed(this.isCompressed());
-
-			// need to parse the documents HTTP message and headers here: WARCReader
-			// does not implement this...
-			
-	        byte [] statusBytes = HttpParser.readRawLine(record);
-	        int eolCharCount = getEolCharsCount(statusBytes);
-	        if (eolCharCount <= 0) {
-	            throw new RecoverableIOException("Failed to read http status where one " +
-	                " was expected: " + new String(statusBytes));
-	        }
-	        String statusLine = EncodingUtil.getString(statusBytes, 0,
-	            statusBytes.length - eolCharCount, WARCConstants.DEFAULT_ENCODING);
-	        if ((statusLine == null) ||
-	                !StatusLine.startsWithHTTP(statusLine)) {
-	           throw new RecoverableIOException("Failed parse of http status line.");
-	        }
-	        StatusLine status = new StatusLine(statusLine);
-			
-			res.setStatusCode(status.getStatusCode());
-			
-			// Calculate the length.
-			long length = header.getLength() - header.getContentBegin();
-			res.setLength(length);
-				
-			results.put(res.getName(), res);
+		ArcHarvestResourceDTO res = new ArcHarvestResourceDTO();
+		res.setArcFileName(this.getName());
+		res.setName(header.getUrl());
+		res.setResourceOffset(header.getOffset());
+		res.setCompressed(this.isCompressed());
+
+		// need to parse the documents HTTP message and headers here: WARCReader
+		// does not implement this...
+		
+		byte [] statusBytes = HttpParser.readRawLine(record);
+		int eolCharCount = getEolCharsCount(statusBytes);
+		if (eolCharCount <= 0) {
+		    throw new RecoverableIOException("Failed to read http status where one " +
+		        " was expected: " + new String(statusBytes));
 		}
-		finally {
-			rec.close();
+		String statusLine = EncodingUtil.getString(statusBytes, 0,
+		    statusBytes.length - eolCharCount, WARCConstants.DEFAULT_ENCODING);
+		if ((statusLine == null) ||
+		        !StatusLine.startsWithHTTP(statusLine)) {
+		   throw new RecoverableIOException("Failed parse of http status line.");
 		}
+		StatusLine status = new StatusLine(statusLine);
+		
+		res.setStatusCode(status.getStatusCode());
+		
+		// Calculate the length.
+		long length = header.getLength() - header.getContentBegin();
+		res.setLength(length);
+			
+		return res;
 	}
 	
     /**
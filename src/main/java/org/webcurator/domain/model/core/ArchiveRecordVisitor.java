@@ -0,0 +1,87 @@
+/*
+ *  Copyright 2006 The National Library of New Zealand
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.webcurator.domain.model.core;
+
+import java.io.IOException;
+
+import org.archive.io.ArchiveRecord;
+import org.archive.io.ArchiveRecordHeader;
+
+/**
+ * A consumer of the records read by a single pass over an archive file.
+ * Every visitor registered with ArcHarvestFileDTO.scan is called for each
+ * record, so several indexes can be built while the file is read and
+ * decompressed only once.
+ */
+public interface ArchiveRecordVisitor {
+
+	/**
+	 * Called before the first record is read. The compressed flag of the
+	 * archive file has been set by this point.
+	 * @param archiveFile the archive file being scanned
+	 */
+	void startFile(ArcHarvestFileDTO archiveFile) throws IOException;
+
+	/**
+	 * Called once for every record in the archive file.
+	 * @param header the header of the record
+	 * @param resource the resource for the record, or null if the record is not indexed
+	 */
+	void visitRecord(ArchiveRecordHeader header, HarvestResourceDTO resource) throws IOException;
+
+	/**
+	 * Called with each block of the remaining content of the current record,
+	 * only if the visitor wants content.
+	 * @param buffer the content buffer
+	 * @param offset the offset of the content in the buffer
+	 * @param length the length of the content in the buffer
+	 */
+	void visitContent(byte[] buffer, int offset, int length) throws IOException;
+
+	/**
+	 * Called once the content of a record has been passed to the visitors, 
+	 * before the record is closed. Closing the record reads any content that 
+	 * is left, so a visitor can do so to complete the digest of the record.
+	 * @param record the record
+	 */
+	void endRecord(ArchiveRecord record) throws IOException;
+
+	/**
+	 * Called after the last record has been read.
+	 * @param archiveFile the archive file being scanned
+	 */
+	void endFile(ArcHarvestFileDTO archiveFile) throws IOException;
+
+	/**
+	 * Called instead of endFile if the scan of the archive file fails, or if 
+	 * this visitor fails. The visitor releases anything it holds and discards 
+	 * any partial output; it is not called again for the file.
+	 * @param archiveFile the archive file being scanned
+	 * @param cause the failure
+	 */
+	void abortFile(ArcHarvestFileDTO archiveFile, Exception cause);
+
+	/**
+	 * @return true if the visitor needs the content of each record.
+	 */
+	boolean wantsContent();
+
+	/**
+	 * @return true if the visitor needs the digest of each record, which is 
+	 * only calculated if a visitor wants it.
+	 */
+	boolean wantsDigest();
+}
@@ -20,6 +20,9 @@ import javax.validation.constraints.Size;
 import javax.validation.constraints.NotNull;
 import javax.persistence.*;
 
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
 /**
  * A HarvestResource is a resource that has been harvested. It may be 
  * subclassed to provide additional functionality such as that required to
@@ -53,13 +56,21 @@ public class HarvestResource {
 	// Note: From the Hibernate 4.2 documentation:
 	// The Hibernate team has always felt such a construct as fundamentally wrong.
 	// Try hard to fix your data model before using this feature.
-	@TableGenerator(name = "SharedTableIdGenerator",
-			table = "ID_GENERATOR",
-			pkColumnName = "IG_TYPE",
-			valueColumnName = "IG_VALUE",
-			pkColumnValue = "HarvestResource",
-			allocationSize = 1) // 50 is the default
-	@GeneratedValue(strategy = GenerationType.TABLE, generator = "SharedTableIdGenerator")
+	// Resources are inserted in bulk so ids are allocated in blocks. The
+	// pooled-lo optimizer treats the stored value as the first id of the next
+	// block, which is also what it meant when ids were allocated one at a time,
+	// so the first block does not reuse existing ids.
+	@GenericGenerator(name = "HarvestResourceIdGenerator",
+			strategy = "org.hibernate.id.enhanced.TableGenerator",
+			parameters = {
+					@Parameter(name = "table_name", value = "ID_GENERATOR"),
+					@Parameter(name = "segment_column_name", value = "IG_TYPE"),
+					@Parameter(name = "value_column_name", value = "IG_VALUE"),
+					@Parameter(name = "segment_value", value = "HarvestResource"),
+					@Parameter(name = "increment_size", value = "500"),
+					@Parameter(name = "optimizer", value = "pooled-lo")
+			})
+	@GeneratedValue(generator = "HarvestResourceIdGenerator")
 	protected Long oid;
 	/** The HarvestResult that this resource belongs to */
 	@ManyToOne
@@ -19,6 +19,8 @@ import org.hibernate.annotations.Formula;
 import org.webcurator.core.harvester.agent.HarvesterStatusUtil;
 import org.webcurator.domain.model.core.harvester.agent.HarvesterStatusDTO;
 
+import java.util.Objects;
+
 import javax.validation.constraints.Size;
 import javax.persistence.*;
 
@@ -99,14 +101,26 @@ public class HarvesterStatus {
     /**
      * Update the HarvesterStatus object from the DTO.
      * @param aStatusDTO The DTO to update the object from.
+     * @return true if any of the persisted values have changed.
      */
-    public void update(HarvesterStatusDTO aStatusDTO) {
+    public boolean update(HarvesterStatusDTO aStatusDTO) {
+        boolean changed = !Objects.equals(jobName, aStatusDTO.getJobName())
+                || !Objects.equals(status, aStatusDTO.getStatus())
+                || !Objects.equals(applicationVersion, aStatusDTO.getApplicationVersion())
+                || !Objects.equals(heritrixVersion, aStatusDTO.getHeritrixVersion());
         jobName = aStatusDTO.getJobName();
         status = aStatusDTO.getStatus();
         applicationVersion = aStatusDTO.getApplicationVersion();
         heritrixVersion = aStatusDTO.getHeritrixVersion();
         
         if (aStatusDTO.getDataDownloaded() >= dataDownloaded) {
+        	changed = changed || averageURIs != aStatusDTO.getAverageURIs()
+        			|| averageKBs != aStatusDTO.getAverageKBs()
+        			|| urlsDownloaded != aStatusDTO.getUrlsDownloaded()
+        			|| urlsFailed != aStatusDTO.getUrlsFailed()
+        			|| dataDownloaded != aStatusDTO.getDataDownloaded()
+        			|| elapsedTime != aStatusDTO.getElapsedTime()
+        			|| alertCount != aStatusDTO.getAlertCount();
         	averageURIs = aStatusDTO.getAverageURIs();
         	averageKBs = aStatusDTO.getAverageKBs();
         	urlsDownloaded = aStatusDTO.getUrlsDownloaded();
@@ -114,7 +128,8 @@ public class HarvesterStatus {
         	dataDownloaded = aStatusDTO.getDataDownloaded();
         	elapsedTime = aStatusDTO.getElapsedTime();
         	alertCount = aStatusDTO.getAlertCount();
-        }                
+        }
+        return changed;
     }
     
     /**
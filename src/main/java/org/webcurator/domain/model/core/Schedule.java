@@ -17,9 +17,15 @@ package org.webcurator.domain.model.core;
 
 import java.text.ParseException;
 import java.util.Date;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
 import java.util.Set;
+import java.util.stream.LongStream;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.quartz.CronExpression;
+import org.webcurator.core.util.CronExpressionCache;
 import org.webcurator.core.util.DateUtils;
 import org.webcurator.domain.UserOwnable;
 import org.webcurator.domain.model.auth.User;
@@ -53,6 +59,9 @@ public class Schedule extends AbstractIdentityObject implements UserOwnable {
 	public static final int TYPE_QUARTERLY = -5;
 	public static final int TYPE_HALF_YEARLY = -6;
 	public static final int TYPE_ANNUALLY = -7;
+
+	/** The logger. */
+	private static Log log = LogFactory.getLog(Schedule.class);
 	
     /** The primary key. */
 	@Id
@@ -244,7 +253,7 @@ public class Schedule extends AbstractIdentityObject implements UserOwnable {
     public Date getNextExecutionDate(Date after) {
     	try {
     		
-	    	CronExpression expression = new CronExpression(this.getCronPattern());
+	    	CronExpression expression = CronExpressionCache.get(this.getCronPattern());
 	    	Date next = expression.getNextValidTimeAfter(DateUtils.latestDate(after, new Date()));
 	    	if(next == null) { 
 	    		return null; 
@@ -257,13 +266,68 @@ public class Schedule extends AbstractIdentityObject implements UserOwnable {
 	    	}
     	}
     	catch(ParseException ex) {
-        	System.out.println(" Encountered ParseException for cron expression: " + this.getCronPattern() + " in schedule: " + this.getOid());
+    		log.error("Encountered ParseException for cron expression: " + this.getCronPattern() + " in schedule: " + this.getOid(), ex);
     		return null;
     	}
     }
     
 
     
+    /**
+     * Iterates over the execution times of the schedule that fall after one 
+     * date and before another, as epoch milliseconds. This gives the same
+     * times as calling getNextExecutionDate(Date) repeatedly, but the cron
+     * pattern is only looked up once.
+     * @param after The date to get the execution times after.
+     * @param before The date that the execution times must be before.
+     * @return The execution times, in order.
+     */
+    public PrimitiveIterator.OfLong getExecutionTimes(Date after, Date before) {
+    	CronExpression expression;
+    	try {
+    		expression = CronExpressionCache.get(this.getCronPattern());
+    	}
+    	catch(ParseException ex) {
+    		log.error("Encountered ParseException for cron expression: " + this.getCronPattern() + " in schedule: " + this.getOid(), ex);
+    		return LongStream.empty().iterator();
+    	}
+    	return new ExecutionTimeIterator(expression, DateUtils.latestDate(after, new Date()), before, endDate);
+    }
+    
+    /**
+     * Iterates over the fire times of a cron expression within a window.
+     */
+    private static class ExecutionTimeIterator implements PrimitiveIterator.OfLong {
+    	/** The expression */
+    	private final CronExpression expression;
+    	/** The fire times must be before this time */
+    	private final long before;
+    	/** The fire times must not be after this time */
+    	private final long end;
+    	/** The next fire time, or null if there are no more */
+    	private Date next;
+
+    	private ExecutionTimeIterator(CronExpression expression, Date after, Date before, Date endDate) {
+    		this.expression = expression;
+    		this.before = before.getTime();
+    		this.end = endDate == null ? Long.MAX_VALUE : endDate.getTime();
+    		this.next = expression.getNextValidTimeAfter(after);
+    	}
+
+    	public boolean hasNext() {
+    		return next != null && next.getTime() < before && next.getTime() <= end;
+    	}
+
+    	public long nextLong() {
+    		if (!hasNext()) {
+    			throw new NoSuchElementException();
+    		}
+    		long time = next.getTime();
+    		next = expression.getNextValidTimeAfter(next);
+    		return time;
+    	}
+    }
+    
     /**
      * Check for equality. Two objects are equal if, and only if, 
      * their cronPatterns are the same, or if both objects have a 
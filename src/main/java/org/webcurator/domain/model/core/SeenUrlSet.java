@@ -0,0 +1,175 @@
+/*
+ *  Copyright 2006 The National Library of New Zealand
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.webcurator.domain.model.core;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.function.ToLongFunction;
+
+import com.google.common.hash.Hashing;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * The set of URLs seen in an archive file. Only a 64 bit fingerprint of each
+ * URL and the position of the URL in a temporary file are held in memory, 16
+ * bytes for each distinct URL. The URLs themselves are written to the
+ * temporary file and read back when a fingerprint is matched, so two URLs
+ * with the same fingerprint are still told apart.
+ */
+class SeenUrlSet implements Closeable {
+	private static Log log = LogFactory.getLog(SeenUrlSet.class);
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private final ToLongFunction<String> fingerprinter;
+	private long[] fingerprints = new long[INITIAL_CAPACITY];
+	/** The position of each URL in the URL file plus one, or 0 for an empty slot. */
+	private long[] positions = new long[INITIAL_CAPACITY];
+	private int size = 0;
+
+	private File urlFile;
+	private DataOutputStream urlOutput;
+	private RandomAccessFile urlInput;
+	private long urlFileLength = 0L;
+
+	SeenUrlSet() {
+		this(SeenUrlSet::fingerprint);
+	}
+
+	/**
+	 * @param fingerprinter the function that gives the fingerprint of a URL
+	 */
+	SeenUrlSet(ToLongFunction<String> fingerprinter) {
+		this.fingerprinter = fingerprinter;
+	}
+
+	/**
+	 * Add a URL to the set.
+	 * @param url the URL
+	 * @return true if the URL had not been seen before
+	 * @throws IOException thrown if the temporary file cannot be written or read
+	 */
+	boolean add(String url) throws IOException {
+		long fingerprint = fingerprinter.applyAsLong(url);
+		int mask = fingerprints.length - 1;
+		int i = (int) fingerprint & mask;
+		for(; positions[i] != 0L; i = (i + 1) & mask) {
+			if(fingerprints[i] == fingerprint && url.equals(readUrl(positions[i] - 1L))) {
+				return false;
+			}
+		}
+		fingerprints[i] = fingerprint;
+		positions[i] = writeUrl(url) + 1L;
+		size++;
+		// Keep the table at most half full so that probe sequences stay short.
+		if(size * 2 > fingerprints.length) {
+			resize();
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of URLs in the set
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Forget the URLs seen and delete the temporary file.
+	 */
+	@Override
+	public void close() throws IOException {
+		fingerprints = new long[INITIAL_CAPACITY];
+		positions = new long[INITIAL_CAPACITY];
+		size = 0;
+		try {
+			if(urlOutput != null) {
+				urlOutput.close();
+			}
+			if(urlInput != null) {
+				urlInput.close();
+			}
+		}
+		finally {
+			urlOutput = null;
+			urlInput = null;
+			urlFileLength = 0L;
+			if(urlFile != null && !urlFile.delete()) {
+				log.warn("Could not delete " + urlFile.getAbsolutePath());
+			}
+			urlFile = null;
+		}
+	}
+
+	private long writeUrl(String url) throws IOException {
+		if(urlOutput == null) {
+			urlFile = File.createTempFile("wct-urls", ".tmp");
+			urlOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(urlFile), 64 * 1024));
+		}
+		byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+		long position = urlFileLength;
+		urlOutput.writeInt(bytes.length);
+		urlOutput.write(bytes);
+		urlFileLength += 4 + bytes.length;
+		return position;
+	}
+
+	private String readUrl(long position) throws IOException {
+		urlOutput.flush();
+		if(urlInput == null) {
+			urlInput = new RandomAccessFile(urlFile, "r");
+		}
+		urlInput.seek(position);
+		byte[] bytes = new byte[urlInput.readInt()];
+		urlInput.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private void resize() {
+		long[] oldFingerprints = fingerprints;
+		long[] oldPositions = positions;
+		fingerprints = new long[oldFingerprints.length * 2];
+		positions = new long[oldPositions.length * 2];
+		int mask = fingerprints.length - 1;
+		for(int j = 0; j < oldPositions.length; j++) {
+			if(oldPositions[j] != 0L) {
+				int i = (int) oldFingerprints[j] & mask;
+				while(positions[i] != 0L) {
+					i = (i + 1) & mask;
+				}
+				fingerprints[i] = oldFingerprints[j];
+				positions[i] = oldPositions[j];
+			}
+		}
+	}
+
+	/**
+	 * @param url the URL
+	 * @return the 64 bit fingerprint of the URL
+	 */
+	private static long fingerprint(String url) {
+		return Hashing.murmur3_128().hashString(url, StandardCharsets.UTF_8).asLong();
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ *  Copyright 2006 The National Library of New Zealand
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.webcurator.domain.model.dto;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A read only snapshot of the resources of a harvest result, holding only
+ * the columns used by the QA rules. The columns are held in arrays rather
+ * than as one DTO per resource so that a large harvest result can be loaded
+ * once and shared by every rule.
+ */
+public class HarvestResourceSnapshot {
+	private final long harvestResultOid;
+	private final Long targetInstanceOid;
+	private final String[] names;
+	private final long[] lengths;
+	private final int[] statusCodes;
+	private volatile Set<String> nameSet;
+
+	private HarvestResourceSnapshot(Builder builder) {
+		this.harvestResultOid = builder.harvestResultOid;
+		this.targetInstanceOid = builder.targetInstanceOid;
+		this.names = Arrays.copyOf(builder.names, builder.size);
+		this.lengths = Arrays.copyOf(builder.lengths, builder.size);
+		this.statusCodes = Arrays.copyOf(builder.statusCodes, builder.size);
+	}
+
+	/**
+	 * @return the oid of the harvest result
+	 */
+	public long getHarvestResultOid() {
+		return harvestResultOid;
+	}
+
+	/**
+	 * @return the oid of the target instance of the harvest result, or null if it has no resources
+	 */
+	public Long getTargetInstanceOid() {
+		return targetInstanceOid;
+	}
+
+	/**
+	 * @return the number of resources
+	 */
+	public int size() {
+		return names.length;
+	}
+
+	/**
+	 * @param index the index of the resource
+	 * @return the name (URL) of the resource
+	 */
+	public String getName(int index) {
+		return names[index];
+	}
+
+	/**
+	 * @param index the index of the resource
+	 * @return the length of the resource
+	 */
+	public long getLength(int index) {
+		return lengths[index];
+	}
+
+	/**
+	 * @param index the index of the resource
+	 * @return the status code of the resource
+	 */
+	public int getStatusCode(int index) {
+		return statusCodes[index];
+	}
+
+	/**
+	 * @return an unmodifiable set of the resource names, built on first use
+	 */
+	public Set<String> getNameSet() {
+		Set<String> result = nameSet;
+		if (result == null) {
+			Set<String> set = new HashSet<String>(names.length * 4 / 3 + 1);
+			Collections.addAll(set, names);
+			result = Collections.unmodifiableSet(set);
+			nameSet = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Builds a snapshot a resource at a time.
+	 */
+	public static class Builder {
+		private final long harvestResultOid;
+		private final Map<String, String> namePool;
+		private Long targetInstanceOid;
+		private int size = 0;
+		private String[] names = new String[64];
+		private long[] lengths = new long[64];
+		private int[] statusCodes = new int[64];
+
+		/**
+		 * @param harvestResultOid the oid of the harvest result
+		 * @param namePool a pool of names shared with other snapshots so that equal names
+		 * are held once, or null
+		 */
+		public Builder(long harvestResultOid, Map<String, String> namePool) {
+			this.harvestResultOid = harvestResultOid;
+			this.namePool = namePool;
+		}
+
+		/**
+		 * Add a resource to the snapshot.
+		 * @param targetInstanceOid the oid of the target instance
+		 * @param name the name (URL) of the resource
+		 * @param length the length of the resource
+		 * @param statusCode the status code of the resource
+		 * @return this builder
+		 */
+		public Builder add(Long targetInstanceOid, String name, long length, int statusCode) {
+			if (size == names.length) {
+				int capacity = size * 2;
+				names = Arrays.copyOf(names, capacity);
+				lengths = Arrays.copyOf(lengths, capacity);
+				statusCodes = Arrays.copyOf(statusCodes, capacity);
+			}
+			if (this.targetInstanceOid == null) {
+				this.targetInstanceOid = targetInstanceOid;
+			}
+			if (namePool != null) {
+				String pooled = namePool.putIfAbsent(name, name);
+				if (pooled != null) {
+					name = pooled;
+				}
+			}
+			names[size] = name;
+			lengths[size] = length;
+			statusCodes[size] = statusCode;
+			size++;
+			return this;
+		}
+
+		public HarvestResourceSnapshot build() {
+			return new HarvestResourceSnapshot(this);
+		}
+	}
+}
@@ -36,6 +36,8 @@ public class QueuedTargetInstanceDTO {
     private Integer bandwidthPercent;
     /** the owning agency of the Target instance. */    
     private String agencyName;
+    /** the type of harvester required by the target instance's profile. */
+    private String harvesterType;
     
     /**
      * Constructor for Hibernate queries.
@@ -47,6 +49,20 @@ public class QueuedTargetInstanceDTO {
      * @param agencyName		The name of the agency that owns this target instance.
      */
 	public QueuedTargetInstanceDTO(Long oid, Date scheduledTime, int priority, String state, Integer bandwidthPercent, String agencyName) {
+		this(oid, scheduledTime, priority, state, bandwidthPercent, agencyName, null);
+	}
+
+    /**
+     * Constructor for Hibernate queries.
+     * @param oid				The OID of the target instance.
+     * @param scheduledTime		The time the target instance is scheduled to start.
+     * @param priority			The priority of the target instance.
+     * @param state				The state of the target instance.
+     * @param bandwidthPercent	The bandwidth percentage requested by the target instance.
+     * @param agencyName		The name of the agency that owns this target instance.
+     * @param harvesterType		The type of harvester required by the target instance's profile.
+     */
+	public QueuedTargetInstanceDTO(Long oid, Date scheduledTime, int priority, String state, Integer bandwidthPercent, String agencyName, String harvesterType) {
 		super();
 		this.oid = oid;
 		this.scheduledTime = scheduledTime;
@@ -54,6 +70,7 @@ public class QueuedTargetInstanceDTO {
 		this.state = state;
 		this.bandwidthPercent = bandwidthPercent;
 		this.agencyName = agencyName;
+		this.harvesterType = harvesterType;
 	}
 	/**
 	 * @return the agencyName
@@ -67,6 +84,18 @@ public class QueuedTargetInstanceDTO {
 	public void setAgencyName(String agencyName) {
 		this.agencyName = agencyName;
 	}
+	/**
+	 * @return the harvesterType, or null if it was not retrieved
+	 */
+	public String getHarvesterType() {
+		return harvesterType;
+	}
+	/**
+	 * @param harvesterType the harvesterType to set
+	 */
+	public void setHarvesterType(String harvesterType) {
+		this.harvesterType = harvesterType;
+	}
 	/**
 	 * @return the bandwidthPercent
 	 */
@@ -0,0 +1,97 @@
+/*
+ *  Copyright 2006 The National Library of New Zealand
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.webcurator.domain.model.dto;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.webcurator.domain.model.core.Permission;
+import org.webcurator.domain.model.core.Seed;
+
+/**
+ * The seeds of a target instance with their active permissions, evaluated
+ * once at the start of a harvest so that the approval check, the seed
+ * history and the SIP can all be built from the same result.
+ */
+public class SeedPermissionEvaluation {
+	/** the date at which the permissions were evaluated. */
+	private final Date evaluationDate;
+	/** the seeds to harvest. */
+	private final Set<Seed> seeds;
+	/** true if the target instance may be harvested. */
+	private final boolean harvestable;
+	/** the active permissions, each with the seeds it covers. */
+	private final Collection<PermissionSeedDTO> activePermissions;
+
+	/**
+	 * Evaluate the active permissions of a set of seeds.
+	 * @param seeds the seeds to harvest.
+	 * @param harvestable true if the target instance may be harvested.
+	 * @param evaluationDate the date at which to evaluate the permissions.
+	 */
+	public SeedPermissionEvaluation(Set<Seed> seeds, boolean harvestable, Date evaluationDate) {
+		this.evaluationDate = evaluationDate;
+		this.seeds = Collections.unmodifiableSet(seeds);
+		this.harvestable = harvestable;
+
+		Map<Long, PermissionSeedDTO> permissions = new HashMap<Long, PermissionSeedDTO>();
+		for (Seed seed : seeds) {
+			for (Permission p : seed.getPermissions()) {
+				if (p.getStartDate().before(evaluationDate) && (p.getEndDate() == null || p.getEndDate().after(evaluationDate))) {
+					PermissionSeedDTO psdto = permissions.get(p.getOid());
+					if (psdto == null) {
+						psdto = new PermissionSeedDTO(p);
+						permissions.put(psdto.getPermissionOid(), psdto);
+					}
+					psdto.getSeeds().add(seed.getSeed());
+				}
+			}
+		}
+		this.activePermissions = Collections.unmodifiableCollection(permissions.values());
+	}
+
+	/**
+	 * @return the date at which the permissions were evaluated
+	 */
+	public Date getEvaluationDate() {
+		return evaluationDate;
+	}
+
+	/**
+	 * @return the seeds to harvest
+	 */
+	public Set<Seed> getSeeds() {
+		return seeds;
+	}
+
+	/**
+	 * @return true if the target instance may be harvested
+	 */
+	public boolean isHarvestable() {
+		return harvestable;
+	}
+
+	/**
+	 * @return the active permissions, each with the seeds it covers
+	 */
+	public Collection<PermissionSeedDTO> getActivePermissions() {
+		return activePermissions;
+	}
+}
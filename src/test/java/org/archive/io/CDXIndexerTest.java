@@ -4,14 +4,12 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
-import java.io.BufferedReader;
-import java.io.DataInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStreamReader;
+import java.nio.file.Files;
 import java.util.Date;
+import java.util.List;
 
-import org.junit.Ignore;
+import org.junit.After;
 import org.junit.Test;
 import org.webcurator.domain.model.core.HarvestResultDTO;
 import org.webcurator.test.BaseWCTTest;
@@ -19,17 +17,12 @@ import org.webcurator.test.WCTTestUtils;
 
 public class CDXIndexerTest extends BaseWCTTest<CDXIndexer>{
 
-	private String archivePath = "/org/webcurator/domain/model/core/archiveFiles";
-	private String TestCARC_CDX = "IAH-20080610152724-00000-test.cdx";
-	private String TestCWARC_CDX = "IAH-20080610152754-00000-test.cdx";
-	
-	private long NumARCResources = 83;
-	private long NumWARCResources = 72;
-	
+	private final File archiveFolder = new File(System.getProperty("java.io.tmpdir") + "/CDXIndexerTest");
+
 	private Long hrOid = 54321L;
 	private Long tiOid = 12345L;
 	private int harvestNumber = 1;
-	
+
 	public CDXIndexerTest()
 	{
 		super(CDXIndexer.class, "");
@@ -37,67 +30,36 @@ public class CDXIndexerTest extends BaseWCTTest<CDXIndexer>{
 
 	public void setUp() throws Exception {
 		super.setUp();
+		archiveFolder.mkdirs();
 		HarvestResultDTO result = new HarvestResultDTO(hrOid, tiOid, new Date(), harvestNumber, "");
-		testInstance.initialise(result, WCTTestUtils.getResourceAsFile(archivePath));
+		testInstance.initialise(result, archiveFolder);
 	}
 
-	//TODO Test doesn't work, test itself also does not appear to test anything worthwhile 
-	@Ignore
-	@Test
-	public final void testIndexFiles() {
-		try {
-			testInstance.indexFiles(testInstance.getResult().getOid());
-			
-			//Check the ARC CDX index was generated
-			File cdxFile = WCTTestUtils.getResourceAsFile(archivePath+"/"+TestCARC_CDX); // new File(archivePath+"/"+TestCARC_CDX);
-			assertTrue(cdxFile.exists());
-	
-			//Check the number of records in the CDX matches the arc file
-			int count = 0;
-		    FileInputStream fstream = new FileInputStream(cdxFile);
-		    DataInputStream in = new DataInputStream(fstream);
-		    BufferedReader br = new BufferedReader(new InputStreamReader(in));
-		    //Read File Line By Line
-		    while (br.readLine() != null)   {
-		      count++;
-		    }
-		    in.close();
-		    
-		    //Ignore the CDX header line
-		    assertEquals(NumARCResources, count-1);
-			cdxFile.delete();
-	
-			//Check the CDX index was generated
-			cdxFile = new File(archivePath+"/"+TestCWARC_CDX);
-			assertTrue(cdxFile.exists());
-	
-			//Check the number of records in the CDX matches the warc file
-			count = 0;
-		    fstream = new FileInputStream(cdxFile);
-		    in = new DataInputStream(fstream);
-		    br = new BufferedReader(new InputStreamReader(in));
-		    //Read File Line By Line
-		    while (br.readLine() != null)   {
-		      count++;
-		    }
-		    in.close();
-		    
-		    //Ignore:
-		    //	CDX header line
-		    //	WARC header line
-		    //	DNS line
-		    //There are 3 lines per record:
-		    //	application/http;msgtype=request 
-		    //  application/http;msgtype=response
-		    //  text/anvl
-		    assertEquals(NumWARCResources, (count-3)/3);
-			cdxFile.delete();
-		
-		} catch (Exception e) {
-			fail(e.getMessage());
+	@After
+	public void tearDown() throws Exception {
+		File[] files = archiveFolder.listFiles();
+		if(files != null) {
+			for(File f: files) {
+				f.delete();
+			}
 		}
-		
-		
+		archiveFolder.delete();
+		super.tearDown();
+	}
+
+	@Test
+	public final void testIndexFiles() throws Exception {
+		WCTTestUtils.writeWarcFile(new File(archiveFolder, "test.warc.gz"), true, "http://www.example.com/",
+				"http://www.example.com/a.html");
+
+		testInstance.indexFiles(testInstance.getResult().getOid());
+
+		File cdxFile = new File(archiveFolder, "test.cdx");
+		assertTrue(cdxFile.exists());
+		List<String> lines = Files.readAllLines(cdxFile.toPath());
+		// A header line and a line for each of the five records
+		assertEquals(6, lines.size());
+		assertEquals("CDX b e a m s c V n g", lines.get(0));
 	}
 
 	@Test
@@ -0,0 +1,124 @@
+package org.archive.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.webcurator.domain.model.core.ArcHarvestFileDTO;
+import org.webcurator.domain.model.core.ArchiveRecordVisitor;
+import org.webcurator.domain.model.core.HarvestResourceDTO;
+import org.webcurator.domain.model.core.HarvestResultDTO;
+import org.webcurator.test.WCTTestUtils;
+
+public class CDXRecordVisitorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private List<String> scan(File archiveFile) throws Exception {
+		ArchiveRecordVisitor visitor = new CDXRecordVisitorFactory().createVisitor(new HarvestResultDTO(), archiveFile);
+		ArcHarvestFileDTO dto = new ArcHarvestFileDTO();
+		dto.setName(archiveFile.getName());
+		dto.scan(archiveFile.getParentFile(), Collections.singletonList(visitor));
+		return Files.readAllLines(((CDXRecordVisitor) visitor).getCDXFile().toPath());
+	}
+
+	private ArcHarvestFileDTO archiveFileDTO(File archiveFile) {
+		ArcHarvestFileDTO dto = new ArcHarvestFileDTO();
+		dto.setName(archiveFile.getName());
+		return dto;
+	}
+
+	/**
+	 * Write the CDX index by reading the archive file a second time.
+	 */
+	private List<String> cdxOutput(File archiveFile) throws Exception {
+		ArchiveReader reader = ArchiveReaderFactory.get(archiveFile);
+		try {
+			reader.setStrict(false);
+			reader.setDigest(true);
+			reader.cdxOutput(true);
+		} finally {
+			reader.close();
+		}
+		return Files.readAllLines(new File(archiveFile.getParentFile(), "test.cdx").toPath());
+	}
+
+	private void assertSameAsCdxOutput(String name, boolean compressed) throws Exception {
+		File scanned = new File(folder.newFolder("scanned"), name);
+		File read = new File(folder.newFolder("read"), name);
+		WCTTestUtils.writeWarcFile(scanned, compressed, "http://www.example.com/", "http://www.example.com/a.html");
+		WCTTestUtils.writeWarcFile(read, compressed, "http://www.example.com/", "http://www.example.com/a.html");
+
+		List<String> lines = scan(scanned);
+		assertEquals(cdxOutput(read), lines);
+		// A header line and a line for each of the five records
+		assertEquals(6, lines.size());
+		assertEquals("CDX b e a m s c " + (compressed ? "V" : "v") + " n g", lines.get(0));
+		assertTrue(lines.get(3), lines.get(3).contains(" http://www.example.com/ "));
+		assertTrue(lines.get(3), lines.get(3).endsWith(" test"));
+		String[] fields = lines.get(3).split(" ");
+		assertEquals("application/http;msgtype=response", fields[3]);
+		assertFalse("The records should have a digest", "-".equals(fields[5]));
+	}
+
+	@Test
+	public final void testCompressedWarc() throws Exception {
+		assertSameAsCdxOutput("test.warc.gz", true);
+	}
+
+	@Test
+	public final void testUncompressedWarc() throws Exception {
+		assertSameAsCdxOutput("test.warc", false);
+	}
+
+	@Test
+	public final void testIndexIsWrittenWhenAnotherVisitorFails() throws Exception {
+		File scanned = new File(folder.newFolder("scanned"), "test.warc.gz");
+		File read = new File(folder.newFolder("read"), "test.warc.gz");
+		WCTTestUtils.writeWarcFile(scanned, true, "http://www.example.com/", "http://www.example.com/a.html");
+		WCTTestUtils.writeWarcFile(read, true, "http://www.example.com/", "http://www.example.com/a.html");
+
+		CDXRecordVisitor visitor = new CDXRecordVisitor(scanned);
+		ArchiveRecordVisitor failing = new ArcHarvestFileDTO.ResourceVisitor() {
+			@Override
+			public void visitRecord(ArchiveRecordHeader header, HarvestResourceDTO resource) throws IOException {
+				if (resource != null) {
+					throw new IOException("Could not send the resource");
+				}
+			}
+		};
+		try {
+			archiveFileDTO(scanned).scan(scanned.getParentFile(), Arrays.asList(failing, visitor));
+			fail("The failure of the other visitor should be thrown");
+		} catch (IOException ex) {
+			assertEquals("Could not send the resource", ex.getMessage());
+		}
+		assertEquals(cdxOutput(read), Files.readAllLines(visitor.getCDXFile().toPath()));
+	}
+
+	@Test
+	public final void testPartialIndexIsDeletedOnFailure() throws Exception {
+		File archiveFile = folder.newFile("test.warc");
+		WCTTestUtils.writeWarcFile(archiveFile, false, "http://www.example.com/");
+		ArcHarvestFileDTO dto = archiveFileDTO(archiveFile);
+		dto.setCompressed(false);
+
+		CDXRecordVisitor visitor = new CDXRecordVisitor(archiveFile);
+		visitor.startFile(dto);
+		assertTrue(visitor.getCDXFile().exists());
+		visitor.abortFile(dto, new IOException("The scan failed"));
+		assertFalse(visitor.getCDXFile().exists());
+	}
+}
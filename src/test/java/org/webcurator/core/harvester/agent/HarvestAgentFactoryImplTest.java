@@ -0,0 +1,82 @@
+package org.webcurator.core.harvester.agent;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.net.URI;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.http.HttpMethod;
+import org.webcurator.core.rest.PooledClientHttpRequestFactory;
+import org.webcurator.domain.model.core.harvester.agent.HarvestAgentStatusDTO;
+
+public class HarvestAgentFactoryImplTest {
+
+	private HarvestAgentFactoryImpl testInstance = new HarvestAgentFactoryImpl();
+
+	@After
+	public void tearDown() {
+		testInstance.destroy();
+	}
+
+	private HarvestAgentStatusDTO agent(String host, int port) {
+		HarvestAgentStatusDTO status = new HarvestAgentStatusDTO();
+		status.setScheme("http");
+		status.setHost(host);
+		status.setPort(port);
+		return status;
+	}
+
+	/**
+	 * Send a request to a port that nothing listens on, which fails to connect
+	 * unless the pool has been closed.
+	 */
+	private boolean isClosed(PooledClientHttpRequestFactory requestFactory) {
+		try {
+			requestFactory.createRequest(URI.create("http://127.0.0.1:1/"), HttpMethod.GET).execute().close();
+			return false;
+		} catch (IOException e) {
+			return false;
+		} catch (IllegalStateException e) {
+			return true;
+		}
+	}
+
+	@Test
+	public final void testClientsAreReusedPerEndpoint() {
+		HarvestAgent agent = testInstance.getHarvestAgent(agent("agent1", 8080));
+		assertSame(agent, testInstance.getHarvestAgent(agent("agent1", 8080)));
+		assertNotSame(agent, testInstance.getHarvestAgent(agent("agent1", 8081)));
+		assertNotSame(agent, testInstance.getHarvestAgent(agent("agent2", 8080)));
+		assertSame(testInstance.getLogReader(agent("agent1", 8080)), testInstance.getLogReader(agent("agent1", 8080)));
+
+		PooledClientHttpRequestFactory requestFactory = new PooledClientHttpRequestFactory();
+		try {
+			testInstance.setRequestFactory(requestFactory);
+			assertNotSame(agent, testInstance.getHarvestAgent(agent("agent1", 8080)));
+		} finally {
+			requestFactory.destroy();
+		}
+	}
+
+	@Test
+	public final void testDestroyClosesTheCreatedPool() {
+		PooledClientHttpRequestFactory requestFactory = testInstance.getRequestFactory();
+		assertFalse(isClosed(requestFactory));
+		testInstance.destroy();
+		assertTrue(isClosed(requestFactory));
+	}
+
+	@Test
+	public final void testSetRequestFactoryClosesTheCreatedPool() {
+		PooledClientHttpRequestFactory created = testInstance.getRequestFactory();
+		PooledClientHttpRequestFactory requestFactory = mock(PooledClientHttpRequestFactory.class);
+		testInstance.setRequestFactory(requestFactory);
+		assertTrue(isClosed(created));
+
+		testInstance.destroy();
+		verify(requestFactory, never()).destroy();
+	}
+}
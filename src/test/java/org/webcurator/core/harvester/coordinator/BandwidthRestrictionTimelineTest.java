@@ -0,0 +1,56 @@
+package org.webcurator.core.harvester.coordinator;
+
+import static org.junit.Assert.*;
+
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+import org.webcurator.domain.model.core.BandwidthRestriction;
+
+import com.google.common.collect.Lists;
+
+public class BandwidthRestrictionTimelineTest {
+
+	private BandwidthRestriction restriction(String day, String start, String end, long bandwidth) throws Exception {
+		BandwidthRestriction br = new BandwidthRestriction();
+		br.setDayOfWeek(day);
+		br.setStartTime(BandwidthRestriction.FULLDATE_FORMAT.parse(BandwidthRestriction.DEFAULT_DATE + start));
+		br.setEndTime(BandwidthRestriction.FULLDATE_FORMAT.parse(BandwidthRestriction.DEFAULT_DATE + end));
+		br.setBandwidth(bandwidth);
+		return br;
+	}
+
+	private Calendar time(int dayOfWeek, int hour, int minute, int second) {
+		Calendar cal = Calendar.getInstance();
+		cal.set(Calendar.DAY_OF_WEEK, dayOfWeek);
+		cal.set(Calendar.HOUR_OF_DAY, hour);
+		cal.set(Calendar.MINUTE, minute);
+		cal.set(Calendar.SECOND, second);
+		cal.set(Calendar.MILLISECOND, 500);
+		return cal;
+	}
+
+	@Test
+	public final void testGetRestriction() throws Exception {
+		BandwidthRestriction night = restriction(BandwidthRestriction.DOW_MON, "00:00:00", "08:00:00", 1000L);
+		BandwidthRestriction day = restriction(BandwidthRestriction.DOW_MON, "08:00:00", "18:00:00", 100L);
+		HashMap<String, List<BandwidthRestriction>> restrictions = new HashMap<String, List<BandwidthRestriction>>();
+		restrictions.put(BandwidthRestriction.DOW_MON, Lists.newArrayList(night, day));
+		BandwidthRestrictionTimeline timeline = new BandwidthRestrictionTimeline(restrictions);
+
+		assertSame(night, timeline.getRestriction(time(Calendar.MONDAY, 0, 0, 0)));
+		assertSame(night, timeline.getRestriction(time(Calendar.MONDAY, 7, 59, 59)));
+		assertSame(day, timeline.getRestriction(time(Calendar.MONDAY, 8, 0, 0)));
+		assertSame(day, timeline.getRestriction(time(Calendar.MONDAY, 17, 59, 59)));
+		assertNull(timeline.getRestriction(time(Calendar.MONDAY, 18, 0, 0)));
+		assertNull(timeline.getRestriction(time(Calendar.TUESDAY, 9, 0, 0)));
+	}
+
+	@Test
+	public final void testNoRestrictions() {
+		BandwidthRestrictionTimeline timeline = new BandwidthRestrictionTimeline(null);
+		assertNull(timeline.getRestriction(Calendar.getInstance()));
+	}
+}
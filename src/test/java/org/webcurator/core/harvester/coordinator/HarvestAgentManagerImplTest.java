@@ -1,5 +1,6 @@
 package org.webcurator.core.harvester.coordinator;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
@@ -8,7 +9,12 @@ import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -22,12 +28,14 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Import;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.webcurator.core.common.Environment;
+import org.webcurator.core.common.EnvironmentFactory;
 import org.webcurator.core.harvester.agent.HarvestAgent;
 import org.webcurator.core.harvester.agent.HarvestAgentFactory;
 import org.webcurator.core.scheduler.TargetInstanceManager;
 import org.webcurator.core.util.ApplicationContextFactory;
 import org.webcurator.domain.TargetInstanceDAO;
 import org.webcurator.domain.model.core.HarvestResult;
+import org.webcurator.domain.model.core.HarvesterStatus;
 import org.webcurator.domain.model.core.TargetInstance;
 import org.webcurator.domain.model.core.harvester.agent.HarvestAgentStatusDTO;
 import org.webcurator.domain.model.core.harvester.agent.HarvesterStatusDTO;
@@ -267,7 +275,7 @@ public class HarvestAgentManagerImplTest {
 
 		HarvestAgentStatusDTO agentStatusDTO2 = setupHarvestAgentWithHarvestState(tOid, "Paused", mockTargetInstance);
 		underTest.heartbeat(agentStatusDTO2);
-		verify(mockTargetInstanceDAO).load(tOid);
+		verify(mockTargetInstanceDAO).loadTargetInstances(Collections.singleton(tOid));
 		verify(mockTargetInstanceManager).save(mockTargetInstance);
 		verify(mockTargetInstance).setState(TargetInstance.STATE_PAUSED);
 
@@ -282,7 +290,7 @@ public class HarvestAgentManagerImplTest {
 
 		HarvestAgentStatusDTO agentStatusDTO2 = setupHarvestAgentWithHarvestState(tOid, "Paused", mockTargetInstance);
 		underTest.heartbeat(agentStatusDTO2);
-		verify(mockTargetInstanceDAO).load(tOid);
+		verify(mockTargetInstanceDAO).loadTargetInstances(Collections.singleton(tOid));
 		verify(mockTargetInstanceManager).save(mockTargetInstance);
 		verify(mockTargetInstance, times(0)).setState(TargetInstance.STATE_PAUSED);
 
@@ -297,7 +305,7 @@ public class HarvestAgentManagerImplTest {
 
 		HarvestAgentStatusDTO agentStatusDTO2 = setupHarvestAgentWithHarvestState(tOid, "Running", mockTargetInstance);
 		underTest.heartbeat(agentStatusDTO2);
-		verify(mockTargetInstanceDAO).load(tOid);
+		verify(mockTargetInstanceDAO).loadTargetInstances(Collections.singleton(tOid));
 		verify(mockTargetInstanceManager).save(mockTargetInstance);
 		verify(mockTargetInstance).setState(TargetInstance.STATE_RUNNING);
 
@@ -312,7 +320,7 @@ public class HarvestAgentManagerImplTest {
 
 		HarvestAgentStatusDTO agentStatusDTO2 = setupHarvestAgentWithHarvestState(tOid, "Running", mockTargetInstance);
 		underTest.heartbeat(agentStatusDTO2);
-		verify(mockTargetInstanceDAO).load(tOid);
+		verify(mockTargetInstanceDAO).loadTargetInstances(Collections.singleton(tOid));
 		verify(mockTargetInstanceManager).save(mockTargetInstance);
 		verify(mockTargetInstance).setState(TargetInstance.STATE_RUNNING);
 
@@ -327,7 +335,7 @@ public class HarvestAgentManagerImplTest {
 
 		HarvestAgentStatusDTO agentStatusDTO2 = setupHarvestAgentWithHarvestState(tOid, "Finished", mockTargetInstance);
 		underTest.heartbeat(agentStatusDTO2);
-		verify(mockTargetInstanceDAO).load(tOid);
+		verify(mockTargetInstanceDAO).loadTargetInstances(Collections.singleton(tOid));
 		verify(mockTargetInstanceManager).save(mockTargetInstance);
 		verify(mockTargetInstance).setState(TargetInstance.STATE_STOPPING);
 
@@ -342,7 +350,7 @@ public class HarvestAgentManagerImplTest {
 
 		HarvestAgentStatusDTO agentStatusDTO2 = setupHarvestAgentWithHarvestState(tOid, "Finished", mockTargetInstance);
 		underTest.heartbeat(agentStatusDTO2);
-		verify(mockTargetInstanceDAO).load(tOid);
+		verify(mockTargetInstanceDAO).loadTargetInstances(Collections.singleton(tOid));
 		verify(mockTargetInstanceManager).save(mockTargetInstance);
 		verify(mockTargetInstance, times(0)).setState(TargetInstance.STATE_STOPPING);
 
@@ -353,14 +361,16 @@ public class HarvestAgentManagerImplTest {
 		Long tOid = 123L;
 		TargetInstance mockTargetInstance = mock(TargetInstance.class);
 		String jobName = String.valueOf(tOid);
-		HarvestAgent mockHarvestAgent = setHarvestAgentFactory(jobName);
+		HarvestAgent mockHarvestAgent = mock(HarvestAgent.class);
 
 		// Behaviour is not defined when TI state is not paused/queued..
 		when(mockTargetInstance.getState()).thenReturn(TargetInstance.STATE_RUNNING);
 		HarvestAgentStatusDTO agentStatusDTO2 = setupHarvestAgentWithHarvestState(tOid,
 				"Could not launch job - Fatal InitializationException", mockTargetInstance);
+		// The job is aborted on the agent that reported it
+		when(mockHarvestAgentFactory.getHarvestAgent(agentStatusDTO2)).thenReturn(mockHarvestAgent);
 		underTest.heartbeat(agentStatusDTO2);
-		verify(mockTargetInstanceDAO).load(tOid);
+		verify(mockTargetInstanceDAO).loadTargetInstances(Collections.singleton(tOid));
 		verify(mockTargetInstanceManager).save(mockTargetInstance);
 		verify(mockTargetInstance).setState(TargetInstance.STATE_ABORTED);
 		verify(mockHarvestAgent).abort(jobName);
@@ -376,11 +386,84 @@ public class HarvestAgentManagerImplTest {
 		HarvestAgentStatusDTO agentStatusDTO2 = setupHarvestAgentWithHarvestState(tOid,
 				"Could not launch job - Fatal InitializationException", mockTargetInstance);
 		underTest.heartbeat(agentStatusDTO2);
-		verify(mockTargetInstanceDAO).load(tOid);
+		verify(mockTargetInstanceDAO).loadTargetInstances(Collections.singleton(tOid));
 		verify(mockTargetInstanceManager).save(mockTargetInstance);
 		verify(mockTargetInstance, times(0)).setState(TargetInstance.STATE_ABORTED);
 	}
 
+	@Test
+	public void testHeartbeatSkipsUnchangedStatus() {
+		TargetInstance ti = targetInstanceWithStatus(123L, TargetInstance.STATE_PAUSED, "Paused", 1000L);
+		when(mockTargetInstanceDAO.loadTargetInstances(Collections.singleton(123L))).thenReturn(Collections.singletonList(ti));
+
+		underTest.heartbeat(agentStatusFor(harvesterStatusDto(123L, "Paused", 1000L)));
+		verify(mockTargetInstanceManager, never()).save(any(TargetInstance.class));
+		verify(mockTargetInstanceDAO).updateHarvesterStatuses(Collections.<HarvesterStatus> emptyList());
+		assertTrue(HarvestAgentManagerImpl.targetInstanceLocks.isEmpty());
+	}
+
+	@Test
+	public void testHeartbeatBatchesProgressedStatuses() {
+		TargetInstance ti1 = targetInstanceWithStatus(123L, TargetInstance.STATE_RUNNING, "Running", 1000L);
+		TargetInstance ti2 = targetInstanceWithStatus(124L, TargetInstance.STATE_RUNNING, "Running", 1000L);
+		when(mockTargetInstanceDAO.loadTargetInstances(new HashSet<Long>(Arrays.asList(123L, 124L))))
+				.thenReturn(Arrays.asList(ti1, ti2));
+
+		underTest.heartbeat(agentStatusFor(harvesterStatusDto(123L, "Running", 2000L), harvesterStatusDto(124L, "Running", 3000L)));
+		verify(mockTargetInstanceDAO, times(1)).loadTargetInstances(anyCollection());
+		verify(mockTargetInstanceManager, never()).save(any(TargetInstance.class));
+		verify(mockTargetInstanceDAO).updateHarvesterStatuses(argThat(statuses -> statuses.size() == 2
+				&& statuses.contains(ti1.getStatus()) && statuses.contains(ti2.getStatus())));
+		assertEquals(2000L, ti1.getStatus().getDataDownloaded());
+		assertEquals(3000L, ti2.getStatus().getDataDownloaded());
+	}
+
+	@Test
+	public void testHeartbeatAppliesLatestStatusOnExecutor() {
+		List<Runnable> tasks = new ArrayList<Runnable>();
+		underTest.setHeartbeatExecutor(tasks::add);
+		TargetInstance ti = targetInstanceWithStatus(123L, TargetInstance.STATE_RUNNING, "Running", 1000L);
+		when(mockTargetInstanceDAO.loadTargetInstances(Collections.singleton(123L))).thenReturn(Collections.singletonList(ti));
+
+		underTest.heartbeat(agentStatusFor(harvesterStatusDto(123L, "Running", 2000L)));
+		underTest.heartbeat(agentStatusFor(harvesterStatusDto(123L, "Running", 3000L)));
+		assertTrue(underTest.harvestAgents.containsKey("test"));
+		verifyNoMoreInteractions(mockTargetInstanceDAO);
+		assertEquals(1, tasks.size());
+
+		tasks.get(0).run();
+		verify(mockTargetInstanceDAO, times(1)).loadTargetInstances(Collections.singleton(123L));
+		assertEquals(3000L, ti.getStatus().getDataDownloaded());
+	}
+
+	private TargetInstance targetInstanceWithStatus(Long tOid, String state, String harvestState, long dataDownloaded) {
+		TargetInstance ti = new TargetInstance();
+		ti.setOid(tOid);
+		ti.setState(state);
+		HarvesterStatus status = new HarvesterStatus(harvesterStatusDto(tOid, harvestState, dataDownloaded));
+		status.setOid(tOid);
+		ti.setStatus(status);
+		return ti;
+	}
+
+	private HarvesterStatusDTO harvesterStatusDto(Long tOid, String harvestState, long dataDownloaded) {
+		HarvesterStatusDTO harvesterStatusDTO = new HarvesterStatusDTO();
+		harvesterStatusDTO.setJobName("Target Instance-" + tOid);
+		harvesterStatusDTO.setStatus(harvestState);
+		harvesterStatusDTO.setDataDownloaded(dataDownloaded);
+		harvesterStatusDTO.setApplicationVersion(EnvironmentFactory.getEnv().getApplicationVersion());
+		harvesterStatusDTO.setHeritrixVersion(EnvironmentFactory.getEnv().getHeritrixVersion());
+		return harvesterStatusDTO;
+	}
+
+	private HarvestAgentStatusDTO agentStatusFor(HarvesterStatusDTO... harvesterStatusDTOs) {
+		HarvestAgentStatusDTO agentStatusDTO = createHarvestAgentStatusDto("test");
+		for (HarvesterStatusDTO harvesterStatusDTO : harvesterStatusDTOs) {
+			agentStatusDTO.getHarvesterStatus().put(harvesterStatusDTO.getJobName(), harvesterStatusDTO);
+		}
+		return agentStatusDTO;
+	}
+
 	@Test
 	public void testUpdateProfileOverrides() {
 		Long tOid = 123L;
@@ -645,8 +728,10 @@ public class HarvestAgentManagerImplTest {
 	private HarvestAgentStatusDTO setupHarvestAgentWithHarvestState(Long tOid, String harvestState,
 																	TargetInstance mockTargetInstance) {
 		String tOidString = String.valueOf(tOid);
+		when(mockTargetInstance.getOid()).thenReturn(tOid);
 		when(mockTargetInstance.getJobName()).thenReturn(tOidString);
-		when(mockTargetInstanceDAO.load(tOid)).thenReturn(mockTargetInstance);
+		when(mockTargetInstanceDAO.loadTargetInstances(Collections.singleton(tOid)))
+				.thenReturn(Collections.singletonList(mockTargetInstance));
 		String harvesterName = "test";
 		HarvestAgentStatusDTO agentStatusDTO = createHarvestAgentStatusDto(harvesterName);
 		agentStatusDTO.setAcceptTasks(true);
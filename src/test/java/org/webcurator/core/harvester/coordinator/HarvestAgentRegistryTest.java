@@ -0,0 +1,85 @@
+package org.webcurator.core.harvester.coordinator;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+
+import org.junit.Test;
+import org.webcurator.domain.model.core.harvester.agent.HarvestAgentStatusDTO;
+import org.webcurator.domain.model.core.harvester.agent.HarvesterStatusDTO;
+
+public class HarvestAgentRegistryTest {
+
+	private HarvestAgentRegistry registry = new HarvestAgentRegistry();
+
+	private HarvestAgentStatusDTO agent(String name, Date lastUpdated, String... jobNames) {
+		HarvestAgentStatusDTO agent = new HarvestAgentStatusDTO();
+		agent.setName(name);
+		agent.setLastUpdated(lastUpdated);
+		HashMap<String, HarvesterStatusDTO> statuses = new HashMap<String, HarvesterStatusDTO>();
+		for (String jobName : jobNames) {
+			HarvesterStatusDTO status = new HarvesterStatusDTO();
+			status.setJobName(jobName);
+			statuses.put(jobName, status);
+		}
+		agent.setHarvesterStatus(statuses);
+		return agent;
+	}
+
+	@Test
+	public final void testJobIndexFollowsHeartbeats() {
+		HarvestAgentStatusDTO first = agent("agent1", new Date(), "job1", "job2");
+		registry.put("agent1", first);
+		assertSame(first, registry.getAgentForJob("job1"));
+		assertSame(first, registry.getAgentForJob("job2"));
+
+		HarvestAgentStatusDTO second = agent("agent1", new Date(), "job2");
+		registry.put("agent1", second);
+		assertNull(registry.getAgentForJob("job1"));
+		assertSame(second, registry.getAgentForJob("job2"));
+
+		// A job that moves to another agent is not removed when the first agent goes
+		HarvestAgentStatusDTO other = agent("agent2", new Date(), "job2");
+		registry.put("agent2", other);
+		registry.remove("agent1");
+		assertSame(other, registry.getAgentForJob("job2"));
+		assertNull(registry.getAgentForJob("unknown"));
+	}
+
+	@Test
+	public final void testAgentsByLoad() {
+		HarvestAgentStatusDTO busy = agent("busy", new Date(), "job1", "job2", "job3");
+		HarvestAgentStatusDTO idle = agent("idle", new Date());
+		HarvestAgentStatusDTO some = agent("some", new Date(), "job4");
+		registry.put("busy", busy);
+		registry.put("idle", idle);
+		registry.put("some", some);
+		assertEquals(Arrays.asList(idle, some, busy), registry.getAgentsByLoad(false));
+		assertEquals(Arrays.asList(busy, some, idle), registry.getAgentsByLoad(true));
+
+		HarvestAgentStatusDTO finished = agent("busy", new Date());
+		registry.put("busy", finished);
+		assertEquals(Arrays.asList(finished, idle, some), registry.getAgentsByLoad(false));
+	}
+
+	@Test
+	public final void testExpire() {
+		long now = System.currentTimeMillis();
+		HarvestAgentStatusDTO stale = agent("stale", new Date(now - 60000), "job1");
+		HarvestAgentStatusDTO fresh = agent("fresh", new Date(now));
+		HarvestAgentStatusDTO unknown = agent("unknown", null);
+		registry.put("stale", stale);
+		registry.put("fresh", fresh);
+		registry.put("unknown", unknown);
+
+		assertEquals(Collections.singletonList(stale), registry.expire(new Date(now - 30000)));
+		assertFalse(registry.containsKey("stale"));
+		assertNull(registry.getAgentForJob("job1"));
+		assertTrue(registry.containsKey("fresh"));
+		assertTrue(registry.containsKey("unknown"));
+		assertEquals(2, registry.getAgentsByLoad(false).size());
+	}
+}
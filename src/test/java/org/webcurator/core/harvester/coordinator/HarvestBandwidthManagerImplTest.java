@@ -3,17 +3,24 @@ package org.webcurator.core.harvester.coordinator;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
+import java.util.stream.Collectors;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -49,44 +56,152 @@ public class HarvestBandwidthManagerImplTest {
 //	private BandwidthCalculator mockBandwidthCalculator = mock(BandwidthCalculatorImpl.class);
 	@InjectMocks private HarvestBandwidthManagerImpl underTest;
 
+	/**
+	 * Create restrictions that are in force all day, every day.
+	 */
+	private BandwidthRestriction restrictAllWeek(long bandwidth) throws Exception {
+		HashMap<String, List<BandwidthRestriction>> restrictions = Maps.newHashMap();
+		BandwidthRestriction br = null;
+		for (String day : BandwidthRestriction.DOW) {
+			br = new BandwidthRestriction();
+			br.setDayOfWeek(day);
+			br.setStartTime(BandwidthRestriction.FULLDATE_FORMAT.parse(BandwidthRestriction.DEFAULT_DATE + "00:00:00"));
+			br.setEndTime(BandwidthRestriction.FULLDATE_FORMAT.parse(BandwidthRestriction.DEFAULT_DATE + "23:59:59"));
+			br.setBandwidth(bandwidth);
+			restrictions.put(day, Lists.newArrayList(br));
+		}
+		when(mockHarvestCoordinatorDao.getBandwidthRestrictions()).thenReturn(restrictions);
+		return br;
+	}
+
+	private TargetInstance targetInstance(long oid, Integer bandwidthPercent) {
+		TargetInstance ti = new TargetInstance();
+		ti.setOid(oid);
+		ti.setBandwidthPercent(bandwidthPercent);
+		return ti;
+	}
+
+	private List<TargetInstance> hasOids(Long... oids) {
+		return argThat(tis -> tis.size() == oids.length
+				&& tis.stream().map(TargetInstance::getOid).collect(Collectors.toList()).equals(Arrays.asList(oids)));
+	}
+
 	@Test
 	public void testSendBandWidthRestrictions() throws Exception {
-		BandwidthRestriction mockBandwidthRestriction = mock(BandwidthRestriction.class);
 		long maxBandwidth = 23L;
 		int maxBandwidthPercent = 34;
-		when(mockBandwidthRestriction.getBandwidth()).thenReturn(maxBandwidth);
-		when(mockHarvestCoordinatorDao.getBandwidthRestriction(anyString(), any(Date.class))).thenReturn(mockBandwidthRestriction);
-		TargetInstance mockTargetInstance = mock(TargetInstance.class);
-		ArrayList<TargetInstance> running = Lists.newArrayList(mockTargetInstance);
+		restrictAllWeek(maxBandwidth);
+		ArrayList<TargetInstance> running = Lists.newArrayList(targetInstance(1L, null));
 		when(mockTargetInstanceDao.findTargetInstances(any(TargetInstanceCriteria.class))).thenReturn(running);
 		HashMap<Long, TargetInstance> map = Maps.newHashMap();
-		map.put(1L, mockTargetInstance);
-		when(mockBandwidthCalculator.calculateBandwidthAllocation(running, maxBandwidth, maxBandwidthPercent)).thenReturn(map );
+		TargetInstance allocated = targetInstance(1L, null);
+		allocated.setAllocatedBandwidth(maxBandwidth);
+		map.put(1L, allocated);
+		when(mockBandwidthCalculator.calculateBandwidthAllocation(hasOids(1L), eq(maxBandwidth), eq(maxBandwidthPercent))).thenReturn(map);
+		TargetInstance mockTargetInstance = mock(TargetInstance.class);
+		when(mockTargetInstanceDao.load(1L)).thenReturn(mockTargetInstance);
 		underTest.setMaxBandwidthPercent(maxBandwidthPercent);
 		underTest.sendBandWidthRestrictions();
 		verify(mockTargetInstanceDao).findTargetInstances(any(TargetInstanceCriteria.class));
-		verify(mockBandwidthCalculator).calculateBandwidthAllocation(running, maxBandwidth, maxBandwidthPercent);
+		verify(mockBandwidthCalculator).calculateBandwidthAllocation(hasOids(1L), eq(maxBandwidth), eq(maxBandwidthPercent));
+		verify(mockTargetInstance).setAllocatedBandwidth(maxBandwidth);
+		verify(mockHarvestAgentManager).restrictBandwidthFor(mockTargetInstance);
+
+		// The allocation has not changed, so it is not sent again.
+		underTest.sendBandWidthRestrictions();
+		verify(mockTargetInstanceDao).findTargetInstances(any(TargetInstanceCriteria.class));
 		verify(mockHarvestAgentManager).restrictBandwidthFor(mockTargetInstance);
 	}
 
+	@Test
+	public void testSendBandWidthRestrictionsAfterHarvestStarted() throws Exception {
+		restrictAllWeek(30L);
+		underTest.setBandwidthCalculator(new BandwidthCalculatorImpl());
+		when(mockTargetInstanceDao.findTargetInstances(any(TargetInstanceCriteria.class))).thenReturn(
+				Lists.newArrayList(targetInstance(1L, null)));
+		TargetInstance first = targetInstance(1L, null);
+		TargetInstance second = targetInstance(2L, null);
+		when(mockTargetInstanceDao.load(1L)).thenReturn(first);
+		when(mockTargetInstanceDao.load(2L)).thenReturn(second);
+
+		underTest.sendBandWidthRestrictions();
+		assertEquals(Long.valueOf(30L), first.getAllocatedBandwidth());
+
+		underTest.harvestStarted(targetInstance(2L, null));
+		underTest.sendBandWidthRestrictions();
+		assertEquals(Long.valueOf(15L), first.getAllocatedBandwidth());
+		assertEquals(Long.valueOf(15L), second.getAllocatedBandwidth());
+
+		underTest.harvestEnded(targetInstance(2L, null));
+		underTest.sendBandWidthRestrictions();
+		assertEquals(Long.valueOf(30L), first.getAllocatedBandwidth());
+
+		verify(mockTargetInstanceDao).findTargetInstances(any(TargetInstanceCriteria.class));
+		verify(mockHarvestAgentManager, times(3)).restrictBandwidthFor(first);
+		verify(mockHarvestAgentManager).restrictBandwidthFor(second);
+	}
+
+	@Test
+	public void testSendBandWidthRestrictionsRetriedAfterFailure() throws Exception {
+		restrictAllWeek(30L);
+		underTest.setBandwidthCalculator(new BandwidthCalculatorImpl());
+		when(mockTargetInstanceDao.findTargetInstances(any(TargetInstanceCriteria.class))).thenReturn(
+				Lists.newArrayList(targetInstance(1L, null)));
+		TargetInstance first = targetInstance(1L, null);
+		when(mockTargetInstanceDao.load(1L)).thenReturn(first);
+		doThrow(new WCTRuntimeException("The agent could not be reached")).doNothing()
+				.when(mockHarvestAgentManager).restrictBandwidthFor(first);
+
+		try {
+			underTest.sendBandWidthRestrictions();
+			fail("The failure to send the allocation should be thrown");
+		} catch (WCTRuntimeException e) {
+			assertEquals("The agent could not be reached", e.getMessage());
+		}
+
+		// The allocation was not sent, so it is sent again, and then not after it has been sent.
+		underTest.sendBandWidthRestrictions();
+		underTest.sendBandWidthRestrictions();
+		verify(mockHarvestAgentManager, times(2)).restrictBandwidthFor(first);
+	}
+
+	@Test
+	public void testCheckForBandwidthTransitionReloadsRunning() throws Exception {
+		restrictAllWeek(30L);
+		underTest.setBandwidthCalculator(new BandwidthCalculatorImpl());
+		when(mockTargetInstanceDao.findTargetInstances(any(TargetInstanceCriteria.class))).thenReturn(
+				Lists.newArrayList(targetInstance(1L, null), targetInstance(2L, null)),
+				Lists.newArrayList(targetInstance(1L, null)));
+		TargetInstance first = new TargetInstance();
+		when(mockTargetInstanceDao.load(1L)).thenReturn(first);
+		when(mockTargetInstanceDao.load(2L)).thenReturn(new TargetInstance());
+
+		underTest.sendBandWidthRestrictions();
+		assertEquals(Long.valueOf(15L), first.getAllocatedBandwidth());
+
+		// The second harvest ended without the ledger being told.
+		underTest.checkForBandwidthTransition();
+		assertEquals(Long.valueOf(30L), first.getAllocatedBandwidth());
+		verify(mockTargetInstanceDao, times(2)).findTargetInstances(any(TargetInstanceCriteria.class));
+	}
+
 	@Test
 	public void testCalculateBandwidthAllocationTargetInstance() throws Exception {
-		BandwidthRestriction mockBandwidthRestriction = mock(BandwidthRestriction.class);
 		long maxBandwidth = 23L;
 		int maxBandwidthPercent = 34;
-		when(mockBandwidthRestriction.getBandwidth()).thenReturn(maxBandwidth);
-		when(mockHarvestCoordinatorDao.getBandwidthRestriction(anyString(), any(Date.class))).thenReturn(mockBandwidthRestriction);
-		TargetInstance mockTargetInstance = mock(TargetInstance.class);
-		ArrayList<TargetInstance> running = Lists.newArrayList(mockTargetInstance);
+		restrictAllWeek(maxBandwidth);
+		ArrayList<TargetInstance> running = Lists.newArrayList(targetInstance(2L, null));
 		when(mockTargetInstanceDao.findTargetInstances(any(TargetInstanceCriteria.class))).thenReturn(running);
-		HashMap<Long, TargetInstance> map = Maps.newHashMap();
+		TargetInstance mockTargetInstance = mock(TargetInstance.class);
 		long tiOid = 1L;
+		when(mockTargetInstance.getOid()).thenReturn(tiOid);
+		HashMap<Long, TargetInstance> map = Maps.newHashMap();
 		map.put(tiOid, mockTargetInstance);
-		when(mockBandwidthCalculator.calculateBandwidthAllocation(running, maxBandwidth, maxBandwidthPercent)).thenReturn(map );
+		when(mockBandwidthCalculator.calculateBandwidthAllocation(hasOids(2L, tiOid), eq(maxBandwidth), eq(maxBandwidthPercent))).thenReturn(map);
 		underTest.setMaxBandwidthPercent(maxBandwidthPercent);
 		HashMap<Long, TargetInstance> result = underTest.calculateBandwidthAllocation(mockTargetInstance);
 		verify(mockTargetInstanceDao).findTargetInstances(any(TargetInstanceCriteria.class));
-		verify(mockBandwidthCalculator).calculateBandwidthAllocation(running, maxBandwidth, maxBandwidthPercent);
+		verify(mockBandwidthCalculator).calculateBandwidthAllocation(hasOids(2L, tiOid), eq(maxBandwidth), eq(maxBandwidthPercent));
 		assertEquals(1, result.size());
 		assertTrue(result.containsKey(tiOid));
 		assertEquals(mockTargetInstance, result.get(tiOid));
@@ -94,35 +209,46 @@ public class HarvestBandwidthManagerImplTest {
 
 	@Test
 	public void testCalculateBandwidthAllocation() throws Exception {
-		BandwidthRestriction mockBandwidthRestriction = mock(BandwidthRestriction.class);
 		long maxBandwidth = 23L;
 		int maxBandwidthPercent = 34;
-		when(mockBandwidthRestriction.getBandwidth()).thenReturn(maxBandwidth);
-		when(mockHarvestCoordinatorDao.getBandwidthRestriction(anyString(), any(Date.class))).thenReturn(mockBandwidthRestriction);
-		TargetInstance mockTargetInstance = mock(TargetInstance.class);
-		ArrayList<TargetInstance> running = Lists.newArrayList(mockTargetInstance);
+		restrictAllWeek(maxBandwidth);
+		ArrayList<TargetInstance> running = Lists.newArrayList(targetInstance(1L, null));
 		when(mockTargetInstanceDao.findTargetInstances(any(TargetInstanceCriteria.class))).thenReturn(running);
 		HashMap<Long, TargetInstance> map = Maps.newHashMap();
 		long tiOid = 1L;
+		TargetInstance mockTargetInstance = mock(TargetInstance.class);
 		map.put(tiOid, mockTargetInstance);
-		when(mockBandwidthCalculator.calculateBandwidthAllocation(running, maxBandwidth, maxBandwidthPercent)).thenReturn(map );
+		when(mockBandwidthCalculator.calculateBandwidthAllocation(hasOids(tiOid), eq(maxBandwidth), eq(maxBandwidthPercent))).thenReturn(map);
 		underTest.setMaxBandwidthPercent(maxBandwidthPercent);
 		HashMap<Long, TargetInstance> result = underTest.calculateBandwidthAllocation();
-		verify(mockTargetInstanceDao).findTargetInstances(any(TargetInstanceCriteria.class));
-		verify(mockBandwidthCalculator).calculateBandwidthAllocation(running, maxBandwidth, maxBandwidthPercent);
 		assertEquals(1, result.size());
 		assertTrue(result.containsKey(tiOid));
 		assertEquals(mockTargetInstance, result.get(tiOid));
+
+		// The running target instances are only queried once.
+		underTest.calculateBandwidthAllocation();
+		verify(mockTargetInstanceDao).findTargetInstances(any(TargetInstanceCriteria.class));
+		verify(mockBandwidthCalculator, times(2)).calculateBandwidthAllocation(hasOids(tiOid), eq(maxBandwidth), eq(maxBandwidthPercent));
 	}
 
 	@Test
 	public void testGetCurrentGlobalMaxBandwidth() throws Exception {
-		BandwidthRestriction mockBandwidthRestriction = mock(BandwidthRestriction.class);
 		long maxBandwidth = 23L;
-		when(mockBandwidthRestriction.getBandwidth()).thenReturn(maxBandwidth);
-		when(mockHarvestCoordinatorDao.getBandwidthRestriction(anyString(), any(Date.class))).thenReturn(mockBandwidthRestriction);
-		underTest.getCurrentGlobalMaxBandwidth();
-		verify(mockHarvestCoordinatorDao).getBandwidthRestriction(anyString(), any(Date.class));
+		restrictAllWeek(maxBandwidth);
+		assertEquals(maxBandwidth, underTest.getCurrentGlobalMaxBandwidth());
+		assertEquals(maxBandwidth, underTest.getCurrentGlobalMaxBandwidth());
+		verify(mockHarvestCoordinatorDao).getBandwidthRestrictions();
+	}
+
+	@Test
+	public void testGetCurrentGlobalMaxBandwidthReloadedAfterChange() throws Exception {
+		restrictAllWeek(23L);
+		assertEquals(23L, underTest.getCurrentGlobalMaxBandwidth());
+
+		BandwidthRestriction changed = restrictAllWeek(46L);
+		underTest.saveOrUpdate(changed);
+		assertEquals(46L, underTest.getCurrentGlobalMaxBandwidth());
+		verify(mockHarvestCoordinatorDao, times(2)).getBandwidthRestrictions();
 	}
 
 	@Test
@@ -133,9 +259,6 @@ public class HarvestBandwidthManagerImplTest {
 
 		underTest.setMinimumBandwidth(24);
 		QueuedTargetInstanceDTO mockQueuedTargetInstanceDTO = mock(QueuedTargetInstanceDTO.class);
-		TargetInstance targetInstance =mock(TargetInstance.class);
-		when(mockTargetInstanceDao.load(mockQueuedTargetInstanceDTO.getOid())).thenReturn(targetInstance);
-		when(mockTargetInstanceDao.populate(targetInstance)).thenReturn(targetInstance);
 
 		boolean result = underTest.isMiniumBandwidthAvailable(mockQueuedTargetInstanceDTO);
 		assertTrue(result); //There is no limitation when bandwidth configuration isn't set.
@@ -149,165 +272,113 @@ public class HarvestBandwidthManagerImplTest {
 		underTest.setMinimumBandwidth(24);
 		
 		TargetInstance mockTargetInstance = mock(TargetInstance.class);
-		when(mockTargetInstanceDao.load(mockTargetInstance.getOid())).thenReturn(mockTargetInstance);
-		when(mockTargetInstanceDao.populate(mockTargetInstance)).thenReturn(mockTargetInstance);
 		boolean result = underTest.isMiniumBandwidthAvailable(mockTargetInstance);
 		assertTrue(result); //There is no limitation when bandwidth configuration isn't set.
 	}
 
+	@Test
+	public void testIsMiniumBandwidthAvailableGlobalBandwidthBelowMinimum() throws Exception {
+		restrictAllWeek(23L);
+		underTest.setMinimumBandwidth(24);
+
+		boolean result = underTest.isMiniumBandwidthAvailable(targetInstance(123L, null));
+		assertFalse(result);
+	}
 
 	@Test
 	public void testIsMiniumBandwidthAvailableTargetInstance() throws Exception {
-		BandwidthRestriction mockBandwidthRestriction = mock(BandwidthRestriction.class);
-		long maxBandwidth = 23L;
-		when(mockBandwidthRestriction.getBandwidth()).thenReturn(maxBandwidth);
-		when(mockHarvestCoordinatorDao.getBandwidthRestriction(anyString(), any(Date.class))).thenReturn(mockBandwidthRestriction);
+		restrictAllWeek(23L);
+		underTest.setBandwidthCalculator(new BandwidthCalculatorImpl());
 		underTest.setMinimumBandwidth(1);
 		
 		TargetInstance mockTargetInstance = mock(TargetInstance.class);
-		when(mockTargetInstance.getState()).thenReturn(TargetInstance.STATE_QUEUED);
-		long tiOid = 123L;
-		when(mockTargetInstance.getOid()).thenReturn(tiOid);
-		when(mockTargetInstanceDao.load(tiOid)).thenReturn(mockTargetInstance);
-		when(mockTargetInstanceDao.populate(mockTargetInstance)).thenReturn(mockTargetInstance);
+		when(mockTargetInstance.getOid()).thenReturn(123L);
 		boolean result = underTest.isMiniumBandwidthAvailable(mockTargetInstance);
 		assertTrue(result);
 	}
 
 	@Test
 	public void testIsMiniumBandwidthAvailableTargetInstanceAllocationTooLow() throws Exception {
-		BandwidthRestriction mockBandwidthRestriction = mock(BandwidthRestriction.class);
-		long maxBandwidth = 23L;
-		when(mockBandwidthRestriction.getBandwidth()).thenReturn(maxBandwidth);
-		when(mockHarvestCoordinatorDao.getBandwidthRestriction(anyString(), any(Date.class))).thenReturn(mockBandwidthRestriction);
+		restrictAllWeek(23L);
+		underTest.setBandwidthCalculator(new BandwidthCalculatorImpl());
 		underTest.setMinimumBandwidth(10);
-		
-		TargetInstance mockTargetInstance = mock(TargetInstance.class);
-		when(mockTargetInstance.getAllocatedBandwidth()).thenReturn(9L);
-		when(mockTargetInstance.getBandwidthPercent()).thenReturn(null);
-		when(mockTargetInstance.getState()).thenReturn(TargetInstance.STATE_QUEUED);
-		long tiOid = 123L;
-		when(mockTargetInstance.getOid()).thenReturn(tiOid);
-		when(mockTargetInstanceDao.load(tiOid)).thenReturn(mockTargetInstance);
-		when(mockTargetInstanceDao.populate(mockTargetInstance)).thenReturn(mockTargetInstance);
-		boolean result = underTest.isMiniumBandwidthAvailable(mockTargetInstance);
+
+		// 23KB shared between three harvests is less than the minimum
+		when(mockTargetInstanceDao.findTargetInstances(any(TargetInstanceCriteria.class))).thenReturn(
+				Lists.newArrayList(targetInstance(1L, null), targetInstance(2L, null)));
+		boolean result = underTest.isMiniumBandwidthAvailable(targetInstance(123L, null));
 		assertFalse(result);
 	}
 
 	@Test
 	public void testIsMiniumBandwidthAvailableTargetInstanceAllocationEnough() throws Exception {
-		BandwidthRestriction mockBandwidthRestriction = mock(BandwidthRestriction.class);
-		long maxBandwidth = 23L;
-		when(mockBandwidthRestriction.getBandwidth()).thenReturn(maxBandwidth);
-		when(mockHarvestCoordinatorDao.getBandwidthRestriction(anyString(), any(Date.class))).thenReturn(mockBandwidthRestriction);
+		restrictAllWeek(23L);
+		underTest.setBandwidthCalculator(new BandwidthCalculatorImpl());
 		underTest.setMinimumBandwidth(10);
-		
-		TargetInstance mockTargetInstance = mock(TargetInstance.class);
-		when(mockTargetInstance.getAllocatedBandwidth()).thenReturn(20L);
-		when(mockTargetInstance.getBandwidthPercent()).thenReturn(null);
-		when(mockTargetInstance.getState()).thenReturn(TargetInstance.STATE_QUEUED);
-		long tiOid = 123L;
-		when(mockTargetInstance.getOid()).thenReturn(tiOid);
-		when(mockTargetInstanceDao.load(tiOid)).thenReturn(mockTargetInstance);
-		when(mockTargetInstanceDao.populate(mockTargetInstance)).thenReturn(mockTargetInstance);
-		boolean result = underTest.isMiniumBandwidthAvailable(mockTargetInstance);
+
+		when(mockTargetInstanceDao.findTargetInstances(any(TargetInstanceCriteria.class))).thenReturn(
+				Lists.newArrayList(targetInstance(1L, null)));
+		boolean result = underTest.isMiniumBandwidthAvailable(targetInstance(123L, null));
 		assertTrue(result);
 	}
 
 	@Test
 	public void testIsMiniumBandwidthAvailableQueuedTargetInstanceAllocationEnough() throws Exception {
-		BandwidthRestriction mockBandwidthRestriction = mock(BandwidthRestriction.class);
-		long maxBandwidth = 23L;
-		when(mockBandwidthRestriction.getBandwidth()).thenReturn(maxBandwidth);
-		when(mockHarvestCoordinatorDao.getBandwidthRestriction(anyString(), any(Date.class))).thenReturn(mockBandwidthRestriction);
+		restrictAllWeek(23L);
+		underTest.setBandwidthCalculator(new BandwidthCalculatorImpl());
 		underTest.setMinimumBandwidth(10);
 		
 		QueuedTargetInstanceDTO mockQueuedTargetInstance = mock(QueuedTargetInstanceDTO.class);
 		long tiOid = 123L;
 		when(mockQueuedTargetInstance.getOid()).thenReturn(tiOid);
-		TargetInstance mockTargetInstance = mock(TargetInstance.class);
-		when(mockTargetInstance.getAllocatedBandwidth()).thenReturn(20L);
-		when(mockTargetInstance.getBandwidthPercent()).thenReturn(null);
-		when(mockTargetInstance.getState()).thenReturn(TargetInstance.STATE_QUEUED);
-		when(mockTargetInstance.getOid()).thenReturn(tiOid);
-		when(mockTargetInstanceDao.load(tiOid)).thenReturn(mockTargetInstance);
-		when(mockTargetInstanceDao.populate(mockTargetInstance)).thenReturn(mockTargetInstance);
+		when(mockQueuedTargetInstance.getBandwidthPercent()).thenReturn(null);
 		boolean result = underTest.isMiniumBandwidthAvailable(mockQueuedTargetInstance);
 		assertTrue(result);
 	}
 
 	@Test
 	public void testIsMiniumBandwidthAvailableTargetInstancePercentAllocation() throws Exception {
-		BandwidthRestriction mockBandwidthRestriction = mock(BandwidthRestriction.class);
-		long maxBandwidth = 23L;
-		when(mockBandwidthRestriction.getBandwidth()).thenReturn(maxBandwidth);
-		when(mockHarvestCoordinatorDao.getBandwidthRestriction(anyString(), any(Date.class))).thenReturn(mockBandwidthRestriction);
+		restrictAllWeek(23L);
+		underTest.setBandwidthCalculator(new BandwidthCalculatorImpl());
 		underTest.setMinimumBandwidth(10);
 
-		TargetInstance mockRunningTi = mock(TargetInstance.class);
-		when(mockTargetInstanceDao.findTargetInstances(any(TargetInstanceCriteria.class))).thenReturn(Lists.newArrayList(mockRunningTi));
-		
-		TargetInstance mockTargetInstance = mock(TargetInstance.class);
-		//when(mockTargetInstance.getAllocatedBandwidth()).thenReturn(null); -- never called
-		when(mockTargetInstance.getBandwidthPercent()).thenReturn(10);
-		when(mockTargetInstance.getState()).thenReturn(TargetInstance.STATE_QUEUED);
-		long tiOid = 123L;
-		when(mockTargetInstance.getOid()).thenReturn(tiOid);
-		when(mockTargetInstanceDao.load(tiOid)).thenReturn(mockTargetInstance);
-		when(mockTargetInstanceDao.populate(mockTargetInstance)).thenReturn(mockTargetInstance);
-		boolean result = underTest.isMiniumBandwidthAvailable(mockTargetInstance);
+		when(mockTargetInstanceDao.findTargetInstances(any(TargetInstanceCriteria.class))).thenReturn(
+				Lists.newArrayList(targetInstance(1L, null)));
+		boolean result = underTest.isMiniumBandwidthAvailable(targetInstance(123L, 10));
 		assertTrue(result);
 	}
 
 	@Test
 	public void testIsMiniumBandwidthAvailableTargetInstancePercentAllocationTooLow() throws Exception {
-		BandwidthRestriction mockBandwidthRestriction = mock(BandwidthRestriction.class);
-		long maxBandwidth = 23L;
-		when(mockBandwidthRestriction.getBandwidth()).thenReturn(maxBandwidth);
-		when(mockHarvestCoordinatorDao.getBandwidthRestriction(anyString(), any(Date.class))).thenReturn(mockBandwidthRestriction);
+		restrictAllWeek(23L);
+		underTest.setBandwidthCalculator(new BandwidthCalculatorImpl());
 		underTest.setMinimumBandwidth(10);
-		int maxBandwidthPercent = 20;
-		underTest.setMaxBandwidthPercent(maxBandwidthPercent);
+		underTest.setMaxBandwidthPercent(80);
 
-		TargetInstance mockRunningTi = mock(TargetInstance.class);
-		when(mockRunningTi.getAllocatedBandwidth()).thenReturn(9L);
-		when(mockRunningTi.getBandwidthPercent()).thenReturn(null);
-		ArrayList<TargetInstance> runningList = Lists.newArrayList(mockRunningTi);
-		when(mockTargetInstanceDao.findTargetInstances(any(TargetInstanceCriteria.class))).thenReturn(runningList);
-		
-		HashMap<Long, TargetInstance> runningMap = Maps.newHashMap();
-		runningMap.put(1L, mockRunningTi);
-		when(mockBandwidthCalculator.calculateBandwidthAllocation(runningList, maxBandwidth, maxBandwidthPercent)).thenReturn(runningMap);
-		
-		TargetInstance mockTargetInstance = mock(TargetInstance.class);
-		//when(mockTargetInstance.getAllocatedBandwidth()).thenReturn(null); -- never called
-		when(mockTargetInstance.getBandwidthPercent()).thenReturn(10);
-		when(mockTargetInstance.getState()).thenReturn(TargetInstance.STATE_QUEUED);
-		long tiOid = 123L;
-		when(mockTargetInstance.getOid()).thenReturn(tiOid);
-		when(mockTargetInstanceDao.load(tiOid)).thenReturn(mockTargetInstance);
-		when(mockTargetInstanceDao.populate(mockTargetInstance)).thenReturn(mockTargetInstance);
-		boolean result = underTest.isMiniumBandwidthAvailable(mockTargetInstance);
+		// 60% of 23KB leaves less than the minimum for the running harvest
+		when(mockTargetInstanceDao.findTargetInstances(any(TargetInstanceCriteria.class))).thenReturn(
+				Lists.newArrayList(targetInstance(1L, null)));
+		boolean result = underTest.isMiniumBandwidthAvailable(targetInstance(123L, 60));
 		assertFalse(result);
 	}
 
 	@Test
 	public void testIsHarvestOptimizationAllowedNotFound() throws Exception {
 		boolean result = underTest.isHarvestOptimizationAllowed();
-		verify(mockHarvestCoordinatorDao).getBandwidthRestriction(anyString(), any(Date.class));
+		verify(mockHarvestCoordinatorDao).getBandwidthRestrictions();
 		assertFalse(result);
 	}
 
 	@Test
 	public void testIsHarvestOptimizationAllowed() throws Exception {
-		BandwidthRestriction mockBandwidthRestriction = mock(BandwidthRestriction.class);
-		when(mockBandwidthRestriction.isAllowOptimize()).thenReturn(true);
-		when(mockHarvestCoordinatorDao.getBandwidthRestriction(anyString(), any(Date.class))).thenReturn(mockBandwidthRestriction);
+		BandwidthRestriction restriction = restrictAllWeek(23L);
+		restriction.setAllowOptimize(true);
 		boolean result = underTest.isHarvestOptimizationAllowed();
-		verify(mockHarvestCoordinatorDao).getBandwidthRestriction(anyString(), any(Date.class));
+		verify(mockHarvestCoordinatorDao).getBandwidthRestrictions();
 		assertTrue(result);
 
-		when(mockBandwidthRestriction.isAllowOptimize()).thenReturn(false);
+		restriction.setAllowOptimize(false);
+		underTest.saveOrUpdate(restriction);
 		result = underTest.isHarvestOptimizationAllowed();
 		assertFalse(result);
 
@@ -573,6 +573,12 @@ public class HarvestCoordinatorImplTest extends BaseWCTTest<HarvestCoordinatorIm
         TargetManager mockTargetManager = mock(TargetManager.class);
         when(mockTargetManager.load(abstractTargetOid)).thenReturn(mockTarget);
 
+        HarvestAgentStatusDTO aStatus = new HarvestAgentStatusDTO();
+        aStatus.setName("Test Agent");
+        aStatus.setHarvesterStatus(new HashMap<String, HarvesterStatusDTO>());
+        aStatus.setMaxHarvests(2);
+        testInstance.heartbeat(aStatus);
+
         testInstance.setHarvestOptimizationEnabled(true);
         testInstance.setTargetInstanceDao(mockTiDao);
         testInstance.setTargetManager(mockTargetManager);
@@ -585,6 +591,48 @@ public class HarvestCoordinatorImplTest extends BaseWCTTest<HarvestCoordinatorIm
 
     }
 
+    @Test
+    public void testQueueOptimizableInstancesNoHarvesters() {
+        TargetInstanceDAO mockTiDao = mock(TargetInstanceDAO.class);
+        harvestAgentManager.setTargetInstanceDao(mockTiDao);
+        HarvestBandwidthManager mockBandwidthManager = mock(HarvestBandwidthManager.class);
+        when(mockBandwidthManager.isHarvestOptimizationAllowed()).thenReturn(true);
+
+        ArrayList<QueuedTargetInstanceDTO> queuedTiList = Lists.newArrayList();
+        queuedTiList.add(new QueuedTargetInstanceDTO(1234L, new Date(), 1, TargetInstance.STATE_SCHEDULED, null, "Agency"));
+        when(mockTiDao.getUpcomingJobs(anyLong())).thenReturn(queuedTiList);
+
+        testInstance.setHarvestOptimizationEnabled(true);
+        testInstance.setTargetInstanceDao(mockTiDao);
+        testInstance.setHarvestBandwidthManager(mockBandwidthManager);
+        testInstance.queueOptimisableInstances();
+        verify(mockTiDao).getUpcomingJobs(anyLong());
+        verifyNoMoreInteractions(mockTiDao);
+    }
+
+    @Test
+    public void testProcessScheduleQueuedWithoutHarvester() {
+        TargetInstanceDAO mockTiDao = mock(TargetInstanceDAO.class);
+        harvestAgentManager.setTargetInstanceDao(mockTiDao);
+
+        List<QueuedTargetInstanceDTO> queue = new ArrayList<QueuedTargetInstanceDTO>();
+        queue.add(new QueuedTargetInstanceDTO(1234L, new Date(), 1, TargetInstance.STATE_QUEUED, null, "Agency",
+                HarvesterType.HERITRIX3.name()));
+        queue.add(new QueuedTargetInstanceDTO(1235L, new Date(), 1, TargetInstance.STATE_QUEUED, 20, "Agency",
+                HarvesterType.HERITRIX3.name()));
+        when(mockTiDao.getQueue()).thenReturn(queue);
+        when(mockHarvestBandwidthManager.planQueue(queue)).thenReturn(new HarvestQueuePlan(queue,
+                new ArrayList<TargetInstance>(), 100L, 1L, 80, new BandwidthCalculatorImpl()));
+
+        testInstance.setHarvestOptimizationEnabled(false);
+        testInstance.setTargetInstanceDao(mockTiDao);
+        testInstance.processSchedule();
+
+        // Entries that are already queued are not loaded when there is no harvester for them.
+        verify(mockTiDao).getQueue();
+        verifyNoMoreInteractions(mockTiDao);
+    }
+
     @Test
     public void testCheckBandwidthTransition() {
         testInstance.checkForBandwidthTransition();
@@ -0,0 +1,96 @@
+package org.webcurator.core.harvester.coordinator;
+
+import static org.junit.Assert.*;
+
+import java.util.Date;
+import java.util.HashMap;
+
+import org.junit.Test;
+import org.webcurator.domain.model.core.harvester.agent.HarvestAgentStatusDTO;
+import org.webcurator.domain.model.core.harvester.agent.HarvesterStatusDTO;
+
+public class HarvestMetricsTest {
+
+	private static final long START = 1000000000000L;
+
+	private HarvestMetrics metrics = new HarvestMetrics();
+
+	private HarvestAgentStatusDTO heartbeat(long time, String jobName, long urlsDownloaded, double currentKBs) {
+		HarvestAgentStatusDTO agent = new HarvestAgentStatusDTO();
+		agent.setName("agent");
+		agent.setLastUpdated(new Date(time));
+		agent.setHarvesterStatus(new HashMap<String, HarvesterStatusDTO>());
+		if (jobName != null) {
+			HarvesterStatusDTO job = new HarvesterStatusDTO();
+			job.setJobName(jobName);
+			job.setUrlsDownloaded(urlsDownloaded);
+			job.setDataDownloaded(urlsDownloaded * 1000);
+			job.setCurrentKBs(currentKBs);
+			agent.getHarvesterStatus().put(jobName, job);
+		}
+		return agent;
+	}
+
+	@Test
+	public final void testRateAndPercentile() {
+		HarvestAgentStatusDTO previous = null;
+		for (int i = 0; i <= 30; i++) {
+			HarvestAgentStatusDTO current = heartbeat(START + i * 10000L, "job", i * 50, i % 10);
+			metrics.record(current, previous);
+			previous = current;
+		}
+
+		// 50 URLs every 10 seconds
+		assertEquals(5.0, metrics.getJobRate("job", HarvestMetric.URLS_DOWNLOADED, 60000), 0.0001);
+		assertEquals(5000.0, metrics.getJobRate("job", HarvestMetric.DATA_DOWNLOADED, 60000), 0.0001);
+		assertEquals(9.0, metrics.getJobPercentile("job", HarvestMetric.CURRENT_KBS, 100, 100000), 0.0001);
+		assertEquals(4.0, metrics.getJobPercentile("job", HarvestMetric.CURRENT_KBS, 50, 100000), 0.0001);
+		assertFalse(metrics.isJobStalled("job", 60000));
+		assertTrue(Double.isNaN(metrics.getJobRate("unknown", HarvestMetric.URLS_DOWNLOADED, 60000)));
+	}
+
+	@Test
+	public final void testStalledJob() {
+		HarvestAgentStatusDTO previous = null;
+		for (int i = 0; i <= 12; i++) {
+			HarvestAgentStatusDTO current = heartbeat(START + i * 10000L, "job", Math.min(i, 5) * 50, 0);
+			metrics.record(current, previous);
+			previous = current;
+		}
+		assertTrue(metrics.isJobStalled("job", 60000));
+		assertFalse(metrics.isJobStalled("job", 90000));
+		// Not tracked for long enough
+		assertFalse(metrics.isJobStalled("job", 600000));
+	}
+
+	@Test
+	public final void testRollupsCoverLongerWindows() {
+		metrics.setRawCapacity(40);
+		HarvestAgentStatusDTO previous = null;
+		// Two hours of heartbeats, far more than the raw samples hold
+		for (int i = 0; i <= 720; i++) {
+			HarvestAgentStatusDTO current = heartbeat(START + i * 10000L, "job", i * 50, 0);
+			metrics.record(current, previous);
+			previous = current;
+		}
+		assertEquals(5.0, metrics.getJobRate("job", HarvestMetric.URLS_DOWNLOADED, 3600000), 0.1);
+		assertEquals(0.0, metrics.getAgentRate("agent", HarvestMetric.URLS_DOWNLOADED, 3600000), 0.0001);
+	}
+
+	@Test
+	public final void testSeriesAreBounded() {
+		metrics.setMaxSeries(2);
+		metrics.record(heartbeat(START, "job1", 0, 0), null);
+		metrics.record(heartbeat(START, "job2", 0, 0), null);
+		metrics.record(heartbeat(START + 10000, "job2", 10, 0), null);
+		metrics.record(heartbeat(START, "job3", 0, 0), null);
+		assertTrue(Double.isNaN(metrics.getJobPercentile("job1", HarvestMetric.URLS_DOWNLOADED, 50, 10000)));
+		assertEquals(1.0, metrics.getJobRate("job2", HarvestMetric.URLS_DOWNLOADED, 10000), 0.0001);
+
+		// A job is dropped once its agent stops reporting it
+		HarvestAgentStatusDTO running = heartbeat(START + 20000, "job2", 20, 0);
+		metrics.record(running, null);
+		metrics.record(heartbeat(START + 30000, null, 0, 0), running);
+		assertTrue(Double.isNaN(metrics.getJobRate("job2", HarvestMetric.URLS_DOWNLOADED, 60000)));
+	}
+}
@@ -0,0 +1,63 @@
+package org.webcurator.core.harvester.coordinator;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+import org.webcurator.domain.model.core.TargetInstance;
+import org.webcurator.domain.model.dto.QueuedTargetInstanceDTO;
+
+public class HarvestQueuePlanTest {
+
+	private TargetInstance running(long oid, Integer bandwidthPercent) {
+		TargetInstance ti = new TargetInstance();
+		ti.setOid(oid);
+		ti.setBandwidthPercent(bandwidthPercent);
+		return ti;
+	}
+
+	private QueuedTargetInstanceDTO queued(long oid, Integer bandwidthPercent) {
+		return new QueuedTargetInstanceDTO(oid, new Date(), 1, TargetInstance.STATE_QUEUED, bandwidthPercent, "Agency");
+	}
+
+	private HarvestQueuePlan plan(long maxBandwidth, List<TargetInstance> running) {
+		return new HarvestQueuePlan(new ArrayList<QueuedTargetInstanceDTO>(), running, maxBandwidth, 10L, 80,
+				new BandwidthCalculatorImpl());
+	}
+
+	@Test
+	public final void testNoBandwidth() {
+		HarvestQueuePlan plan = plan(5L, new ArrayList<TargetInstance>());
+		assertFalse(plan.isMinimumBandwidthAvailable(queued(1L, null)));
+	}
+
+	@Test
+	public final void testAllocatedHarvestsShareBandwidth() {
+		List<TargetInstance> running = new ArrayList<TargetInstance>();
+		running.add(running(1L, null));
+		HarvestQueuePlan plan = plan(30L, running);
+
+		assertTrue(plan.isMinimumBandwidthAvailable(queued(2L, null)));
+		plan.allocated(queued(2L, null));
+		assertTrue(plan.isMinimumBandwidthAvailable(queued(3L, null)));
+		plan.allocated(queued(3L, null));
+		assertEquals(3, plan.getRunningCount());
+
+		// a fourth harvest would leave each with less than the minimum
+		assertFalse(plan.isMinimumBandwidthAvailable(queued(4L, null)));
+		assertEquals(3, plan.getRunningCount());
+	}
+
+	@Test
+	public final void testPercentageHarvestLeavesMinimumForOthers() {
+		List<TargetInstance> running = new ArrayList<TargetInstance>();
+		running.add(running(1L, null));
+		HarvestQueuePlan plan = plan(100L, running);
+
+		assertTrue(plan.isMinimumBandwidthAvailable(queued(2L, 50)));
+		assertFalse(plan.isMinimumBandwidthAvailable(queued(3L, 95)));
+	}
+}
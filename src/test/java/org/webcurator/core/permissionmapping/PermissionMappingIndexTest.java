@@ -0,0 +1,81 @@
+package org.webcurator.core.permissionmapping;
+
+import static org.junit.Assert.*;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.webcurator.core.permissionmapping.PermissionMappingIndex.IndexedMapping;
+
+public class PermissionMappingIndexTest {
+
+	private void add(PermissionMappingIndex index, String pattern, long permissionOid) {
+		index.add(HierarchicalPermissionMappingStrategy.calculateDomain(pattern),
+				new IndexedMapping(pattern, permissionOid, 1L, null, true));
+	}
+
+	private Set<Long> find(PermissionMappingIndex index, String url) {
+		Set<Long> oids = new HashSet<Long>();
+		for (IndexedMapping m : index.find(url)) {
+			oids.add(m.getPermissionOid());
+		}
+		return oids;
+	}
+
+	private Set<Long> oids(Long... oids) {
+		Set<Long> set = new HashSet<Long>();
+		for (Long oid : oids) {
+			set.add(oid);
+		}
+		return set;
+	}
+
+	@Test
+	public final void testFind() {
+		PermissionMappingIndex index = new PermissionMappingIndex();
+		add(index, "http://*.govt.nz/*", 1L);
+		add(index, "http://www.corrections.govt.nz/*", 2L);
+		add(index, "http://www.corrections.govt.nz/prisons/*", 3L);
+		add(index, "https://*.nz/*", 4L);
+		add(index, "http://*/*", 5L);
+		add(index, "http://www.example.com/*", 6L);
+
+		assertEquals(oids(1L, 2L, 5L), find(index, "http://www.corrections.govt.nz/"));
+		assertEquals(oids(1L, 2L, 3L, 5L), find(index, "http://www.corrections.govt.nz/prisons/index.html"));
+		assertEquals(oids(4L), find(index, "https://www.dia.govt.nz/"));
+		assertEquals(oids(5L), find(index, "http://www.example.org/"));
+		assertEquals(6, index.size());
+	}
+
+	@Test
+	public final void testRemove() {
+		PermissionMappingIndex index = new PermissionMappingIndex();
+		add(index, "http://*.govt.nz/*", 1L);
+		add(index, "http://www.corrections.govt.nz/*", 1L);
+		add(index, "http://www.corrections.govt.nz/*", 2L);
+
+		index.remove(1L, "http://www.corrections.govt.nz/*");
+		assertEquals(oids(1L, 2L), find(index, "http://www.corrections.govt.nz/"));
+		assertEquals(2, index.size());
+
+		index.removePermission(1L);
+		assertEquals(oids(2L), find(index, "http://www.corrections.govt.nz/"));
+		assertEquals(1, index.size());
+	}
+
+	@Test
+	public final void testPermissionData() {
+		PermissionMappingIndex index = new PermissionMappingIndex();
+		Date ended = new Date(System.currentTimeMillis() - 60000L);
+		index.add("example.com", new IndexedMapping("http://www.example.com/*", 1L, 7L, ended, false));
+
+		List<IndexedMapping> found = index.find("http://www.example.com/a.html");
+		assertEquals(1, found.size());
+		assertEquals(Long.valueOf(7L), found.get(0).getOwningAgencyOid());
+		assertFalse(found.get(0).isSiteActive());
+		assertFalse(found.get(0).isActiveNowOrInFuture(new Date()));
+	}
+}
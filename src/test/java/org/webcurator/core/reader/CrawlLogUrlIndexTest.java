@@ -0,0 +1,161 @@
+package org.webcurator.core.reader;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CrawlLogUrlIndexTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static final String[] SORTED_LOG = {
+		"2010-06-22T13:02:27.460Z 1 66 dns:www.example.com P http://www.example.com/ text/dns #004 - - -",
+		"2010-06-22T13:02:26.001Z 200 1024 http://www.example.com/ - - text/html #001 - - -",
+		"2010-06-22T13:02:29.001Z 200 2048 http://www.example.com/a.html L http://www.example.com/ text/html #002 - - -",
+		"2010-06-22T13:02:30.001Z 200 2048 http://www.example.com/a.html L http://www.example.com/ text/html #002 - - -",
+		"2010-06-22T13:02:31.001Z 200 512 http://www.example.com/img/b.jpg LE http://www.example.com/a.html image/jpeg #003 - - -"
+	};
+
+	private File indexDirectory() {
+		return new File(folder.getRoot(), "indexes");
+	}
+
+	private File writeLog(String... lines) throws IOException {
+		return writeLog(false, lines);
+	}
+
+	private File writeLog(boolean append, String... lines) throws IOException {
+		File logFile = new File(folder.getRoot(), "logs/sortedcrawl.log");
+		logFile.getParentFile().mkdirs();
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(logFile, append), StandardCharsets.UTF_8)) {
+			for(String line: lines) {
+				writer.write(line);
+				writer.write('\n');
+			}
+		}
+		return logFile;
+	}
+
+	@Test
+	public final void testFindLine() throws IOException {
+		File logFile = writeLog(SORTED_LOG);
+		try (CrawlLogUrlIndex index = CrawlLogUrlIndex.open(logFile, indexDirectory())) {
+			assertTrue(CrawlLogUrlIndex.getIndexFile(logFile, indexDirectory()).exists());
+			// Only the log is in the log directory
+			assertEquals(1, logFile.getParentFile().list().length);
+			assertEquals(SORTED_LOG[2], index.findLine("http://www.example.com/a.html"));
+			assertEquals(SORTED_LOG[4], index.findLine("HTTP://WWW.EXAMPLE.COM/img/b.jpg"));
+			assertEquals(SORTED_LOG[0], index.findLine("dns:www.example.com"));
+			assertNull(index.findLine("http://www.example.com/missing.html"));
+		}
+	}
+
+	@Test
+	public final void testRebuildWhenLogChanges() throws IOException {
+		File logFile = writeLog(SORTED_LOG[1]);
+		try (CrawlLogUrlIndex index = CrawlLogUrlIndex.open(logFile, indexDirectory())) {
+			assertNull(index.findLine("http://www.example.com/a.html"));
+		}
+
+		logFile = writeLog(SORTED_LOG);
+		assertTrue(logFile.setLastModified(logFile.lastModified() + 2000L));
+		try (CrawlLogUrlIndex index = CrawlLogUrlIndex.open(logFile, indexDirectory())) {
+			assertEquals(SORTED_LOG[2], index.findLine("http://www.example.com/a.html"));
+		}
+	}
+
+	@Test
+	public final void testExtendWhenLogGrows() throws IOException {
+		File logFile = writeLog(SORTED_LOG[0], SORTED_LOG[1], SORTED_LOG[2]);
+		File indexFile = CrawlLogUrlIndex.getIndexFile(logFile, indexDirectory());
+		try (CrawlLogUrlIndex index = CrawlLogUrlIndex.open(logFile, indexDirectory())) {
+			assertNull(index.findLine("http://www.example.com/img/b.jpg"));
+		}
+		Object fileKey = Files.readAttributes(indexFile.toPath(), BasicFileAttributes.class).fileKey();
+
+		writeLog(true, SORTED_LOG[3], SORTED_LOG[4]);
+		assertTrue(logFile.setLastModified(logFile.lastModified() + 2000L));
+		try (CrawlLogUrlIndex index = CrawlLogUrlIndex.open(logFile, indexDirectory())) {
+			assertEquals(SORTED_LOG[4], index.findLine("http://www.example.com/img/b.jpg"));
+			assertEquals(SORTED_LOG[2], index.findLine("http://www.example.com/a.html"));
+			assertEquals(SORTED_LOG[1], index.findLine("http://www.example.com/"));
+		}
+		// The index was extended in place rather than replaced
+		assertEquals(fileKey, Files.readAttributes(indexFile.toPath(), BasicFileAttributes.class).fileKey());
+	}
+
+	@Test
+	public final void testRebuildWhenGrownLogFillsIndex() throws IOException {
+		String[] lines = new String[300];
+		for(int i = 0; i < lines.length; i++) {
+			lines[i] = "2010-06-22T13:02:26.001Z 200 1024 http://www.example.com/" + i + ".html - - text/html #001 - - -";
+		}
+		File logFile = writeLog(lines);
+		File indexFile = CrawlLogUrlIndex.getIndexFile(logFile, indexDirectory());
+		CrawlLogUrlIndex.open(logFile, indexDirectory()).close();
+		long length = indexFile.length();
+
+		for(int i = 0; i < lines.length; i++) {
+			lines[i] = lines[i].replace(".html", ".jpg");
+		}
+		writeLog(true, lines);
+		assertTrue(logFile.setLastModified(logFile.lastModified() + 2000L));
+		try (CrawlLogUrlIndex index = CrawlLogUrlIndex.open(logFile, indexDirectory())) {
+			assertEquals(lines[299], index.findLine("http://www.example.com/299.jpg"));
+		}
+		assertEquals(length * 2 - 48, indexFile.length());
+	}
+
+	@Test
+	public final void testFindLineAfterClose() throws IOException {
+		File logFile = writeLog(SORTED_LOG);
+		CrawlLogUrlIndex index = CrawlLogUrlIndex.open(logFile, indexDirectory());
+		index.close();
+		try {
+			index.findLine("http://www.example.com/a.html");
+			fail("The closed index should not be read");
+		} catch (IOException e) {
+			assertEquals("The URL index is closed", e.getMessage());
+		}
+	}
+
+	@Test
+	public final void testGetHopPath() throws IOException {
+		File logFile = writeLog(SORTED_LOG);
+		LogProvider logProvider = mock(LogProvider.class);
+		when(logProvider.getLogFile("Dummy", "sortedcrawl.log")).thenReturn(logFile);
+		LogReaderImpl logReader = new LogReaderImpl();
+		logReader.setLogProvider(logProvider);
+		logReader.setIndexDirectory(indexDirectory().getAbsolutePath());
+
+		List<String> hops = logReader.getHopPath("Dummy", "1", "sortedcrawl.log", "http://www.example.com/img/b.jpg");
+		assertEquals(3, hops.size());
+		assertTrue(hops.get(0).endsWith(" - http://www.example.com/\r"));
+		assertTrue(hops.get(1).endsWith(" L http://www.example.com/a.html\r"));
+		assertTrue(hops.get(2).endsWith(" E http://www.example.com/img/b.jpg\r"));
+	}
+
+	@Test
+	public final void testIndexFilesOfLogsWithTheSameName() throws IOException {
+		File indexDirectory = indexDirectory();
+		File first = CrawlLogUrlIndex.getIndexFile(new File("/harvests/1/logs/sortedcrawl.log"), indexDirectory);
+		File second = CrawlLogUrlIndex.getIndexFile(new File("/harvests/2/logs/sortedcrawl.log"), indexDirectory);
+		assertFalse(first.equals(second));
+		assertTrue(first.getPath().startsWith(indexDirectory.getPath()));
+		assertEquals("sortedcrawl.log" + CrawlLogUrlIndex.INDEX_SUFFIX, first.getName());
+	}
+}
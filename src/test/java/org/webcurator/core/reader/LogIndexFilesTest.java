@@ -0,0 +1,89 @@
+package org.webcurator.core.reader;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LogIndexFilesTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File indexDirectory() {
+		return new File(folder.getRoot(), "indexes");
+	}
+
+	private File writeLog(String job) throws IOException {
+		File logFile = new File(folder.getRoot(), job + "/logs/crawl.log");
+		logFile.getParentFile().mkdirs();
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(logFile), StandardCharsets.UTF_8)) {
+			for(int i = 0; i < 100; i++) {
+				writer.write("2010-06-22T13:02:26.001Z 200 1024 http://www.example.com/" + i + ".html - - text/html #001 - - -\n");
+			}
+		}
+		return logFile;
+	}
+
+	/**
+	 * Index a log and make the index look as if it was last used a while ago.
+	 */
+	private File index(File logFile, long age) throws IOException {
+		CrawlLogUrlIndex.open(logFile, indexDirectory()).close();
+		File indexFile = CrawlLogUrlIndex.getIndexFile(logFile, indexDirectory());
+		assertTrue(indexFile.setLastModified(System.currentTimeMillis() - age));
+		return indexFile;
+	}
+
+	@Test
+	public final void testGetLogFile() {
+		File logFile = new File(folder.getRoot(), "1/logs/crawl.log");
+		assertEquals(logFile.getAbsoluteFile(), LogIndexFiles.getLogFile(indexDirectory(), CrawlLogUrlIndex.getIndexFile(logFile, indexDirectory())));
+		assertEquals(logFile.getAbsoluteFile(), LogIndexFiles.getLogFile(indexDirectory(), LogLineIndex.getIndexFile(logFile, indexDirectory())));
+		assertNull(LogIndexFiles.getLogFile(indexDirectory(), new File(indexDirectory(), "crawl.log.tmp")));
+	}
+
+	@Test
+	public final void testSweepDeletesIndexesOfMissingLogs() throws IOException {
+		File purgedLog = writeLog("1");
+		File keptLog = writeLog("2");
+		File purgedIndex = index(purgedLog, 120000L);
+		File keptIndex = index(keptLog, 120000L);
+		assertTrue(purgedLog.delete());
+
+		LogIndexFiles.sweep(indexDirectory(), LogIndexFiles.DEFAULT_MAX_INDEX_SIZE);
+		assertFalse(purgedIndex.exists());
+		assertTrue(keptIndex.exists());
+	}
+
+	@Test
+	public final void testSweepDeletesLeastRecentlyUsedIndexes() throws IOException {
+		File oldest = index(writeLog("1"), 300000L);
+		File older = index(writeLog("2"), 200000L);
+		File old = index(writeLog("3"), 100000L);
+		File recent = index(writeLog("4"), 0L);
+
+		// Room for two indexes: the recently used index is always kept
+		LogIndexFiles.sweep(indexDirectory(), oldest.length() * 2);
+		assertFalse(oldest.exists());
+		assertFalse(older.exists());
+		assertTrue(old.exists());
+		assertTrue(recent.exists());
+	}
+
+	@Test
+	public final void testIndexIsMarkedUsedWhenOpened() throws IOException {
+		File logFile = writeLog("1");
+		File indexFile = index(logFile, 300000L);
+		CrawlLogUrlIndex.open(logFile, indexDirectory()).close();
+		assertTrue(indexFile.lastModified() > System.currentTimeMillis() - 60000L);
+	}
+}
@@ -0,0 +1,92 @@
+package org.webcurator.core.reader;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LogLineIndexTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File indexDirectory() {
+		return new File(folder.getRoot(), "indexes");
+	}
+
+	private File newLog() throws IOException {
+		File logFile = new File(folder.newFolder("logs"), "crawl.log");
+		assertTrue(logFile.createNewFile());
+		return logFile;
+	}
+
+	private void appendLines(File logFile, String leading, int from, int to, String trailing) throws IOException {
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(logFile, true), StandardCharsets.UTF_8)) {
+			writer.write(leading);
+			for(int i = from; i <= to; i++) {
+				writer.write(String.format("2008-06-18T06:%02d:%02d.000Z 200 100 http://www.example.com/%d.html\n", i / 60, i % 60, i));
+			}
+			writer.write(trailing);
+		}
+	}
+
+	@Test
+	public final void testCheckpoints() throws IOException {
+		File logFile = newLog();
+		appendLines(logFile, "", 1, 25, "");
+
+		LogLineIndex index = LogLineIndex.open(logFile, indexDirectory(), 10);
+		assertEquals(25L, index.countLines());
+		assertEquals(3, index.getBlockCount());
+		assertEquals(2, index.getBlock(21));
+		assertEquals(21L, index.getBlockFirstLine(2));
+		assertEquals(20080618060001L, index.getMinTimestamp(0));
+		assertEquals(20080618060010L, index.getMaxTimestamp(0));
+		assertEquals(1, index.findBlockAfterTimeStamp(20080618060015L));
+		assertEquals(-1, index.findBlockAfterTimeStamp(20080618070000L));
+		assertTrue(LogLineIndex.getIndexFile(logFile, indexDirectory()).exists());
+		// Only the log is in the log directory
+		assertEquals(1, logFile.getParentFile().list().length);
+	}
+
+	@Test
+	public final void testExtendAsLogGrows() throws IOException {
+		File logFile = newLog();
+		appendLines(logFile, "", 1, 15, "2008-06-18T06:00:16.000Z 200 100 http://www.exa");
+
+		LogLineIndex index = LogLineIndex.open(logFile, indexDirectory(), 10);
+		assertEquals(16L, index.countLines());
+		assertEquals(15L, index.getIndexedLines());
+
+		// Complete the partial line and add some more.
+		appendLines(logFile, "mple.com/16.html\n", 17, 30, "");
+		index = LogLineIndex.open(logFile, indexDirectory(), 10);
+		assertEquals(30L, index.countLines());
+		assertEquals(3, index.getBlockCount());
+		assertEquals(logFile.length(), index.getIndexedLength());
+	}
+
+	@Test
+	public final void testGetFromCheckpoint() throws IOException {
+		File logFile = newLog();
+		appendLines(logFile, "", 1, 2500, "");
+
+		List<String> results = Utils.get(logFile.getAbsolutePath(), 2001, 3, indexDirectory());
+		assertEquals(2, results.size());
+		String[] lines = results.get(0).split("\n");
+		assertEquals(3, lines.length);
+		assertTrue(lines[0].endsWith("/2001.html"));
+		assertTrue(lines[2].endsWith("/2003.html"));
+		assertTrue(LogLineIndex.getIndexFile(logFile, indexDirectory()).exists());
+		assertEquals(1, logFile.getParentFile().list().length);
+	}
+}
@@ -0,0 +1,118 @@
+package org.webcurator.core.reader;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.webcurator.test.WCTTestUtils;
+
+public class LogSearcherTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private String baseDir = "/org/webcurator/core/reader/logs";
+
+	/**
+	 * Search with small segments on several threads and check the result is
+	 * the same as a single pass over a reader.
+	 */
+	private void assertSameAsReader(String filename, String regex, String addLines, int skip, int number) throws IOException {
+		File logFile = WCTTestUtils.getResourceAsFile(baseDir + "/" + filename);
+		List<String> expected = Utils.getByRegularExpression(new InputStreamReader(new FileInputStream(logFile), StandardCharsets.UTF_8),
+				regex, addLines, true, skip, number, logFile.length());
+
+		StringBuilder actual = new StringBuilder();
+		new LogSearcher(4096, 4, StandardCharsets.UTF_8).search(logFile, regex, addLines, true, skip, number,
+				line -> actual.append(line).append('\n'));
+		assertEquals(expected.get(0), actual.toString());
+	}
+
+	@Test
+	public final void testSearchMatchesReader() throws IOException {
+		assertSameAsReader("crawl.log", ".*.http://us.geocities.com/quasi_chick/meon.jpg.*", "zzzzzzzzz", 0, 50);
+		assertSameAsReader("crawl.log", ".* 404 .*", "zzzzzzzzz", 0, 0);
+		assertSameAsReader("crawl.log", ".*text/html.*", "zzzzzzzzz", 100, 250);
+		assertSameAsReader("crawl.log", "2008-06-18T06:2.*(jpg|gif).*", "zzzzzzzzz", 3, 10);
+	}
+
+	@Test
+	public final void testSearchAddsFollowingLines() throws IOException {
+		assertSameAsReader("local-errors.log", ".*IOException@.*", "\t", 0, 0);
+		assertSameAsReader("local-errors.log", ".*IOException@.*", " ", 1, 2);
+	}
+
+	@Test
+	public final void testRequiredLiteral() {
+		assertEquals("com/quasi_chick/meon", LogSearcher.requiredLiteral(".*.http://us.geocities.com/quasi_chick/meon.jpg.*"));
+		assertEquals(" 404 ", LogSearcher.requiredLiteral(".* 404 .*"));
+		assertEquals("example.com", LogSearcher.requiredLiteral(".*example\\.com.*"));
+		assertEquals("abc", LogSearcher.requiredLiteral("abcd?[xyz]+"));
+		assertNull(LogSearcher.requiredLiteral(".*(jpg|gif)"));
+		assertNull(LogSearcher.requiredLiteral("(?i).*error.*"));
+		assertNull(LogSearcher.requiredLiteral("\\d+"));
+	}
+
+	@Test
+	public final void testRequiredLiteralSkipsQuantifierBounds() {
+		assertNull(LogSearcher.requiredLiteral(".*\\s\\d{3}\\s.*"));
+		assertEquals("yz", LogSearcher.requiredLiteral("x{1,3}yz"));
+		assertEquals(" http://", LogSearcher.requiredLiteral("\\d{4}-\\d{2}-\\d{2} [0-9]{3,} http://.*"));
+		assertEquals("ab", LogSearcher.requiredLiteral("ab[c]{2}d{0,}"));
+		assertNull(LogSearcher.requiredLiteral("\\d{3}"));
+	}
+
+	@Test
+	public final void testRequiredLiteralStopsAtEscapesWithPayloads() {
+		assertNull(LogSearcher.requiredLiteral(".*\\x41BC.*"));
+		assertNull(LogSearcher.requiredLiteral("\\u0041BC"));
+		assertNull(LogSearcher.requiredLiteral("\\0101BC"));
+		assertNull(LogSearcher.requiredLiteral("abc\\cJ"));
+		assertNull(LogSearcher.requiredLiteral("\\p{Lu}abc"));
+		assertNull(LogSearcher.requiredLiteral("\\P{Lu}abc"));
+		assertNull(LogSearcher.requiredLiteral("(a)\\k<n>bc"));
+		assertNull(LogSearcher.requiredLiteral("\\N{LATIN CAPITAL LETTER A}bc"));
+		assertNull(LogSearcher.requiredLiteral("(a)\\1bc"));
+		assertEquals("a.b", LogSearcher.requiredLiteral("\\sa\\.b\\d"));
+	}
+
+	@Test
+	public final void testSearchWithEscapes() throws IOException {
+		File logFile = folder.newFile("escapes.log");
+		Files.write(logFile.toPath(), Arrays.asList("xx ABC yy", "xx 41BC yy", "http://a/"), StandardCharsets.UTF_8);
+
+		assertEquals(Arrays.asList("xx ABC yy"), search(logFile, ".*\\x41BC.*"));
+		assertEquals(Arrays.asList("xx ABC yy"), search(logFile, ".*\\u0041BC.*"));
+		assertEquals(Arrays.asList("xx ABC yy"), search(logFile, ".*\\p{Lu}BC.*"));
+		assertEquals(Arrays.asList("http://a/"), search(logFile, "http:\\/\\/.*"));
+	}
+
+	@Test
+	public final void testSearchWithQuantifiers() throws IOException {
+		File logFile = folder.newFile("quantifiers.log");
+		Files.write(logFile.toPath(), Arrays.asList("2020-01-01 404 http://a/", "2020-01-01 200 http://b/", "xxyz", "xxxxyz", "yz"),
+				StandardCharsets.UTF_8);
+
+		assertEquals(Arrays.asList("2020-01-01 404 http://a/", "2020-01-01 200 http://b/"), search(logFile, ".*\\s\\d{3}\\s.*"));
+		assertEquals(Arrays.asList("2020-01-01 404 http://a/"), search(logFile, "\\d{4}-\\d{2}-\\d{2} 4\\d{2} .*"));
+		assertEquals(Arrays.asList("xxyz"), search(logFile, "x{1,3}yz"));
+		assertEquals(Arrays.asList("xxyz", "xxxxyz"), search(logFile, "x{2,}yz"));
+	}
+
+	private List<String> search(File logFile, String regex) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		new LogSearcher(4096, 4, StandardCharsets.UTF_8).search(logFile, regex, "zzzzzzzzz", false, 0, 0, lines::add);
+		return lines;
+	}
+}
@@ -0,0 +1,109 @@
+package org.webcurator.core.rest;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+import org.webcurator.domain.model.core.ArcHarvestResourceDTO;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+
+public class JsonMapperRegistryTest {
+
+	private HttpServer server;
+	private String lastTransferEncoding;
+	private String lastContentType;
+
+	@Before
+	public void setUp() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/echo", exchange -> {
+			lastTransferEncoding = exchange.getRequestHeaders().getFirst("Transfer-Encoding");
+			lastContentType = exchange.getRequestHeaders().getFirst("Content-Type");
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			try (InputStream in = exchange.getRequestBody()) {
+				byte[] buffer = new byte[1024];
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					body.write(buffer, 0, read);
+				}
+			}
+			byte[] response = body.toByteArray();
+			exchange.getResponseHeaders().add("Content-Type", "text/plain");
+			exchange.sendResponseHeaders(200, response.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(response);
+			}
+		});
+		server.start();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+	}
+
+	private URI uri() {
+		return URI.create("http://localhost:" + server.getAddress().getPort() + "/echo");
+	}
+
+	private List<ArcHarvestResourceDTO> resources() {
+		ArcHarvestResourceDTO resource = new ArcHarvestResourceDTO();
+		resource.setName("http://www.example.com/");
+		resource.setLength(1234);
+		resource.setStatusCode(200);
+		return Arrays.asList(resource, new ArcHarvestResourceDTO());
+	}
+
+	@Test
+	public final void testWritersAreCached() throws Exception {
+		assertSame(JsonMapperRegistry.getWriter(ArcHarvestResourceDTO.class), JsonMapperRegistry.getWriter(ArcHarvestResourceDTO.class));
+		// The JSON is the same as that of a new ObjectMapper
+		assertEquals(new ObjectMapper().writeValueAsString(resources()), JsonMapperRegistry.toJson(resources()));
+	}
+
+	@Test
+	public final void testPostJsonStreamsWithPooledConnections() throws Exception {
+		PooledClientHttpRequestFactory requestFactory = new PooledClientHttpRequestFactory();
+		try {
+			String json = JsonMapperRegistry.postJson(new RestTemplate(requestFactory), uri(), resources(), String.class);
+			assertEquals(JsonMapperRegistry.toJson(resources()), json);
+			assertEquals("chunked", lastTransferEncoding);
+			assertEquals("application/json", lastContentType);
+		} finally {
+			requestFactory.destroy();
+		}
+	}
+
+	@Test
+	public final void testPostJsonWithBufferedRequests() throws Exception {
+		String json = JsonMapperRegistry.postJson(new RestTemplate(new SimpleClientHttpRequestFactory()), uri(), resources(), String.class);
+		assertEquals(JsonMapperRegistry.toJson(resources()), json);
+		assertNull(lastTransferEncoding);
+	}
+
+	@Test(expected = JsonProcessingException.class)
+	public final void testPostJsonEncodeFailure() throws Exception {
+		PooledClientHttpRequestFactory requestFactory = new PooledClientHttpRequestFactory();
+		try {
+			// An object without properties can't be encoded
+			JsonMapperRegistry.postJson(new RestTemplate(requestFactory), uri(), new Object(), Void.class);
+		} finally {
+			requestFactory.destroy();
+		}
+	}
+}
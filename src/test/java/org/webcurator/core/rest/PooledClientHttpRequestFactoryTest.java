@@ -0,0 +1,82 @@
+package org.webcurator.core.rest;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.RestTemplate;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class PooledClientHttpRequestFactoryTest {
+
+	private HttpServer server;
+	private PooledClientHttpRequestFactory requestFactory;
+	private RestTemplate restTemplate;
+
+	@Before
+	public void setUp() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/echo", exchange -> {
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			try (InputStream in = exchange.getRequestBody()) {
+				byte[] buffer = new byte[1024];
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					body.write(buffer, 0, read);
+				}
+			}
+			byte[] response = (exchange.getRequestMethod() + ":" + body.toString("UTF-8")).getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("Content-Type", "text/plain");
+			exchange.sendResponseHeaders(200, response.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(response);
+			}
+		});
+		server.start();
+
+		requestFactory = new PooledClientHttpRequestFactory();
+		restTemplate = new RestTemplate(requestFactory);
+	}
+
+	@After
+	public void tearDown() {
+		requestFactory.destroy();
+		server.stop(0);
+	}
+
+	private String url() {
+		return "http://localhost:" + server.getAddress().getPort() + "/echo";
+	}
+
+	@Test
+	public final void testRequests() {
+		assertEquals("GET:", restTemplate.getForObject(url(), String.class));
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		assertEquals("POST:{\"a\":1}", restTemplate.postForObject(url(), new HttpEntity<String>("{\"a\":1}", headers), String.class));
+	}
+
+	@Test
+	public final void testConnectionsAreReused() {
+		for (int i = 0; i < 5; i++) {
+			assertEquals("POST:" + i, restTemplate.postForObject(url(), Integer.toString(i), String.class));
+		}
+		assertEquals(1, requestFactory.getConnectionsInPool("http", "localhost", server.getAddress().getPort()));
+		assertEquals(1, requestFactory.getConnectionsInPool());
+
+		requestFactory.closeIdleConnections(0);
+		assertEquals("GET:", restTemplate.getForObject(url(), String.class));
+	}
+}
@@ -0,0 +1,44 @@
+package org.webcurator.core.rules;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Map;
+
+import org.junit.Test;
+import org.webcurator.core.store.tools.QualityReviewFacade;
+import org.webcurator.domain.model.dto.HarvestResourceSnapshot;
+
+public class HarvestResourceSnapshotsTest {
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public final void testLoadsEachHarvestResultOnce() {
+		QualityReviewFacade qrf = mock(QualityReviewFacade.class);
+		when(qrf.getHarvestResourceSnapshot(eq(1L), any(Map.class))).thenAnswer(invocation ->
+				new HarvestResourceSnapshot.Builder(1L, invocation.getArgument(1))
+						.add(10L, new String("http://www.example.com/"), 100L, 200)
+						.add(10L, "http://www.example.com/a.html", 50L, 404)
+						.build());
+		when(qrf.getHarvestResourceSnapshot(eq(2L), any(Map.class))).thenAnswer(invocation ->
+				new HarvestResourceSnapshot.Builder(2L, invocation.getArgument(1))
+						.add(11L, new String("http://www.example.com/"), 120L, 200)
+						.build());
+
+		HarvestResourceSnapshots snapshots = new HarvestResourceSnapshots(qrf, new UrlDiffService());
+		HarvestResourceSnapshot first = snapshots.get(1L);
+		assertSame(first, snapshots.get(1L));
+		verify(qrf, times(1)).getHarvestResourceSnapshot(eq(1L), any(Map.class));
+
+		assertEquals(2, first.size());
+		assertEquals(Long.valueOf(10L), first.getTargetInstanceOid());
+		assertEquals("http://www.example.com/a.html", first.getName(1));
+		assertEquals(50L, first.getLength(1));
+		assertEquals(404, first.getStatusCode(1));
+		assertTrue(first.getNameSet().contains("http://www.example.com/"));
+
+		// equal names in the two harvest results are held once
+		HarvestResourceSnapshot second = snapshots.get(2L);
+		assertSame(first.getName(0), second.getName(0));
+	}
+}
@@ -0,0 +1,102 @@
+package org.webcurator.core.rules;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.Test;
+import org.webcurator.domain.model.dto.HarvestResourceSnapshot;
+
+public class UrlDiffServiceTest {
+
+	private HarvestResourceSnapshot snapshot(long oid, String... names) {
+		HarvestResourceSnapshot.Builder builder = new HarvestResourceSnapshot.Builder(oid, null);
+		for (String name : names) {
+			builder.add(10L, name, 100L, 200);
+		}
+		return builder.build();
+	}
+
+	@Test
+	public final void testDiff() {
+		HarvestResourceSnapshot current = snapshot(1L, "http://www.example.com/", "http://www.example.com/b.html",
+				"http://www.example.com/new.html", "http://www.example.com/b.html");
+		HarvestResourceSnapshot reference = snapshot(2L, "http://www.example.com/b.html", "http://www.example.com/",
+				"http://www.example.com/gone.html", "http://www.example.com/a.html");
+
+		UrlDiff diff = new UrlDiffService().diff(current, 2L, oid -> reference);
+		// duplicates in the harvest result are counted each time they were downloaded
+		assertEquals(3, diff.getMatchingCount());
+		assertEquals(Arrays.asList("http://www.example.com/", "http://www.example.com/b.html", "http://www.example.com/b.html"),
+				diff.getMatchingUris());
+		assertEquals(Arrays.asList("http://www.example.com/new.html"), diff.getNewUris());
+		assertEquals(Arrays.asList("http://www.example.com/a.html", "http://www.example.com/gone.html"), diff.getMissingUris());
+	}
+
+	@Test
+	public final void testDiffEmpty() {
+		UrlDiff diff = new UrlDiffService().diff(snapshot(1L), 2L, oid -> snapshot(2L, "http://www.example.com/"));
+		assertEquals(0, diff.getMatchingCount());
+		assertTrue(diff.getNewUris().isEmpty());
+		assertEquals(Arrays.asList("http://www.example.com/"), diff.getMissingUris());
+	}
+
+	@Test
+	public final void testReferenceCrawlCached() {
+		AtomicInteger loads = new AtomicInteger();
+		Function<Long, HarvestResourceSnapshot> loader = oid -> {
+			loads.incrementAndGet();
+			return snapshot(oid, "http://www.example.com/");
+		};
+		UrlDiffService service = new UrlDiffService();
+		service.setMaxCachedReferenceCrawls(1);
+
+		HarvestResourceSnapshot current = snapshot(1L, "http://www.example.com/");
+		service.diff(current, 2L, loader);
+		service.diff(current, 2L, loader);
+		assertEquals(1, loads.get());
+
+		// loading another reference crawl evicts the first
+		service.diff(current, 3L, loader);
+		service.diff(current, 2L, loader);
+		assertEquals(3, loads.get());
+	}
+
+	@Test
+	public final void testMatchingUrisInCrawlOrder() {
+		HarvestResourceSnapshot current = snapshot(1L, "http://www.example.com/z.html", "http://www.example.com/new.html",
+				"http://www.example.com/a.html", "http://www.example.com/z.html");
+		HarvestResourceSnapshot reference = snapshot(2L, "http://www.example.com/a.html", "http://www.example.com/z.html");
+
+		UrlDiff diff = new UrlDiffService().diff(current, 2L, oid -> reference);
+		assertEquals(Arrays.asList("http://www.example.com/z.html", "http://www.example.com/a.html", "http://www.example.com/z.html"),
+				diff.getMatchingUris());
+		assertEquals(Arrays.asList("http://www.example.com/new.html"), diff.getNewUris());
+		assertTrue(diff.getMissingUris().isEmpty());
+	}
+
+	@Test
+	public final void testMissingUrisNamedFromReferenceCrawl() {
+		AtomicInteger loads = new AtomicInteger();
+		Function<Long, HarvestResourceSnapshot> loader = oid -> {
+			loads.incrementAndGet();
+			return snapshot(oid, "http://www.example.com/", "http://www.example.com/gone.html", "http://www.example.com/gone.html");
+		};
+		UrlDiffService service = new UrlDiffService();
+
+		UrlDiff diff = service.diff(snapshot(1L, "http://www.example.com/"), 2L, loader);
+		assertEquals(Arrays.asList("http://www.example.com/gone.html"), diff.getMissingUris());
+		assertEquals(2, loads.get());
+
+		// the cached fingerprints are used, but the missing url is named from the reference crawl
+		diff = service.diff(snapshot(3L, "http://www.example.com/"), 2L, loader);
+		assertEquals(Arrays.asList("http://www.example.com/gone.html"), diff.getMissingUris());
+		assertEquals(3, loads.get());
+
+		// nothing is missing, so the reference crawl is not loaded
+		service.diff(snapshot(4L, "http://www.example.com/", "http://www.example.com/gone.html"), 2L, loader);
+		assertEquals(3, loads.get());
+	}
+}
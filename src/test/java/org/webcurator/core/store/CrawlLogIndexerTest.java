@@ -15,6 +15,7 @@ import java.util.Date;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.webcurator.core.reader.CrawlLogUrlIndex;
 import org.webcurator.domain.model.core.HarvestResultDTO;
 import org.webcurator.test.BaseWCTTest;
 import org.webcurator.test.WCTTestUtils;
@@ -32,6 +33,7 @@ public class CrawlLogIndexerTest extends BaseWCTTest<CrawlLogIndexer>{
 	private final File baseFolder = new File(tmpDir + "/CrawlLogIndexerTest");
 	private final File archiveFolder = new File(tmpDir + "/CrawlLogIndexerTest/1");
 	private final File logsFolder = new File(tmpDir + "/CrawlLogIndexerTest/logs");
+	private final File indexFolder = new File(tmpDir + "/CrawlLogIndexerTest/indexes");
 	
 	@SuppressWarnings("unused")
 	private class CrawlLogRunner implements Runnable
@@ -108,6 +110,7 @@ public class CrawlLogIndexerTest extends BaseWCTTest<CrawlLogIndexer>{
 		testInstance.setCrawlLogFileName("crawl.log");
 		testInstance.setSortedLogFileName("sortedcrawl.log");
 		testInstance.setStrippedLogFileName("strippedcrawl.log");
+		testInstance.setLogIndexDirectory(indexFolder.getAbsolutePath());
 		HarvestResultDTO result = new HarvestResultDTO(hrOid, tiOid, new Date(), harvestNumber, "");
 		testInstance.initialise(result, archiveFolder);
 	}
@@ -143,7 +146,10 @@ public class CrawlLogIndexerTest extends BaseWCTTest<CrawlLogIndexer>{
 			Long hrOid = testInstance.begin();
 			testInstance.indexFiles(hrOid);
 			File[] files = logsFolder.listFiles();
-			assertEquals(3, files.length);
+			assertEquals(2, files.length);
+			assertTrue(new File(logsFolder, "sortedcrawl.log").exists());
+			// The URL index is kept out of the logs folder
+			assertTrue(CrawlLogUrlIndex.getIndexFile(new File(logsFolder, "sortedcrawl.log"), indexFolder).exists());
 		}
 		catch(Exception e)
 		{
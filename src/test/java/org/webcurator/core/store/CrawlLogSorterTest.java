@@ -0,0 +1,95 @@
+package org.webcurator.core.store;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CrawlLogSorterTest {
+
+	private final File baseFolder = new File(System.getProperty("java.io.tmpdir") + "/CrawlLogSorterTest");
+	private final File crawlLog = new File(baseFolder, "crawl.log");
+	private final File sortedLog = new File(baseFolder, "sortedcrawl.log");
+
+	@Before
+	public void setUp() throws IOException {
+		baseFolder.mkdirs();
+		List<String> lines = new ArrayList<String>();
+		for(int i = 0; i < 500; i++) {
+			// timestamps descend so that each url's lines need re-ordering
+			lines.add(String.format("2010-06-22T13:%02d:27.460Z   200        %d http://www.example.com/page%d.html L http://www.example.com/ text/html #004 - - -",
+					59 - (i % 60), i, i % 37));
+		}
+		Files.write(crawlLog.toPath(), lines, StandardCharsets.UTF_8);
+	}
+
+	@After
+	public void tearDown() {
+		for(File f: baseFolder.listFiles()) {
+			f.delete();
+		}
+		baseFolder.delete();
+	}
+
+	@Test
+	public final void testCollapseSpaces() {
+		assertEquals("a b c", CrawlLogSorter.collapseSpaces("a b c"));
+		assertEquals("a b c ", CrawlLogSorter.collapseSpaces("a   b  c  "));
+	}
+
+	@Test
+	public final void testSortInMemory() throws IOException {
+		CrawlLogSorter sorter = new CrawlLogSorter();
+		sorter.sort(crawlLog, sortedLog);
+		assertSorted();
+		assertEquals(2, baseFolder.listFiles().length);
+	}
+
+	@Test
+	public final void testSortWithMergedRuns() throws IOException {
+		CrawlLogSorter sorter = new CrawlLogSorter();
+		sorter.setMemoryBudget(8 * 1024);
+		sorter.setThreads(3);
+		sorter.sort(crawlLog, sortedLog);
+		assertSorted();
+		// the sorted runs have been removed
+		assertEquals(2, baseFolder.listFiles().length);
+	}
+
+	@Test
+	public final void testSortWithSeveralMergePasses() throws IOException {
+		CrawlLogSorter sorter = new CrawlLogSorter();
+		sorter.setMemoryBudget(8 * 1024);
+		sorter.setThreads(3);
+		sorter.setMergeFanIn(3);
+		sorter.sort(crawlLog, sortedLog);
+		assertSorted();
+		// the sorted and intermediate runs have been removed
+		assertEquals(2, baseFolder.listFiles().length);
+	}
+
+	private void assertSorted() throws IOException {
+		List<String> sorted = Files.readAllLines(sortedLog.toPath(), StandardCharsets.UTF_8);
+		assertEquals(500, sorted.size());
+		String previous = null;
+		for(String line: sorted) {
+			assertFalse(line.contains("  "));
+			String[] columns = line.split(" ");
+			String key = columns[3] + " " + columns[0];
+			if(previous != null) {
+				assertTrue(previous + " > " + key, previous.compareTo(key) <= 0);
+			}
+			previous = key;
+		}
+		assertTrue(Arrays.asList(sorted.get(0).split(" ")).contains("http://www.example.com/page0.html"));
+	}
+}
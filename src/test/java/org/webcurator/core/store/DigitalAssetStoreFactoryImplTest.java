@@ -0,0 +1,49 @@
+package org.webcurator.core.store;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Test;
+import org.webcurator.core.rest.PooledClientHttpRequestFactory;
+
+public class DigitalAssetStoreFactoryImplTest {
+
+	private DigitalAssetStoreFactoryImpl testInstance = new DigitalAssetStoreFactoryImpl();
+	private PooledClientHttpRequestFactory requestFactory = new PooledClientHttpRequestFactory();
+
+	@After
+	public void tearDown() {
+		requestFactory.destroy();
+	}
+
+	@Test
+	public final void testClientsAreReusedPerEndpoint() {
+		testInstance.setRequestFactory(requestFactory);
+		DigitalAssetStore store = testInstance.getDAS("http", "store1", 8080);
+		assertTrue(store instanceof DigitalAssetStoreClient);
+		assertSame(store, testInstance.getDAS("http", "store1", 8080));
+		assertNotSame(store, testInstance.getDAS("http", "store1", 8081));
+		assertNotSame(store, testInstance.getDAS("https", "store1", 8080));
+
+		testInstance.setRequestFactory(new PooledClientHttpRequestFactory());
+		try {
+			assertNotSame(store, testInstance.getDAS("http", "store1", 8080));
+		} finally {
+			testInstance.getRequestFactory().destroy();
+		}
+	}
+
+	@Test
+	public final void testGetDASUsesTheConfiguredEndpoint() {
+		assertNull(testInstance.getDAS());
+
+		testInstance.setRequestFactory(requestFactory);
+		testInstance.setHost("store1");
+		testInstance.setPort(8082);
+		assertSame(testInstance.getDAS("http", "store1", 8082), testInstance.getDAS());
+
+		DigitalAssetStore store = new MockDigitalAssetStore();
+		testInstance.setDAS(store);
+		assertSame(store, testInstance.getDAS());
+	}
+}
@@ -0,0 +1,68 @@
+package org.webcurator.core.store;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class IndexerTest {
+
+	private static final Long HR_OID = 98765L;
+
+	private RunnableIndex mockIndexer(String name) {
+		RunnableIndex indexer = mock(RunnableIndex.class);
+		when(indexer.getName()).thenReturn(name);
+		return indexer;
+	}
+
+	@After
+	public void tearDown() {
+		Indexer.removeRunningIndex("first", HR_OID);
+		Indexer.removeRunningIndex("second", HR_OID);
+	}
+
+	@Test
+	public final void testStartRunningIndexOnlyOnce() {
+		RunnableIndex first = mockIndexer("first");
+
+		assertFalse(Indexer.containsRunningIndex(HR_OID));
+		assertTrue(Indexer.startRunningIndex(first, HR_OID));
+		assertFalse(Indexer.startRunningIndex(first, HR_OID));
+		assertTrue(Indexer.containsRunningIndex(HR_OID));
+
+		Indexer.removeRunningIndex("first", HR_OID);
+		assertFalse(Indexer.containsRunningIndex(HR_OID));
+	}
+
+	@Test
+	public final void testOnlyLastIndexerToCompleteFinalises() {
+		assertTrue(Indexer.startRunningIndex(mockIndexer("first"), HR_OID));
+		assertTrue(Indexer.startRunningIndex(mockIndexer("second"), HR_OID));
+
+		assertFalse(Indexer.lastRunningIndex("first", HR_OID));
+		assertFalse(Indexer.completeRunningIndex("first", HR_OID));
+		assertTrue(Indexer.lastRunningIndex("second", HR_OID));
+		assertTrue(Indexer.completeRunningIndex("second", HR_OID));
+
+		// The harvest result is still indexing until the indexers are removed
+		assertTrue(Indexer.containsRunningIndex(HR_OID));
+	}
+
+	@Test
+	public final void testRecordProgress() {
+		assertTrue(Indexer.startRunningIndex(mockIndexer("first"), HR_OID));
+		Indexer.recordProgress("first", HR_OID, 10L, 0L);
+		Indexer.recordProgress("first", HR_OID, 5L, 2048L);
+
+		Map<String, IndexProgress> progress = Indexer.getRunningIndexProgress(HR_OID);
+		assertEquals(1, progress.size());
+		assertEquals(15L, progress.get("first").getRecordsProcessed());
+		assertEquals(2048L, progress.get("first").getBytesRead());
+
+		Indexer.removeRunningIndex("first", HR_OID);
+		assertTrue(Indexer.getRunningIndexProgress(HR_OID).isEmpty());
+	}
+}
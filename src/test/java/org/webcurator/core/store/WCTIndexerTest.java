@@ -0,0 +1,183 @@
+package org.webcurator.core.store;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.webcurator.domain.model.core.HarvestResultDTO;
+
+public class WCTIndexerTest {
+
+	private static final Long HR_OID = 45678L;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private HarvestResultDTO result = new HarvestResultDTO();
+	private TestIndexer prototype = new TestIndexer();
+
+	/**
+	 * An indexer that records the files indexed rather than reading them.
+	 */
+	private static class TestIndexer extends WCTIndexer {
+		final Set<String> indexed = Collections.synchronizedSet(new HashSet<String>());
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		volatile String failOn;
+		volatile CountDownLatch block;
+		volatile boolean finalised;
+
+		TestIndexer() {
+		}
+
+		TestIndexer(TestIndexer original) {
+			super(original);
+			failOn = original.failOn;
+			block = original.block;
+		}
+
+		@Override
+		protected void indexFile(Long harvestResultOid, File f) {
+			maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+			try {
+				if (block != null) {
+					block.await();
+				}
+				if (f.getName().equals(failOn)) {
+					throw new IllegalStateException("Failed to index " + f.getName());
+				}
+				indexed.add(f.getName());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				running.decrementAndGet();
+			}
+		}
+
+		@Override
+		protected void finaliseIndex(Long harvestResultOid) {
+			finalised = true;
+		}
+
+		@Override
+		public RunnableIndex getCopy() {
+			return new TestIndexer(this);
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		result.setOid(HR_OID);
+		result.setTargetInstanceOid(1L);
+		for (int i = 0; i < 6; i++) {
+			folder.newFile("file" + i + ".warc.gz");
+		}
+		folder.newFile("crawl.log");
+	}
+
+	@After
+	public void tearDown() {
+		prototype.destroy();
+		Indexer.removeRunningIndex(prototype.getName(), HR_OID);
+	}
+
+	private TestIndexer copy() {
+		TestIndexer copy = (TestIndexer) prototype.getCopy();
+		copy.initialise(result, folder.getRoot());
+		copy.setMode(RunnableIndex.Mode.INDEX);
+		return copy;
+	}
+
+	@Test
+	public final void testFilesIndexedOnSharedBoundedExecutor() throws Exception {
+		prototype.setFileIndexingThreads(2);
+		TestIndexer first = copy();
+		TestIndexer second = copy();
+		assertNotNull(prototype.getFileExecutor());
+		assertSame(prototype.getFileExecutor(), first.getFileExecutor());
+		assertSame(prototype.getFileExecutor(), second.getFileExecutor());
+		assertEquals(2, prototype.getFileExecutor().getMaximumPoolSize());
+
+		first.run();
+		assertEquals(6, first.indexed.size());
+		assertTrue(first.maxRunning.get() <= 2);
+		assertTrue(first.finalised);
+	}
+
+	@Test
+	public final void testSequentialByDefault() {
+		assertNull(prototype.getFileExecutor());
+		TestIndexer indexer = copy();
+		indexer.run();
+		assertEquals(6, indexer.indexed.size());
+		assertEquals(1, indexer.maxRunning.get());
+		assertTrue(indexer.finalised);
+	}
+
+	@Test
+	public final void testFailedFileIsThrownAndNotFinalised() {
+		prototype.setFileIndexingThreads(3);
+		prototype.failOn = "file2.warc.gz";
+		TestIndexer indexer = copy();
+		try {
+			indexer.run();
+			fail("The failure should be thrown");
+		} catch (IllegalStateException e) {
+			assertEquals("Failed to index file2.warc.gz", e.getMessage());
+		}
+		assertFalse(indexer.finalised);
+		assertFalse(Indexer.containsRunningIndex(HR_OID));
+	}
+
+	@Test
+	public final void testInterruptedIndexIsNotFinalised() throws Exception {
+		prototype.setFileIndexingThreads(2);
+		prototype.block = new CountDownLatch(1);
+		TestIndexer indexer = copy();
+
+		AtomicReference<Throwable> thrown = new AtomicReference<Throwable>();
+		Thread thread = new Thread(() -> {
+			try {
+				indexer.run();
+			} catch (Throwable t) {
+				thrown.set(t);
+			}
+		});
+		thread.start();
+		while (indexer.running.get() < 2) {
+			Thread.sleep(10);
+		}
+		thread.interrupt();
+		thread.join(10000);
+
+		assertFalse(thread.isAlive());
+		assertTrue(thrown.get() instanceof CancellationException);
+		assertFalse(indexer.finalised);
+		// The files still running are cancelled and the queued files are not indexed
+		prototype.getFileExecutor().shutdown();
+		assertTrue(prototype.getFileExecutor().awaitTermination(10, TimeUnit.SECONDS));
+		assertTrue(indexer.indexed.isEmpty());
+	}
+
+	@Test
+	public final void testIndexerShutdownOnDestroy() {
+		Indexer indexer = new Indexer();
+		indexer.setIndexers(Collections.<RunnableIndex>singletonList(prototype));
+		indexer.runIndex(result, folder.getRoot());
+		indexer.destroy();
+		assertEquals(1L, indexer.getCompletedJobCount());
+	}
+}
@@ -11,6 +11,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
 import org.junit.Before;
@@ -21,13 +23,12 @@ import org.webcurator.test.WCTTestUtils;
 
 public class WaybackIndexerTest extends BaseWCTTest<WaybackIndexer>{
 
-	private String archivePath = "/org/webcurator/domain/model/core/archiveFiles";
-	
 	private Long hrOid = 54321L;
 	private Long tiOid = 12345L;
 	private int harvestNumber = 1;
 	
-	private final File baseFolder = new File("C:/temp/WaybackIndexerTest");
+	private final File baseFolder = new File(System.getProperty("java.io.tmpdir") + "/WaybackIndexerTest");
+	private final File archiveFolder = new File(baseFolder.getAbsolutePath()+"/archives");
 	private final File inputFolder = new File(baseFolder.getAbsolutePath()+"/input");
 	private final File mergedFolder = new File(baseFolder.getAbsolutePath()+"/merged");
 	private final File failedFolder = new File(baseFolder.getAbsolutePath()+"/failed");
@@ -88,9 +89,26 @@ public class WaybackIndexerTest extends BaseWCTTest<WaybackIndexer>{
 		super(WaybackIndexer.class, "");
 	}
 	
-	private void buildFolders()
+	/**
+	 * Records when the index is finalised rather than calling the core.
+	 */
+	private static class FinalisingWaybackIndexer extends WaybackIndexer
+	{
+		private final CountDownLatch finalised = new CountDownLatch(1);
+
+		@Override
+		protected void finaliseIndex(Long harvestResultOid)
+		{
+			finalised.countDown();
+		}
+	}
+	
+	private void buildFolders() throws IOException
 	{
 		baseFolder.mkdirs();
+		archiveFolder.mkdirs();
+		WCTTestUtils.writeWarcFile(new File(archiveFolder, "test1.warc.gz"), true, "http://www.example.com/");
+		WCTTestUtils.writeWarcFile(new File(archiveFolder, "test2.warc"), false, "http://www.example.com/a.html");
 		inputFolder.mkdirs();
 		mergedFolder.mkdirs();
 		failedFolder.mkdirs();
@@ -160,11 +178,12 @@ public class WaybackIndexerTest extends BaseWCTTest<WaybackIndexer>{
 		testInstance.setWaybackInputFolder(inputFolder.getAbsolutePath());
 		testInstance.setWaybackMergedFolder(mergedFolder.getAbsolutePath());
 		HarvestResultDTO result = new HarvestResultDTO(hrOid, tiOid, new Date(), harvestNumber, "");
-		testInstance.initialise(result, WCTTestUtils.getResourceAsFile(archivePath));
+		testInstance.initialise(result, archiveFolder);
 	}
 
 	@After
 	public void tearDown() throws Exception {
+		testInstance.destroy();
 		super.tearDown();
 		deleteAll(baseFolder);
 	}
@@ -225,7 +244,7 @@ public class WaybackIndexerTest extends BaseWCTTest<WaybackIndexer>{
 	public final void testRemoveIndex() {
 		try
 		{
-			File[] files = WCTTestUtils.getResourceAsFile(archivePath).listFiles(testInstance.new ARCFilter());
+			File[] files = archiveFolder.listFiles(testInstance.new ARCFilter());
 			for(int i = 0; i < files.length; i++)
 			{
 				WaybackIndexer.MonitoredFile mf = testInstance.new MonitoredFile(files[i]);
@@ -246,4 +265,42 @@ public class WaybackIndexerTest extends BaseWCTTest<WaybackIndexer>{
 		}
 	}
 
+	@Test
+	public final void testRunDoesNotWaitForWayback() throws Exception {
+		FinalisingWaybackIndexer indexer = new FinalisingWaybackIndexer();
+		indexer.setTimeout(10000);
+		indexer.setWaittime(100);
+		indexer.setWaybackFailedFolder(failedFolder.getAbsolutePath());
+		indexer.setWaybackInputFolder(inputFolder.getAbsolutePath());
+		indexer.setWaybackMergedFolder(mergedFolder.getAbsolutePath());
+		indexer.initialise(new HarvestResultDTO(hrOid, tiOid, new Date(), harvestNumber, ""), archiveFolder);
+		indexer.setMode(RunnableIndex.Mode.INDEX);
+		try
+		{
+			assertTrue(Indexer.startRunningIndex(indexer, hrOid));
+			indexer.run();
+
+			// The files are copied, and the index is still running until Wayback has indexed them
+			File[] files = inputFolder.listFiles();
+			assertEquals(2, files.length);
+			assertTrue(Indexer.containsRunningIndex(hrOid));
+			assertEquals(1, indexer.finalised.getCount());
+
+			for(File f: files)
+			{
+				copyFile(f, new File(mergedFolder, f.getName()));
+			}
+			assertTrue(indexer.finalised.await(10, TimeUnit.SECONDS));
+			for(int i = 0; i < 100 && Indexer.containsRunningIndex(hrOid); i++)
+			{
+				Thread.sleep(50);
+			}
+			assertFalse(Indexer.containsRunningIndex(hrOid));
+		}
+		finally
+		{
+			Indexer.removeRunningIndex(indexer.getName(), hrOid);
+			indexer.destroy();
+		}
+	}
 }
@@ -49,6 +49,8 @@ import org.webcurator.domain.model.core.TargetInstance;
 import org.webcurator.domain.model.dto.AbstractTargetDTO;
 import org.webcurator.domain.model.dto.GroupMemberDTO;
 import org.webcurator.domain.model.dto.GroupMemberDTO.SAVE_STATE;
+import org.webcurator.domain.model.dto.PermissionSeedDTO;
+import org.webcurator.domain.model.dto.SeedPermissionEvaluation;
 import org.webcurator.common.ui.target.TargetEditorContext;
 
 import com.google.common.collect.Lists;
@@ -129,6 +131,11 @@ public class TargetManagerImplTest {
 
 	}
 
+	private void stubExecutionTimes(Schedule schedule, Date... times) {
+		lenient().when(schedule.getExecutionTimes(any(Date.class), any(Date.class)))
+				.thenAnswer(invocation -> Arrays.stream(times).mapToLong(Date::getTime).iterator());
+	}
+
 	private Target mockTarget(long oid) {
 		Target result = mock(Target.class);
 		when(result.getOid()).thenReturn(oid);
@@ -421,6 +428,7 @@ public class TargetManagerImplTest {
 		when(mockSchedule.getOwningUser()).thenReturn(mockUser);
 		Date nowPlusAMillionMs = new Date(System.currentTimeMillis() + 1000000L);
 		when(mockSchedule.getNextExecutionDate(any(Date.class))).thenReturn(nowPlusAMillionMs);
+		stubExecutionTimes(mockSchedule);
 		when(mockSchedule.getStartDate()).thenReturn(new Date(System.currentTimeMillis() + 1000000L));
 		when(mockSchedule.getTarget()).thenReturn(target4000);
 		when(target4000.getSchedules()).thenReturn(Sets.newHashSet(mockSchedule));
@@ -437,15 +445,18 @@ public class TargetManagerImplTest {
 		when(mockSchedule1.getOwningUser()).thenReturn(mockUser);
 		Date nowPlusAMillionMs = new Date(System.currentTimeMillis() + 1000000L);
 		when(mockSchedule1.getNextExecutionDate(any(Date.class))).thenReturn(nowPlusAMillionMs);
+		stubExecutionTimes(mockSchedule1);
 		when(mockSchedule1.getTarget()).thenReturn(target4000);
 		when(mockSchedule1.getStartDate()).thenReturn(nowPlusAMillionMs);
 		Schedule mockSchedule2 = mock(Schedule.class);
 		when(mockSchedule2.getOwningUser()).thenReturn(mockUser);
+		stubExecutionTimes(mockSchedule2);
 		when(mockSchedule2.getStartDate()).thenReturn(nowPlusAMillionMs);
 		when(mockSchedule2.getTarget()).thenReturn(target4000);
 		Schedule mockSchedule3 = mock(Schedule.class);
 		when(mockSchedule3.getOwningUser()).thenReturn(mockUser);
 		when(mockSchedule3.getNextExecutionDate(any(Date.class))).thenReturn(nowPlusAMillionMs);
+		stubExecutionTimes(mockSchedule3);
 		when(mockSchedule3.getStartDate()).thenReturn(nowPlusAMillionMs);
 		when(mockSchedule3.getTarget()).thenReturn(target4000);
 		when(target4000.getSchedules()).thenReturn(Sets.newHashSet(mockSchedule1, mockSchedule2, mockSchedule3));
@@ -911,6 +922,33 @@ public class TargetManagerImplTest {
 		assertFalse(underTest.isTargetHarvestable(targetInstance5000));
 	}
 
+	@Test
+	public final void testEvaluateSeeds() {
+		Date now = new Date();
+		Permission active = mock(Permission.class);
+		when(active.getOid()).thenReturn(1L);
+		when(active.getStartDate()).thenReturn(new Date(now.getTime() - 86400000L));
+		Permission expired = mock(Permission.class);
+		when(expired.getStartDate()).thenReturn(new Date(now.getTime() - 2 * 86400000L));
+		when(expired.getEndDate()).thenReturn(new Date(now.getTime() - 86400000L));
+
+		Set<Seed> seeds = targetInstance5000.getTarget().getSeeds();
+		seeds.clear();
+		Seed seed = mock(Seed.class);
+		when(seed.getSeed()).thenReturn("http://www.example.com/");
+		when(seed.isHarvestable(any(Date.class))).thenReturn(true);
+		when(seed.getPermissions()).thenReturn(Sets.newHashSet(active, expired));
+		seeds.add(seed);
+
+		SeedPermissionEvaluation evaluation = underTest.evaluateSeeds(targetInstance5000);
+		assertTrue(evaluation.isHarvestable());
+		assertEquals(1, evaluation.getSeeds().size());
+		assertEquals(1, evaluation.getActivePermissions().size());
+		PermissionSeedDTO permission = evaluation.getActivePermissions().iterator().next();
+		assertEquals(Long.valueOf(1L), permission.getPermissionOid());
+		assertTrue(permission.getSeeds().contains("http://www.example.com/"));
+	}
+
 	@Test
 	public final void testAllowStateChangeIsInSameState() {
 		when(target4000.getOriginalState()).thenReturn(Target.STATE_NOMINATED);
@@ -1209,6 +1247,7 @@ public class TargetManagerImplTest {
 		Date startDate = new Date(now);
 		when(mockSchedule.getStartDate()).thenReturn(startDate);
 		when(mockSchedule.getNextExecutionDate(any(Date.class))).thenReturn(startDate).thenReturn(null);
+		stubExecutionTimes(mockSchedule, startDate);
 		
 		Date endDate = new Date(now + 100000L);
 		when(mockSchedule.getEndDate()).thenReturn(endDate);
@@ -1218,7 +1257,7 @@ public class TargetManagerImplTest {
 		when(target4000.isSchedulable()).thenReturn(true);
 		underTest.processBatchSchedule(mockSchedule);
 		verify(targetDao).save(mockSchedule);
-		verify(targetInstanceDao).save(any(TargetInstance.class));
+		verify(targetInstanceDao).insertTargetInstances(anyLong(), anyLong(), anyLong(), argThat(tis -> tis.size() == 1));
 		verify(mockSchedule).setLastProcessedDate(any(Date.class));
 	}
 
@@ -1228,9 +1267,10 @@ public class TargetManagerImplTest {
 		when(mockSchedule.getOwningUser()).thenReturn(mockUser);
 		
 		Date startDate = new Date(now);
-		when(targetDao.getLatestScheduledDate(targetGroup15000, mockSchedule)).thenReturn(startDate);
+		when(targetDao.getLatestScheduledDate(15000L, 0L)).thenReturn(new Date(now - 1000L));
 		when(mockSchedule.getStartDate()).thenReturn(startDate);
 		when(mockSchedule.getNextExecutionDate(any(Date.class))).thenReturn(startDate).thenReturn(null);
+		stubExecutionTimes(mockSchedule, startDate);
 		
 		Date endDate = new Date(now + 100000L);
 		when(mockSchedule.getEndDate()).thenReturn(endDate);
@@ -1241,7 +1281,7 @@ public class TargetManagerImplTest {
 		when(targetGroup15000.isSchedulable()).thenReturn(true);
 		underTest.processBatchSchedule(mockSchedule);
 		verify(targetDao).save(mockSchedule);
-		verify(targetInstanceDao).save(any(TargetInstance.class));
+		verify(targetInstanceDao).insertTargetInstances(anyLong(), anyLong(), anyLong(), argThat(tis -> tis.size() == 1));
 		verify(mockSchedule).setLastProcessedDate(any(Date.class));
 	}
 
@@ -1250,11 +1290,12 @@ public class TargetManagerImplTest {
 		Schedule mockSchedule = mock(Schedule.class);
 		
 		Date startDate = new Date(now);
-		lenient().when(targetDao.getLatestScheduledDate(targetGroup15000, mockSchedule)).thenReturn(startDate);
-		when(targetDao.getLatestScheduledDate(target4000, mockSchedule)).thenReturn(startDate);
+		lenient().when(targetDao.getLatestScheduledDate(15000L, 0L)).thenReturn(startDate);
+		when(targetDao.getLatestScheduledDate(4000L, 0L)).thenReturn(new Date(now - 1000L));
 		Date endDate = new Date(now + 100000L);
 		when(mockSchedule.getStartDate()).thenReturn(startDate);
 		when(mockSchedule.getNextExecutionDate(any(Date.class))).thenReturn(startDate).thenReturn(null);
+		stubExecutionTimes(mockSchedule, startDate);
 		when(mockSchedule.getEndDate()).thenReturn(endDate);
 		when(mockSchedule.getOwningUser()).thenReturn(mockUser);
 		when(mockSchedule.getTarget()).thenReturn(targetGroup15000);
@@ -1268,7 +1309,7 @@ public class TargetManagerImplTest {
 		when(targetGroup15000.getChildren()).thenReturn(Sets.newHashSet(mockGroupMember));
 		underTest.processBatchSchedule(mockSchedule);
 		verify(targetDao).save(mockSchedule);
-		verify(targetInstanceDao).save(any(TargetInstance.class));
+		verify(targetInstanceDao).insertTargetInstances(anyLong(), anyLong(), anyLong(), argThat(tis -> tis.size() == 1));
 		verify(mockSchedule).setLastProcessedDate(any(Date.class));
 	}
 
@@ -1280,6 +1321,7 @@ public class TargetManagerImplTest {
 		Date startDate = new Date(now);
 		when(mockSchedule.getStartDate()).thenReturn(startDate);
 		when(mockSchedule.getNextExecutionDate(any(Date.class))).thenReturn(startDate).thenReturn(null);
+		stubExecutionTimes(mockSchedule, startDate);
 		
 		Date endDate = new Date(now + 100000L);
 		when(mockSchedule.getEndDate()).thenReturn(endDate);
@@ -1288,7 +1330,7 @@ public class TargetManagerImplTest {
 		when(target4000.getObjectType()).thenReturn(AbstractTarget.TYPE_TARGET);
 		when(target4000.isSchedulable()).thenReturn(true);
 		underTest.processSchedule(mockSchedule);
-		verify(targetInstanceDao).save(any(TargetInstance.class));
+		verify(targetInstanceDao).insertTargetInstances(anyLong(), anyLong(), anyLong(), argThat(tis -> tis.size() == 1));
 	}
 
 	@Test
@@ -1297,9 +1339,10 @@ public class TargetManagerImplTest {
 		when(mockSchedule.getOwningUser()).thenReturn(mockUser);
 		
 		Date startDate = new Date(now);
-		when(targetDao.getLatestScheduledDate(targetGroup15000, mockSchedule)).thenReturn(startDate);
+		when(targetDao.getLatestScheduledDate(15000L, 0L)).thenReturn(new Date(now - 1000L));
 		when(mockSchedule.getStartDate()).thenReturn(startDate);
 		when(mockSchedule.getNextExecutionDate(any(Date.class))).thenReturn(startDate).thenReturn(null);
+		stubExecutionTimes(mockSchedule, startDate);
 		
 		Date endDate = new Date(now + 100000L);
 		when(mockSchedule.getEndDate()).thenReturn(endDate);
@@ -1309,7 +1352,7 @@ public class TargetManagerImplTest {
 		when(targetGroup15000.getSipType()).thenReturn(TargetGroup.ONE_SIP);
 		when(targetGroup15000.isSchedulable()).thenReturn(true);
 		underTest.processSchedule(mockSchedule);
-		verify(targetInstanceDao).save(any(TargetInstance.class));
+		verify(targetInstanceDao).insertTargetInstances(anyLong(), anyLong(), anyLong(), argThat(tis -> tis.size() == 1));
 	}
 
 	@Test
@@ -1317,11 +1360,12 @@ public class TargetManagerImplTest {
 		Schedule mockSchedule = mock(Schedule.class);
 		
 		Date startDate = new Date(now);
-		lenient().when(targetDao.getLatestScheduledDate(targetGroup15000, mockSchedule)).thenReturn(startDate);
-		when(targetDao.getLatestScheduledDate(target4000, mockSchedule)).thenReturn(startDate);
+		lenient().when(targetDao.getLatestScheduledDate(15000L, 0L)).thenReturn(startDate);
+		when(targetDao.getLatestScheduledDate(4000L, 0L)).thenReturn(new Date(now - 1000L));
 		Date endDate = new Date(now + 100000L);
 		when(mockSchedule.getStartDate()).thenReturn(startDate);
 		when(mockSchedule.getNextExecutionDate(any(Date.class))).thenReturn(startDate).thenReturn(null);
+		stubExecutionTimes(mockSchedule, startDate);
 		when(mockSchedule.getEndDate()).thenReturn(endDate);
 		when(mockSchedule.getOwningUser()).thenReturn(mockUser);
 		when(mockSchedule.getTarget()).thenReturn(targetGroup15000);
@@ -1334,7 +1378,211 @@ public class TargetManagerImplTest {
 		when(mockGroupMember.getChild()).thenReturn(target4000);
 		when(targetGroup15000.getChildren()).thenReturn(Sets.newHashSet(mockGroupMember));
 		underTest.processSchedule(mockSchedule);
-		verify(targetInstanceDao).save(any(TargetInstance.class));
+		verify(targetInstanceDao).insertTargetInstances(anyLong(), anyLong(), anyLong(), argThat(tis -> tis.size() == 1));
+	}
+
+	@Test
+	public void testProcessScheduleSkipsScheduledTimes() {
+		Schedule mockSchedule = mock(Schedule.class);
+		when(mockSchedule.getOwningUser()).thenReturn(mockUser);
+
+		Date startDate = new Date(now);
+		when(targetDao.getLatestScheduledDate(4000L, 0L)).thenReturn(startDate);
+		when(mockSchedule.getStartDate()).thenReturn(startDate);
+		stubExecutionTimes(mockSchedule, startDate);
+		when(mockSchedule.getEndDate()).thenReturn(new Date(now + 100000L));
+
+		when(mockSchedule.getTarget()).thenReturn(target4000);
+		when(target4000.isSchedulable()).thenReturn(true);
+		underTest.processSchedule(mockSchedule);
+		verify(targetInstanceDao, never()).insertTargetInstances(anyLong(), anyLong(), anyLong(), any());
+	}
+
+	@Test
+	public void testProcessScheduleGroupManySipConcurrentFailure() {
+		Schedule mockSchedule = mock(Schedule.class);
+		Target target4001 = mockTarget(4001L);
+
+		Date startDate = new Date(now);
+		when(mockSchedule.getOid()).thenReturn(7L);
+		when(mockSchedule.getStartDate()).thenReturn(new Date(now - 1000L));
+		stubExecutionTimes(mockSchedule, startDate);
+		when(mockSchedule.getEndDate()).thenReturn(new Date(now + 100000L));
+		when(mockSchedule.getOwningUser()).thenReturn(mockUser);
+		when(mockSchedule.getTarget()).thenReturn(targetGroup15000);
+
+		when(targetGroup15000.getObjectType()).thenReturn(AbstractTarget.TYPE_GROUP);
+		when(targetGroup15000.getSipType()).thenReturn(TargetGroup.MANY_SIP);
+		HashSet<GroupMember> members = new HashSet<GroupMember>();
+		for (Target target : Lists.newArrayList(target4000, target4001)) {
+			when(target.isSchedulable()).thenReturn(true);
+			GroupMember member = mock(GroupMember.class);
+			when(member.getChild()).thenReturn(target);
+			members.add(member);
+		}
+		when(targetGroup15000.getChildren()).thenReturn(members);
+		doThrow(new WCTRuntimeException("insert failed")).when(targetInstanceDao).insertTargetInstances(eq(4001L), eq(7L),
+				anyLong(), any());
+
+		underTest.setScheduleExpansionThreads(2);
+		try {
+			underTest.processBatchSchedule(mockSchedule);
+			fail("The failed insert should be rethrown");
+		} catch (WCTRuntimeException ex) {
+			assertEquals("insert failed", ex.getMessage());
+		}
+
+		verify(targetInstanceDao).insertTargetInstances(eq(4000L), eq(7L), anyLong(), argThat(tis -> tis.size() == 1));
+		// The schedule is not marked as processed, so the next pass tries again.
+		verify(mockSchedule, never()).setLastProcessedDate(any(Date.class));
+		verify(targetDao, never()).save(mockSchedule);
+	}
+
+	@Test
+	public void testProcessScheduleGroupManySipConcurrent() {
+		Schedule mockSchedule = mock(Schedule.class);
+		Target target4001 = mockTarget(4001L);
+		Target target4002 = mockTarget(4002L);
+
+		final Date startDate = new Date(now);
+		final Date secondDate = new Date(now + 1000L);
+		Date lastScheduled = new Date(now - 1000L);
+		when(targetDao.getLatestScheduledDate(anyLong(), eq(0L))).thenReturn(lastScheduled);
+		when(mockSchedule.getStartDate()).thenReturn(lastScheduled);
+		when(mockSchedule.getNextExecutionDate(any(Date.class))).thenAnswer(invocation -> {
+			Date after = invocation.getArgument(0);
+			return after.before(startDate) ? startDate : after.before(secondDate) ? secondDate : null;
+		});
+		stubExecutionTimes(mockSchedule, startDate, secondDate);
+		when(mockSchedule.getEndDate()).thenReturn(new Date(now + 100000L));
+		when(mockSchedule.getOwningUser()).thenReturn(mockUser);
+		when(mockSchedule.getTarget()).thenReturn(targetGroup15000);
+
+		when(targetGroup15000.getObjectType()).thenReturn(AbstractTarget.TYPE_GROUP);
+		when(targetGroup15000.getSipType()).thenReturn(TargetGroup.MANY_SIP);
+		HashSet<GroupMember> members = new HashSet<GroupMember>();
+		for (Target target : Lists.newArrayList(target4000, target4001, target4002)) {
+			when(target.isSchedulable()).thenReturn(true);
+			GroupMember member = mock(GroupMember.class);
+			when(member.getChild()).thenReturn(target);
+			members.add(member);
+		}
+		when(targetGroup15000.getChildren()).thenReturn(members);
+
+		underTest.setScheduleExpansionThreads(2);
+		underTest.processSchedule(mockSchedule);
+
+		// Each target gets its instances in one batch; the count is checked once per target.
+		verify(targetInstanceDao, times(3)).insertTargetInstances(anyLong(), anyLong(), anyLong(), argThat(tis -> tis.size() == 2));
+		verify(tim).countTargetInstancesByTarget(4000L);
+		verify(tim).countTargetInstancesByTarget(4001L);
+		verify(tim).countTargetInstancesByTarget(4002L);
+		verify(targetDao).load(4000L, true);
+	}
+
+	private Schedule mockSchedule(long oid) {
+		Schedule schedule = mock(Schedule.class);
+		when(schedule.getOid()).thenReturn(oid);
+		return schedule;
+	}
+
+	@Test
+	public void testProcessSchedulesJobInChunks() {
+		Schedule schedule1 = mockSchedule(1L);
+		Schedule schedule2 = mockSchedule(2L);
+		Schedule schedule3 = mockSchedule(3L);
+		when(targetDao.getSchedulesToRun(any(Date.class), isNull(), eq(2))).thenReturn(Lists.newArrayList(schedule1, schedule2));
+		when(targetDao.getSchedulesToRun(any(Date.class), eq(2L), eq(2))).thenReturn(Lists.newArrayList(schedule3));
+
+		underTest.setScheduleChunkSize(2);
+		underTest.processSchedulesJob();
+
+		// Schedules without a target are just marked as processed.
+		verify(schedule1).setLastProcessedDate(any(Date.class));
+		verify(targetDao).save(schedule1);
+		verify(targetDao).save(schedule2);
+		verify(targetDao).save(schedule3);
+		ScheduleProcessingProgress progress = underTest.getScheduleProgress();
+		assertEquals(1L, progress.getPassesCompleted());
+		assertEquals(3L, progress.getLastPassSchedules());
+		assertEquals(3L, progress.getTotalSchedules());
+		assertEquals(null, progress.getPassStartDate());
+	}
+
+	@Test
+	public void testProcessSchedulesJobResumesPass() {
+		Schedule schedule1 = mockSchedule(1L);
+		Schedule schedule2 = mockSchedule(2L);
+		when(targetDao.getSchedulesToRun(any(Date.class), isNull(), eq(1))).thenReturn(Lists.newArrayList(schedule1));
+		when(targetDao.getSchedulesToRun(any(Date.class), eq(1L), eq(1))).thenReturn(Lists.newArrayList(schedule2));
+		when(targetDao.getSchedulesToRun(any(Date.class), eq(2L), eq(1))).thenReturn(Lists.<Schedule> newArrayList());
+
+		underTest.setScheduleChunkSize(10);
+		underTest.setMaxSchedulesPerRun(1);
+		underTest.processSchedulesJob();
+
+		ScheduleProcessingProgress progress = underTest.getScheduleProgress();
+		Date passStart = progress.getPassStartDate();
+		assertNotNull(passStart);
+		assertEquals(Long.valueOf(1L), progress.getCursorOid());
+		verify(targetDao).save(schedule1);
+		verify(targetDao, never()).save(schedule2);
+
+		underTest.processSchedulesJob();
+		verify(targetDao).save(schedule2);
+		verify(targetDao).getSchedulesToRun(eq(passStart), eq(1L), eq(1));
+
+		underTest.processSchedulesJob();
+		assertEquals(1L, progress.getPassesCompleted());
+		assertEquals(2L, progress.getLastPassSchedules());
+	}
+
+	private Schedule schedule(long oid, Date lastProcessedDate, Date nextScheduleAfterPeriod) {
+		Schedule schedule = mockSchedule(oid);
+		when(schedule.getLastProcessedDate()).thenReturn(lastProcessedDate);
+		when(schedule.getNextScheduleAfterPeriod()).thenReturn(nextScheduleAfterPeriod);
+		return schedule;
+	}
+
+	@Test
+	public void testProcessSchedulesJobAfterRestart() {
+		long now = System.currentTimeMillis();
+		Date inWindow = new Date(now - 3600000L);
+		Date afterWindow = new Date(now + 365L * 24L * 3600000L);
+		// Schedules 1 and 3 were processed by a pass interrupted by the restart,
+		// which moved their next schedule after period beyond the window.
+		final List<Schedule> schedules = Lists.newArrayList(
+				schedule(1L, new Date(now - 60000L), afterWindow),
+				schedule(2L, new Date(now - 7L * 24L * 3600000L), inWindow),
+				schedule(3L, new Date(now - 30000L), afterWindow),
+				schedule(4L, null, inWindow),
+				schedule(5L, new Date(now - 24L * 3600000L), inWindow));
+		when(targetDao.getSchedulesToRun(any(Date.class), any(), anyInt())).thenAnswer(invocation -> {
+			Date processedBefore = invocation.getArgument(0);
+			Long afterOid = invocation.getArgument(1);
+			int maxResults = invocation.getArgument(2);
+			List<Schedule> due = Lists.newArrayList();
+			for (Schedule s : schedules) {
+				if (s.getNextScheduleAfterPeriod().getTime() <= now + 24L * 3600000L
+						&& (s.getLastProcessedDate() == null || s.getLastProcessedDate().before(processedBefore))
+						&& (afterOid == null || s.getOid() > afterOid) && due.size() < maxResults) {
+					due.add(s);
+				}
+			}
+			return due;
+		});
+
+		underTest.setScheduleChunkSize(2);
+		underTest.processSchedulesJob();
+
+		verify(targetDao, never()).save(schedules.get(0));
+		verify(targetDao).save(schedules.get(1));
+		verify(targetDao, never()).save(schedules.get(2));
+		verify(targetDao).save(schedules.get(3));
+		verify(targetDao).save(schedules.get(4));
+		ScheduleProcessingProgress progress = underTest.getScheduleProgress();
+		assertEquals(1L, progress.getPassesCompleted());
+		assertEquals(3L, progress.getLastPassSchedules());
 	}
 
 	@Test
@@ -0,0 +1,85 @@
+package org.webcurator.domain;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+import org.webcurator.domain.GroupHierarchyCache.GroupHierarchy;
+
+public class GroupHierarchyCacheTest {
+
+	private List<Object[]> edges(long... parentChildPairs) {
+		List<Object[]> edges = new ArrayList<Object[]>();
+		for (int i = 0; i < parentChildPairs.length; i += 2) {
+			edges.add(new Object[] { parentChildPairs[i], parentChildPairs[i + 1] });
+		}
+		return edges;
+	}
+
+	private Set<Long> oids(Long... oids) {
+		return new HashSet<Long>(Arrays.asList(oids));
+	}
+
+	@Test
+	public final void testAncestorsAndDescendants() {
+		// 1 -> 2 -> 4, 1 -> 3 -> 4, 4 -> 5
+		GroupHierarchy hierarchy = new GroupHierarchy(edges(1L, 2L, 1L, 3L, 2L, 4L, 3L, 4L, 4L, 5L));
+
+		assertEquals(oids(1L, 2L, 3L, 4L), hierarchy.getAncestorOids(5L));
+		assertEquals(oids(2L, 3L), hierarchy.getParentOids(4L));
+		assertEquals(oids(), hierarchy.getAncestorOids(1L));
+		assertEquals(oids(2L, 3L, 4L, 5L), hierarchy.getDescendantOids(1L));
+		assertEquals(oids(), hierarchy.getDescendantOids(99L));
+	}
+
+	@Test
+	public final void testLoop() {
+		GroupHierarchy hierarchy = new GroupHierarchy(edges(1L, 2L, 2L, 3L, 3L, 1L));
+
+		assertEquals(oids(2L, 3L), hierarchy.getAncestorOids(1L));
+		assertEquals(oids(2L, 3L), hierarchy.getDescendantOids(1L));
+	}
+
+	@Test
+	public final void testInvalidate() {
+		final AtomicInteger loads = new AtomicInteger();
+		Supplier<List<Object[]>> loader = () -> {
+			loads.incrementAndGet();
+			return edges(1L, 2L);
+		};
+		GroupHierarchyCache cache = new GroupHierarchyCache();
+
+		cache.get(loader);
+		assertEquals(oids(1L), cache.get(loader).getAncestorOids(2L));
+		assertEquals(1, loads.get());
+
+		cache.invalidate();
+		cache.get(loader);
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	public final void testNotCachedIfInvalidatedWhileLoading() {
+		final GroupHierarchyCache cache = new GroupHierarchyCache();
+		final AtomicInteger loads = new AtomicInteger();
+		Supplier<List<Object[]>> loader = () -> {
+			if (loads.incrementAndGet() == 1) {
+				cache.invalidate();
+			}
+			return edges(1L, 2L);
+		};
+
+		cache.get(loader);
+		cache.get(loader);
+		assertEquals(2, loads.get());
+		cache.get(loader);
+		assertEquals(2, loads.get());
+	}
+}
@@ -10,6 +10,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.text.SimpleDateFormat;
 
 import org.apache.commons.logging.Log;
@@ -214,6 +215,12 @@ public class MockTargetDAO implements TargetDAO {
 		return schedule.getNextExecutionDate();
 	}
 
+	public Date getLatestScheduledDate(long targetOid, long scheduleOid) 
+	{
+		Schedule schedule = schOids.get(scheduleOid);
+		return schedule == null ? null : schedule.getNextExecutionDate();
+	}
+
 	public List<Seed> getLinkedSeeds(Permission permission) 
 	{
 		// TODO Auto-generated method stub
@@ -265,6 +272,19 @@ public class MockTargetDAO implements TargetDAO {
 		return schedules;
 	}
 
+	public List<Schedule> getSchedulesToRun(Date processedBefore, Long afterOid, int maxResults) 
+	{
+		List<Schedule> schedules = new ArrayList<Schedule>();
+		for (Schedule s : new TreeMap<Long, Schedule>(schOids).values()) {
+			if ((processedBefore == null || s.getLastProcessedDate() == null || s.getLastProcessedDate().before(processedBefore))
+					&& (afterOid == null || s.getOid() > afterOid)
+					&& (maxResults <= 0 || schedules.size() < maxResults)) {
+				schedules.add(s);
+			}
+		}
+		return schedules;
+	}
+
 	public Set<Seed> getSeeds(Target target) {
 		return target.getSeeds();
 	}
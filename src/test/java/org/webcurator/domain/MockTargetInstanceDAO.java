@@ -24,6 +24,7 @@ import org.webcurator.domain.model.auth.User;
 import org.webcurator.domain.model.core.*;
 import org.webcurator.domain.model.core.HarvestResult;
 import org.webcurator.domain.model.dto.HarvestHistoryDTO;
+import org.webcurator.domain.model.dto.HarvestResourceSnapshot;
 import org.webcurator.domain.model.dto.QueuedTargetInstanceDTO;
 import org.webcurator.domain.model.dto.TargetInstanceDTO;
 import org.webcurator.test.WCTTestUtils;
@@ -311,6 +312,15 @@ public class MockTargetInstanceDAO implements TargetInstanceDAO {
 		return resources;
 	}
 
+	@Override
+	public HarvestResourceSnapshot getHarvestResourceSnapshot(long harvestResultOid, Map<String, String> namePool) {
+		HarvestResourceSnapshot.Builder builder = new HarvestResourceSnapshot.Builder(harvestResultOid, namePool);
+		for (HarvestResourceDTO resource : getHarvestResourceDTOs(harvestResultOid)) {
+			builder.add(resource.getTargetInstanceOid(), resource.getName(), resource.getLength(), resource.getStatusCode());
+		}
+		return builder.build();
+	}
+
 	public HarvestResult getHarvestResult(Long harvestResultOid) {
 		
 		return hrOids.get(harvestResultOid);
@@ -366,6 +376,19 @@ public class MockTargetInstanceDAO implements TargetInstanceDAO {
 	}
 
 
+	public List<TargetInstance> loadTargetInstances(Collection<Long> targetInstanceOids) {
+		List<TargetInstance> targetInstances = new ArrayList<TargetInstance>();
+		for (Long oid : targetInstanceOids) {
+			if (tiOids.containsKey(oid)) {
+				targetInstances.add(tiOids.get(oid));
+			}
+		}
+		return targetInstances;
+	}
+
+	public void updateHarvesterStatuses(Collection<HarvesterStatus> statuses) {
+	}
+
 	public TargetInstance populate(TargetInstance targetInstance) {
 		return tiOids.get(targetInstance.getOid());
 	}
@@ -406,6 +429,16 @@ public class MockTargetInstanceDAO implements TargetInstanceDAO {
 		}
 	}
 
+	public void insertAll(Collection collection) {
+		saveAll(collection);
+	}
+
+	public void insertTargetInstances(long targetOid, long scheduleOid, long ownerOid, List<TargetInstance> targetInstances) {
+		for (TargetInstance ti : targetInstances) {
+			save(ti);
+		}
+	}
+
 	public Pagination search(TargetInstanceCriteria criteria, int page, int pageSize) {
 		// TODO Auto-generated method stub
 		return null;
@@ -0,0 +1,76 @@
+package org.webcurator.domain;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.query.Query;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.webcurator.domain.model.core.Target;
+import org.webcurator.domain.model.core.TargetGroup;
+import org.webcurator.domain.model.dto.GroupMemberDTO;
+
+public class TargetDAOImplTest {
+
+	private TargetDAOImpl testInstance = new TargetDAOImpl();
+	private Session session = mock(Session.class);
+	private GroupHierarchyCache groupHierarchyCache = mock(GroupHierarchyCache.class);
+
+	@Before
+	public void setUp() {
+		SessionFactory sessionFactory = mock(SessionFactory.class);
+		when(sessionFactory.getCurrentSession()).thenReturn(session);
+		PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+		when(transactionManager.getTransaction(any())).thenAnswer(invocation -> new SimpleTransactionStatus());
+		testInstance.setSessionFactory(sessionFactory);
+		testInstance.setTxTemplate(new TransactionTemplate(transactionManager));
+		testInstance.setGroupHierarchyCache(groupHierarchyCache);
+		Query query = mock(Query.class, RETURNS_SELF);
+		when(session.createQuery(anyString())).thenReturn(query);
+	}
+
+	private GroupMemberDTO member(GroupMemberDTO.SAVE_STATE saveState) {
+		GroupMemberDTO member = new GroupMemberDTO(1L, 2L);
+		member.setSaveState(saveState);
+		return member;
+	}
+
+	@Test
+	public final void testSaveTargetWithUnchangedParents() {
+		testInstance.save(mock(Target.class), Arrays.asList(member(GroupMemberDTO.SAVE_STATE.ORIGINAL)));
+		testInstance.save(mock(Target.class), Collections.<GroupMemberDTO>emptyList());
+		verify(groupHierarchyCache, never()).invalidate();
+	}
+
+	@Test
+	public final void testSaveTargetWithDeletedParent() {
+		testInstance.save(mock(Target.class), Arrays.asList(member(GroupMemberDTO.SAVE_STATE.ORIGINAL),
+				member(GroupMemberDTO.SAVE_STATE.DELETED)));
+		verify(groupHierarchyCache, atLeastOnce()).invalidate();
+	}
+
+	@Test
+	public final void testSaveGroupWithUnchangedMembers() {
+		TargetGroup group = mock(TargetGroup.class);
+		testInstance.save(group, true, Arrays.asList(member(GroupMemberDTO.SAVE_STATE.ORIGINAL)));
+		verify(groupHierarchyCache, never()).invalidate();
+	}
+
+	@Test
+	public final void testSaveGroupWithRemovedChild() {
+		TargetGroup group = mock(TargetGroup.class);
+		when(group.getRemovedChildren()).thenReturn(new HashSet<Long>(Arrays.asList(2L)));
+		testInstance.save(group, true, null);
+		verify(groupHierarchyCache, atLeastOnce()).invalidate();
+	}
+}
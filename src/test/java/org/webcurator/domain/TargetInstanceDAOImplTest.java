@@ -0,0 +1,159 @@
+package org.webcurator.domain;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.IdentifierGeneratorHelper;
+import org.hibernate.id.IntegralDataTypeHolder;
+import org.hibernate.id.enhanced.AccessCallback;
+import org.hibernate.id.enhanced.Optimizer;
+import org.hibernate.id.enhanced.OptimizerFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.webcurator.core.exceptions.WCTRuntimeException;
+import org.webcurator.core.util.Auditor;
+import org.webcurator.domain.model.auth.User;
+import org.webcurator.domain.model.core.AbstractTarget;
+import org.webcurator.domain.model.core.HarvestResource;
+import org.webcurator.domain.model.core.Schedule;
+import org.webcurator.domain.model.core.Target;
+import org.webcurator.domain.model.core.TargetInstance;
+
+public class TargetInstanceDAOImplTest {
+
+	private TargetInstanceDAOImpl testInstance = new TargetInstanceDAOImpl();
+	private PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+	private Session session = mock(Session.class);
+
+	@Before
+	public void setUp() {
+		SessionFactory sessionFactory = mock(SessionFactory.class);
+		when(sessionFactory.getCurrentSession()).thenReturn(session);
+		when(transactionManager.getTransaction(any())).thenAnswer(invocation -> new SimpleTransactionStatus());
+		testInstance.setSessionFactory(sessionFactory);
+		testInstance.setTxTemplate(new TransactionTemplate(transactionManager));
+		testInstance.setInsertBatchSize(2);
+	}
+
+	@Test
+	public final void testInsertAll() {
+		List<Object> resources = Arrays.<Object>asList(new HarvestResource(), new HarvestResource(), new HarvestResource(),
+				new HarvestResource(), new HarvestResource());
+		testInstance.insertAll(resources);
+
+		verify(session).setJdbcBatchSize(2);
+		for (Object resource : resources) {
+			verify(session).save(resource);
+		}
+		verify(session, never()).saveOrUpdate(any());
+		// After every second row and at the end
+		verify(session, times(3)).flush();
+		verify(session, times(3)).clear();
+
+		ArgumentCaptor<TransactionStatus> status = ArgumentCaptor.forClass(TransactionStatus.class);
+		verify(transactionManager).commit(status.capture());
+		assertFalse(status.getValue().isRollbackOnly());
+	}
+
+	@Test
+	public final void testInsertAllRollsBackOnFailure() {
+		HarvestResource failing = new HarvestResource();
+		when(session.save(failing)).thenThrow(new RuntimeException("constraint violation"));
+		testInstance.insertAll(Arrays.asList(new HarvestResource(), failing, new HarvestResource()));
+
+		ArgumentCaptor<TransactionStatus> status = ArgumentCaptor.forClass(TransactionStatus.class);
+		verify(transactionManager).commit(status.capture());
+		assertTrue(status.getValue().isRollbackOnly());
+	}
+
+	@Test
+	public final void testInsertTargetInstances() {
+		Auditor auditor = mock(Auditor.class);
+		testInstance.setAuditor(auditor);
+		Target target = mock(Target.class);
+		Schedule schedule = mock(Schedule.class);
+		User owner = mock(User.class);
+		when(session.load(AbstractTarget.class, 4000L)).thenReturn(target);
+		when(session.load(Schedule.class, 7L)).thenReturn(schedule);
+		when(session.load(User.class, 3L)).thenReturn(owner);
+
+		List<TargetInstance> targetInstances = Arrays.asList(new TargetInstance(), new TargetInstance(), new TargetInstance());
+		testInstance.insertTargetInstances(4000L, 7L, 3L, targetInstances);
+
+		verify(session, times(3)).save(any(TargetInstance.class));
+		for (TargetInstance ti : targetInstances) {
+			assertSame(target, ti.getTarget());
+			assertSame(schedule, ti.getSchedule());
+			assertSame(owner, ti.getOwner());
+		}
+		ArgumentCaptor<TransactionStatus> status = ArgumentCaptor.forClass(TransactionStatus.class);
+		verify(transactionManager).commit(status.capture());
+		assertFalse(status.getValue().isRollbackOnly());
+		verify(auditor, times(3)).audit(eq(TargetInstance.class.getName()), any(), eq(Auditor.ACTION_NEW_TARGET_INSTANCE), anyString());
+	}
+
+	@Test
+	public final void testInsertTargetInstancesThrowsOnFailure() {
+		Auditor auditor = mock(Auditor.class);
+		testInstance.setAuditor(auditor);
+		when(session.save(any(TargetInstance.class))).thenReturn(1L).thenThrow(new RuntimeException("constraint violation"));
+
+		try {
+			testInstance.insertTargetInstances(4000L, 7L, 3L, Arrays.asList(new TargetInstance(), new TargetInstance()));
+			fail("The failure should be thrown");
+		} catch (WCTRuntimeException ex) {
+			assertEquals("constraint violation", ex.getCause().getMessage());
+		}
+
+		verify(transactionManager).rollback(any());
+		verify(transactionManager, never()).commit(any());
+		verifyZeroInteractions(auditor);
+	}
+
+	@Test
+	public final void testHarvestResourceIdsDoNotReuseStoredIds() throws Exception {
+		GenericGenerator generator = HarvestResource.class.getDeclaredField("oid").getAnnotation(GenericGenerator.class);
+		Map<String, String> parameters = new HashMap<String, String>();
+		for (Parameter parameter : generator.parameters()) {
+			parameters.put(parameter.name(), parameter.value());
+		}
+		int incrementSize = Integer.parseInt(parameters.get("increment_size"));
+		Optimizer optimizer = OptimizerFactory.buildOptimizer(parameters.get("optimizer"), Long.class, incrementSize, 1);
+
+		// When ids were allocated one at a time the stored value was the next id
+		final long[] stored = { 1234 };
+		AccessCallback table = new AccessCallback() {
+			public IntegralDataTypeHolder getNextValue() {
+				IntegralDataTypeHolder value = IdentifierGeneratorHelper.getIntegralDataTypeHolder(Long.class).initialize(stored[0]);
+				stored[0] += incrementSize;
+				return value;
+			}
+
+			public String getTenantIdentifier() {
+				return null;
+			}
+		};
+
+		for (long expected = 1234; expected < 1234 + 2 * incrementSize; expected++) {
+			assertEquals(expected, optimizer.generate(table));
+		}
+		assertEquals(1234 + 2 * incrementSize, stored[0]);
+	}
+}
@@ -0,0 +1,214 @@
+package org.webcurator.domain.model.core;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.archive.io.ArchiveRecord;
+import org.archive.io.ArchiveRecordHeader;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.webcurator.test.WCTTestUtils;
+
+public class ArcHarvestFileDTOIndexTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private List<List<String>> batches = new ArrayList<List<String>>();
+
+	private void consume(Collection<HarvestResourceDTO> batch) {
+		List<String> names = new ArrayList<String>();
+		for (HarvestResourceDTO resource : batch) {
+			names.add(resource.getName());
+		}
+		batches.add(names);
+	}
+
+	private HarvestResourceDTO resource(String name) {
+		ArcHarvestResourceDTO resource = new ArcHarvestResourceDTO();
+		resource.setName(name);
+		return resource;
+	}
+
+	private ArcHarvestFileDTO archiveFile(boolean compressed, String... urls) throws IOException {
+		String name = compressed ? "test.warc.gz" : "test.warc";
+		WCTTestUtils.writeWarcFile(new File(folder.getRoot(), name), compressed, urls);
+		ArcHarvestFileDTO dto = new ArcHarvestFileDTO();
+		dto.setName(name);
+		return dto;
+	}
+
+	/**
+	 * Records the calls made to it, and the content of the response records.
+	 */
+	private static class RecordingVisitor implements ArchiveRecordVisitor {
+		private final boolean wantsContent;
+		private final List<String> calls = new ArrayList<String>();
+		private ByteArrayOutputStream content;
+		private String failOn;
+
+		RecordingVisitor(boolean wantsContent) {
+			this.wantsContent = wantsContent;
+		}
+
+		RecordingVisitor(String failOn) {
+			this(false);
+			this.failOn = failOn;
+		}
+
+		public void startFile(ArcHarvestFileDTO archiveFile) {
+			calls.add("startFile");
+		}
+
+		public void visitRecord(ArchiveRecordHeader header, HarvestResourceDTO resource) throws IOException {
+			String call = "visitRecord " + (resource == null ? null : resource.getName());
+			calls.add(call);
+			content = new ByteArrayOutputStream();
+			if (call.equals(failOn)) {
+				throw new IOException("failed on " + call);
+			}
+		}
+
+		public void visitContent(byte[] buffer, int offset, int length) {
+			content.write(buffer, offset, length);
+		}
+
+		public void endRecord(ArchiveRecord record) {
+			String text = new String(content.toByteArray(), StandardCharsets.UTF_8);
+			calls.add(text.contains("<html>") ? "endRecord " + text.substring(text.indexOf("<html>")) : "endRecord");
+		}
+
+		public void endFile(ArcHarvestFileDTO archiveFile) {
+			calls.add("endFile");
+		}
+
+		public void abortFile(ArcHarvestFileDTO archiveFile, Exception cause) {
+			calls.add("abortFile");
+		}
+
+		public boolean wantsContent() {
+			return wantsContent;
+		}
+
+		public boolean wantsDigest() {
+			return false;
+		}
+	}
+
+	private void visit(ArchiveRecordVisitor visitor, String... names) throws Exception {
+		for (String name : names) {
+			visitor.visitRecord(null, name == null ? null : resource(name));
+		}
+	}
+
+	@Test
+	public final void testBatches() throws Exception {
+		ArchiveRecordVisitor visitor = ArcHarvestFileDTO.batchingVisitor(2, this::consume);
+		visitor.startFile(new ArcHarvestFileDTO());
+		visit(visitor, "http://a/", null, "http://b/", "http://c/");
+		assertEquals(1, batches.size());
+		visitor.endFile(new ArcHarvestFileDTO());
+
+		assertEquals(2, batches.size());
+		assertEquals(Arrays.asList("http://a/", "http://b/"), batches.get(0));
+		assertEquals(Arrays.asList("http://c/"), batches.get(1));
+	}
+
+	@Test
+	public final void testUrlsAreSentOncePerFile() throws Exception {
+		ArchiveRecordVisitor visitor = ArcHarvestFileDTO.batchingVisitor(2, this::consume);
+		visitor.startFile(new ArcHarvestFileDTO());
+		// http://a/ appears again after its batch has been sent, and within a batch
+		visit(visitor, "http://a/", "http://b/", "http://a/", "http://c/", "http://c/", "http://d/", "http://b/");
+		visitor.endFile(new ArcHarvestFileDTO());
+
+		assertEquals(2, batches.size());
+		assertEquals(Arrays.asList("http://a/", "http://b/"), batches.get(0));
+		assertEquals(Arrays.asList("http://c/", "http://d/"), batches.get(1));
+
+		// The URLs seen are forgotten at the end of the file
+		visitor.startFile(new ArcHarvestFileDTO());
+		visit(visitor, "http://a/");
+		visitor.endFile(new ArcHarvestFileDTO());
+		assertEquals(Arrays.asList("http://a/"), batches.get(2));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public final void testInvalidBatchSize() {
+		ArcHarvestFileDTO.batchingVisitor(0, this::consume);
+	}
+
+	@Test
+	public final void testScan() throws Exception {
+		ArcHarvestFileDTO dto = archiveFile(true, "http://a/", "http://b/");
+		RecordingVisitor resourceVisitor = new RecordingVisitor(false);
+		RecordingVisitor contentVisitor = new RecordingVisitor(true);
+		dto.scan(folder.getRoot(), Arrays.<ArchiveRecordVisitor>asList(resourceVisitor, contentVisitor));
+
+		assertTrue(dto.isCompressed());
+		// Only the response records are indexed as resources
+		assertEquals(Arrays.asList("startFile", "visitRecord null", "endRecord",
+				"visitRecord null", "endRecord", "visitRecord http://a/", "endRecord",
+				"visitRecord null", "endRecord", "visitRecord http://b/", "endRecord", "endFile"),
+				resourceVisitor.calls);
+		assertEquals(Arrays.asList("startFile", "visitRecord null", "endRecord",
+				"visitRecord null", "endRecord", "visitRecord http://a/", "endRecord <html>http://a/</html>",
+				"visitRecord null", "endRecord", "visitRecord http://b/", "endRecord <html>http://b/</html>", "endFile"),
+				contentVisitor.calls);
+	}
+
+	@Test
+	public final void testScanCarriesOnWhenAVisitorFails() throws Exception {
+		ArcHarvestFileDTO dto = archiveFile(false, "http://a/", "http://b/");
+		RecordingVisitor failingVisitor = new RecordingVisitor("visitRecord http://a/");
+		RecordingVisitor visitor = new RecordingVisitor(false);
+		try {
+			dto.scan(folder.getRoot(), Arrays.<ArchiveRecordVisitor>asList(failingVisitor, visitor));
+			fail("The failure should be thrown once the file has been read");
+		} catch (IOException ex) {
+			assertEquals("failed on visitRecord http://a/", ex.getMessage());
+		}
+
+		assertEquals(Arrays.asList("startFile", "visitRecord null", "endRecord", "visitRecord null", "endRecord",
+				"visitRecord http://a/", "abortFile"), failingVisitor.calls);
+		assertEquals("endFile", visitor.calls.get(visitor.calls.size() - 1));
+		assertTrue(visitor.calls.contains("visitRecord http://b/"));
+	}
+
+	@Test
+	public final void testIndexSendsUrlsOncePerFile() throws Exception {
+		ArcHarvestFileDTO dto = archiveFile(false, "http://a/", "http://b/", "http://c/", "http://a/", "http://d/");
+		dto.index(folder.getRoot(), 2, this::consume);
+
+		assertFalse(dto.isCompressed());
+		assertEquals(2, batches.size());
+		assertEquals(Arrays.asList("http://a/", "http://b/"), batches.get(0));
+		assertEquals(Arrays.asList("http://c/", "http://d/"), batches.get(1));
+	}
+
+	@Test
+	public final void testIndexKeepsTheFirstRecordOfAUrl() throws Exception {
+		ArcHarvestFileDTO dto = archiveFile(false, "http://a/", "http://b/", "http://a/");
+		List<HarvestResourceDTO> resources = new ArrayList<HarvestResourceDTO>();
+		dto.index(folder.getRoot(), 10, resources::addAll);
+		Map<String, HarvestResourceDTO> index = dto.index(folder.getRoot());
+
+		assertEquals(2, resources.size());
+		assertEquals("http://a/", resources.get(0).getName());
+		// index(File) keeps the last record of a URL, the batches keep the first
+		long first = ((ArcHarvestResourceDTO) resources.get(0)).getResourceOffset();
+		long last = ((ArcHarvestResourceDTO) index.get("http://a/")).getResourceOffset();
+		assertTrue(first < last);
+		assertTrue(first < ((ArcHarvestResourceDTO) resources.get(1)).getResourceOffset());
+	}
+}
@@ -0,0 +1,73 @@
+package org.webcurator.domain.model.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.PrimitiveIterator;
+
+import org.junit.Test;
+
+public class ScheduleTest {
+
+	private Schedule schedule(String cronPattern, Date endDate) {
+		Schedule schedule = new Schedule();
+		schedule.setCronPattern(cronPattern);
+		schedule.setStartDate(new Date());
+		schedule.setEndDate(endDate);
+		return schedule;
+	}
+
+	private Date daysFromNow(int days) {
+		Calendar cal = Calendar.getInstance();
+		cal.add(Calendar.DAY_OF_MONTH, days);
+		return cal.getTime();
+	}
+
+	private List<Date> nextExecutionDates(Schedule schedule, Date after, Date before) {
+		List<Date> dates = new ArrayList<Date>();
+		for (Date next = schedule.getNextExecutionDate(after); next != null && next.before(before); next = schedule.getNextExecutionDate(next)) {
+			dates.add(next);
+		}
+		return dates;
+	}
+
+	private List<Date> executionTimes(Schedule schedule, Date after, Date before) {
+		List<Date> dates = new ArrayList<Date>();
+		for (PrimitiveIterator.OfLong times = schedule.getExecutionTimes(after, before); times.hasNext();) {
+			dates.add(new Date(times.nextLong()));
+		}
+		return dates;
+	}
+
+	@Test
+	public final void testExecutionTimesMatchNextExecutionDate() {
+		Schedule daily = schedule("0 0 9 ? * *", null);
+		Date yearAhead = daysFromNow(365);
+
+		List<Date> expected = nextExecutionDates(daily, new Date(), yearAhead);
+		assertTrue(expected.size() >= 364);
+		assertEquals(expected, executionTimes(daily, new Date(), yearAhead));
+	}
+
+	@Test
+	public final void testExecutionTimesStopAtEndDate() {
+		Schedule weekly = schedule("0 30 2 ? * MON", daysFromNow(60));
+		Date yearAhead = daysFromNow(365);
+
+		List<Date> expected = nextExecutionDates(weekly, new Date(), yearAhead);
+		List<Date> times = executionTimes(weekly, new Date(), yearAhead);
+		assertEquals(expected, times);
+		assertTrue(times.size() <= 9);
+		assertFalse(times.get(times.size() - 1).after(weekly.getEndDate()));
+	}
+
+	@Test
+	public final void testExecutionTimesInvalidPattern() {
+		Schedule invalid = schedule("not a cron pattern", null);
+		assertNull(invalid.getNextExecutionDate(new Date()));
+		assertFalse(invalid.getExecutionTimes(new Date(), daysFromNow(10)).hasNext());
+	}
+}
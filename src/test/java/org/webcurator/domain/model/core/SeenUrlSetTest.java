@@ -0,0 +1,55 @@
+package org.webcurator.domain.model.core;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class SeenUrlSetTest {
+
+	@Test
+	public final void testAdd() throws IOException {
+		try (SeenUrlSet seen = new SeenUrlSet()) {
+			assertTrue(seen.add("http://a/"));
+			assertTrue(seen.add("http://b/"));
+			assertFalse(seen.add("http://a/"));
+			assertTrue(seen.add("http://A/"));
+			assertEquals(3, seen.size());
+		}
+	}
+
+	@Test
+	public final void testAddUrlsWithTheSameFingerprint() throws IOException {
+		try (SeenUrlSet seen = new SeenUrlSet(url -> 42L)) {
+			assertTrue(seen.add("http://a/"));
+			assertTrue(seen.add("http://b/"));
+			assertFalse(seen.add("http://b/"));
+			assertFalse(seen.add("http://a/"));
+			assertEquals(2, seen.size());
+		}
+	}
+
+	@Test
+	public final void testAddManyUrls() throws IOException {
+		try (SeenUrlSet seen = new SeenUrlSet()) {
+			for (int i = 0; i < 5000; i++) {
+				assertTrue(seen.add("http://www.example.com/" + i + ".html"));
+			}
+			for (int i = 0; i < 5000; i++) {
+				assertFalse(seen.add("http://www.example.com/" + i + ".html"));
+			}
+			assertEquals(5000, seen.size());
+		}
+	}
+
+	@Test
+	public final void testClose() throws IOException {
+		SeenUrlSet seen = new SeenUrlSet();
+		assertTrue(seen.add("http://a/"));
+		seen.close();
+		assertEquals(0, seen.size());
+		assertTrue(seen.add("http://a/"));
+		seen.close();
+	}
+}
@@ -7,14 +7,18 @@ import org.apache.commons.logging.LogFactory;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 public class WCTTestUtils {
     protected static Log log = LogFactory.getLog(WCTTestUtils.class);
@@ -93,6 +97,61 @@ public class WCTTestUtils {
         return resourceDirectory;
     }
 
+    /**
+     * Write a small WARC file with a warcinfo record and, for each URL, a request
+     * record and a response record whose HTML body contains the URL.
+     *
+     * @param file the file to write
+     * @param compressed true to compress each record as a separate gzip member
+     * @param urls the URLs of the response records, which may repeat
+     */
+    public static void writeWarcFile(File file, boolean compressed, String... urls) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            int id = 0;
+            writeWarcRecord(out, compressed, "warcinfo", null, "application/warc-fields", "software: test\r\n", id++);
+            for (String url : urls) {
+                writeWarcRecord(out, compressed, "request", url, "application/http; msgtype=request",
+                        "GET / HTTP/1.1\r\nHost: test\r\n\r\n", id++);
+                String body = "<html>" + url + "</html>";
+                writeWarcRecord(out, compressed, "response", url, "application/http; msgtype=response",
+                        "HTTP/1.1 200 OK\r\nContent-Type: text/html\r\nContent-Length: " + body.length() + "\r\n\r\n" + body, id++);
+            }
+        }
+    }
+
+    private static void writeWarcRecord(OutputStream out, boolean compressed, String type, String url, String contentType,
+                                        String block, int id) throws IOException {
+        byte[] content = block.getBytes(StandardCharsets.UTF_8);
+        StringBuilder header = new StringBuilder("WARC/1.0\r\n");
+        header.append("WARC-Type: ").append(type).append("\r\n");
+        if (url != null) {
+            header.append("WARC-Target-URI: ").append(url).append("\r\n");
+        }
+        header.append("WARC-Date: 2020-01-01T00:00:00Z\r\n");
+        header.append(String.format("WARC-Record-ID: <urn:uuid:00000000-0000-0000-0000-%012d>\r\n", id));
+        header.append("Content-Type: ").append(contentType).append("\r\n");
+        header.append("Content-Length: ").append(content.length).append("\r\n\r\n");
+
+        OutputStream record = compressed ? new GZIPOutputStream(new NonClosingOutputStream(out)) : out;
+        record.write(header.toString().getBytes(StandardCharsets.UTF_8));
+        record.write(content);
+        record.write("\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+        if (compressed) {
+            record.close();
+        }
+    }
+
+    private static class NonClosingOutputStream extends FilterOutputStream {
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
     static class DirectoryCopyVisitor extends SimpleFileVisitor<Path> {
         final Path source;
         final Path target;